@@ -0,0 +1,132 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import java.net.Socket;
+
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <h1>BlockingFrameTransport</h1>
+ * This class is {@link FrameTransport} on top of blocking socket's streams or blocking channel of {@link MultiplexedConnection}.
+ * It's used on client's side, where single connection doesn't need event loop, and by multiplexed connections on both sides.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class BlockingFrameTransport implements FrameTransport {
+
+    private final Closeable connection;
+    private final BooleanSupplier open;
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Constructor of BlockingFrameTransport, gets I/O streams of socket.
+     * @param socket connected socket
+     * @throws IOException if there are problems with connection
+     */
+    public BlockingFrameTransport(Socket socket) throws IOException {
+        connection = socket;
+        open = () -> !socket.isClosed();
+        inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Constructor of BlockingFrameTransport, wraps blocking channel into streams.
+     * @param channel open blocking channel, e.g. channel of {@link MultiplexedConnection}
+     */
+    public BlockingFrameTransport(ByteChannel channel) {
+        connection = channel;
+        open = channel::isOpen;
+        inputStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        outputStream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    @Override
+    public void writeFrame(byte[] payload, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            outputStream.writeInt(length);
+            outputStream.write(payload, offset, length);
+            outputStream.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void writeFrames(byte[] frames, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            outputStream.write(frames, offset, length);
+            outputStream.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * This method submits to executor the loop, which reads frames until connection is closed.
+     * @param executor executor to run loop on
+     * @param listener listener to notify
+     */
+    @Override
+    public void startReading(Executor executor, FrameListener listener) {
+        executor.execute(() -> {
+            try {
+                while (open.getAsBoolean()) {
+                    int length = inputStream.readInt();
+                    if (length < 0 || length > Constants.maxFrameSize) {
+                        throw new StreamCorruptedException("Invalid frame length: " + length);
+                    }
+                    listener.frameReceived(readPayload(length));
+                }
+            } catch (IOException ignored) {
+            }
+            listener.connectionClosed();
+        });
+    }
+
+    private byte[] readPayload(int length) throws IOException {
+        byte[] payload = new byte[Math.min(length, Constants.frameBufferStep)];
+        int received = 0;
+        while (received < length) {
+            if (received == payload.length) {
+                payload = Arrays.copyOf(payload, Math.min(length, 2 * payload.length));
+            }
+            int count = inputStream.read(payload, received, payload.length - received);
+            if (count < 0) {
+                throw new IOException("Connection closed by peer");
+            }
+            received += count;
+        }
+        return payload;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open.getAsBoolean();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+}
@@ -69,6 +69,16 @@ public class ApacheWatchService {
                 clientController.getClient().demandForTransferEnforcedByWatchService(file);
             }
 
+            @Override
+            public void onFileChange(File file) {
+                File parent = file.getParentFile();
+                if (parent.getName().equals("Downloads") || file.isDirectory()) {
+                    return;
+                }
+                clientController.setItemToSend(file);
+                clientController.getClient().demandForTransferEnforcedByWatchService(file);
+            }
+
             @Override
             public void onFileDelete(File file) {
                 if(file.isDirectory()){
@@ -1,7 +1,9 @@
 package LimakWebApp.ClientSide;
 
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.MultiplexedConnection;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -9,6 +11,8 @@ import java.io.ObjectOutputStream;
 
 import java.net.Socket;
 
+import java.nio.channels.Channels;
+
 import java.util.concurrent.Callable;
 
 /**
@@ -22,6 +26,7 @@ public class AuthAgent implements Callable<Integer> {
 
     private volatile CredentialPacket credentialPacket;
     private volatile Socket socket;
+    private volatile MultiplexedConnection connection;
     private volatile ObjectOutputStream inputSender;
     private volatile ObjectInputStream inputReceiver;
 
@@ -33,6 +38,15 @@ public class AuthAgent implements Callable<Integer> {
         this.socket = socket;
     }
 
+    /**
+     * This method sets a connection, whose authorization channel is used instead of authorization socket.
+     * The connection stays open after authorization, only its authorization channel is closed by {@link #closeInitConnection()}.
+     * @param connection a multiplexed connection to set
+     */
+    public void setConnection(MultiplexedConnection connection){
+        this.connection = connection;
+    }
+
     /**
      * This method sets credentials to perform initial communication with server.
      * @param packet credentials received from {@link LoginPageController}
@@ -92,6 +106,13 @@ public class AuthAgent implements Callable<Integer> {
 
     private void initStreams(){
         try {
+            if (connection != null) {
+                MultiplexedConnection.Channel channel = connection.getChannel(MultiplexedConnection.AUTHORIZATION);
+                inputSender = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                inputSender.flush();
+                inputReceiver = new ObjectInputStream(Channels.newInputStream(channel));
+                return;
+            }
             inputSender = new ObjectOutputStream(this.socket.getOutputStream());
             inputSender.flush();
             InputStream input = this.socket.getInputStream();
@@ -119,7 +140,12 @@ public class AuthAgent implements Callable<Integer> {
      */
     @Override
     public Integer call() {
-        if(socket == null || socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()){
+        if(connection != null){
+            if(!connection.getChannel(MultiplexedConnection.AUTHORIZATION).isOpen()){
+                return -1;
+            }
+        }
+        else if(socket == null || socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()){
             return -1;
         }
         initStreams();
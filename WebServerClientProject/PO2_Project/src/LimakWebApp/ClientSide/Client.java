@@ -2,7 +2,9 @@ package LimakWebApp.ClientSide;
 
 import LimakWebApp.Utils.AbstractClientController;
 import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.Reconciliation;
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.DataPackets.FileDelta;
 import LimakWebApp.DataPackets.FilePacket;
 import LimakWebApp.DataPackets.MessageToSend;
 import LimakWebApp.DataPackets.SocketHandler;
@@ -10,19 +12,24 @@ import LimakWebApp.ServicesHandler;
 
 import javafx.stage.Window;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -39,8 +46,14 @@ import java.util.stream.Collectors;
  */
 public class Client extends ServicesHandler {
 
-    private final Object lock = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock sendLock = new ReentrantLock();
     Window windowToClose;
+    private volatile SyncState syncState;
+    private volatile String pendingEpoch;
+    private volatile long pendingSequence;
+    private final ConcurrentHashMap<String, FileDelta.Signatures> signaturesOfFiles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Map.Entry<String, Long>> offsetsOfFiles = new ConcurrentHashMap<>();
 
     /**
      * This constructor sets a controller provided from {@link ClientApp} and calls super()
@@ -106,10 +119,14 @@ public class Client extends ServicesHandler {
         mainPageController.addLog(Constants.LogType.INFO, new Date().toString() + ":\nReceived command: \n\t" + command.getCommandType().name());
         switch (command.getCommandType()) {
             case QUIT_CONNECTION: {
-                synchronized (lock) {
+                lock.lock();
+                try {
                     getNotificationService().sendObject(new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.QUIT_CONNECTION));
                     getNotificationService().submitTask(this::cleanUp);
                 }
+                finally {
+                    lock.unlock();
+                }
                 ((AbstractClientController)mainPageController).hideWindow(windowToClose);
                 break;
             }
@@ -153,15 +170,14 @@ public class Client extends ServicesHandler {
             }
             case RECEIVE_LIST_OF_FILES: {
                 ArrayList<String> tmp = command.getContents().stream().map((object) -> (String) object).collect(Collectors.toCollection(ArrayList::new));
+                if (pendingEpoch != null) {
+                    getSyncState().reset(pendingEpoch, pendingSequence, tmp);
+                    pendingEpoch = null;
+                    saveSyncState();
+                }
                 filesToTransfer = ((AbstractClientController) mainPageController).compareUserAndServerList(tmp);
                 if (filesToTransfer.getValue().size() > 0) {
-                    MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE_DEMAND);
-                    newMessage.addContents(filesToTransfer.getValue().stream().map(string -> (Object) string).collect(Collectors.toCollection(ArrayList::new)));
-                    getNotificationService().sendObject(newMessage);
-                    mainPageController.setStatusText("Sending files");
-                    StringBuilder stringBuilder = new StringBuilder();
-                    stringBuilder.append(new Date()).append(":\n").append("Sending files in progress...\n");
-                    mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
+                    offerDigests(filesToTransfer.getValue());
                 }
                 if (((AbstractClientController) mainPageController).checkIfAreNewFiles(tmp)) {
                     MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.RECEIVE_LIST_OF_FILES);
@@ -184,50 +200,239 @@ public class Client extends ServicesHandler {
                 getNotificationService().sendObject(command);
                 break;
             }
+            case SYNC_MANIFEST: {
+                ArrayList<Object> contents = new ArrayList<>();
+                contents.add(getSyncState().getEpoch());
+                contents.add(String.valueOf(getSyncState().getSequence()));
+                MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.SYNC_MANIFEST);
+                newMessage.addContents(contents);
+                getNotificationService().sendObject(newMessage);
+                break;
+            }
+            case MANIFEST_DELTA: {
+                String epoch = (String) command.getContents().get(0);
+                long sequence = Long.parseLong((String) command.getContents().get(1));
+                if (MessageToSend.FULL_MANIFEST.equals(command.getContents().get(2))) {
+                    pendingSequence = sequence;
+                    pendingEpoch = epoch;
+                    break;
+                }
+                ArrayList<String> changes = command.getContents().subList(3, command.getContents().size()).stream().map((object) -> (String) object).collect(Collectors.toCollection(ArrayList::new));
+                getSyncState().apply(epoch, sequence, changes);
+                saveSyncState();
+                Reconciliation<File> reconciliation = ((AbstractClientController) mainPageController).compareUserFilesAndServerChanges(changes);
+                filesToTransfer = new AbstractMap.SimpleEntry<>(getLocalEndPoint(), reconciliation.getOnlyLocal());
+                if (filesToTransfer.getValue().size() > 0) {
+                    offerDigests(filesToTransfer.getValue());
+                }
+                ArrayList<Object> missing = new ArrayList<>(reconciliation.getOnlyRemote());
+                if (missing.size() > 0) {
+                    MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.DEMAND_FILES);
+                    newMessage.addContents(missing);
+                    getNotificationService().sendObject(newMessage);
+                }
+                break;
+            }
+            case FILE_SIGNATURES: {
+                for (int i = 0; i + 1 < command.getContents().size(); i += 2) {
+                    try {
+                        signaturesOfFiles.put((String) command.getContents().get(i), FileDelta.Signatures.decode((String) command.getContents().get(i + 1)));
+                    }
+                    catch (IOException | ClassCastException e) {
+                        // file is sent in full
+                    }
+                }
+                break;
+            }
+            case TRANSFER_OFFSETS: {
+                for (int i = 0; i + 2 < command.getContents().size(); i += 3) {
+                    try {
+                        offsetsOfFiles.put((String) command.getContents().get(i),
+                                new AbstractMap.SimpleEntry<>((String) command.getContents().get(i + 1), Long.parseLong((String) command.getContents().get(i + 2))));
+                    }
+                    catch (NumberFormatException | ClassCastException e) {
+                        // file is sent from the beginning
+                    }
+                }
+                break;
+            }
+            case OFFER_FILE_DIGESTS: {
+                Set<Object> accepted = new HashSet<>(command.getContents());
+                ArrayList<File> toSend = filesToTransfer.getValue().stream()
+                        .filter(file -> !accepted.contains(file.getName()))
+                        .collect(Collectors.toCollection(ArrayList::new));
+                filesToTransfer = new AbstractMap.SimpleEntry<>(filesToTransfer.getKey(), toSend);
+                if (!accepted.isEmpty()) {
+                    mainPageController.addLog(Constants.LogType.INFO, new Date().toString() + ":\nFiles already stored on server: " + accepted.size() + "\n");
+                }
+                if (toSend.size() > 0) {
+                    MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE_DEMAND);
+                    newMessage.addContents(toSend.stream().map(file -> (Object) file).collect(Collectors.toCollection(ArrayList::new)));
+                    getNotificationService().sendObject(newMessage);
+                    mainPageController.setStatusText("Sending files");
+                    StringBuilder stringBuilder = new StringBuilder();
+                    stringBuilder.append(new Date()).append(":\n").append("Sending files in progress...\n");
+                    mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
+                }
+                break;
+            }
+        }
+    }
+
+    private SyncState getSyncState() {
+        if (syncState == null) {
+            File directory = new File(System.getProperty("user.home"), Constants.getClientStateDirectory(this));
+            syncState = SyncState.load(new File(directory, getLocalEndPoint().getUserName() + ".json"));
+        }
+        return syncState;
+    }
+
+    private void saveSyncState() {
+        try {
+            getSyncState().save();
+        }
+        catch (IOException io) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't save state of synchronization: ").append("\n\t")
+                    .append(io.getMessage()).append("\n");
+            mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
         }
     }
 
     /**
-     * This method saves file in Client's <i>Download</i> directory
+     * This method offers digests of files, which are going to be sent, to server. Server creates files of contents, which it already stores
+     * for files of this user, and replies with their names, only the rest of files is sent.
+     * @param files files to send
+     */
+    private void offerDigests(ArrayList<File> files) {
+        ArrayList<Object> offer = new ArrayList<>();
+        for (File file : files) {
+            try {
+                String digest = FilePacket.digest(file);
+                offer.add(file.getName());
+                offer.add(digest);
+            }
+            catch (IOException io) {
+                // file is sent without offer
+            }
+        }
+        MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.OFFER_FILE_DIGESTS);
+        newMessage.addContents(offer);
+        getNotificationService().sendObject(newMessage);
+    }
+
+    /**
+     * This method opens file in Client's <i>Download</i> directory, which received contents are written to
      * @param filePacket the data package to save on drive
+     * @return channel of file, or <code>null</code> if file can't be saved
      */
     @Override
-    protected void saveFile(FilePacket filePacket) {
+    protected FileChannel beginSaveFile(FilePacket filePacket) {
         File root = new File(getLocalEndPoint().getUserFolderPath());
-        if (root.listFiles() != null) {
-            File downloadFolder = new File(root, Constants.getClientDownloadDirectory(this));
-            if (!downloadFolder.isDirectory()) {
-                downloadFolder.mkdir();
-            }
-            File fileToSave = new File(downloadFolder, filePacket.getFileName());
-            try (BufferedOutputStream writer = new BufferedOutputStream(new FileOutputStream(fileToSave))) {
-                long size = filePacket.getSize();
-                writer.write(filePacket.getFileBytes(), 0, (int) size);
-            } catch (IOException io) {
-                mainPageController.setStatusText("Can't save the file");
-                StringBuilder stringBuilder = new StringBuilder();
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                PrintStream outStream = new PrintStream(outputStream);
-                io.printStackTrace(outStream);
-                stringBuilder.append(new Date())
-                        .append(":\n").append("Can't save the file: ")
-                        .append(filePacket.getFileName()).append("\n\t")
-                        .append(io.getMessage()).append("\n")
-                        .append(outStream.toString()).append("\n");
-                mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
-            }
-            mainPageController.setStatusText("File saved successfully");
+        if (root.listFiles() == null) {
+            return null;
+        }
+        File downloadFolder = new File(root, Constants.getClientDownloadDirectory(this));
+        if (!downloadFolder.isDirectory()) {
+            downloadFolder.mkdir();
+        }
+        File fileToSave = new File(downloadFolder, filePacket.getFileName());
+        filePacket.attach(fileToSave);
+        try {
+            return FileChannel.open(fileToSave.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException io) {
+            logSaveError(filePacket, io);
+            return null;
+        }
+    }
+
+    /**
+     * This method completes saving of file in Client's <i>Download</i> directory
+     * @param filePacket the data package to save on drive
+     */
+    @Override
+    protected void finishSaveFile(FilePacket filePacket) {
+        File fileToSave = (File) filePacket.attachment();
+        if (filePacket.getFailure() != null) {
+            fileToSave.delete();
+            logSaveError(filePacket, filePacket.getFailure());
+            return;
+        }
+        mainPageController.setStatusText("File saved successfully");
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(new Date())
+                .append(":\n").append("File saved successfully: ").append("\n\t")
+                .append(filePacket.getFileName());
+        mainPageController.addLog(Constants.LogType.SUCCESS, stringBuilder.toString());
+        mainPageController.refreshTree();
+        if (((AbstractClientController) mainPageController).checkIfMinimized()) {
+            new TrayIconNotification(getLocalEndPoint(), ((MainPageController) mainPageController).getStage());
+        }
+    }
+
+    private void logSaveError(FilePacket filePacket, IOException io) {
+        mainPageController.setStatusText("Can't save the file");
+        StringBuilder stringBuilder = new StringBuilder();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(outputStream);
+        io.printStackTrace(outStream);
+        stringBuilder.append(new Date())
+                .append(":\n").append("Can't save the file: ")
+                .append(filePacket.getFileName()).append("\n\t")
+                .append(io.getMessage()).append("\n")
+                .append(outStream.toString()).append("\n");
+        mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+    }
+
+    /**
+     * This method writes delta of file, which server rebuilds from version of file it already stores
+     * @param userName owner of file
+     * @param file file to send
+     * @param signatures signatures of version stored on server
+     * @return {@link FilePacket} of delta
+     * @throws IOException if delta can't be written
+     */
+    private FilePacket createDelta(String userName, File file, FileDelta.Signatures signatures) throws IOException {
+        File deltaFile = File.createTempFile("limak", ".delta");
+        try {
+            long size = FileDelta.write(file, signatures, deltaFile);
             StringBuilder stringBuilder = new StringBuilder();
             stringBuilder.append(new Date())
-                    .append(":\n").append("File saved successfully: ").append("\n\t")
-                    .append(filePacket.getFileName());
-            mainPageController.addLog(Constants.LogType.SUCCESS, stringBuilder.toString());
-            mainPageController.refreshTree();
-            if (((AbstractClientController) mainPageController).checkIfMinimized()) {
-                new TrayIconNotification(getLocalEndPoint(), ((MainPageController) mainPageController).getStage());
-            }
+                    .append(":\n").append("Sending delta of the file: ")
+                    .append(file.getName()).append("\n\t")
+                    .append(size).append(" of ").append(file.length()).append(" B\n");
+            mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
+            return FilePacket.delta(userName, file.getName(), deltaFile);
+        }
+        catch (IOException io) {
+            deltaFile.delete();
+            throw io;
+        }
+    }
 
+    /**
+     * This method creates packet of file, which transfer can be resumed. If server received part of the same version of file before,
+     * contents are sent from offset reported by server.
+     * @param userName owner of file
+     * @param file file to send
+     * @return {@link FilePacket}
+     * @throws IOException if file doesn't exist
+     */
+    private FilePacket createPacket(String userName, File file) throws IOException {
+        FilePacket packet = new FilePacket(userName, file);
+        packet.setTransferId(FilePacket.transferId(userName, file));
+        Map.Entry<String, Long> offset = offsetsOfFiles.remove(file.getName());
+        if (offset != null && offset.getKey().equals(packet.getTransferId()) && offset.getValue() <= packet.getSize()) {
+            packet.setOffset(offset.getValue());
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Resuming transfer of the file: ")
+                    .append(file.getName()).append("\n\t")
+                    .append(offset.getValue()).append(" of ").append(packet.getSize()).append(" B already received\n");
+            mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
         }
+        return packet;
     }
 
     /**
@@ -235,35 +440,42 @@ public class Client extends ServicesHandler {
      * @param data the entry of map that contains a user's credentials as a <code>key</code> and list of file names as a <code>value</code>
      */
     @Override
-    protected synchronized void sendListOfFiles(Map.Entry<CredentialPacket, ArrayList<File>> data) {
-        if (data == null || data.getValue().size() == 0 || data.getKey() == null) return;
-        int filesSent = 0;
-        for (File file : data.getValue()) {
-            FilePacket packet;
-            try {
-                packet = new FilePacket(data.getKey().getUserName(), file);
-                ++filesSent;
-            }
-            catch (IOException io){
-                mainPageController.setStatusText("Can't send the file");
-                StringBuilder stringBuilder = new StringBuilder();
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                PrintStream outStream = new PrintStream(outputStream);
-                io.printStackTrace(outStream);
-                stringBuilder.append(new Date())
-                        .append(":\n").append("Can't send the file: ")
-                        .append(file.getName()).append("\n\t")
-                        .append(io.getMessage()).append("\n")
-                        .append(outStream.toString()).append("\n");
-                mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
-                packet = null;
+    protected void sendListOfFiles(Map.Entry<CredentialPacket, ArrayList<File>> data) {
+        sendLock.lock();
+        try {
+            if (data == null || data.getValue().size() == 0 || data.getKey() == null) return;
+            int filesSent = 0;
+            for (File file : data.getValue()) {
+                FilePacket packet;
+                try {
+                    FileDelta.Signatures signatures = signaturesOfFiles.remove(file.getName());
+                    packet = signatures == null ? createPacket(data.getKey().getUserName(), file) : createDelta(data.getKey().getUserName(), file, signatures);
+                    ++filesSent;
+                }
+                catch (IOException io){
+                    mainPageController.setStatusText("Can't send the file");
+                    StringBuilder stringBuilder = new StringBuilder();
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    PrintStream outStream = new PrintStream(outputStream);
+                    io.printStackTrace(outStream);
+                    stringBuilder.append(new Date())
+                            .append(":\n").append("Can't send the file: ")
+                            .append(file.getName()).append("\n\t")
+                            .append(io.getMessage()).append("\n")
+                            .append(outStream.toString()).append("\n");
+                    mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+                    packet = null;
+                }
+                getFileService().sendObject(packet);
             }
-            getFileService().sendObject(packet);
+            boolean success = filesSent == data.getValue().size();
+            mainPageController.setStatusText(success ? "All files were sent" : "Files were sent partially");
+            StringBuilder builder = new StringBuilder();
+            builder.append(new Date()).append(":\n").append(success ? "All files were sent" : "Files were sent partially");
+            mainPageController.addLog(Constants.LogType.INFO, builder.toString());
+        }
+        finally {
+            sendLock.unlock();
         }
-        boolean success = filesSent == data.getValue().size();
-        mainPageController.setStatusText(success ? "All files were sent" : "Files were sent partially");
-        StringBuilder builder = new StringBuilder();
-        builder.append(new Date()).append(":\n").append(success ? "All files were sent" : "Files were sent partially");
-        mainPageController.addLog(Constants.LogType.INFO, builder.toString());
     }
 }
\ No newline at end of file
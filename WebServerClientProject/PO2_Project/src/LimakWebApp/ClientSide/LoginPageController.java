@@ -1,5 +1,6 @@
 package LimakWebApp.ClientSide;
 
+import LimakWebApp.MultiplexedConnection;
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.DataPackets.SocketHandler;
@@ -29,6 +30,7 @@ import java.util.concurrent.Future;
 /**
  * <h1>LoginPageController</h1>
  * This class provides ability to log in server or register new user.
+ * Client connects by single {@link MultiplexedConnection} if it's enabled by {@link Constants#multiplexingProperty}, otherwise by separate ports.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   22.06.2019
@@ -36,6 +38,7 @@ import java.util.concurrent.Future;
 public class LoginPageController  extends Controller {
 
     Socket socket;
+    MultiplexedConnection connection;
 
     private AuthAgent authAgent;
     private Client client;
@@ -122,8 +125,15 @@ public class LoginPageController  extends Controller {
         authAgent = new AuthAgent();
         executorService = Executors.newFixedThreadPool(2);
         EventHandler<ActionEvent> actionHandler = event -> {
+            socket = null;
+            connection = null;
             try {
-                socket = new Socket(Constants.serverIP, Constants.authPort);
+                if (Constants.isMultiplexingEnabled()) {
+                    connection = new MultiplexedConnection(new Socket(Constants.serverIP, Constants.muxPort));
+                }
+                else {
+                    socket = new Socket(Constants.serverIP, Constants.authPort);
+                }
             }
             catch(IOException ignore){
             }
@@ -148,11 +158,18 @@ public class LoginPageController  extends Controller {
                         e.consume();
                     });
                     stage.show();
-                    ArrayList<Socket> sockets = new ArrayList<>();
-                    sockets.add(new Socket(Constants.serverIP, Constants.filePort));
-                    sockets.add(new Socket(Constants.serverIP, Constants.commPort));
+                    SocketHandler socketHandler;
+                    if (connection != null) {
+                        socketHandler = new SocketHandler(connection);
+                    }
+                    else {
+                        ArrayList<Socket> sockets = new ArrayList<>();
+                        sockets.add(SocketHandler.connect(Constants.filePort, sessionID));
+                        sockets.add(SocketHandler.connect(Constants.commPort, sessionID));
+                        socketHandler = new SocketHandler(sockets);
+                    }
                     controller.setSessionID(sessionID);
-                    client = new Client(new SocketHandler(sockets), authAgent.getCredentialPacket(), controller);
+                    client = new Client(socketHandler, authAgent.getCredentialPacket(), controller);
                     controller.setClient(client);
                     controller.setCredentialPacket( authAgent.getCredentialPacket());
                     client.setController(controller);
@@ -189,6 +206,9 @@ public class LoginPageController  extends Controller {
                 userEmailInput.setText("");
                 userFolderPathInput.setText("");
                 userNameInput.setText("");
+                if (connection != null) {
+                    connection.close();
+                }
             }
             authAgent.closeInitConnection();
         };
@@ -197,6 +217,7 @@ public class LoginPageController  extends Controller {
 
     private int isValidUser(){
         authAgent.setSocket(socket);
+        authAgent.setConnection(connection);
         authAgent.setCredentialPacket(new CredentialPacket(userEmailInput.getText(), userNameInput.getText(), userFolderPathInput.getText()));
         Future<Integer> rV = executorService.submit(authAgent);
         int result = -1;
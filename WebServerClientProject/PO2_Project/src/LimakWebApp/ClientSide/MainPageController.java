@@ -2,6 +2,7 @@ package LimakWebApp.ClientSide;
 
 import LimakWebApp.Utils.AbstractClientController;
 import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.Reconciliation;
 import LimakWebApp.Utils.StringFunctionalInterface;
 import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.DataPackets.MessageToSend;
@@ -48,6 +49,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.concurrent.ExecutorService;
@@ -461,21 +463,12 @@ public class MainPageController extends AbstractClientController {
      */
     @Override
     public boolean checkIfAreNewFiles(ArrayList<String> serverFileList){
-        ArrayList<String> outList = new ArrayList<>();
         lock.readLock().lock();
         try{
-            ArrayList<String> tmp = listOfFiles.stream().map(file->file.getName()).collect(Collectors.toCollection(ArrayList::new));
-            if (serverFileList.size() > 0) {
-                for (String fileName : serverFileList) {
-                    if (!tmp.contains(fileName)) {
-                        outList.add(fileName);
-                    }
-                }
-            }
+            return Reconciliation.of(listOfFiles, File::getName, serverFileList).getOnlyRemote().size() > 0;
         }finally {
             lock.readLock().unlock();
         }
-        return outList.size() > 0;
     }
 
     /**
@@ -485,26 +478,31 @@ public class MainPageController extends AbstractClientController {
      */
     @Override
     public Map.Entry<CredentialPacket, ArrayList<File>> compareUserAndServerList( ArrayList<String> serverFileList){
-        Map.Entry<CredentialPacket, ArrayList<File>> rV = null;
-        ArrayList<File> outList = new ArrayList<>();
+        ArrayList<File> outList;
         lock.readLock().lock();
         try {
-            ArrayList<File> tmp = listOfFiles;
-            if (serverFileList.size() > 0) {
-                for (File file : tmp) {
-                    if (!serverFileList.contains(file.getName())) {
-                        outList.add(file);
-                    }
-                }
-            } else {
-                outList.addAll(tmp);
-            }
+            outList = Reconciliation.of(listOfFiles, File::getName, serverFileList).getOnlyLocal();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return new AbstractMap.SimpleEntry<>(credentialPacket, outList);
+    }
+
+    /**
+     * This methods compares local list of files with changes of user's list of files on server.
+     * @param changes changes of user's files on server, in order they were made
+     * @return {@link Reconciliation}
+     */
+    @Override
+    public Reconciliation<File> compareUserFilesAndServerChanges(List<String> changes){
+        lock.readLock().lock();
+        try {
+            return Reconciliation.ofChanges(listOfFiles, File::getName, changes);
         }
         finally {
             lock.readLock().unlock();
         }
-        rV = new AbstractMap.SimpleEntry<>(credentialPacket, outList);
-        return rV;
     }
 
     /**
@@ -0,0 +1,134 @@
+package LimakWebApp.ClientSide;
+
+import LimakWebApp.DataPackets.MessageToSend;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>SyncState</h1>
+ * This class is used by {@link Client} to remember manifest of user's files on server, seen at last synchronization.
+ * State is stored in file, so after reconnection client sends only epoch and sequence of manifest
+ * and receives changes made since then, instead of exchanging full lists of files.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class SyncState {
+
+    private String epoch = "";
+    private long sequence = -1;
+    private Set<String> files = new HashSet<>();
+    private transient File file;
+
+    /**
+     * This method reads state from given file, empty state is returned if file doesn't exist or can't be read
+     * @param file file of state
+     * @return {@link SyncState}
+     */
+    public static SyncState load(File file) {
+        SyncState rV = null;
+        if (file.isFile()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                rV = new Gson().fromJson(reader, SyncState.class);
+            } catch (IOException | JsonParseException ignored) {
+            }
+        }
+        if (rV == null || rV.epoch == null || rV.files == null) {
+            rV = new SyncState();
+        }
+        rV.file = file;
+        return rV;
+    }
+
+    /**
+     * This method writes state to its file
+     * @throws IOException if file can't be written
+     */
+    public synchronized void save() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory.getAbsolutePath());
+        }
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            new Gson().toJson(this, writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method replaces state by full list of files
+     * @param epoch epoch of manifest
+     * @param sequence sequence of manifest
+     * @param fileNames files of user
+     */
+    public synchronized void reset(String epoch, long sequence, List<String> fileNames) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.files = new HashSet<>(fileNames);
+    }
+
+    /**
+     * This method applies changes of manifest, every change is name of file preceded by {@link MessageToSend#FILE_ADDED} or {@link MessageToSend#FILE_REMOVED}
+     * @param epoch epoch of manifest
+     * @param sequence sequence of manifest after changes
+     * @param changes changes to apply, in order of sequence
+     */
+    public synchronized void apply(String epoch, long sequence, List<String> changes) {
+        for (String change : changes) {
+            if (change.length() < 2) continue;
+            if (change.startsWith(MessageToSend.FILE_ADDED)) {
+                files.add(change.substring(1));
+            } else if (change.startsWith(MessageToSend.FILE_REMOVED)) {
+                files.remove(change.substring(1));
+            }
+        }
+        this.epoch = epoch;
+        this.sequence = sequence;
+    }
+
+    /**
+     * This method returns epoch of remembered manifest
+     * @return {@link String}
+     */
+    public synchronized String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * This method returns sequence of remembered manifest, <code>-1</code> if client was never synchronized
+     * @return long
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * This method returns files of user on server
+     * @return {@code ArrayList<String>}
+     */
+    public synchronized ArrayList<String> getFiles() {
+        return new ArrayList<>(files);
+    }
+}
@@ -0,0 +1,362 @@
+package LimakWebApp;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <h1>ConnectionSelector</h1>
+ * This class is networking core of server - a small, fixed set of event loops, each one with own {@link Selector},
+ * which accept new connections and serve all registered {@link SelectorConnection}s without a thread per connection.
+ * Connection accepted by {@link #listen(ServerSocketChannel, int, long, BiConsumer)} has to introduce itself by greeting first,
+ * which is read without blocking too, so connection which says nothing doesn't hold any thread until its deadline passes.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class ConnectionSelector implements Closeable {
+
+    /**
+     * This interface is attached to every registered key and handles its ready operations on event loop's thread.
+     */
+    interface Handler {
+
+        /**
+         * This method handles ready operations of key
+         * @param key selected key
+         * @throws IOException if any problem with channel occurs, the key is cancelled then
+         */
+        void handle(SelectionKey key) throws IOException;
+
+        /**
+         * This method is called when channel is dropped because of an error or closing of selector
+         */
+        void dropped();
+    }
+
+    /**
+     * Single event loop - thread and selector.
+     */
+    class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<Greeting> greetings = new ArrayDeque<>();
+        private final Thread thread;
+
+        EventLoop(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "ConnectionSelector-" + number);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * This method runs task on loop's thread, before next selection
+         * @param task task to run
+         */
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+            return channel.register(selector, ops, handler);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select(nextDeadline());
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException ignored) {
+                        }
+                    }
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        Handler handler = (Handler) key.attachment();
+                        try {
+                            if (key.isValid()) {
+                                handler.handle(key);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            key.cancel();
+                            closeQuietly(key);
+                            handler.dropped();
+                        }
+                    }
+                    expireGreetings();
+                }
+            } catch (IOException | ClosedSelectorException ignored) {
+            } finally {
+                try {
+                    for (SelectionKey key : selector.keys()) {
+                        closeQuietly(key);
+                        ((Handler) key.attachment()).dropped();
+                    }
+                    selector.close();
+                } catch (IOException | ClosedSelectorException ignored) {
+                }
+            }
+        }
+
+        private long nextDeadline() {
+            Greeting greeting = greetings.peek();
+            if (greeting == null) {
+                return 0;
+            }
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(greeting.deadline - System.nanoTime()));
+        }
+
+        private void expireGreetings() {
+            long now = System.nanoTime();
+            Greeting greeting;
+            while ((greeting = greetings.peek()) != null && (greeting.done || greeting.deadline - now <= 0)) {
+                greetings.poll();
+                if (!greeting.done) {
+                    greeting.done = true;
+                    greeting.key.cancel();
+                    closeQuietly(greeting.key);
+                }
+            }
+        }
+
+        private void closeQuietly(SelectionKey key) {
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Greeting of accepted connection - string written by {@link java.io.DataOutputStream#writeUTF(String)} as the first bytes of connection.
+     * Buffer is limited to the length announced by greeting, so no byte written after greeting is consumed.
+     */
+    private static class Greeting implements Handler {
+
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final ByteBuffer buffer;
+        private final long deadline;
+        private final BiConsumer<SocketChannel, String> greetingHandler;
+        private SelectionKey key;
+        private boolean done = false;
+
+        Greeting(SocketChannel channel, EventLoop loop, int maxLength, long deadline, BiConsumer<SocketChannel, String> greetingHandler) {
+            this.channel = channel;
+            this.loop = loop;
+            this.buffer = ByteBuffer.allocate(Short.BYTES + maxLength);
+            this.buffer.limit(Short.BYTES);
+            this.deadline = deadline;
+            this.greetingHandler = greetingHandler;
+        }
+
+        @Override
+        public void handle(SelectionKey key) throws IOException {
+            while (true) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Connection closed by peer");
+                }
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                if (buffer.limit() > Short.BYTES) {
+                    break;
+                }
+                int length = buffer.getShort(0) & 0xFFFF;
+                if (length == 0 || length > buffer.capacity() - Short.BYTES) {
+                    throw new StreamCorruptedException("Invalid greeting length: " + length);
+                }
+                buffer.limit(Short.BYTES + length);
+            }
+            done = true;
+            key.cancel();
+            String greeting = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.limit())).readUTF();
+            loop.execute(() -> greetingHandler.accept(channel, greeting));
+        }
+
+        @Override
+        public void dropped() {
+            done = true;
+        }
+    }
+
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean started = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor of ConnectionSelector, opens selectors of event loops.
+     * @param numberOfLoops number of event loops and their threads
+     * @throws IOException if selector can't be opened
+     */
+    public ConnectionSelector(int numberOfLoops) throws IOException {
+        loops = new EventLoop[Math.max(1, numberOfLoops)];
+        for (int i = 0; i < loops.length; ++i) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * This method starts threads of event loops
+     */
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            for (EventLoop loop : loops) {
+                loop.thread.start();
+            }
+        }
+    }
+
+    /**
+     * This method registers server channel and passes every accepted connection to handler.
+     * Handler is called on event loop's thread, so it shouldn't block.
+     * @param server bound server channel
+     * @param acceptHandler handler of accepted connections
+     * @throws IOException if channel can't be switched into non-blocking mode
+     */
+    public void listen(ServerSocketChannel server, Consumer<SocketChannel> acceptHandler) throws IOException {
+        server.configureBlocking(false);
+        EventLoop loop = loops[0];
+        loop.execute(() -> {
+            try {
+                loop.register(server, SelectionKey.OP_ACCEPT, new Handler() {
+                    @Override
+                    public void handle(SelectionKey key) throws IOException {
+                        SocketChannel channel;
+                        while ((channel = server.accept()) != null) {
+                            acceptHandler.accept(channel);
+                        }
+                    }
+
+                    @Override
+                    public void dropped() {
+                    }
+                });
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    /**
+     * This method registers server channel and passes every accepted connection to handler together with its greeting.
+     * Connection is handed over in non-blocking mode, already deregistered from selector, so handler may switch it to blocking mode or register it again.
+     * Connection, which sends invalid greeting or doesn't send it in time, is closed.
+     * Handler is called on event loop's thread, so it shouldn't block.
+     * @param server bound server channel
+     * @param maxLength maximal number of bytes of greeting
+     * @param timeout time in milliseconds, in which connection has to send its greeting
+     * @param greetingHandler handler of accepted connections and their greetings
+     * @throws IOException if channel can't be switched into non-blocking mode
+     */
+    public void listen(ServerSocketChannel server, int maxLength, long timeout, BiConsumer<SocketChannel, String> greetingHandler) throws IOException {
+        EventLoop loop = loops[0];
+        listen(server, channel -> {
+            try {
+                channel.configureBlocking(false);
+                Greeting greeting = new Greeting(channel, loop, maxLength, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), greetingHandler);
+                greeting.key = loop.register(channel, SelectionKey.OP_READ, greeting);
+                loop.greetings.add(greeting);
+            } catch (IOException io) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    /**
+     * This method registers connected channel in one of event loops.
+     * @param channel connected channel
+     * @return {@link SelectorConnection}
+     * @throws IOException if channel can't be switched into non-blocking mode
+     */
+    public SelectorConnection register(SocketChannel channel) throws IOException {
+        if (closed) {
+            throw new IOException("ConnectionSelector is closed");
+        }
+        channel.configureBlocking(false);
+        EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        SelectorConnection connection = new SelectorConnection(channel, loop);
+        loop.execute(connection::register);
+        return connection;
+    }
+
+    /**
+     * This method waits until all event loops are stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        for (EventLoop loop : loops) {
+            if (loop.thread.isAlive()) {
+                loop.thread.join();
+            }
+        }
+    }
+
+    /**
+     * This method returns the state of ConnectionSelector
+     * @return boolean
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * This method closes all registered channels and stops event loops
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (EventLoop loop : loops) {
+            try {
+                if (started) {
+                    loop.execute(() -> {
+                        try {
+                            for (SelectionKey key : loop.selector.keys()) {
+                                loop.closeQuietly(key);
+                                ((Handler) key.attachment()).dropped();
+                            }
+                            loop.selector.close();
+                        } catch (IOException ignored) {
+                        }
+                    });
+                } else {
+                    loop.selector.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package LimakWebApp.DataPackets;
+
+import LimakWebApp.Utils.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <h1>FileDelta</h1>
+ * This class computes difference between two versions of file in the way of rsync.
+ * Receiver, which holds old version of file, divides it into blocks and computes {@link Signatures} of them -
+ * weak rolling checksum and MD5 digest of every block.
+ * Sender slides window of block's size over new version of file, rolling the checksum byte by byte,
+ * and writes delta, which refers to blocks found in old version and contains literal data only for the rest of file.
+ * <pre>
+ * header:  int size of block
+ * COPY:    byte 1, int index of first block, int number of blocks
+ * LITERAL: byte 2, int length, bytes
+ * END:     byte 0, long size of new version, UTF SHA-256 digest of new version
+ * </pre>
+ * Receiver rebuilds new version from old one by {@link #apply(File, File, File)} and verifies its digest,
+ * so a collision of checksums can't silently corrupt the file.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FileDelta {
+
+    private static final byte END = 0;
+    private static final byte COPY = 1;
+    private static final byte LITERAL = 2;
+    private static final int STRONG_LENGTH = 16;
+
+    /**
+     * This method returns size of block used for file of given size, square root of size but not less than {@link Constants#deltaBlockSize}
+     * @param size size of file in bytes
+     * @return int
+     */
+    public static int getBlockSize(long size) {
+        return (int) Math.min(1 << 24, Math.max(Constants.deltaBlockSize, (long) Math.ceil(Math.sqrt(size))));
+    }
+
+    /**
+     * This method writes delta, which rebuilds given file from version described by signatures
+     * @param source new version of file
+     * @param signatures signatures of old version of file
+     * @param deltaFile file to write delta to
+     * @return size of delta in bytes
+     * @throws IOException if any file can't be read or written
+     */
+    public static long write(File source, Signatures signatures, File deltaFile) throws IOException {
+        int blockSize = signatures.blockSize;
+        int fullBlocks = (int) (signatures.size / blockSize);
+        int lastBlockLength = (int) (signatures.size % blockSize);
+        HashMap<Integer, List<Integer>> blocksOfChecksum = new HashMap<>();
+        for (int i = 0; i < fullBlocks; ++i) {
+            blocksOfChecksum.computeIfAbsent(signatures.weak[i], key -> new ArrayList<>(1)).add(i);
+        }
+        MessageDigest digest = getDigest("SHA-256");
+        MessageDigest md5 = getDigest("MD5");
+        byte[] buffer = new byte[2 * Constants.fileChunkSize + 2 * blockSize];
+        int limit = 0;
+        int position = 0;
+        int literalStart = 0;
+        long size = 0;
+        boolean endOfFile = false;
+        boolean rolling = false;
+        int a = 0;
+        int b = 0;
+        try (InputStream input = new FileInputStream(source);
+             DeltaWriter writer = new DeltaWriter(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(deltaFile), Constants.fileChunkSize)))) {
+            writer.output.writeInt(blockSize);
+            while (true) {
+                if (limit - position <= blockSize && !endOfFile) {
+                    System.arraycopy(buffer, literalStart, buffer, 0, limit - literalStart);
+                    position -= literalStart;
+                    limit -= literalStart;
+                    literalStart = 0;
+                    while (limit < buffer.length) {
+                        int read = input.read(buffer, limit, buffer.length - limit);
+                        if (read < 0) {
+                            endOfFile = true;
+                            break;
+                        }
+                        digest.update(buffer, limit, read);
+                        size += read;
+                        limit += read;
+                    }
+                    continue;
+                }
+                if (limit - position < blockSize) {
+                    break;
+                }
+                if (!rolling) {
+                    a = 0;
+                    b = 0;
+                    for (int i = 0; i < blockSize; ++i) {
+                        int value = buffer[position + i] & 0xFF;
+                        a += value;
+                        b += (blockSize - i) * value;
+                    }
+                    rolling = true;
+                }
+                int match = find(blocksOfChecksum, signatures, (a & 0xFFFF) | (b << 16), md5, buffer, position, blockSize, writer.getExpectedBlock());
+                if (match >= 0) {
+                    writer.literal(buffer, literalStart, position - literalStart);
+                    writer.copy(match);
+                    position += blockSize;
+                    literalStart = position;
+                    rolling = false;
+                    continue;
+                }
+                if (position - literalStart >= Constants.fileChunkSize) {
+                    writer.literal(buffer, literalStart, position - literalStart);
+                    literalStart = position;
+                }
+                if (limit - position == blockSize) {
+                    break;
+                }
+                int out = buffer[position] & 0xFF;
+                int in = buffer[position + blockSize] & 0xFF;
+                position++;
+                a += in - out;
+                b += a - blockSize * out;
+            }
+            int remaining = limit - position;
+            if (remaining > 0 && remaining == lastBlockLength && checksum(buffer, position, remaining) == signatures.weak[fullBlocks]) {
+                md5.update(buffer, position, remaining);
+                if (Arrays.equals(md5.digest(), signatures.strong[fullBlocks])) {
+                    writer.literal(buffer, literalStart, position - literalStart);
+                    writer.copy(fullBlocks);
+                    literalStart = limit;
+                }
+            }
+            writer.literal(buffer, literalStart, limit - literalStart);
+            writer.end(size, toHex(digest.digest()));
+        }
+        return deltaFile.length();
+    }
+
+    private static int find(HashMap<Integer, List<Integer>> blocksOfChecksum, Signatures signatures, int weak,
+                            MessageDigest md5, byte[] buffer, int offset, int length, int expectedBlock) {
+        List<Integer> blocks = blocksOfChecksum.get(weak);
+        if (blocks == null) return -1;
+        md5.update(buffer, offset, length);
+        byte[] strong = md5.digest();
+        if (expectedBlock >= 0 && blocks.contains(expectedBlock) && Arrays.equals(strong, signatures.strong[expectedBlock])) {
+            return expectedBlock;
+        }
+        for (int block : blocks) {
+            if (Arrays.equals(strong, signatures.strong[block])) {
+                return block;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method rebuilds new version of file from old version and delta, and verifies size and digest of rebuilt file
+     * @param basis old version of file
+     * @param deltaFile delta written by {@link #write(File, Signatures, File)}
+     * @param target file to write new version to
+     * @return SHA-256 digest of new version
+     * @throws IOException if any file can't be read or written, delta is broken or doesn't fit old version
+     */
+    public static String apply(File basis, File deltaFile, File target) throws IOException {
+        MessageDigest digest = getDigest("SHA-256");
+        byte[] buffer = new byte[Constants.fileChunkSize];
+        long size = 0;
+        try (RandomAccessFile old = new RandomAccessFile(basis, "r");
+             DataInputStream delta = new DataInputStream(new BufferedInputStream(new FileInputStream(deltaFile), Constants.fileChunkSize));
+             BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(target), Constants.fileChunkSize)) {
+            long blockSize = delta.readInt();
+            if (blockSize <= 0) {
+                throw new StreamCorruptedException("Invalid size of block: " + blockSize);
+            }
+            byte operation;
+            while ((operation = delta.readByte()) != END) {
+                if (operation == COPY) {
+                    long offset = delta.readInt() * blockSize;
+                    long length = delta.readInt() * blockSize;
+                    if (offset < 0 || length <= 0 || offset >= old.length()) {
+                        throw new StreamCorruptedException("Delta doesn't fit " + basis.getName());
+                    }
+                    length = Math.min(length, old.length() - offset);
+                    old.seek(offset);
+                    while (length > 0) {
+                        int chunk = (int) Math.min(buffer.length, length);
+                        old.readFully(buffer, 0, chunk);
+                        output.write(buffer, 0, chunk);
+                        digest.update(buffer, 0, chunk);
+                        length -= chunk;
+                        size += chunk;
+                    }
+                } else if (operation == LITERAL) {
+                    int length = delta.readInt();
+                    if (length <= 0 || length > buffer.length) {
+                        throw new StreamCorruptedException("Invalid length of literal: " + length);
+                    }
+                    delta.readFully(buffer, 0, length);
+                    output.write(buffer, 0, length);
+                    digest.update(buffer, 0, length);
+                    size += length;
+                } else {
+                    throw new StreamCorruptedException("Invalid operation of delta: " + operation);
+                }
+            }
+            long expectedSize = delta.readLong();
+            String expectedDigest = delta.readUTF();
+            String rV = toHex(digest.digest());
+            if (size != expectedSize || !rV.equals(expectedDigest)) {
+                throw new StreamCorruptedException("Rebuilt " + basis.getName() + " doesn't match its new version");
+            }
+            return rV;
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Delta of " + basis.getName() + " is truncated");
+        }
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; ++i) {
+            int value = data[offset + i] & 0xFF;
+            a += value;
+            b += (length - i) * value;
+        }
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    private static MessageDigest getDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static class DeltaWriter implements AutoCloseable {
+        private final DataOutputStream output;
+        private int copyStart = -1;
+        private int copyCount = 0;
+
+        DeltaWriter(DataOutputStream output) {
+            this.output = output;
+        }
+
+        int getExpectedBlock() {
+            return copyStart < 0 ? -1 : copyStart + copyCount;
+        }
+
+        void copy(int block) throws IOException {
+            if (copyStart >= 0 && block == copyStart + copyCount) {
+                copyCount++;
+                return;
+            }
+            flushCopy();
+            copyStart = block;
+            copyCount = 1;
+        }
+
+        void literal(byte[] data, int offset, int length) throws IOException {
+            if (length <= 0) return;
+            flushCopy();
+            while (length > 0) {
+                int chunk = Math.min(length, Constants.fileChunkSize);
+                output.writeByte(LITERAL);
+                output.writeInt(chunk);
+                output.write(data, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        void end(long size, String digest) throws IOException {
+            flushCopy();
+            output.writeByte(END);
+            output.writeLong(size);
+            output.writeUTF(digest);
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyStart >= 0) {
+                output.writeByte(COPY);
+                output.writeInt(copyStart);
+                output.writeInt(copyCount);
+                copyStart = -1;
+                copyCount = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * <h1>Signatures</h1>
+     * This class holds checksums of blocks of file, computed by receiver of delta and sent to sender as a {@link String}
+     * <pre>
+     * int size of block, long size of file, int number of blocks, (int weak checksum, 16 bytes MD5) for every block
+     * </pre>
+     */
+    public static class Signatures {
+
+        private final int blockSize;
+        private final long size;
+        private final int[] weak;
+        private final byte[][] strong;
+
+        private Signatures(int blockSize, long size, int[] weak, byte[][] strong) {
+            this.blockSize = blockSize;
+            this.size = size;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        /**
+         * This method computes signatures of given file, with block size chosen by {@link FileDelta#getBlockSize(long)}
+         * @param file file to compute signatures of
+         * @return {@link Signatures}
+         * @throws IOException if file can't be read
+         */
+        public static Signatures compute(File file) throws IOException {
+            long size = file.length();
+            int blockSize = FileDelta.getBlockSize(size);
+            int count = (int) ((size + blockSize - 1) / blockSize);
+            int[] weak = new int[count];
+            byte[][] strong = new byte[count][];
+            MessageDigest md5 = getDigest("MD5");
+            byte[] buffer = new byte[blockSize];
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), Constants.fileChunkSize))) {
+                for (int i = 0; i < count; ++i) {
+                    int length = (int) Math.min(blockSize, size - (long) i * blockSize);
+                    input.readFully(buffer, 0, length);
+                    weak[i] = checksum(buffer, 0, length);
+                    md5.update(buffer, 0, length);
+                    strong[i] = md5.digest();
+                }
+            }
+            return new Signatures(blockSize, size, weak, strong);
+        }
+
+        /**
+         * This method reads signatures encoded by {@link #encode()}
+         * @param encoded encoded signatures
+         * @return {@link Signatures}
+         * @throws IOException if signatures are broken
+         */
+        public static Signatures decode(String encoded) throws IOException {
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+                int blockSize = input.readInt();
+                long size = input.readLong();
+                int count = input.readInt();
+                if (blockSize <= 0 || size < 0 || count != (size + blockSize - 1) / blockSize
+                        || (long) count * (Integer.BYTES + STRONG_LENGTH) != input.available()) {
+                    throw new StreamCorruptedException("Invalid signatures");
+                }
+                int[] weak = new int[count];
+                byte[][] strong = new byte[count][STRONG_LENGTH];
+                for (int i = 0; i < count; ++i) {
+                    weak[i] = input.readInt();
+                    input.readFully(strong[i]);
+                }
+                return new Signatures(blockSize, size, weak, strong);
+            } catch (IllegalArgumentException | EOFException e) {
+                throw new StreamCorruptedException("Invalid signatures");
+            }
+        }
+
+        /**
+         * This method encodes signatures to be sent in {@link MessageToSend}
+         * @return {@link String}
+         */
+        public String encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + weak.length * (Integer.BYTES + STRONG_LENGTH));
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeInt(blockSize);
+                output.writeLong(size);
+                output.writeInt(weak.length);
+                for (int i = 0; i < weak.length; ++i) {
+                    output.writeInt(weak[i]);
+                    output.write(strong[i]);
+                }
+            } catch (IOException ignored) {
+            }
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+
+        /**
+         * This method returns size of block
+         * @return int
+         */
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        /**
+         * This method returns size of file, which signatures were computed of
+         * @return long
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+}
@@ -1,54 +1,144 @@
 package LimakWebApp.DataPackets;
 
+import LimakWebApp.Utils.Compression;
+import LimakWebApp.Utils.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * <h1>FilePacket</h1>
  * This class is a wrapper of file and owner assigned to file.
+ * Several files are sent through one connection at the same time, so on the wire every packet is identified by number of its stream.
+ * The packet is a header frame (stream, owner, name and size) followed by chunk frames of at most {@link Constants#fileChunkSize} bytes,
+ * which may be interleaved with frames of other streams.
+ * <pre>
+ * header:   byte 1 (or 2 for delta), int stream, int length of header, header (owner, name, size, id of transfer, offset)
+ * chunk:    byte 3, int stream, int length, contents
+ * deflated: byte 4, int stream, int length, int length of contents, contents compressed by {@link Compression}
+ * end:      byte 3, int stream, int 0 (or -1 if sender aborted the transfer)
+ * skipped:  byte 0
+ * </pre>
+ * Uncompressed chunks are moved from file to connection by {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so they never pass through the heap.
+ * Compressed chunks are read from file by sender's worker outside the lock of connection, so reading the disk of one file overlaps with writing other files to socket.
+ * Receiver writes every chunk to target set by {@link #setTarget(FileChannel)} as soon as it arrives.
+ * Packet of delta carries {@link FileDelta} instead of contents, which rebuilds new version of file already stored by receiver.
+ * Packet with compression enabled sends deflated chunks, unless the file is already compressed or its first chunk doesn't shrink enough.
+ * Packet with id of transfer may be resumed: header carries offset, which contents are sent from, and receiver forces received contents to disk
+ * every {@link Constants#checkpointBytes} bytes and reports the offset to consumer set by {@link #setCheckpoint(LongConsumer)}.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   09.08.2019
  */
 public class FilePacket implements Serializable {
 
+    private static final byte NO_PACKET = 0;
+    private static final byte PACKET = 1;
+    private static final byte DELTA = 2;
+    private static final byte CHUNK = 3;
+    private static final byte DEFLATED_CHUNK = 4;
+    private static final int END_OF_CONTENTS = 0;
+    private static final int ABORTED = -1;
+
     private String userName;
-    private byte[] fileBytes;
     private String fileName;
     private long size;
+    private boolean delta = false;
+    private String transferId = "";
+    private long offset = 0;
 
+    private transient File sourceFile;
+    private transient boolean temporary = false;
+    private transient int stream;
+    private transient FileChannel target;
+    private transient Object attachment;
+    private transient long received = 0;
+    private transient boolean finished = false;
+    private transient IOException failure;
+    private transient boolean compression = false;
+    private transient Inflater inflater;
+    private transient LongConsumer checkpoint;
+    private transient long written = 0;
+    private transient long checkpointed = 0;
 
     /**
-     * Basic constructor of {@link FilePacket}. Reads data
+     * Basic constructor of {@link FilePacket}. Doesn't read data, contents are streamed by {@link #writeContents(WritableByteChannel, Lock, LongConsumer)}
      * @param userName indicates the owner of file
      * @param file indicates the file to wrap
-     * @throws IOException if any problem with reading data from provided {@code file} occurs
+     * @throws IOException if provided {@code file} doesn't exist or is not a regular file
      */
     public FilePacket(String userName, File file) throws IOException{
+        if(!file.isFile()){
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
         this.userName = userName;
         this.fileName = file.getName();
-        FileInputStream fileReader = new FileInputStream(file);
-        fileBytes = fileReader.readAllBytes();
-        size = file.length();
-        fileReader.close();
+        this.size = file.length();
+        this.sourceFile = file;
+    }
+
+    private FilePacket(String userName, String fileName, long size, int stream, boolean delta, String transferId, long offset) throws StreamCorruptedException{
+        if(offset < 0 || offset > size){
+            throw new StreamCorruptedException("Invalid offset of " + fileName + ": " + offset);
+        }
+        this.userName = userName;
+        this.fileName = fileName;
+        this.size = size;
+        this.stream = stream;
+        this.delta = delta;
+        this.transferId = transferId;
+        this.offset = offset;
+        this.received = offset;
+        this.written = offset;
+        this.checkpointed = offset;
     }
 
     /**
-     * Method returns user's name.
-     * @return {@link String}
+     * Method creates packet of delta, which rebuilds new version of file stored by receiver. Delta file is deleted after it is sent.
+     * @param userName indicates the owner of file
+     * @param fileName name of file stored by receiver
+     * @param deltaFile file written by {@link FileDelta#write(File, FileDelta.Signatures, File)}
+     * @return {@link FilePacket}
+     * @throws IOException if provided {@code deltaFile} doesn't exist or is not a regular file
      */
-    public String getUserName() {
-        return userName;
+    public static FilePacket delta(String userName, String fileName, File deltaFile) throws IOException{
+        FilePacket packet = new FilePacket(userName, deltaFile);
+        packet.fileName = fileName;
+        packet.delta = true;
+        packet.temporary = true;
+        return packet;
     }
 
     /**
-     * Method returns content of the file as a byte array.
-     * @return byte[]
+     * Method returns user's name.
+     * @return {@link String}
      */
-    public byte[] getFileBytes() {
-        return fileBytes;
+    public String getUserName() {
+        return userName;
     }
 
     /**
@@ -66,4 +156,526 @@ public class FilePacket implements Serializable {
     public long getSize() {
         return size;
     }
-}
\ No newline at end of file
+
+    /**
+     * Method returns <code>true</code> if contents of packet are delta of file, instead of file itself.
+     * @return boolean
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * Method returns id of transfer, which identifies contents of file sent by user, or empty string if transfer can't be resumed.
+     * @return {@link String}
+     */
+    public String getTransferId() {
+        return transferId;
+    }
+
+    /**
+     * Method sets id of transfer, which makes transfer resumable
+     * @param transferId id computed by {@link #transferId(String, File)}
+     */
+    public void setTransferId(String transferId) {
+        this.transferId = transferId == null ? "" : transferId;
+    }
+
+    /**
+     * Method returns number of bytes of file, which were received before and are not sent again
+     * @return long
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Method sets number of bytes of file, which receiver already has, so contents are sent from this offset
+     * @param offset offset of contents to send
+     */
+    public void setOffset(long offset) {
+        if(offset < 0 || offset > size){
+            throw new IllegalArgumentException("Invalid offset of " + fileName + ": " + offset);
+        }
+        this.offset = offset;
+    }
+
+    /**
+     * Method sets consumer of number of bytes, which were received and forced to disk.
+     * @param checkpoint consumer of offset of received contents or <code>null</code>
+     */
+    public void setCheckpoint(LongConsumer checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Method enables compression of sent contents, it has to be supported by receiver
+     * @param compression <code>true</code> to compress contents
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Method returns number of stream of packet on the connection
+     * @return int
+     */
+    public int getStream() {
+        return stream;
+    }
+
+    /**
+     * Method sets channel, which received contents are written to. If target is not set, contents are skipped.
+     * @param target channel to write contents to or <code>null</code>
+     */
+    public void setTarget(FileChannel target) {
+        this.target = target;
+    }
+
+    /**
+     * Method closes target of received contents. Contents written since the last checkpoint are forced to disk and checkpointed,
+     * also when the transfer failed, so it is resumed after the last written chunk.
+     * @return <code>true</code> if target was set
+     */
+    public boolean closeTarget() {
+        if(target == null){
+            return false;
+        }
+        try {
+            if(checkpoint != null && written > checkpointed){
+                checkpoint(written);
+            }
+        }
+        catch(IOException io){
+            if(failure == null){
+                failure = io;
+            }
+        }
+        try {
+            target.close();
+        }
+        catch(IOException io){
+            if(failure == null){
+                failure = io;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method attaches object of receiver, which is needed to complete saving of file
+     * @param attachment object to attach
+     */
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Method returns object attached by {@link #attach(Object)}
+     * @return {@link Object}
+     */
+    public Object attachment() {
+        return attachment;
+    }
+
+    /**
+     * Method returns number of bytes of contents received so far
+     * @return long
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Method returns <code>true</code> if the last frame of packet was received
+     * @return boolean
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Method returns problem which stopped receiving of contents, or <code>null</code> if contents were received and written to target
+     * @return {@link IOException}
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Method finishes receiving of packet, which can't be completed because connection is broken
+     * @param failure cause of failure
+     */
+    public void fail(IOException failure) {
+        if(this.failure == null){
+            this.failure = failure;
+        }
+        finish();
+    }
+
+    private void finish() {
+        finished = true;
+        if(inflater != null){
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * Method writes header frame of given packet into channel. <code>null</code> packet is written as a marker of skipped file,
+     * so the receiver, which waits for certain number of packets, stays in sync with sender.
+     * @param packet packet to write or <code>null</code>
+     * @param stream number of stream assigned to packet, unique among packets which are sent at the same time
+     * @param channel channel to write to
+     * @throws IOException if any problem with writing to channel occurs
+     */
+    public static void writeHeader(FilePacket packet, int stream, WritableByteChannel channel) throws IOException{
+        if(packet == null){
+            writeFully(channel, ByteBuffer.wrap(new byte[]{NO_PACKET}));
+            return;
+        }
+        packet.stream = stream;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeUTF(packet.userName);
+        header.writeUTF(packet.fileName);
+        header.writeLong(packet.size);
+        header.writeUTF(packet.transferId);
+        header.writeLong(packet.offset);
+        header.flush();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 * Integer.BYTES + bytes.size());
+        buffer.put(packet.delta ? DELTA : PACKET).putInt(stream).putInt(bytes.size()).put(bytes.toByteArray()).flip();
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * Method reads next frame from channel. Header frame creates new packet, chunk frame is written to target of its packet.
+     * Packet fails with {@link StreamCorruptedException} if its contents end before or go past its size, contents past the size are not written.
+     * @param channel channel to read from
+     * @param transfers packets being received, by number of stream
+     * @param buffer direct buffer of at least {@link Constants#fileChunkSize} bytes, used to receive chunk
+     * @return new packet if header was read, packet which chunk was read, or <code>null</code> if sender skipped the file
+     * @throws IOException if channel is closed or the stream is broken
+     */
+    public static FilePacket readFrame(ReadableByteChannel channel, Map<Integer, FilePacket> transfers, ByteBuffer buffer) throws IOException{
+        byte kind = readFully(channel, ByteBuffer.allocate(1)).get();
+        if(kind == NO_PACKET){
+            return null;
+        }
+        if(kind != PACKET && kind != DELTA && kind != CHUNK && kind != DEFLATED_CHUNK){
+            throw new StreamCorruptedException("Invalid packet kind: " + kind);
+        }
+        ByteBuffer frame = readFully(channel, ByteBuffer.allocate(2 * Integer.BYTES));
+        int stream = frame.getInt();
+        int length = frame.getInt();
+        if(kind == CHUNK || kind == DEFLATED_CHUNK){
+            FilePacket packet = transfers.get(stream);
+            if(packet == null){
+                throw new StreamCorruptedException("Chunk of unknown stream: " + stream);
+            }
+            if(kind == CHUNK){
+                packet.receive(channel, length, buffer);
+            }
+            else {
+                packet.receiveDeflated(channel, length, buffer);
+            }
+            return packet;
+        }
+        if(length <= 0 || length > Constants.fileChunkSize){
+            throw new StreamCorruptedException("Invalid header length: " + length);
+        }
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(readFully(channel, ByteBuffer.allocate(length)).array()));
+        return new FilePacket(header.readUTF(), header.readUTF(), header.readLong(), stream, kind == DELTA, header.readUTF(), header.readLong());
+    }
+
+    private void receive(ReadableByteChannel channel, int length, ByteBuffer buffer) throws IOException{
+        if(length == END_OF_CONTENTS){
+            if(received != size){
+                fail(new StreamCorruptedException("Truncated contents of " + fileName + ": " + received + " of " + size + " bytes received"));
+                return;
+            }
+            finish();
+            return;
+        }
+        if(length == ABORTED){
+            fail(new IOException("Transfer of " + fileName + " was aborted by sender"));
+            return;
+        }
+        if(length < 0 || length > Constants.fileChunkSize){
+            throw new StreamCorruptedException("Invalid chunk length: " + length);
+        }
+        buffer.clear().limit(length);
+        readFully(channel, buffer);
+        store(buffer);
+    }
+
+    private void receiveDeflated(ReadableByteChannel channel, int length, ByteBuffer buffer) throws IOException{
+        if(length <= Integer.BYTES || length > Integer.BYTES + Constants.fileChunkSize){
+            throw new StreamCorruptedException("Invalid deflated chunk length: " + length);
+        }
+        ByteBuffer frame = readFully(channel, ByteBuffer.allocate(length));
+        int size = frame.getInt();
+        if(size <= 0 || size > Constants.fileChunkSize){
+            throw new StreamCorruptedException("Invalid chunk length: " + size);
+        }
+        byte[] contents = new byte[size];
+        if(inflater == null){
+            inflater = new Inflater();
+        }
+        try {
+            Compression.inflate(inflater, frame.array(), Integer.BYTES, length - Integer.BYTES, contents, size);
+        }
+        catch(StreamCorruptedException e){
+            received = Math.min(this.size, received + size);
+            if(failure == null){
+                failure = e;
+            }
+            return;
+        }
+        buffer.clear();
+        buffer.put(contents).flip();
+        store(buffer);
+    }
+
+    private void store(ByteBuffer buffer){
+        if(buffer.remaining() > size - received){
+            if(failure == null){
+                failure = new StreamCorruptedException("Contents of " + fileName + " exceed its size of " + size + " bytes");
+            }
+            return;
+        }
+        long position = received;
+        received += buffer.remaining();
+        if(target == null || failure != null){
+            return;
+        }
+        try {
+            while(buffer.hasRemaining()){
+                position += target.write(buffer, position);
+            }
+            written = received;
+            if(checkpoint != null && written - checkpointed >= Constants.checkpointBytes){
+                checkpoint(written);
+            }
+        }
+        catch(IOException io){
+            failure = io;
+        }
+    }
+
+    private void checkpoint(long position) throws IOException{
+        target.force(false);
+        checkpointed = position;
+        checkpoint.accept(position);
+    }
+
+    /**
+     * Method writes contents of wrapped file into given channel as chunk frames of stream of this packet.
+     * Uncompressed chunk is moved by {@link FileChannel#transferTo(long, long, WritableByteChannel)} right after its frame header, under the lock of channel.
+     * Compressed chunk is read and deflated before the lock of channel is taken, so other packets may be written in the meantime.
+     * If the file can't be read the transfer is marked as aborted, so the receiver stays in sync with stream.
+     * If the file can't be read after frame header was written, the frame can't be completed, so the channel is closed.
+     * Contents are sent from offset set by {@link #setOffset(long)}.
+     * If compression is enabled, the first chunk decides whether the rest of file is compressed - chunks are deflated
+     * only if the first one shrinks to at most {@link Constants#compressionRatio} of its size.
+     * Delta file of packet created by {@link #delta(String, String, File)} is deleted afterwards.
+     * @param channel channel the header of this packet was written to
+     * @param lock lock of channel, held while a frame is written
+     * @param progress consumer of number of bytes sent so far, may be <code>null</code>
+     * @throws IOException if any problem with reading the file or writing to channel occurs
+     */
+    public void writeContents(WritableByteChannel channel, Lock lock, LongConsumer progress) throws IOException{
+        try {
+            FileChannel fileChannel;
+            try {
+                fileChannel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+            }
+            catch(IOException io){
+                writeEnd(channel, lock, ABORTED);
+                throw io;
+            }
+            Deflater deflater = compression && Compression.isCompressible(fileName) ? Compression.newDeflater() : null;
+            ByteBuffer header = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+            ByteBuffer buffer = deflater != null ? ByteBuffer.allocateDirect(1 + 2 * Integer.BYTES + Constants.fileChunkSize) : null;
+            byte[] contents = deflater != null ? new byte[Constants.fileChunkSize] : null;
+            byte[] packed = deflater != null ? new byte[Constants.fileChunkSize] : null;
+            ByteBuffer deflated = deflater != null ? ByteBuffer.allocate(1 + 3 * Integer.BYTES + Constants.fileChunkSize) : null;
+            boolean firstChunk = true;
+            try(FileChannel source = fileChannel) {
+                long position = offset;
+                while(position < size){
+                    int chunk = (int) Math.min(Constants.fileChunkSize, size - position);
+                    if(deflater == null){
+                        transferChunk(source, position, chunk, header, channel, lock);
+                        position += chunk;
+                        if(progress != null){
+                            progress.accept(position);
+                        }
+                        continue;
+                    }
+                    buffer.clear();
+                    buffer.put(CHUNK).putInt(stream).putInt(chunk);
+                    buffer.limit(buffer.position() + chunk);
+                    try {
+                        while(buffer.hasRemaining()){
+                            if(source.read(buffer, position + buffer.position() - (1 + 2 * Integer.BYTES)) < 0){
+                                throw new EOFException(sourceFile.getAbsolutePath() + " was truncated during transfer");
+                            }
+                        }
+                    }
+                    catch(IOException io){
+                        writeEnd(channel, lock, ABORTED);
+                        throw io;
+                    }
+                    buffer.flip();
+                    ByteBuffer frame = buffer;
+                    buffer.position(1 + 2 * Integer.BYTES);
+                    buffer.get(contents, 0, chunk);
+                    buffer.rewind();
+                    int length = Compression.deflate(deflater, contents, 0, chunk, packed);
+                    if(firstChunk && (length < 0 || length > chunk * Constants.compressionRatio)){
+                        deflater.end();
+                        deflater = null;
+                    }
+                    else if(length >= 0){
+                        deflated.clear();
+                        deflated.put(DEFLATED_CHUNK).putInt(stream).putInt(Integer.BYTES + length).putInt(chunk).put(packed, 0, length).flip();
+                        frame = deflated;
+                    }
+                    firstChunk = false;
+                    lock.lock();
+                    try {
+                        writeFully(channel, frame);
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                    position += chunk;
+                    if(progress != null){
+                        progress.accept(position);
+                    }
+                }
+            }
+            finally {
+                if(deflater != null){
+                    deflater.end();
+                }
+            }
+            writeEnd(channel, lock, END_OF_CONTENTS);
+        }
+        finally {
+            if(temporary){
+                sourceFile.delete();
+            }
+        }
+    }
+
+    private void transferChunk(FileChannel source, long position, int chunk, ByteBuffer header, WritableByteChannel channel, Lock lock) throws IOException{
+        if(source.size() < position + chunk){
+            writeEnd(channel, lock, ABORTED);
+            throw new EOFException(sourceFile.getAbsolutePath() + " was truncated during transfer");
+        }
+        header.clear();
+        header.put(CHUNK).putInt(stream).putInt(chunk).flip();
+        lock.lock();
+        try {
+            writeFully(channel, header);
+            try {
+                long sent = 0;
+                while(sent < chunk){
+                    long count = source.transferTo(position + sent, chunk - sent, channel);
+                    if(count <= 0 && source.size() < position + chunk){
+                        throw new EOFException(sourceFile.getAbsolutePath() + " was truncated during transfer");
+                    }
+                    sent += count;
+                }
+            }
+            catch(IOException io){
+                channel.close();
+                throw io;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeEnd(WritableByteChannel channel, Lock lock, int length) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+        buffer.put(CHUNK).putInt(stream).putInt(length).flip();
+        lock.lock();
+        try {
+            writeFully(channel, buffer);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Method computes SHA-256 digest of contents of given file, which identifies the contents on server.
+     * @param file file to digest
+     * @return lower case hexadecimal digest
+     * @throws IOException if file can't be read
+     */
+    public static String digest(File file) throws IOException{
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e){
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Constants.fileChunkSize);
+        try(FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            while(source.read(buffer.clear()) >= 0){
+                digest.update(buffer.flip());
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Method computes id of transfer of given file from its owner, name, size and time of last modification,
+     * so transfer of file modified in the meantime is never resumed.
+     * @param userName owner of file
+     * @param file file to transfer
+     * @return lower case hexadecimal id
+     * @throws IOException if SHA-256 is not available
+     */
+    public static String transferId(String userName, File file) throws IOException{
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e){
+            throw new IOException(e);
+        }
+        String key = userName + "/" + file.getName() + "/" + file.length() + "/" + file.lastModified();
+        return toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String toHex(byte[] bytes){
+        StringBuilder builder = new StringBuilder();
+        for(byte b : bytes){
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0){
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -27,9 +27,35 @@ public class MessageToSend  implements Serializable{
         SHARE_FILE_TO_USER,
         REMOVE_USER_FROM_FILE_OWNERS,
         TRANSFER_FILE,
-        TRANSFER_FILE_DEMAND
+        TRANSFER_FILE_DEMAND,
+        OFFER_FILE_DIGESTS,
+        SYNC_MANIFEST,
+        MANIFEST_DELTA,
+        DEMAND_FILES,
+        FILE_SIGNATURES,
+        TRANSFER_OFFSETS
     }
 
+    /**
+     * Kind of {@link COMMAND_TYPE#MANIFEST_DELTA}, after which full list of files is sent, already set to {@value}
+     */
+    public static final String FULL_MANIFEST = "FULL";
+
+    /**
+     * Kind of {@link COMMAND_TYPE#MANIFEST_DELTA}, which contains changes of manifest, already set to {@value}
+     */
+    public static final String DELTA_OF_MANIFEST = "DELTA";
+
+    /**
+     * Prefix of change of manifest, which adds file to user's files, already set to {@value}
+     */
+    public static final String FILE_ADDED = "+";
+
+    /**
+     * Prefix of change of manifest, which removes file from user's files, already set to {@value}
+     */
+    public static final String FILE_REMOVED = "-";
+
     private COMMAND_TYPE command_type;
     private CredentialPacket from;
     private ArrayList<Object> additional_contents = null;
@@ -1,6 +1,18 @@
 package LimakWebApp.DataPackets;
 
+import LimakWebApp.ConnectionSelector;
+import LimakWebApp.MultiplexedConnection;
+import LimakWebApp.Utils.Constants;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
 import java.net.Socket;
+
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
 import java.util.ArrayList;
 
 /**
@@ -15,12 +27,25 @@ public class SocketHandler {
     private final Socket fileTransferSocket;
     private final Socket notificationSocket;
     private final boolean isSocketsSet;
+    private final ConnectionSelector connectionSelector;
+    private final MultiplexedConnection multiplexedConnection;
 
     /**
      * Constructor of SocketHandler - sets provided sockets from list, performs validation and sets {@link SocketHandler#isSocketsSet} flag.
      * @param socketArrayList List of sockets to set
      */
     public SocketHandler(ArrayList<Socket> socketArrayList){
+        this(socketArrayList, null);
+    }
+
+    /**
+     * Constructor of SocketHandler - sets provided sockets from list and selector, which should serve notification socket.
+     * @param socketArrayList List of sockets to set
+     * @param connectionSelector selector to register notification socket in, or <code>null</code> if socket is blocking
+     */
+    public SocketHandler(ArrayList<Socket> socketArrayList, ConnectionSelector connectionSelector){
+        this.connectionSelector = connectionSelector;
+        this.multiplexedConnection = null;
         if(socketArrayList.size() == 2 && socketArrayList.get(0) != null && socketArrayList.get(1) != null) {
             fileTransferSocket = socketArrayList.get(0);
             notificationSocket = socketArrayList.get(1);
@@ -34,7 +59,40 @@ public class SocketHandler {
     }
 
     /**
-     * Returns socket connected with file transport port
+     * Constructor of SocketHandler - sets connection, whose channels carry files and notifications instead of separate sockets.
+     * @param multiplexedConnection connection to set
+     */
+    public SocketHandler(MultiplexedConnection multiplexedConnection){
+        this.multiplexedConnection = multiplexedConnection;
+        this.connectionSelector = null;
+        fileTransferSocket = null;
+        notificationSocket = null;
+        isSocketsSet = multiplexedConnection != null && multiplexedConnection.isOpen();
+    }
+
+    /**
+     * This method connects to given port of server and sends ID of session as the first bytes of connection,
+     * so server attaches the connection to session of authorized client instead of pairing connections in order of their arrival.
+     * @param port file transport port or notification port of server
+     * @param sessionID ID of session received after authorization
+     * @return connected {@link Socket}, backed by {@link SocketChannel}
+     * @throws IOException if connection can't be opened
+     */
+    public static Socket connect(int port, String sessionID) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(Constants.serverIP, port));
+        try {
+            DataOutputStream outputStream = new DataOutputStream(Channels.newOutputStream(channel));
+            outputStream.writeUTF(sessionID);
+            outputStream.flush();
+        } catch (IOException io) {
+            channel.close();
+            throw io;
+        }
+        return channel.socket();
+    }
+
+    /**
+     * Returns socket connected with file transport port, or <code>null</code> if files are carried by {@link MultiplexedConnection}
      * @return {@link Socket}
      */
     public Socket getFileTransferSocket() {
@@ -42,13 +100,29 @@ public class SocketHandler {
     }
 
     /**
-     * Returns socket connected with notification port
+     * Returns socket connected with notification port, or <code>null</code> if notifications are carried by {@link MultiplexedConnection}
      * @return {@link Socket}
      */
     public Socket getNotificationSocket() {
         return notificationSocket;
     }
 
+    /**
+     * Returns selector, which serves notification socket, or <code>null</code> if socket is blocking
+     * @return {@link ConnectionSelector}
+     */
+    public ConnectionSelector getConnectionSelector() {
+        return connectionSelector;
+    }
+
+    /**
+     * Returns connection, which carries files and notifications, or <code>null</code> if they have separate sockets
+     * @return {@link MultiplexedConnection}
+     */
+    public MultiplexedConnection getMultiplexedConnection() {
+        return multiplexedConnection;
+    }
+
     /**
      * Returns flag of sockets' correctness
      * @return boolean
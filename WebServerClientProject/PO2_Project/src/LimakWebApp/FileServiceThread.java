@@ -0,0 +1,278 @@
+package LimakWebApp;
+
+import LimakWebApp.DataPackets.FilePacket;
+import LimakWebApp.Utils.BoundedExecutor;
+import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.SerialExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.net.Socket;
+import java.net.SocketException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <h1>FileServiceThread</h1>
+ * This class performs file transfer operations on raw bytes of file socket or file channel of {@link MultiplexedConnection}.
+ * Unlike {@link ServiceThread} it doesn't use Java serialization - headers of {@link FilePacket}s are written directly to socket's channel
+ * and contents of files are read into direct buffers, without passing through the heap.
+ * Files are sent by at most {@link Constants#transferThreads} tasks at a time, run by {@link BoundedExecutor} on shared pool,
+ * so idle connection doesn't hold any thread. Every task reads its file chunk by chunk
+ * and writes the chunks as frames of its own stream, so several files share the connection at the same time.
+ * Single receiver reads frames of all streams, starts saving of file by {@link ServicesHandler#beginSaveFile(FilePacket)} when its header arrives
+ * and completes it by {@link ServicesHandler#finishSaveFile(FilePacket)} after its last chunk.
+ * Broken or corrupted stream of frames can't be brought back in sync, so the file connection is closed and the session fails.
+ * Progress of every transfer is reported by {@link TransferProgress}.
+ * Contents are compressed, if compression was negotiated by {@link ServiceThread} of the same session - compressed chunks are copied to the heap.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FileServiceThread {
+
+    private ServicesHandler parentHandler;
+    private ExecutorService receivingService = new SerialExecutor();
+    private ExecutorService transferService = new BoundedExecutor(Constants.transferThreads);
+    private final Closeable connection;
+    private final BooleanSupplier inputOpen;
+    private final BooleanSupplier outputOpen;
+    private final ReadableByteChannel inputChannel;
+    private final WritableByteChannel outputChannel;
+    private volatile Boolean sendExit = false;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicInteger nextStream = new AtomicInteger();
+    private final AtomicInteger expectedPackets = new AtomicInteger();
+    private final AtomicBoolean receiving = new AtomicBoolean(false);
+    private volatile boolean continuous = false;
+    private final HashMap<Integer, FilePacket> transfers = new HashMap<>();
+    private final HashMap<Integer, TransferProgress> progressOfTransfers = new HashMap<>();
+
+    /**
+     * Constructor of FileServiceThread, sets socket and gets its channels.
+     * If socket was not opened by {@link SocketChannel}, its streams are wrapped into channels.
+     * @param socket socket to set
+     * @param parent the creator of new instance
+     * @throws IOException if there are problems with connections
+     */
+    public FileServiceThread(Socket socket, ServicesHandler parent) throws IOException {
+        parentHandler = parent;
+        connection = socket;
+        inputOpen = () -> !socket.isClosed() && !socket.isInputShutdown();
+        outputOpen = () -> !socket.isClosed() && !socket.isOutputShutdown();
+        SocketChannel channel = socket.getChannel();
+        if(channel != null) {
+            inputChannel = channel;
+            outputChannel = channel;
+        }
+        else {
+            inputChannel = Channels.newChannel(socket.getInputStream());
+            outputChannel = Channels.newChannel(socket.getOutputStream());
+        }
+    }
+
+    /**
+     * Constructor of FileServiceThread, sets blocking channel, e.g. channel of {@link MultiplexedConnection}.
+     * @param channel channel to set
+     * @param parent the creator of new instance
+     */
+    public FileServiceThread(ByteChannel channel, ServicesHandler parent) {
+        parentHandler = parent;
+        connection = channel;
+        inputOpen = channel::isOpen;
+        outputOpen = channel::isOpen;
+        inputChannel = channel;
+        outputChannel = channel;
+    }
+
+    /**
+     * This method gets file or files. Frames of all streams are read by one receiver, which runs as long as any file is expected.
+     * @param conditionalIgnored Indicates if method should get files continuously or perform action one time.
+     */
+    public synchronized void getObject(boolean conditionalIgnored) {
+        if (conditionalIgnored) {
+            continuous = true;
+        }
+        else {
+            expectedPackets.incrementAndGet();
+        }
+        if (receiving.compareAndSet(false, true)) {
+            receivingService.submit(this::receive);
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Constants.fileChunkSize);
+        do {
+            while (isReceiving()) {
+                try {
+                    FilePacket packet = FilePacket.readFrame(inputChannel, transfers, buffer);
+                    if (packet == null) {
+                        expectedPackets.updateAndGet(count -> Math.max(0, count - 1));
+                    }
+                    else if (transfers.putIfAbsent(packet.getStream(), packet) == null) {
+                        progressOfTransfers.put(packet.getStream(), new TransferProgress(parentHandler.getController(), "Receiving", packet.getFileName(), packet.getSize()));
+                        packet.setTarget(parentHandler.beginSaveFile(packet));
+                    }
+                    else if (packet.isFinished()) {
+                        finishTransfer(packet);
+                    }
+                    else {
+                        progressOfTransfers.get(packet.getStream()).update(packet.getReceived());
+                    }
+                } catch (IOException io) {
+                    for (FilePacket packet : new ArrayList<>(transfers.values())) {
+                        packet.fail(io);
+                        finishTransfer(packet);
+                    }
+                    expectedPackets.set(0);
+                    continuous = false;
+                    try {
+                        connection.close();
+                    }
+                    catch (IOException ignored) {
+                    }
+                    if (!sendExit) {
+                        parentHandler.failSession("Can't receive the file, file connection is broken\n\t" + io.getMessage());
+                    }
+                }
+            }
+            receiving.set(false);
+        }
+        while (isReceiving() && receiving.compareAndSet(false, true));
+    }
+
+    private boolean isReceiving() {
+        return !sendExit && inputOpen.getAsBoolean() && (continuous || expectedPackets.get() > 0);
+    }
+
+    private void finishTransfer(FilePacket packet) {
+        transfers.remove(packet.getStream());
+        progressOfTransfers.remove(packet.getStream()).finish(packet.getFailure() == null);
+        expectedPackets.updateAndGet(count -> Math.max(0, count - 1));
+        if (packet.closeTarget()) {
+            parentHandler.finishSaveFile(packet);
+        }
+    }
+
+    /**
+     * This method sends file via socket. <code>null</code> is sent as a marker of skipped file.
+     * The file is sent by one of workers, at the same time as files sent by other workers.
+     * @param packet file to send
+     */
+    public synchronized void sendObject(FilePacket packet) {
+        if(!outputOpen.getAsBoolean()) return;
+        Runnable task = () -> {
+            try {
+                writeLock.lock();
+                try {
+                    FilePacket.writeHeader(packet, nextStream.incrementAndGet(), outputChannel);
+                }
+                finally {
+                    writeLock.unlock();
+                }
+                if (packet != null) {
+                    packet.setCompression(parentHandler.getNotificationService().isCompressionNegotiated());
+                    TransferProgress progress = new TransferProgress(parentHandler.getController(), "Sending", packet.getFileName(), packet.getSize());
+                    try {
+                        packet.writeContents(outputChannel, writeLock, progress::update);
+                    }
+                    catch (IOException io) {
+                        progress.finish(false);
+                        throw io;
+                    }
+                    progress.finish(true);
+                }
+            }catch (SocketException io) {
+                parentHandler.getController().setStatusText("Can't send the file!");
+                StringBuilder stringBuilder = new StringBuilder();
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                PrintStream outStream = new PrintStream(outputStream);
+                io.printStackTrace(outStream);
+                stringBuilder.append(new Date())
+                        .append(":\n").append("Can't send the file\n\t")
+                        .append(io.getMessage()).append("\n")
+                        .append(outStream.toString()).append("\n");
+                parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            }
+            catch(IOException io){
+                parentHandler.getController().setStatusText("Connection problems!");
+                StringBuilder stringBuilder = new StringBuilder();
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                PrintStream outStream = new PrintStream(outputStream);
+                io.printStackTrace(outStream);
+                stringBuilder.append(new Date())
+                        .append(":\n").append("Connection problems\n\t")
+                        .append(io.getMessage()).append("\n")
+                        .append(outStream.toString()).append("\n");
+                parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            }
+        };
+        transferService.submit(task);
+    }
+
+    /**
+     * This method submit task to owned thread pool.
+     * @param task task to perform
+     */
+    public synchronized void submitTask(Runnable task) {
+        transferService.submit(task);
+    }
+
+    /**
+     * This method indicates if loop in getObject should stop operations
+     * @param value value to set
+     */
+    public synchronized void setSendExit(Boolean value){
+        sendExit = value;
+    }
+
+    void cleanUp(){
+        transferService.shutdown();
+        receivingService.shutdown();
+        try {
+            if(!transferService.isTerminated())
+                this.transferService.awaitTermination(3, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            transferService.shutdownNow();
+            parentHandler.getController().setStatusText("Can't terminate service!");
+            StringBuilder stringBuilder = new StringBuilder();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PrintStream outStream = new PrintStream(outputStream);
+            e.printStackTrace(outStream);
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't terminate service!")
+                    .append("\n\t")
+                    .append(e.getMessage()).append("\n")
+                    .append(outStream.toString()).append("\n");
+            parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+        try{
+            connection.close();
+        }
+        catch (IOException ignored){
+
+        }
+        receivingService.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * <h1>FrameBatch</h1>
+ * This class is {@link FrameTransport}, which collects written frames and sends them to underlying transport in one write on {@link #flush()},
+ * so burst of messages costs one system call and leaves in as few segments as possible.
+ * Frames are sent without waiting for flush when collected frames reach {@link Constants#batchBytes} bytes, frame longer than that is sent on its own.
+ * Writers have to be serialized by the owner of the batch.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FrameBatch implements FrameTransport {
+
+    private final FrameTransport transport;
+    private byte[] frames = new byte[256];
+    private int count = 0;
+    private int batchedFrames = 0;
+    private long flushes = 0;
+    private long sentFrames = 0;
+
+    /**
+     * Constructor of FrameBatch
+     * @param transport transport to send collected frames with
+     */
+    public FrameBatch(FrameTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * This method adds frame to the batch. Batch is sent first, if the frame doesn't fit into it.
+     * @param payload array which contains payload
+     * @param offset offset of payload in array
+     * @param length length of payload
+     * @throws IOException if batch can't be sent
+     */
+    @Override
+    public void writeFrame(byte[] payload, int offset, int length) throws IOException {
+        if (count + Integer.BYTES + length > Constants.batchBytes) {
+            flush();
+            if (Integer.BYTES + length > Constants.batchBytes) {
+                transport.writeFrame(payload, offset, length);
+                ++flushes;
+                ++sentFrames;
+                return;
+            }
+        }
+        ensureCapacity(count + Integer.BYTES + length);
+        frames[count++] = (byte) (length >>> 24);
+        frames[count++] = (byte) (length >>> 16);
+        frames[count++] = (byte) (length >>> 8);
+        frames[count++] = (byte) length;
+        System.arraycopy(payload, offset, frames, count, length);
+        count += length;
+        ++batchedFrames;
+    }
+
+    /**
+     * This method adds frames, which are already prefixed by their lengths, to the batch
+     * @param frames array which contains frames
+     * @param offset offset of the first frame in array
+     * @param length total length of frames
+     * @throws IOException if batch can't be sent
+     */
+    @Override
+    public void writeFrames(byte[] frames, int offset, int length) throws IOException {
+        flush();
+        transport.writeFrames(frames, offset, length);
+        ++flushes;
+    }
+
+    /**
+     * This method sends collected frames in one write, if there are any
+     * @throws IOException if frames can't be sent
+     */
+    public void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        try {
+            transport.writeFrames(frames, 0, count);
+            ++flushes;
+            sentFrames += batchedFrames;
+        } finally {
+            count = 0;
+            batchedFrames = 0;
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if there are frames waiting for flush
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * This method returns number of writes to underlying transport so far
+     * @return long
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * This method returns number of frames sent so far
+     * @return long
+     */
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    @Override
+    public void startReading(Executor executor, FrameListener listener) {
+        transport.startReading(executor, listener);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return transport.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        transport.close();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(capacity, Math.min(2 * frames.length, Constants.batchBytes)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package LimakWebApp;
+
+import java.io.InputStream;
+
+import java.util.ArrayDeque;
+
+/**
+ * <h1>FrameInputStream</h1>
+ * This class exposes payloads of received frames as continuous stream. It never blocks - if there are no bytes left
+ * the end of stream is reported, so it has to be read only after frame with complete data was pushed.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FrameInputStream extends InputStream {
+
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private final ArrayDeque<Integer> offsets = new ArrayDeque<>();
+    private byte[] current;
+    private int position;
+    private int available;
+
+    /**
+     * This method appends payload of frame to stream
+     * @param payload payload to append
+     * @param offset number of leading bytes of payload to skip
+     */
+    public synchronized void push(byte[] payload, int offset) {
+        if (payload.length > offset) {
+            frames.add(payload);
+            offsets.add(offset);
+            available += payload.length - offset;
+        }
+    }
+
+    private boolean nextFrame() {
+        while (current == null || position == current.length) {
+            current = frames.poll();
+            if (current == null) {
+                return false;
+            }
+            position = offsets.poll();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int read() {
+        if (!nextFrame()) {
+            return -1;
+        }
+        --available;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextFrame()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        available -= n;
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return available;
+    }
+}
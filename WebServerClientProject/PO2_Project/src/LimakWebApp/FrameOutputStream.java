@@ -0,0 +1,66 @@
+package LimakWebApp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * <h1>FrameOutputStream</h1>
+ * This class collects written bytes and sends them as a single frame of {@link FrameTransport} on every {@link #flush()}.
+ * Every frame starts with kind byte given in constructor.
+ * Flushing doesn't hold monitor of the stream while frame is written, so writers have to be serialized by the owner of the stream.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FrameOutputStream extends ByteArrayOutputStream {
+
+    private final FrameTransport transport;
+    private final byte kind;
+
+    /**
+     * Constructor of FrameOutputStream
+     * @param transport transport to send frames with
+     * @param kind first byte of every frame
+     */
+    public FrameOutputStream(FrameTransport transport, byte kind) {
+        this.transport = transport;
+        this.kind = kind;
+        write(kind);
+    }
+
+    /**
+     * This method sends collected bytes as a frame, if there are any
+     * @throws IOException if frame can't be sent
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 1) {
+            try {
+                transport.writeFrame(buf, 0, count);
+            } finally {
+                reset();
+            }
+        }
+    }
+
+    /**
+     * This method sends collected bytes as a frame of given kind, if there are any
+     * @param frameKind kind of frame to send
+     * @throws IOException if frame can't be sent
+     */
+    public void flushAs(byte frameKind) throws IOException {
+        if (count > 1) {
+            buf[0] = frameKind;
+            flush();
+        }
+    }
+
+    /**
+     * This method drops collected bytes, kind byte of next frame stays in place
+     */
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        write(kind);
+    }
+}
@@ -0,0 +1,69 @@
+package LimakWebApp;
+
+import java.io.IOException;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <h1>FrameTransport</h1>
+ * This interface describes connection which carries length-prefixed frames: <code>[int length][payload]</code>.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public interface FrameTransport {
+
+    /**
+     * This interface is notified about frames received by {@link FrameTransport}
+     */
+    interface FrameListener {
+
+        /**
+         * This method is called for every received frame, in order of receiving
+         * @param payload payload of the frame
+         */
+        void frameReceived(byte[] payload);
+
+        /**
+         * This method is called once, when connection is closed by peer or broken
+         */
+        void connectionClosed();
+    }
+
+    /**
+     * This method sends payload as a single frame.
+     * @param payload array which contains payload
+     * @param offset offset of payload in array
+     * @param length length of payload
+     * @throws IOException if connection is closed or broken
+     */
+    void writeFrame(byte[] payload, int offset, int length) throws IOException;
+
+    /**
+     * This method sends frames, which are already prefixed by their lengths, in one write.
+     * @param frames array which contains frames
+     * @param offset offset of the first frame in array
+     * @param length total length of frames
+     * @throws IOException if connection is closed or broken
+     */
+    void writeFrames(byte[] frames, int offset, int length) throws IOException;
+
+    /**
+     * This method starts delivering received frames to listener. Listener is called on given executor.
+     * @param executor executor to run listener on, it should run tasks in order of submission
+     * @param listener listener to notify
+     */
+    void startReading(Executor executor, FrameListener listener);
+
+    /**
+     * This method returns the state of connection
+     * @return boolean
+     */
+    boolean isOpen();
+
+    /**
+     * This method closes connection
+     * @throws IOException if any problem with closing occurs
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,394 @@
+package LimakWebApp;
+
+import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.DataPackets.MessageToSend;
+import LimakWebApp.Utils.Compression;
+import LimakWebApp.Utils.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <h1>MessageCodec</h1>
+ * This class encodes {@link MessageToSend} into compact binary frame of notification connection, without Java serialization.
+ * <pre>
+ * [kind][command][string table][user][number of contents + 1][contents...]
+ * </pre>
+ * All numbers are variable length integers. Strings of message are stored once, in string table, and referenced by index.
+ * Users are kept in dictionary of connection - definition is sent on first use only, later the user is referenced by its id.
+ * Dictionary holds at most {@link Constants#codecUsers} users and both peers clear it by {@link #resetUsers()} when notification stream is reset.
+ * Counts read from frame are checked against remaining bytes of frame before anything is allocated.
+ * Every direction of connection needs own instance, messages have to be decoded in order of encoding.
+ * Long frames, e.g. lists of files, may be compressed into {@link #KIND_DEFLATED} frame, if peer announced {@link #CAPABILITY_DEFLATE}.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class MessageCodec {
+
+    /**
+     * Kind of frame which contains data of object stream
+     */
+    public static final byte KIND_SERIALIZED = 0;
+
+    /**
+     * Kind of frame which contains binary encoded {@link MessageToSend}
+     */
+    public static final byte KIND_BINARY = 1;
+
+    /**
+     * Kind of frame which contains capabilities of peer
+     */
+    public static final byte KIND_HELLO = 2;
+
+    /**
+     * Kind of frame which contains reset marker of object stream
+     */
+    public static final byte KIND_RESET = 3;
+
+    /**
+     * Kind of frame which contains compressed {@link #KIND_BINARY} frame
+     */
+    public static final byte KIND_DEFLATED = 4;
+
+    /**
+     * Capability of decoding {@link #KIND_BINARY} frames
+     */
+    public static final int CAPABILITY_BINARY = 1;
+
+    /**
+     * Capability of decoding {@link #KIND_DEFLATED} frames and deflated chunks of files
+     */
+    public static final int CAPABILITY_DEFLATE = 2;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_CREDENTIAL = 2;
+    private static final int TAG_FILE = 3;
+
+    private static final MessageToSend.COMMAND_TYPE[] commands = MessageToSend.COMMAND_TYPE.values();
+
+    private final Map<CredentialPacket, Integer> sentUsers = new HashMap<>();
+    private final List<CredentialPacket> receivedUsers = new ArrayList<>();
+
+    /**
+     * This method checks if message contains only types supported by binary encoding - {@link String}, {@link CredentialPacket}, {@link File} and <code>null</code>
+     * @param message message to check
+     * @return boolean
+     */
+    public static boolean canEncode(MessageToSend message) {
+        if (message.getCommandType() == null) return false;
+        if (message.getContents() != null) {
+            for (Object item : message.getContents()) {
+                if (item != null && !(item instanceof String) && !(item instanceof CredentialPacket) && item.getClass() != File.class) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method returns <code>true</code> if users of message, which are not in dictionary yet, fit into it
+     * @param message message to check
+     * @return boolean
+     */
+    public boolean hasRoomFor(MessageToSend message) {
+        HashSet<CredentialPacket> newUsers = new HashSet<>();
+        if (message.getUser() != null && !sentUsers.containsKey(message.getUser())) {
+            newUsers.add(message.getUser());
+        }
+        if (message.getContents() != null) {
+            for (Object item : message.getContents()) {
+                if (item instanceof CredentialPacket && !sentUsers.containsKey(item)) {
+                    newUsers.add((CredentialPacket) item);
+                }
+            }
+        }
+        return sentUsers.size() + newUsers.size() <= Constants.codecUsers;
+    }
+
+    /**
+     * This method clears dictionary of users. Encoder and decoder of one direction have to clear it at the same point of stream.
+     */
+    public void resetUsers() {
+        sentUsers.clear();
+        receivedUsers.clear();
+    }
+
+    /**
+     * This method returns number of users in dictionary
+     * @return int
+     */
+    public int getUsers() {
+        return sentUsers.size() + receivedUsers.size();
+    }
+
+    /**
+     * This method encodes hello frame
+     * @param capabilities capabilities of local end point
+     * @return byte[]
+     */
+    public static byte[] encodeHello(int capabilities) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(KIND_HELLO);
+        writeNumber(bytes, capabilities);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This method decodes capabilities from hello frame
+     * @param payload payload of frame
+     * @return capabilities of peer
+     * @throws IOException if frame is broken
+     */
+    public static int decodeHello(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+        return readNumber(input);
+    }
+
+    /**
+     * This method compresses frame, if it is at least {@link Constants#compressionThreshold} bytes long and shrinks
+     * @param frame payload of frame
+     * @return payload of {@link #KIND_DEFLATED} frame, or given frame if it is not compressed
+     */
+    public static byte[] deflate(byte[] frame) {
+        if (frame.length < Constants.compressionThreshold) {
+            return frame;
+        }
+        Deflater deflater = Compression.newDeflater();
+        try {
+            byte[] packed = new byte[frame.length];
+            int length = Compression.deflate(deflater, frame, 0, frame.length, packed);
+            if (length < 0) {
+                return frame;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 6);
+            bytes.write(KIND_DEFLATED);
+            writeNumber(bytes, frame.length);
+            bytes.write(packed, 0, length);
+            return bytes.size() < frame.length ? bytes.toByteArray() : frame;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * This method decompresses payload of {@link #KIND_DEFLATED} frame
+     * @param payload payload of frame
+     * @return payload of original frame
+     * @throws IOException if frame is broken
+     */
+    public static byte[] inflate(byte[] payload) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        int size = readNumber(new DataInputStream(bytes));
+        if (size <= 0 || size > Constants.maxFrameSize) {
+            throw new StreamCorruptedException("Invalid size of deflated frame: " + size);
+        }
+        int offset = payload.length - bytes.available();
+        byte[] frame = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            Compression.inflate(inflater, payload, offset, payload.length - offset, frame, size);
+        } finally {
+            inflater.end();
+        }
+        return frame;
+    }
+
+    /**
+     * This method encodes message into payload of {@link #KIND_BINARY} frame. Message has to pass {@link #canEncode(MessageToSend)} and {@link #hasRoomFor(MessageToSend)}
+     * @param message message to encode
+     * @return byte[]
+     * @throws IOException if message contains unsupported object or its users don't fit into dictionary
+     */
+    public byte[] encode(MessageToSend message) throws IOException {
+        if (!canEncode(message)) {
+            throw new IOException("Message can't be encoded: " + message.getCommandType());
+        }
+        if (!hasRoomFor(message)) {
+            throw new IOException("Dictionary of users is full: " + message.getCommandType());
+        }
+        LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        Map<CredentialPacket, Integer> newUsers = new HashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeUser(body, message.getUser(), strings, newUsers);
+        ArrayList<Object> contents = message.getContents();
+        writeNumber(body, contents == null ? 0 : contents.size() + 1);
+        if (contents != null) {
+            for (Object item : contents) {
+                if (item == null) {
+                    writeNumber(body, TAG_NULL);
+                } else if (item instanceof String) {
+                    writeNumber(body, TAG_STRING);
+                    writeNumber(body, indexOf(strings, (String) item));
+                } else if (item instanceof CredentialPacket) {
+                    writeNumber(body, TAG_CREDENTIAL);
+                    writeUser(body, (CredentialPacket) item, strings, newUsers);
+                } else {
+                    writeNumber(body, TAG_FILE);
+                    writeNumber(body, indexOf(strings, ((File) item).getPath()));
+                }
+            }
+        }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(body.size() + 16);
+        frame.write(KIND_BINARY);
+        writeNumber(frame, message.getCommandType().ordinal());
+        writeNumber(frame, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            writeNumber(frame, encoded.length);
+            frame.write(encoded, 0, encoded.length);
+        }
+        body.writeTo(frame);
+        sentUsers.putAll(newUsers);
+        return frame.toByteArray();
+    }
+
+    /**
+     * This method decodes message from payload of {@link #KIND_BINARY} frame
+     * @param payload payload of frame
+     * @return {@link MessageToSend}
+     * @throws IOException if frame is broken
+     */
+    public MessageToSend decode(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+        int command = readNumber(input);
+        if (command >= commands.length) {
+            throw new StreamCorruptedException("Unknown command: " + command);
+        }
+        String[] strings = new String[readCount(input)];
+        for (int i = 0; i < strings.length; ++i) {
+            byte[] encoded = new byte[readCount(input)];
+            input.readFully(encoded);
+            strings[i] = new String(encoded, StandardCharsets.UTF_8);
+        }
+        MessageToSend message = new MessageToSend(readUser(input, strings), commands[command]);
+        int size = readCount(input);
+        if (size > 0) {
+            ArrayList<Object> contents = new ArrayList<>(size - 1);
+            for (int i = 0; i < size - 1; ++i) {
+                int tag = readNumber(input);
+                switch (tag) {
+                    case TAG_NULL:
+                        contents.add(null);
+                        break;
+                    case TAG_STRING:
+                        contents.add(readString(input, strings));
+                        break;
+                    case TAG_CREDENTIAL:
+                        contents.add(readUser(input, strings));
+                        break;
+                    case TAG_FILE:
+                        contents.add(new File(readString(input, strings)));
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Unknown tag: " + tag);
+                }
+            }
+            message.addContents(contents);
+        }
+        return message;
+    }
+
+    private void writeUser(ByteArrayOutputStream output, CredentialPacket user, Map<String, Integer> strings, Map<CredentialPacket, Integer> newUsers) {
+        if (user == null) {
+            writeNumber(output, 0);
+            return;
+        }
+        Integer id = sentUsers.get(user);
+        if (id == null) {
+            id = newUsers.get(user);
+        }
+        if (id != null) {
+            writeNumber(output, id);
+            return;
+        }
+        id = sentUsers.size() + newUsers.size() + 1;
+        newUsers.put(user, id);
+        writeNumber(output, id);
+        writeNumber(output, indexOf(strings, user.getUserEmail()));
+        writeNumber(output, indexOf(strings, user.getUserName()));
+        writeNumber(output, indexOf(strings, user.getUserFolderPath()));
+    }
+
+    private CredentialPacket readUser(DataInputStream input, String[] strings) throws IOException {
+        int id = readNumber(input);
+        if (id == 0) {
+            return null;
+        }
+        if (id <= receivedUsers.size()) {
+            return receivedUsers.get(id - 1);
+        }
+        if (id != receivedUsers.size() + 1 || id > Constants.codecUsers) {
+            throw new StreamCorruptedException("Unknown user: " + id);
+        }
+        CredentialPacket user = new CredentialPacket(readString(input, strings), readString(input, strings), readString(input, strings));
+        receivedUsers.add(user);
+        return user;
+    }
+
+    private static int indexOf(Map<String, Integer> strings, String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static String readString(DataInputStream input, String[] strings) throws IOException {
+        int index = readNumber(input);
+        if (index >= strings.length) {
+            throw new StreamCorruptedException("Invalid string index: " + index);
+        }
+        return strings[index];
+    }
+
+    private static int readCount(DataInputStream input) throws IOException {
+        int count = readNumber(input);
+        if (count > input.available() + 1) {
+            throw new StreamCorruptedException("Count exceeds frame: " + count);
+        }
+        return count;
+    }
+
+    private static void writeNumber(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readNumber(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new StreamCorruptedException("Invalid number: " + value);
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Number is too long");
+    }
+}
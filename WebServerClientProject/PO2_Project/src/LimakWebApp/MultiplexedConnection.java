@@ -0,0 +1,384 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.SerialExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>MultiplexedConnection</h1>
+ * This class carries authorization, notification and file connections of one client as logical channels of single socket,
+ * so client connects once to {@link Constants#muxPort} and server doesn't have to pair separately accepted sockets.
+ * Every frame is written as <code>[byte type][int channel][int length]</code> followed by <code>length</code> bytes of data frame.
+ * Every channel has its own window of {@link Constants#muxWindow} bytes - sender waits when it has sent whole window,
+ * and receiver grants the window again, when the bytes were read from the channel. Because of that single reader
+ * never waits for slow consumer of one channel and big file transfer can't hold back notifications.
+ * Reader of connection and readers of its channels are blocked on their streams, unlike connections served by {@link ConnectionSelector},
+ * so clients use it only when enabled by {@link Constants#multiplexingProperty}.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class MultiplexedConnection implements Closeable {
+
+    /**
+     * Number of channel of authorization, already set to {@value}
+     */
+    static final public int AUTHORIZATION = 0;
+
+    /**
+     * Number of channel of notifications, already set to {@value}
+     */
+    static final public int NOTIFICATION = 1;
+
+    /**
+     * Number of channel of file transfers, already set to {@value}
+     */
+    static final public int FILE = 2;
+
+    private static final byte DATA = 0;
+    private static final byte CREDIT = 1;
+    private static final byte CLOSE = 2;
+
+    private final Socket socket;
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final byte[] copyBuffer = new byte[Constants.muxFrameSize];
+    private final Channel[] channels = new Channel[FILE + 1];
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor of MultiplexedConnection, gets I/O streams of socket and starts reading its frames on shared pool.
+     * @param socket connected blocking socket
+     * @throws IOException if there are problems with connection
+     */
+    public MultiplexedConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream(), Constants.muxFrameSize));
+        outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), Constants.muxFrameSize));
+        for (int i = 0; i < channels.length; ++i) {
+            channels[i] = new Channel(i);
+        }
+        SerialExecutor.getSharedPool().execute(this::receive);
+    }
+
+    /**
+     * This method returns logical channel of given number
+     * @param id {@link #AUTHORIZATION}, {@link #NOTIFICATION} or {@link #FILE}
+     * @return {@link Channel}
+     */
+    public Channel getChannel(int id) {
+        return channels[id];
+    }
+
+    /**
+     * This method returns <code>true</code> if socket of connection is not closed
+     * @return boolean
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * This method closes socket, all channels are closed with it
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Channel channel : channels) {
+            channel.wakeUp();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void receive() {
+        try {
+            while (!closed) {
+                byte type = inputStream.readByte();
+                int id = inputStream.readInt();
+                int length = inputStream.readInt();
+                if (id < 0 || id >= channels.length) {
+                    throw new StreamCorruptedException("Invalid channel: " + id);
+                }
+                switch (type) {
+                    case DATA:
+                        if (length <= 0 || length > Constants.muxFrameSize) {
+                            throw new StreamCorruptedException("Invalid frame length: " + length);
+                        }
+                        byte[] data = new byte[length];
+                        inputStream.readFully(data);
+                        channels[id].received(data);
+                        break;
+                    case CREDIT:
+                        channels[id].credited(length);
+                        break;
+                    case CLOSE:
+                        channels[id].closedByPeer();
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Invalid frame type: " + type);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+        close();
+    }
+
+    private void writeFrame(byte type, int id, int length, ByteBuffer data) throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            outputStream.writeByte(type);
+            outputStream.writeInt(id);
+            outputStream.writeInt(length);
+            if (data != null) {
+                if (data.hasArray()) {
+                    outputStream.write(data.array(), data.arrayOffset() + data.position(), length);
+                    data.position(data.position() + length);
+                }
+                else {
+                    data.get(copyBuffer, 0, length);
+                    outputStream.write(copyBuffer, 0, length);
+                }
+            }
+            outputStream.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * This class is blocking logical channel of {@link MultiplexedConnection}. Read waits for data, write waits for window granted by peer.
+     * Closing channel tells peer, that no more data will be read or written through it.
+     */
+    public class Channel implements ByteChannel {
+
+        private final int id;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition readable = lock.newCondition();
+        private final Condition writable = lock.newCondition();
+        private final ArrayDeque<ByteBuffer> inbound = new ArrayDeque<>();
+        private int buffered = 0;
+        private int consumed = 0;
+        private int credit = Constants.muxWindow;
+        private boolean closed = false;
+        private boolean closedByPeer = false;
+
+        private Channel(int id) {
+            this.id = id;
+        }
+
+        /**
+         * This method reads available data of channel, waiting for them if there are none
+         * @param destination buffer to fill
+         * @return number of read bytes, or <code>-1</code> if peer closed channel or connection was closed
+         * @throws IOException if channel is closed or reader was interrupted
+         */
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            int count = 0;
+            int granted = 0;
+            lock.lock();
+            try {
+                while (inbound.isEmpty() && !closed && !closedByPeer && MultiplexedConnection.this.isOpen()) {
+                    readable.await();
+                }
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                if (inbound.isEmpty()) {
+                    return -1;
+                }
+                while (destination.hasRemaining() && !inbound.isEmpty()) {
+                    ByteBuffer head = inbound.peekFirst();
+                    int length = Math.min(head.remaining(), destination.remaining());
+                    ByteBuffer slice = head.duplicate();
+                    slice.limit(slice.position() + length);
+                    destination.put(slice);
+                    head.position(head.position() + length);
+                    if (!head.hasRemaining()) {
+                        inbound.pollFirst();
+                    }
+                    count += length;
+                }
+                buffered -= count;
+                consumed += count;
+                if (consumed >= Constants.muxWindow / 2 && !closedByPeer) {
+                    granted = consumed;
+                    consumed = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading channel " + id);
+            } finally {
+                lock.unlock();
+            }
+            if (granted > 0) {
+                try {
+                    writeFrame(CREDIT, id, granted, null);
+                } catch (IOException ignored) {
+                }
+            }
+            return count;
+        }
+
+        /**
+         * This method writes all remaining bytes of buffer, in frames not longer than window granted by peer
+         * @param source buffer to write
+         * @return number of written bytes
+         * @throws IOException if channel or connection is closed or writer was interrupted
+         */
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int count = 0;
+            while (source.hasRemaining()) {
+                int length;
+                lock.lock();
+                try {
+                    while (credit == 0 && !closed && !closedByPeer && MultiplexedConnection.this.isOpen()) {
+                        writable.await();
+                    }
+                    if (closed || !MultiplexedConnection.this.isOpen()) {
+                        throw new ClosedChannelException();
+                    }
+                    if (closedByPeer) {
+                        throw new IOException("Channel " + id + " was closed by peer");
+                    }
+                    length = Math.min(Math.min(source.remaining(), credit), Constants.muxFrameSize);
+                    credit -= length;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing channel " + id);
+                } finally {
+                    lock.unlock();
+                }
+                writeFrame(DATA, id, length, source);
+                count += length;
+            }
+            return count;
+        }
+
+        /**
+         * This method returns <code>true</code> if neither channel nor connection were closed
+         * @return boolean
+         */
+        @Override
+        public boolean isOpen() {
+            lock.lock();
+            try {
+                return !closed && MultiplexedConnection.this.isOpen();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * This method closes channel and tells peer about it. Connection is closed, when all its channels are closed.
+         */
+        @Override
+        public void close() {
+            boolean notifyPeer;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                notifyPeer = !closedByPeer;
+                inbound.clear();
+                buffered = 0;
+                readable.signalAll();
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (notifyPeer) {
+                try {
+                    writeFrame(CLOSE, id, 0, null);
+                } catch (IOException ignored) {
+                }
+            }
+            for (Channel channel : channels) {
+                if (channel.isOpen()) {
+                    return;
+                }
+            }
+            MultiplexedConnection.this.close();
+        }
+
+        private void received(byte[] data) throws StreamCorruptedException {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (buffered + consumed + data.length > Constants.muxWindow) {
+                    throw new StreamCorruptedException("Peer exceeded window of channel " + id);
+                }
+                inbound.addLast(ByteBuffer.wrap(data));
+                buffered += data.length;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void credited(int length) throws StreamCorruptedException {
+            lock.lock();
+            try {
+                if (length <= 0 || credit + length > Constants.muxWindow) {
+                    throw new StreamCorruptedException("Invalid window of channel " + id + ": " + length);
+                }
+                credit += length;
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void closedByPeer() {
+            lock.lock();
+            try {
+                closedByPeer = true;
+                readable.signalAll();
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void wakeUp() {
+            lock.lock();
+            try {
+                readable.signalAll();
+                writable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>SelectorConnection</h1>
+ * This class is non-blocking {@link FrameTransport} served by event loop of {@link ConnectionSelector}.
+ * Frames are read without blocking any thread, written frames wait in queue until socket is ready for writing.
+ * Queue of written frames is bounded by {@link Constants#sendQueueBytes} bytes - writer waits until event loop writes enough of them,
+ * and connection is closed if peer doesn't read them within {@link Constants#sendQueueTimeout} seconds. Frames are never dropped,
+ * because streams of peer would lose sync, objects are dropped or coalesced before they are written, by {@link LimakWebApp.Utils.OutboundQueue}.
+ * Buffer of received frame grows from {@link Constants#frameBufferStep} bytes as its bytes arrive, so announced length of frame doesn't reserve memory by itself.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class SelectorConnection implements FrameTransport, ConnectionSelector.Handler {
+
+    private final SocketChannel channel;
+    private final ConnectionSelector.EventLoop loop;
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition drained = writeLock.newCondition();
+    private long queuedBytes = 0;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+    private ByteBuffer payloadBuffer;
+    private int frameLength;
+    private volatile SelectionKey key;
+    private volatile boolean closed = false;
+    private Executor executor;
+    private FrameListener listener;
+    private boolean reading = false;
+
+    SelectorConnection(SocketChannel channel, ConnectionSelector.EventLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    void register() {
+        try {
+            key = loop.register(channel, interestOps(), this);
+        } catch (IOException io) {
+            dropped();
+        }
+    }
+
+    private int interestOps() {
+        int ops = reading ? SelectionKey.OP_READ : 0;
+        writeLock.lock();
+        try {
+            if (!writeQueue.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return ops;
+    }
+
+    private void updateInterestOps() {
+        if (key != null && key.isValid()) {
+            key.interestOps(interestOps());
+        }
+    }
+
+    /**
+     * This method queues frame and tries to write it at once. The rest is written by event loop, when socket is ready.
+     * Writer waits while queue holds more than {@link Constants#sendQueueBytes} bytes.
+     * @param payload array which contains payload
+     * @param offset offset of payload in array
+     * @param length length of payload
+     * @throws IOException if connection is closed or broken, or peer didn't read queued frames in time
+     */
+    @Override
+    public void writeFrame(byte[] payload, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Connection is closed");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + length);
+        frame.putInt(length).put(payload, offset, length).flip();
+        write(frame);
+    }
+
+    /**
+     * This method queues frames and tries to write them at once. The rest is written by event loop, when socket is ready.
+     * Writer waits while queue holds more than {@link Constants#sendQueueBytes} bytes.
+     * @param frames array which contains frames
+     * @param offset offset of the first frame in array
+     * @param length total length of frames
+     * @throws IOException if connection is closed or broken, or peer didn't read queued frames in time
+     */
+    @Override
+    public void writeFrames(byte[] frames, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Connection is closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(frames, offset, length).flip();
+        write(buffer);
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        boolean wasEmpty;
+        writeLock.lock();
+        try {
+            long nanos = TimeUnit.SECONDS.toNanos(Constants.sendQueueTimeout);
+            while (queuedBytes > Constants.sendQueueBytes && !closed) {
+                if (nanos <= 0) {
+                    close();
+                    throw new IOException("Peer didn't read " + queuedBytes + " B of queued frames in " + Constants.sendQueueTimeout + " s");
+                }
+                nanos = drained.awaitNanos(nanos);
+            }
+            if (closed) {
+                throw new IOException("Connection is closed");
+            }
+            wasEmpty = writeQueue.isEmpty();
+            if (wasEmpty) {
+                channel.write(frame);
+            }
+            if (frame.hasRemaining()) {
+                writeQueue.add(frame);
+                queuedBytes += frame.remaining();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for queued frames to be written");
+        } finally {
+            writeLock.unlock();
+        }
+        if (wasEmpty && frame.hasRemaining()) {
+            loop.execute(this::updateInterestOps);
+        }
+    }
+
+    @Override
+    public void startReading(Executor executor, FrameListener listener) {
+        loop.execute(() -> {
+            this.executor = executor;
+            this.listener = listener;
+            reading = true;
+            if (closed) {
+                dropped();
+                return;
+            }
+            updateInterestOps();
+        });
+    }
+
+    /**
+     * This method reads available frames and writes queued ones. Called on event loop's thread only.
+     * @param key selected key
+     * @throws IOException if connection is closed by peer or broken
+     */
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+        if (key.isReadable()) {
+            read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            writeLock.lock();
+            try {
+                while (!writeQueue.isEmpty()) {
+                    ByteBuffer frame = writeQueue.peek();
+                    queuedBytes -= channel.write(frame);
+                    if (frame.hasRemaining()) {
+                        break;
+                    }
+                    writeQueue.poll();
+                }
+                if (queuedBytes <= Constants.sendQueueBytes) {
+                    drained.signalAll();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            updateInterestOps();
+        }
+    }
+
+    private void read() throws IOException {
+        while (true) {
+            if (payloadBuffer == null) {
+                if (channel.read(lengthBuffer) < 0) {
+                    throw new IOException("Connection closed by peer");
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return;
+                }
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                if (length < 0 || length > Constants.maxFrameSize) {
+                    throw new StreamCorruptedException("Invalid frame length: " + length);
+                }
+                frameLength = length;
+                payloadBuffer = ByteBuffer.allocate(Math.min(length, Constants.frameBufferStep));
+            }
+            while (payloadBuffer.position() < frameLength) {
+                if (!payloadBuffer.hasRemaining()) {
+                    payloadBuffer.flip();
+                    payloadBuffer = ByteBuffer.allocate(Math.min(frameLength, 2 * payloadBuffer.capacity())).put(payloadBuffer);
+                }
+                int count = channel.read(payloadBuffer);
+                if (count < 0) {
+                    throw new IOException("Connection closed by peer");
+                }
+                if (count == 0) {
+                    return;
+                }
+            }
+            byte[] payload = payloadBuffer.array();
+            payloadBuffer = null;
+            FrameListener frameListener = listener;
+            executor.execute(() -> frameListener.frameReceived(payload));
+        }
+    }
+
+    /**
+     * This method is called by event loop when the connection is dropped. Listener is notified once.
+     */
+    @Override
+    public void dropped() {
+        if (!loop.inLoop()) {
+            loop.execute(this::dropped);
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        wakeUpWriters();
+        if (reading) {
+            reading = false;
+            try {
+                executor.execute(listener::connectionClosed);
+            } catch (RejectedExecutionException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    /**
+     * This method returns number of bytes of frames, which wait until socket is ready for writing
+     * @return long
+     */
+    public long getQueuedBytes() {
+        writeLock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        wakeUpWriters();
+        channel.close();
+        loop.execute(this::dropped);
+    }
+
+    private void wakeUpWriters() {
+        writeLock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
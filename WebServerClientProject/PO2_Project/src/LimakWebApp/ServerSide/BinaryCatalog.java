@@ -0,0 +1,434 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.CredentialPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>BinaryCatalog</h1>
+ * This class is a read-only catalog of files stored on all disks of server, kept in binary file mapped into memory.
+ * Records of files are decoded only when they are looked up, so opening the catalog takes constant time
+ * and heap used by catalog depends on number of users, not on number of files.
+ * <pre>
+ * [header][records of files][hash table of records][table of owners][files of owners][table of disks]
+ * record: [int hash][short length][name][byte disk][long size][int owners][int owner id...]
+ * disk: [int files][long bytes]
+ * </pre>
+ * Every record is checked against bounds of its section before it's read, so damaged catalog is never read beyond its file.
+ * Catalog is written by {@link #write(File, List)} at compaction of {@link ChangeJournal} and used by {@link DiskMap} as base layer,
+ * on top of which changes made later are kept in memory.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class BinaryCatalog {
+
+    private static final int MAGIC = 0x4C57434B;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 40;
+    private static final int DISK_SIZE = 12;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int fileCount;
+    private final int slotCount;
+    private final int slotsOffset;
+    private final int ownerFilesOffset;
+    private final int diskCount;
+    private final int disksOffset;
+    private final CredentialPacket[] owners;
+    private final HashMap<CredentialPacket, Integer> ownerIds;
+
+    private BinaryCatalog(File file, MappedByteBuffer buffer, ListOfClients listOfClients) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new StreamCorruptedException("Invalid catalog: " + file.getAbsolutePath());
+        }
+        int ownerCount = buffer.getInt(8);
+        fileCount = buffer.getInt(12);
+        slotCount = buffer.getInt(16);
+        slotsOffset = buffer.getInt(20);
+        int ownersOffset = buffer.getInt(24);
+        ownerFilesOffset = buffer.getInt(28);
+        diskCount = buffer.getInt(32);
+        disksOffset = buffer.getInt(36);
+        if (ownerCount < 0 || fileCount < 0 || Integer.bitCount(slotCount) != 1
+                || slotsOffset < HEADER_SIZE || ownersOffset != slotsOffset + 4L * slotCount
+                || ownerFilesOffset < ownersOffset || disksOffset < ownerFilesOffset + 4L * ownerCount
+                || diskCount < 0 || diskCount > 0x80 || disksOffset + (long) DISK_SIZE * diskCount != buffer.capacity()) {
+            throw new StreamCorruptedException("Invalid catalog: " + file.getAbsolutePath());
+        }
+        owners = new CredentialPacket[ownerCount];
+        ownerIds = new HashMap<>(ownerCount * 2);
+        int position = ownersOffset;
+        for (int i = 0; i < ownerCount; ++i) {
+            String email = readString(position, ownerFilesOffset);
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+            String name = readString(position, ownerFilesOffset);
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+            String path = readString(position, ownerFilesOffset);
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+            if (email == null || name == null || path == null) {
+                throw new StreamCorruptedException("Invalid catalog: " + file.getAbsolutePath());
+            }
+            CredentialPacket owner = new CredentialPacket(email, name, path);
+            CredentialPacket registered = listOfClients == null ? null : listOfClients.getByName(name);
+            owners[i] = owner.equals(registered) ? registered : owner;
+            ownerIds.put(owners[i], i);
+        }
+    }
+
+    /**
+     * This method maps given catalog file into memory
+     * @param file file of catalog
+     * @param listOfClients registered users, owners of files are replaced by their instances
+     * @return {@link BinaryCatalog}
+     * @throws IOException if file can't be read or is not a valid catalog
+     */
+    public static BinaryCatalog open(File file, ListOfClients listOfClients) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException("Catalog is too big: " + file.getAbsolutePath());
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new BinaryCatalog(file, buffer, listOfClients);
+            } catch (IndexOutOfBoundsException e) {
+                throw new StreamCorruptedException("Invalid catalog: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * This method writes catalog of given disks into file. Disks are read by {@link DiskMap#forEachFile(BiConsumer)},
+     * so they may be changed while catalog is written, file is forced to drive before method returns.
+     * Size of file, which is not changed since base catalog of disk was written, is taken from the base, other files are measured.
+     * @param file file to write, it must not be mapped
+     * @param disks disks of server, ordered by index of disk
+     * @throws IOException if file can't be written, catalog exceeds 2 GB, or there are more than 128 disks
+     */
+    public static void write(File file, List<DiskMap> disks) throws IOException {
+        HashMap<CredentialPacket, Integer> ids = new HashMap<>();
+        ArrayList<CredentialPacket> ownerList = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> filesOfOwners = new ArrayList<>();
+        ArrayList<Integer> recordOffsets = new ArrayList<>();
+        ArrayList<Integer> recordHashes = new ArrayList<>();
+        int[] diskFiles = new int[disks.size()];
+        long[] diskBytes = new long[disks.size()];
+        if (disks.size() > 0x80) {
+            throw new IOException("Too many disks: " + disks.size());
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(0x20000);
+            long[] position = {HEADER_SIZE};
+            channel.position(HEADER_SIZE);
+            IOException[] failure = {null};
+            for (int disk = 0; disk < disks.size(); ++disk) {
+                final int diskIndex = disk;
+                DiskMap diskMap = disks.get(disk);
+                BinaryCatalog base = diskMap.getBase();
+                diskMap.forEachFile((fileName, fileOwners) -> {
+                    if (failure[0] != null) return;
+                    List<CredentialPacket> ownersOfFile = new ArrayList<>(fileOwners);
+                    if (ownersOfFile.isEmpty()) return;
+                    try {
+                        byte[] name = encode(fileName);
+                        long size = base == null || diskMap.getMap().containsKey(fileName) ? -1 : base.getSize(fileName);
+                        if (size < 0) {
+                            size = new File(diskMap.getPath(), fileName).length();
+                        }
+                        long length = 4 + 2 + name.length + 1 + 8 + 4 + 4L * ownersOfFile.size();
+                        if (position[0] + length > Integer.MAX_VALUE) {
+                            throw new IOException("Catalog is too big");
+                        }
+                        int offset = (int) position[0];
+                        ensure(channel, out, 4 + 2 + name.length + 1 + 8 + 4);
+                        out.putInt(fileName.hashCode()).putShort((short) name.length).put(name).put((byte) diskIndex).putLong(size).putInt(ownersOfFile.size());
+                        for (CredentialPacket owner : ownersOfFile) {
+                            ensure(channel, out, 4);
+                            Integer id = ids.get(owner);
+                            if (id == null) {
+                                id = ownerList.size();
+                                ids.put(owner, id);
+                                ownerList.add(owner);
+                                filesOfOwners.add(new ArrayList<>());
+                            }
+                            out.putInt(id);
+                            filesOfOwners.get(id).add(offset);
+                        }
+                        recordOffsets.add(offset);
+                        recordHashes.add(fileName.hashCode());
+                        position[0] += length;
+                        ++diskFiles[diskIndex];
+                        diskBytes[diskIndex] += size;
+                    } catch (IOException io) {
+                        failure[0] = io;
+                    }
+                });
+                if (failure[0] != null) throw failure[0];
+            }
+            int slotCount = Integer.highestOneBit(Math.max(2, recordOffsets.size() * 2 - 1)) << 1;
+            int[] slots = new int[slotCount];
+            for (int i = 0; i < recordOffsets.size(); ++i) {
+                int slot = recordHashes.get(i) & (slotCount - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slotCount - 1);
+                }
+                slots[slot] = recordOffsets.get(i);
+            }
+            long slotsOffset = position[0];
+            for (int slot : slots) {
+                ensure(channel, out, 4);
+                out.putInt(slot);
+            }
+            long ownersOffset = slotsOffset + 4L * slotCount;
+            long ownerPosition = ownersOffset;
+            for (CredentialPacket owner : ownerList) {
+                for (String string : new String[]{owner.getUserEmail(), owner.getUserName(), owner.getUserFolderPath()}) {
+                    byte[] bytes = encode(string);
+                    ensure(channel, out, 2 + bytes.length);
+                    out.putShort((short) bytes.length).put(bytes);
+                    ownerPosition += 2 + bytes.length;
+                }
+            }
+            long ownerFilesOffset = ownerPosition;
+            long filesPosition = ownerFilesOffset + 4L * ownerList.size();
+            for (ArrayList<Integer> files : filesOfOwners) {
+                ensure(channel, out, 4);
+                out.putInt((int) filesPosition);
+                filesPosition += 4 + 4L * files.size();
+            }
+            long disksOffset = filesPosition;
+            if (disksOffset + (long) DISK_SIZE * disks.size() > Integer.MAX_VALUE) {
+                throw new IOException("Catalog is too big");
+            }
+            for (ArrayList<Integer> files : filesOfOwners) {
+                ensure(channel, out, 4);
+                out.putInt(files.size());
+                for (int offset : files) {
+                    ensure(channel, out, 4);
+                    out.putInt(offset);
+                }
+            }
+            for (int disk = 0; disk < disks.size(); ++disk) {
+                ensure(channel, out, DISK_SIZE);
+                out.putInt(diskFiles[disk]).putLong(diskBytes[disk]);
+            }
+            flush(channel, out);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(ownerList.size()).putInt(recordOffsets.size()).putInt(slotCount)
+                    .putInt((int) slotsOffset).putInt((int) ownersOffset).putInt((int) ownerFilesOffset)
+                    .putInt(disks.size()).putInt((int) disksOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer out, int size) throws IOException {
+        if (out.remaining() < size) {
+            flush(channel, out);
+        }
+        if (out.remaining() < size) {
+            throw new IOException("Record is too big: " + size);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static byte[] encode(String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String is too long: " + string.substring(0, 64));
+        }
+        return bytes;
+    }
+
+    /**
+     * This method returns the file of catalog
+     * @return {@link File}
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * This method returns number of files in catalog
+     * @return int
+     */
+    public int size() {
+        return fileCount;
+    }
+
+    /**
+     * This method returns number of files of given disk in catalog
+     * @param disk index of disk
+     * @return int
+     */
+    public int getFileCount(int disk) {
+        return disk < 0 || disk >= diskCount ? 0 : buffer.getInt(disksOffset + DISK_SIZE * disk);
+    }
+
+    /**
+     * This method returns number of bytes of files of given disk in catalog
+     * @param disk index of disk
+     * @return long
+     */
+    public long getBytes(int disk) {
+        return disk < 0 || disk >= diskCount ? 0 : buffer.getLong(disksOffset + DISK_SIZE * disk + 4);
+    }
+
+    /**
+     * This method returns the index of disk which stores given file, or <code>-1</code> if file is not in catalog
+     * @param fileName name of file
+     * @return int
+     */
+    public int getDiskIndex(String fileName) {
+        int record = find(fileName);
+        return record < 0 ? -1 : buffer.get(record + 6 + (buffer.getShort(record + 4) & 0xFFFF));
+    }
+
+    /**
+     * This method returns size of given file when catalog was written, or <code>-1</code> if file is not in catalog
+     * @param fileName name of file
+     * @return long
+     */
+    public long getSize(String fileName) {
+        int record = find(fileName);
+        return record < 0 ? -1 : buffer.getLong(record + 7 + (buffer.getShort(record + 4) & 0xFFFF));
+    }
+
+    /**
+     * This method returns owners of given file, or empty list if file is not in catalog
+     * @param fileName name of file
+     * @return {@code List<CredentialPacket>}
+     */
+    public List<CredentialPacket> getOwners(String fileName) {
+        int record = find(fileName);
+        return record < 0 ? new ArrayList<>() : readOwners(record);
+    }
+
+    /**
+     * This method returns names of files of given owner stored on given disk
+     * @param owner owner of files
+     * @param disk index of disk
+     * @return {@code List<String>}
+     */
+    public List<String> getFilesOfOwner(CredentialPacket owner, int disk) {
+        List<String> rV = new ArrayList<>();
+        Integer id = owner == null ? null : ownerIds.get(owner);
+        if (id == null) return rV;
+        int position = buffer.getInt(ownerFilesOffset + 4 * id);
+        if (position < ownerFilesOffset + 4L * owners.length || position > disksOffset - 4) return rV;
+        int count = buffer.getInt(position);
+        if (count < 0 || position + 4 + 4L * count > disksOffset) return rV;
+        for (int i = 0; i < count; ++i) {
+            int record = buffer.getInt(position + 4 + 4 * i);
+            if (recordEnd(record) < 0) continue;
+            int length = buffer.getShort(record + 4) & 0xFFFF;
+            if (buffer.get(record + 6 + length) == disk) {
+                rV.add(readString(record + 4, slotsOffset));
+            }
+        }
+        return rV;
+    }
+
+    /**
+     * This method performs given action for every file of given disk. Files are visited until the first damaged record.
+     * @param disk index of disk
+     * @param action action, which receives name and owners of file
+     */
+    public void forEachFile(int disk, BiConsumer<String, List<CredentialPacket>> action) {
+        int position = HEADER_SIZE;
+        for (int i = 0; i < fileCount; ++i) {
+            int end = recordEnd(position);
+            if (end < 0) return;
+            int length = buffer.getShort(position + 4) & 0xFFFF;
+            if (buffer.get(position + 6 + length) == disk) {
+                action.accept(readString(position + 4, slotsOffset), readOwners(position));
+            }
+            position = end;
+        }
+    }
+
+    private int recordEnd(int record) {
+        if (record < HEADER_SIZE || record > slotsOffset - 6) return -1;
+        int length = buffer.getShort(record + 4) & 0xFFFF;
+        long owners = record + 6L + length + 1 + 8;
+        if (owners + 4 > slotsOffset) return -1;
+        byte disk = buffer.get(record + 6 + length);
+        int count = buffer.getInt((int) owners);
+        if (disk < 0 || disk >= diskCount || count < 0 || owners + 4 + 4L * count > slotsOffset) return -1;
+        return (int) (owners + 4 + 4L * count);
+    }
+
+    private int find(String fileName) {
+        if (fileName == null || fileCount == 0) return -1;
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        int hash = fileName.hashCode();
+        int slot = hash & (slotCount - 1);
+        for (int probes = 0; probes < slotCount; ++probes) {
+            int record = buffer.getInt(slotsOffset + 4 * slot);
+            if (record == 0) return -1;
+            if (recordEnd(record) >= 0 && buffer.getInt(record) == hash && matches(record + 4, name)) {
+                return record;
+            }
+            slot = (slot + 1) & (slotCount - 1);
+        }
+        return -1;
+    }
+
+    private boolean matches(int position, byte[] name) {
+        if ((buffer.getShort(position) & 0xFFFF) != name.length) return false;
+        for (int i = 0; i < name.length; ++i) {
+            if (buffer.get(position + 2 + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    private List<CredentialPacket> readOwners(int record) {
+        int length = buffer.getShort(record + 4) & 0xFFFF;
+        int position = record + 15 + length;
+        int count = buffer.getInt(position);
+        List<CredentialPacket> rV = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            int id = buffer.getInt(position + 4 + 4 * i);
+            if (id >= 0 && id < owners.length) {
+                rV.add(owners[id]);
+            }
+        }
+        return rV;
+    }
+
+    private String readString(int position, int limit) {
+        if (position < 0 || position > limit - 2) return null;
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (position + 2L + length > limit) return null;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
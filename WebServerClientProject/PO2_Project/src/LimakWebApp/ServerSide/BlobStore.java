@@ -0,0 +1,290 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.FilePacket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * <h1>BlobStore</h1>
+ * This class is used by {@link MainPageController} to keep only one copy of every contents stored on server.
+ * Contents are identified by {@link FilePacket#digest(File)} and stored as blobs in directory of store,
+ * every file stored on disk of server is a hard link to its blob, or a copy of it if file system doesn't support links.
+ * Number of files referring to every blob is counted, blob is deleted when the last file referring to it is removed.
+ * <pre>
+ * Blobs/ab/ab12...ef - blob
+ * Blobs/Index.json   - {"file name":"id of blob", ...}
+ * </pre>
+ * Index is written by {@link #dump()}, blobs which are not in index are deleted at start up.
+ * Files on disks are never deleted by this class, so losing index costs only deduplication.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class BlobStore {
+
+    private static final String INDEX_FILE_NAME = "Index.json";
+
+    private final File directory;
+    private final ConcurrentHashMap<String, String> blobsOfFiles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> references = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long persistedModifications = 0;
+
+    /**
+     * Constructor of BlobStore
+     * @param directory directory of blobs, it has to be on the same volume as disks of server to link files
+     */
+    public BlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * This method reads index of store and deletes blobs, which are not referred by any file
+     * @param fileExists tells if file of given name is stored on server, entries of index for removed files are dropped
+     * @throws IOException if directory can't be created or index can't be read
+     */
+    public void load(Predicate<String> fileExists) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory.getAbsolutePath());
+        }
+        lock.lock();
+        try {
+            blobsOfFiles.clear();
+            references.clear();
+            File indexFile = new File(directory, INDEX_FILE_NAME);
+            if (indexFile.length() > 0) {
+                Map<String, String> index;
+                try (Reader reader = new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)) {
+                    index = new Gson().fromJson(reader, new TypeToken<HashMap<String, String>>(){}.getType());
+                } catch (JsonParseException e) {
+                    throw new IOException("Invalid index of blobs " + indexFile.getAbsolutePath(), e);
+                }
+                if (index != null) {
+                    for (Map.Entry<String, String> entry : index.entrySet()) {
+                        if (isValid(entry.getValue()) && fileExists.test(entry.getKey()) && getBlob(entry.getValue()).isFile()) {
+                            blobsOfFiles.put(entry.getKey(), entry.getValue());
+                            references.merge(entry.getValue(), 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+            File[] subdirectories = directory.listFiles(File::isDirectory);
+            if (subdirectories != null) {
+                for (File subdirectory : subdirectories) {
+                    File[] blobs = subdirectory.listFiles();
+                    if (blobs == null) continue;
+                    for (File blob : blobs) {
+                        if (!references.containsKey(blob.getName())) {
+                            blob.delete();
+                        }
+                    }
+                }
+            }
+            persistedModifications = modifications.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method adds saved file to store. If contents of file are already stored, file is replaced by link to the blob,
+     * otherwise file becomes the blob of its contents.
+     * @param fileName name of file
+     * @param file saved file
+     * @return id of blob
+     * @throws IOException if file can't be read or linked
+     */
+    public String add(String fileName, File file) throws IOException {
+        String id = FilePacket.digest(file);
+        File blob = getBlob(id);
+        lock.lock();
+        try {
+            if (references.containsKey(id) && blob.isFile()) {
+                File link = new File(file.getParentFile(), file.getName() + ".link");
+                try {
+                    Files.deleteIfExists(link.toPath());
+                    Files.createLink(link.toPath(), blob.toPath());
+                    Files.move(link.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException | UnsupportedOperationException e) {
+                    link.delete();
+                }
+            } else {
+                blob.getParentFile().mkdirs();
+                Files.deleteIfExists(blob.toPath());
+                try {
+                    Files.createLink(blob.toPath(), file.toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            reference(fileName, id);
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method creates file of stored contents, without receiving them again
+     * @param fileName name of new file
+     * @param id id of blob
+     * @param file file to create
+     * @return <code>true</code> if contents are stored and file was created
+     * @throws IOException if file can't be linked nor copied
+     */
+    public boolean link(String fileName, String id, File file) throws IOException {
+        if (!isValid(id)) return false;
+        File blob = getBlob(id);
+        lock.lock();
+        try {
+            if (!references.containsKey(id) || !blob.isFile()) {
+                return false;
+            }
+            try {
+                Files.createLink(file.toPath(), blob.toPath());
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(blob.toPath(), file.toPath());
+            }
+            reference(fileName, id);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reference(String fileName, String id) {
+        String previous = blobsOfFiles.put(fileName, id);
+        if (previous != null) {
+            unreference(previous);
+        }
+        references.merge(id, 1, Integer::sum);
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * This method removes file from store, blob is deleted if no file refers to it any longer
+     * @param fileName name of removed file
+     * @return <code>true</code> if file was in store
+     */
+    public boolean release(String fileName) {
+        lock.lock();
+        try {
+            String id = blobsOfFiles.remove(fileName);
+            if (id == null) {
+                return false;
+            }
+            unreference(id);
+            modifications.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unreference(String id) {
+        if (references.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null) == null) {
+            getBlob(id).delete();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if contents of given id are stored
+     * @param id id of blob
+     * @return boolean
+     */
+    public boolean contains(String id) {
+        return isValid(id) && references.containsKey(id);
+    }
+
+    /**
+     * This method returns <code>true</code> if any of given files refers to contents of given id.
+     * It's used to prove, that user who offers only digest of contents already has access to them.
+     * @param id id of blob
+     * @param fileNames names of files to check
+     * @return boolean
+     */
+    public boolean isReferencedBy(String id, Collection<String> fileNames) {
+        if (!contains(id)) return false;
+        for (String fileName : fileNames) {
+            if (id.equals(blobsOfFiles.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method returns size of stored contents of given id, or <code>-1</code> if they are not stored
+     * @param id id of blob
+     * @return long
+     */
+    public long getSize(String id) {
+        return contains(id) ? getBlob(id).length() : -1;
+    }
+
+    /**
+     * This method returns id of blob of given file, or <code>null</code> if file is not in store
+     * @param fileName name of file
+     * @return {@link String}
+     */
+    public String getBlobId(String fileName) {
+        return fileName == null ? null : blobsOfFiles.get(fileName);
+    }
+
+    /**
+     * This method writes index of store, if it was changed since last time
+     * @return <code>true</code> if index is up to date
+     * @throws IOException if index can't be written
+     */
+    public boolean dump() throws IOException {
+        long current = modifications.get();
+        if (current == persistedModifications) {
+            return true;
+        }
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        File tmpFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            new Gson().toJson(new HashMap<>(blobsOfFiles), writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        persistedModifications = current;
+        return true;
+    }
+
+    private File getBlob(String id) {
+        return new File(new File(directory, id.substring(0, 2)), id);
+    }
+
+    private static boolean isValid(String id) {
+        return id != null && id.matches("[0-9a-f]{64}");
+    }
+}
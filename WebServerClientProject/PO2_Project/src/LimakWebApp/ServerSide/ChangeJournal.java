@@ -0,0 +1,364 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.CredentialPacket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <h1>ChangeJournal</h1>
+ * This class is used by {@link MainPageController} to persist changes of {@link DiskMap}s and {@link ListOfClients}
+ * without rewriting their whole control files. Every change is appended as one JSON line to current segment of journal,
+ * segment is forced to disk periodically by {@link #sync()}.
+ * <pre>
+ * {"op":"OWNER_ADDED","disk":2,"file":"a.txt","user":{...},"seq":7}
+ * </pre>
+ * Change of owner carries sequence of owner's {@link UserManifests}, changes are replayed in order of their sequences,
+ * which also restores manifests changed after they were written.
+ * From time to time journal is compacted - new segment is started, snapshots of control files are written
+ * and segments written before the snapshot are deleted. At start up changes stored in segments are replayed on top of snapshots.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class ChangeJournal implements Closeable {
+
+    private static final String OWNER_ADDED = "OWNER_ADDED";
+    private static final String OWNER_REMOVED = "OWNER_REMOVED";
+    private static final String CLIENT_ADDED = "CLIENT_ADDED";
+
+    private final File directory;
+    private final String name;
+    private final Pattern segmentPattern;
+    private final Gson gson = new Gson();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final AtomicLong records = new AtomicLong();
+    private volatile FileChannel channel;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private long segment = 0;
+
+    /**
+     * Constructor of ChangeJournal
+     * @param directory directory of segments
+     * @param name name of journal, segments are named <i>name.number.log</i>
+     */
+    public ChangeJournal(File directory, String name) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentPattern = Pattern.compile(Pattern.quote(name) + "\\.(\\d+)\\.log");
+    }
+
+    /**
+     * This method applies changes stored in existing segments to given stores. Journal has to be replayed before it's opened
+     * and before it's set to stores. Segment which ends with broken line, written during crash, is read up to this line.
+     * @param listOfClients clients to update
+     * @param disks disks to update, ordered by index of disk
+     * @param manifests manifests to restore, or <code>null</code>
+     * @return number of applied changes
+     * @throws IOException if segment can't be read
+     */
+    public long replay(ListOfClients listOfClients, List<DiskMap> disks, UserManifests manifests) throws IOException {
+        List<Record> stored = new ArrayList<>();
+        for (File file : listSegments()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    Record record;
+                    try {
+                        record = gson.fromJson(line, Record.class);
+                    } catch (JsonParseException broken) {
+                        break;
+                    }
+                    if (record == null || record.op == null) break;
+                    stored.add(record);
+                }
+            }
+        }
+        stored.sort(Comparator.comparingLong(record -> record.seq));
+        long applied = 0;
+        for (Record record : stored) {
+            if (apply(record, listOfClients, disks, manifests)) {
+                ++applied;
+            }
+        }
+        records.addAndGet(applied);
+        return applied;
+    }
+
+    private boolean apply(Record record, ListOfClients listOfClients, List<DiskMap> disks, UserManifests manifests) {
+        switch (record.op) {
+            case CLIENT_ADDED:
+                if (record.user != null) {
+                    listOfClients.put(record.user, false);
+                    return true;
+                }
+                return false;
+            case OWNER_ADDED:
+                if (record.user != null && record.file != null && record.disk >= 0 && record.disk < disks.size()) {
+                    disks.get(record.disk).putOwnerToFile(record.file, intern(listOfClients, record.user));
+                    if (manifests != null && record.seq > 0) manifests.restore(record.user, record.seq, record.file, true);
+                    return true;
+                }
+                return false;
+            case OWNER_REMOVED:
+                if (record.user != null && record.file != null && record.disk >= 0 && record.disk < disks.size()) {
+                    disks.get(record.disk).removeFileOwner(record.file, record.user, false);
+                    if (manifests != null && record.seq > 0) manifests.restore(record.user, record.seq, record.file, false);
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private static CredentialPacket intern(ListOfClients listOfClients, CredentialPacket user) {
+        CredentialPacket registered = listOfClients.getByName(user.getUserName());
+        return user.equals(registered) ? registered : user;
+    }
+
+    /**
+     * This method starts new segment, changes are appended to it from now on
+     * @throws IOException if segment can't be created
+     */
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            List<File> segments = listSegments();
+            long last = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+            startSegment(Math.max(last, segment) + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startSegment(long number) throws IOException {
+        FileChannel next = FileChannel.open(new File(directory, name + "." + number + ".log").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        FileChannel previous = channel;
+        channel = next;
+        segment = number;
+        if (previous != null) {
+            previous.force(false);
+            previous.close();
+        }
+    }
+
+    /**
+     * This method marks beginning of change of store, which is appended to journal. Segment is never rotated
+     * between {@link #beginChange()} and {@link #endChange()}, so every change stored in rotated segment is visible to snapshot.
+     */
+    public void beginChange() {
+        rotationLock.readLock().lock();
+    }
+
+    /**
+     * This method marks end of change started by {@link #beginChange()}
+     */
+    public void endChange() {
+        rotationLock.readLock().unlock();
+    }
+
+    /**
+     * This method appends registration of new client
+     * @param user registered client
+     */
+    public void clientAdded(CredentialPacket user) {
+        append(new Record(CLIENT_ADDED, -1, null, user, 0));
+    }
+
+    /**
+     * This method appends addition of owner to file
+     * @param disk index of disk which stores the file
+     * @param fileName name of file
+     * @param user new owner of file
+     * @param sequence sequence of change in manifest of owner, or 0 if it's not recorded in manifest
+     */
+    public void ownerAdded(int disk, String fileName, CredentialPacket user, long sequence) {
+        append(new Record(OWNER_ADDED, disk, fileName, user, sequence));
+    }
+
+    /**
+     * This method appends removal of owner from file
+     * @param disk index of disk which stores the file
+     * @param fileName name of file
+     * @param user former owner of file
+     * @param sequence sequence of change in manifest of owner, or 0 if it's not recorded in manifest
+     */
+    public void ownerRemoved(int disk, String fileName, CredentialPacket user, long sequence) {
+        append(new Record(OWNER_REMOVED, disk, fileName, user, sequence));
+    }
+
+    private void append(Record record) {
+        ByteBuffer buffer = ByteBuffer.wrap((gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+        lock.lock();
+        try {
+            if (channel == null) {
+                failure = new ClosedChannelException();
+                return;
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            records.incrementAndGet();
+        } catch (IOException io) {
+            failure = io;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method forces appended changes to disk. Changes appended since last call are lost if server crashes before it.
+     * @throws IOException if journal can't be written, also if any earlier append failed
+     */
+    public void sync() throws IOException {
+        IOException io = failure;
+        if (io != null) {
+            failure = null;
+            throw io;
+        }
+        FileChannel current = channel;
+        if (current != null) {
+            try {
+                current.force(false);
+            } catch (ClosedChannelException rotated) {
+                // segment was closed and forced by rotation
+            }
+        }
+    }
+
+    /**
+     * This method compacts journal. New segment is started, then snapshots are written by {@code writeSnapshots}
+     * and segments older than the new one are deleted, provided that snapshots were written successfully.
+     * Changes appended while snapshots are written land in the new segment and are replayed on top of snapshots,
+     * every change sets the state of pair of file and owner, so replaying change already stored in snapshot does nothing.
+     * @param writeSnapshots writes snapshots of all stores and returns <code>true</code> if succeeded
+     * @return <code>true</code> if journal was compacted
+     * @throws IOException if new segment can't be created
+     */
+    public boolean compact(BooleanSupplier writeSnapshots) throws IOException {
+        compactionLock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            long current;
+            rotationLock.writeLock().lock();
+            lock.lock();
+            try {
+                startSegment(segment + 1);
+                current = segment;
+                records.set(0);
+            } finally {
+                lock.unlock();
+                rotationLock.writeLock().unlock();
+            }
+            if (!writeSnapshots.getAsBoolean()) {
+                return false;
+            }
+            for (File file : listSegments()) {
+                if (segmentNumber(file) < current) {
+                    file.delete();
+                }
+            }
+            return true;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * This method returns number of changes appended since last compaction
+     * @return long
+     */
+    public long getRecordsSinceCompaction() {
+        return records.get();
+    }
+
+    /**
+     * This method forces and closes current segment
+     * @throws IOException if segment can't be forced
+     */
+    @Override
+    public void close() throws IOException {
+        compactionLock.lock();
+        lock.lock();
+        try {
+            closed = true;
+            if (channel != null) {
+                try {
+                    channel.force(false);
+                } finally {
+                    channel.close();
+                    channel = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+            compactionLock.unlock();
+        }
+    }
+
+    private List<File> listSegments() {
+        List<File> segments = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && segmentPattern.matcher(file.getName()).matches()) {
+                    segments.add(file);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(this::segmentNumber));
+        return segments;
+    }
+
+    private long segmentNumber(File file) {
+        Matcher matcher = segmentPattern.matcher(file.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private static class Record {
+        String op;
+        int disk;
+        String file;
+        CredentialPacket user;
+        long seq;
+
+        Record(String op, int disk, String file, CredentialPacket user, long seq) {
+            this.op = op;
+            this.disk = disk;
+            this.file = file;
+            this.user = user;
+            this.seq = seq;
+        }
+    }
+}
@@ -3,44 +3,54 @@ package LimakWebApp.ServerSide;
 import LimakWebApp.Utils.AbstractServerController;
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.Utils.Controller;
+import LimakWebApp.Utils.SerialExecutor;
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.DataPackets.FileDelta;
 import LimakWebApp.DataPackets.FilePacket;
 import LimakWebApp.DataPackets.MessageToSend;
 import LimakWebApp.DataPackets.SocketHandler;
 import LimakWebApp.ServicesHandler;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 
 /**
  * <h1>CommunicationServiceThreadHandler</h1>
- * This class is used by {@link Server} to manage communication with accepted and authorized clients
+ * This class is used by {@link Server} to manage communication with accepted and authorized clients.
+ * Demands of transfer are answered by separate {@link SerialExecutor}, because signatures of files are computed from their whole contents
+ * and the thread of commands must not wait for it.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   10.08.2019
  */
 public class CommunicationServiceThreadHandler extends ServicesHandler {
 
-    private final long err = Long.MAX_VALUE;
-
     private final String ID;
 
     private CredentialPacket remoteEndPoint;
     private boolean isSomethingToShare = false;
     private volatile String itemToShare;
+    private final Set<String> filesBeingSaved = ConcurrentHashMap.newKeySet();
+    private final ExecutorService demandService = new SerialExecutor();
     /**
      * Constructor of CommunicationThreadHandler class, sets handler, credentials and ID and initialize communication with client.
      * @param handler contains accepted sockets
@@ -86,6 +96,24 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
     }
 
 
+    /**
+     * This method stops answering demands of transfer, then terminates services and closes held sockets
+     */
+    @Override
+    protected void cleanUp(){
+        demandService.shutdownNow();
+        super.cleanUp();
+    }
+
+    /**
+     * This method closes the failed session and removes it from active sessions of server
+     */
+    @Override
+    protected void sessionFailed(){
+        close();
+        ((MainPageController)mainPageController).cleanUpSessionForID(ID, remoteEndPoint);
+    }
+
     /**
      * This method handles received {@link MessageToSend} object to perform action
      * @param command the data package with several instructions
@@ -128,9 +156,11 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
                 for (int i = 0; i < command.getContents().size(); ++i) {
                     getFileService().getObject(false);
                 }
-                MessageToSend msg = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE);
-                msg.addContents(command.getContents());
-                getNotificationService().sendObject(msg);
+                try {
+                    demandService.execute(() -> answerDemand(command));
+                } catch (RejectedExecutionException ree) {
+                    break;
+                }
                 mainPageController.setStatusText("Receiving files");
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append(new Date()).append(":\n").append("Receiving files in progress...\n");
@@ -146,15 +176,47 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
             case RECEIVE_LIST_OF_FILES:{
                 ArrayList<String>  tmp = command.getContents().stream().map((object)->(String)object).collect(Collectors.toCollection(ArrayList::new));
                 filesToTransfer = ((AbstractServerController)mainPageController).compareUserAndServerList(command.getUser(), tmp);
-                if(filesToTransfer.getValue().size() > 0) {
-                    MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE_DEMAND);
-                    newMessage.addContents(filesToTransfer.getValue().stream().map(string -> (Object) string).collect(Collectors.toCollection(ArrayList::new)));
-                    getNotificationService().sendObject(newMessage);
-                    mainPageController.setStatusText("Sending files");
-                    StringBuilder stringBuilder = new StringBuilder();
-                    stringBuilder.append(new Date()).append(":\n").append("Sending files in progress...\n");
-                    mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
+                demandTransferOfFiles();
+                break;
+            }
+            case SYNC_MANIFEST:{
+                AbstractServerController controller = (AbstractServerController)mainPageController;
+                CredentialPacket packet = controller.findUserByName(command.getUser().getUserName());
+                String epoch = command.getContents() != null && command.getContents().size() > 1 && command.getContents().get(0) instanceof String ? (String)command.getContents().get(0) : "";
+                long sequence = -1;
+                try {
+                    sequence = Long.parseLong(epoch.isEmpty() ? "-1" : (String)command.getContents().get(1));
                 }
+                catch(NumberFormatException | ClassCastException ignored){
+                }
+                UserManifests manifests = controller.getUserManifests();
+                long current = manifests.getSequence(packet);
+                List<String> changes = manifests.sync() ? manifests.getChangesSince(packet, epoch, sequence, current) : null;
+                ArrayList<Object> contents = new ArrayList<>();
+                contents.add(manifests.getEpoch());
+                contents.add(String.valueOf(current));
+                contents.add(changes == null ? MessageToSend.FULL_MANIFEST : MessageToSend.DELTA_OF_MANIFEST);
+                if (changes != null) {
+                    contents.addAll(changes);
+                }
+                MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.MANIFEST_DELTA);
+                newMessage.addContents(contents);
+                getNotificationService().sendObject(newMessage);
+                if (changes == null) {
+                    processObject(new MessageToSend(remoteEndPoint, MessageToSend.COMMAND_TYPE.SEND_LIST_OF_FILES));
+                }
+                break;
+            }
+            case DEMAND_FILES:{
+                Set<String> owned = ((AbstractServerController)mainPageController).getListOfFilesForUser(command.getUser());
+                ArrayList<File> files = new ArrayList<>();
+                for (Object item : command.getContents()) {
+                    if (item instanceof String && owned.contains(item)) {
+                        files.add(new File(((AbstractServerController)mainPageController).findFileInServer((String)item), (String)item));
+                    }
+                }
+                filesToTransfer = new AbstractMap.SimpleEntry<>(command.getUser(), files);
+                demandTransferOfFiles();
                 break;
             }
             case GIVE_LIST_OF_ACTIVE_USERS: {
@@ -182,57 +244,368 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
                 ((AbstractServerController)mainPageController).removeUserFromFileOwners(fileName, packet);
                 break;
             }
+            case OFFER_FILE_DIGESTS:{
+                CredentialPacket packet = ((AbstractServerController)mainPageController).findUserByName(command.getUser().getUserName());
+                ArrayList<Object> accepted = new ArrayList<>();
+                for (int i = 0; i + 1 < command.getContents().size(); i += 2) {
+                    String fileName = command.getContents().get(i) instanceof String ? (String)command.getContents().get(i) : "";
+                    String digest = command.getContents().get(i + 1) instanceof String ? (String)command.getContents().get(i + 1) : "";
+                    if (linkStoredContents(packet, fileName, digest)) {
+                        accepted.add(fileName);
+                    }
+                }
+                MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.OFFER_FILE_DIGESTS);
+                newMessage.addContents(accepted);
+                getNotificationService().sendObject(newMessage);
+                if (!accepted.isEmpty()) {
+                    mainPageController.addLog(Constants.LogType.INFO, new Date().toString() + ":\nFiles linked to stored contents: " + accepted.size() + "\n");
+                    mainPageController.refreshTree();
+                }
+                break;
+            }
         }
     }
 
     /**
-     * This method saves provided {@link FilePacket} on {@link Server} workspace
+     * This method chooses disk for provided {@link FilePacket} on {@link Server} workspace and opens file, which received contents are written to.
+     * Resumed transfer is continued in file of interrupted transfer on its disk, if id of transfer matches.
      * @param filePacket the data package to save on drive
+     * @return channel of file, or <code>null</code> if file can't be saved
      */
     @Override
-    protected void saveFile(FilePacket filePacket){
-        File root = new File(getLocalEndPoint().getUserFolderPath());
-        boolean ifAlreadyNotExists = ((AbstractServerController)mainPageController).findFileInServer(filePacket.getFileName()).equals("") ;
+    protected FileChannel beginSaveFile(FilePacket filePacket){
+        if (filePacket.isDelta()) {
+            return beginSaveDelta(filePacket);
+        }
+        boolean ifAlreadyNotExists = ((AbstractServerController)mainPageController).findFileInServer(filePacket.getFileName()).equals("");
         try {
-            if (!ifAlreadyNotExists) throw new FileAlreadyExistsOnServerException(mainPageController);
-            if (root.exists() && root.listFiles() != null) {
-                File minFolder = Arrays.stream(root.listFiles()).
-                        filter(file -> file.isDirectory()).
-                        min(Comparator.comparing(file -> file.listFiles() != null ? file.listFiles().length : err)).get();
-                File fileToSave = new File(minFolder, filePacket.getFileName());
-                try (BufferedOutputStream writer = new BufferedOutputStream(new FileOutputStream(fileToSave))) {
-                    long size = filePacket.getSize();
-                    writer.write(filePacket.getFileBytes(), 0, (int) size);
-                } catch (IOException io) {
-                    mainPageController.setStatusText("Can't save the file");
-                    StringBuilder stringBuilder = new StringBuilder();
-                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    PrintStream outStream = new PrintStream(outputStream);
-                    io.printStackTrace(outStream);
-                    stringBuilder.append(new Date())
-                            .append(":\n").append("Can't save the file: ")
-                            .append(filePacket.getFileName()).append("\n\t")
-                            .append(io.getMessage()).append("\n")
-                            .append(outStream.toString()).append("\n");
-                    mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
-                }
-                int idx = (minFolder.getName().charAt(minFolder.getName().length() - 1)) - '0' - 1;
-                CredentialPacket packet = (((AbstractServerController) mainPageController)).findUserByName(filePacket.getUserName());
-                (((AbstractServerController) mainPageController)).getDisk(idx).putOwnerToFile(filePacket.getFileName(), packet);
-                (((AbstractServerController) mainPageController)).addToRuntimeMap(packet, filePacket.getFileName());
-                (mainPageController).setStatusText("File saved successfully");
+            if (!ifAlreadyNotExists || !filesBeingSaved.add(filePacket.getFileName())) throw new FileAlreadyExistsOnServerException(mainPageController);
+        }catch(FileAlreadyExistsOnServerException io){
+            io.log(filePacket.getFileName());
+            return null;
+        }
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        DiskPlacement placement = controller.getDiskPlacement();
+        PartialTransfers partialTransfers = controller.getPartialTransfers();
+        PartialTransfers.Transfer partial = partialTransfers.get(filePacket.getUserName(), filePacket.getFileName());
+        boolean resumed = partial != null && !filePacket.getTransferId().isEmpty() && partial.getId().equals(filePacket.getTransferId());
+        if (filePacket.getOffset() > 0 && (!resumed || filePacket.getOffset() > partial.getOffset())) {
+            filesBeingSaved.remove(filePacket.getFileName());
+            logSaveError("Can't resume the file", filePacket.getFileName(), new IOException("Offset " + filePacket.getOffset() + " B was not received before"));
+            return null;
+        }
+        if (partial != null && !resumed) {
+            PartialTransfers.getPartFile(placement.getPath(partial.getDisk()), filePacket.getFileName()).delete();
+            partialTransfers.remove(filePacket.getUserName(), filePacket.getFileName());
+        }
+        int idx;
+        if (resumed) {
+            idx = partial.getDisk();
+            placement.reserve(idx, filePacket.getSize());
+        } else {
+            idx = placement.place(filePacket.getFileName(), filePacket.getSize());
+        }
+        filePacket.attach(idx);
+        File partFile = PartialTransfers.getPartFile(placement.getPath(idx), filePacket.getFileName());
+        try {
+            FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.truncate(filePacket.getOffset());
+            } catch (IOException io) {
+                channel.close();
+                throw io;
+            }
+            if (!filePacket.getTransferId().isEmpty()) {
+                checkpointTransfer(filePacket, filePacket.getOffset());
+                filePacket.setCheckpoint(offset -> checkpointTransfer(filePacket, offset));
+            }
+            if (filePacket.getOffset() > 0) {
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append(new Date())
-                        .append(":\n").append("File saved successfully: ").append("\n\t")
-                        .append(filePacket.getFileName());
-                mainPageController.addLog(Constants.LogType.SUCCESS, stringBuilder.toString());
-                (mainPageController).refreshTree();
+                        .append(":\n").append("Resuming transfer of the file: ").append("\n\t")
+                        .append(filePacket.getFileName()).append(" from ").append(filePacket.getOffset()).append(" B");
+                mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
             }
-        }catch(FileAlreadyExistsOnServerException io){
-            io.log(filePacket.getFileName());
+            return channel;
+        } catch (IOException io) {
+            placement.release(idx, filePacket.getSize());
+            filesBeingSaved.remove(filePacket.getFileName());
+            logSaveError("Can't save the file", filePacket.getFileName(), io);
+            return null;
+        }
+    }
+
+    /**
+     * This method saves provided {@link FilePacket} on {@link Server} workspace, after all its contents were received.
+     * File of interrupted resumable transfer is kept, so the transfer is resumed after client reconnects.
+     * @param filePacket the data package to save on drive
+     */
+    @Override
+    protected void finishSaveFile(FilePacket filePacket){
+        if (filePacket.isDelta()) {
+            finishSaveDelta(filePacket);
+            return;
+        }
+        int idx = (Integer) filePacket.attachment();
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        DiskPlacement placement = controller.getDiskPlacement();
+        PartialTransfers partialTransfers = controller.getPartialTransfers();
+        File fileToSave = new File(placement.getPath(idx), filePacket.getFileName());
+        File partFile = PartialTransfers.getPartFile(placement.getPath(idx), filePacket.getFileName());
+        try {
+            if (filePacket.getFailure() != null) {
+                placement.release(idx, filePacket.getSize());
+                if (partialTransfers.get(filePacket.getUserName(), filePacket.getFileName()) != null) {
+                    logSaveError("Transfer interrupted, it will be resumed", filePacket.getFileName(), filePacket.getFailure());
+                } else {
+                    partFile.delete();
+                    logSaveError("Can't save the file", filePacket.getFileName(), filePacket.getFailure());
+                }
+                return;
+            }
+            try {
+                Files.move(partFile.toPath(), fileToSave.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException io) {
+                partFile.delete();
+                placement.release(idx, filePacket.getSize());
+                logSaveError("Can't save the file", filePacket.getFileName(), io);
+                return;
+            } finally {
+                if (partialTransfers.remove(filePacket.getUserName(), filePacket.getFileName()) != null) {
+                    dumpPartialTransfers();
+                }
+            }
+            addToBlobStore(filePacket.getFileName(), fileToSave);
+            CredentialPacket packet = (((AbstractServerController) mainPageController)).findUserByName(filePacket.getUserName());
+            (((AbstractServerController) mainPageController)).getDisk(idx).putOwnerToFile(filePacket.getFileName(), packet);
+            (((AbstractServerController) mainPageController)).getFileCatalog().put(filePacket.getFileName(), idx);
+            (((AbstractServerController) mainPageController)).addToRuntimeMap(packet, filePacket.getFileName());
+        }
+        finally {
+            filesBeingSaved.remove(filePacket.getFileName());
+        }
+        (mainPageController).setStatusText("File saved successfully");
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(new Date())
+                .append(":\n").append("File saved successfully: ").append("\n\t")
+                .append(filePacket.getFileName());
+        mainPageController.addLog(Constants.LogType.SUCCESS, stringBuilder.toString());
+        (mainPageController).refreshTree();
+    }
+
+    /**
+     * This method opens file next to the file stored on server, which received delta is written to
+     * @param filePacket the packet of delta
+     * @return channel of delta, or <code>null</code> if user doesn't own the file
+     */
+    private FileChannel beginSaveDelta(FilePacket filePacket) {
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        String fileName = filePacket.getFileName();
+        CredentialPacket packet = controller.findUserByName(filePacket.getUserName());
+        int idx = controller.getFileCatalog().getDiskIndex(fileName);
+        try {
+            if (idx < 0 || packet == null || !controller.getListOfFilesForUser(packet).contains(fileName)) {
+                throw new IOException("File is not stored for user " + filePacket.getUserName());
+            }
+            if (!filesBeingSaved.add(fileName)) {
+                throw new IOException("File is already being updated");
+            }
+            filePacket.attach(idx);
+            try {
+                return FileChannel.open(new File(controller.getDiskPlacement().getPath(idx), fileName + ".delta").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException io) {
+                filesBeingSaved.remove(fileName);
+                throw io;
+            }
+        } catch (IOException io) {
+            logSaveError("Can't update the file", fileName, io);
+            return null;
+        }
+    }
+
+    /**
+     * This method rebuilds new version of file stored on server from received delta, and replaces the old version by it.
+     * Old version may be a link to blob shared with other files by {@link BlobStore}, so it's never written in place -
+     * new version is rebuilt into new file, the file is released from its blob and the link is replaced by new version.
+     * @param filePacket the packet of delta
+     */
+    private void finishSaveDelta(FilePacket filePacket) {
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        String fileName = filePacket.getFileName();
+        int idx = (Integer) filePacket.attachment();
+        File file = new File(controller.getDiskPlacement().getPath(idx), fileName);
+        File deltaFile = new File(file.getParentFile(), fileName + ".delta");
+        File newVersion = new File(file.getParentFile(), fileName + ".new");
+        try {
+            if (filePacket.getFailure() != null) {
+                throw filePacket.getFailure();
+            }
+            Files.deleteIfExists(newVersion.toPath());
+            FileDelta.apply(file, deltaFile, newVersion);
+            long oldSize = file.length();
+            controller.getBlobStore().release(fileName);
+            Files.move(newVersion.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            controller.getDiskPlacement().resize(idx, oldSize, file.length());
+        } catch (IOException io) {
+            logSaveError("Can't update the file", fileName, io);
+            return;
+        } finally {
+            deltaFile.delete();
+            newVersion.delete();
+            filesBeingSaved.remove(fileName);
+        }
+        addToBlobStore(fileName, file);
+        mainPageController.setStatusText("File updated successfully");
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(new Date())
+                .append(":\n").append("File updated successfully: ").append("\n\t")
+                .append(fileName).append("\n\t")
+                .append("Received delta: ").append(filePacket.getSize()).append(" B");
+        mainPageController.addLog(Constants.LogType.SUCCESS, stringBuilder.toString());
+        mainPageController.refreshTree();
+    }
+
+    private void logSaveError(String message, String fileName, IOException io) {
+        mainPageController.setStatusText(message);
+        StringBuilder stringBuilder = new StringBuilder();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(outputStream);
+        io.printStackTrace(outStream);
+        stringBuilder.append(new Date())
+                .append(":\n").append(message).append(": ")
+                .append(fileName).append("\n\t")
+                .append(io.getMessage()).append("\n")
+                .append(outStream.toString()).append("\n");
+        mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+    }
+
+    private void checkpointTransfer(FilePacket filePacket, long offset) {
+        ((AbstractServerController) mainPageController).getPartialTransfers().checkpoint(filePacket.getUserName(), filePacket.getFileName(),
+                filePacket.getTransferId(), (Integer) filePacket.attachment(), filePacket.getSize(), offset);
+        dumpPartialTransfers();
+    }
+
+    private void dumpPartialTransfers() {
+        try {
+            ((AbstractServerController) mainPageController).getPartialTransfers().dump();
+        } catch (IOException io) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't save index of interrupted transfers").append("\n\t")
+                    .append(io.getMessage()).append("\n");
+            mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+    }
+
+    /**
+     * This method sends offsets of demanded files, which transfers were interrupted before, so sender resumes them instead of sending whole files.
+     * Every file is described by name, id of transfer and number of received bytes.
+     * @param command the demand of transfer
+     */
+    private void offerOffsets(MessageToSend command) {
+        PartialTransfers partialTransfers = ((AbstractServerController) mainPageController).getPartialTransfers();
+        String userName = command.getUser().getUserName();
+        ArrayList<Object> offsets = new ArrayList<>();
+        for (Object item : command.getContents()) {
+            String fileName = item instanceof File ? ((File) item).getName() : item instanceof String ? (String) item : "";
+            PartialTransfers.Transfer partial = partialTransfers.get(userName, fileName);
+            if (partial == null || partial.getOffset() == 0 || filesBeingSaved.contains(fileName)) continue;
+            offsets.add(fileName);
+            offsets.add(partial.getId());
+            offsets.add(String.valueOf(partial.getOffset()));
+        }
+        if (!offsets.isEmpty()) {
+            MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_OFFSETS);
+            newMessage.addContents(offsets);
+            getNotificationService().sendObject(newMessage);
+        }
+    }
+
+    private void addToBlobStore(String fileName, File file) {
+        try {
+            ((AbstractServerController) mainPageController).getBlobStore().add(fileName, file);
+        } catch (IOException io) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't deduplicate the file: ")
+                    .append(fileName).append("\n\t")
+                    .append(io.getMessage()).append("\n");
+            mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
         }
     }
 
+    /**
+     * This method answers demand of transfer - sends signatures and offsets of demanded files, then lets sender start the transfer
+     * @param command the demand of transfer
+     */
+    private void answerDemand(MessageToSend command) {
+        if (isClosed()) return;
+        offerSignatures(command);
+        offerOffsets(command);
+        MessageToSend msg = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE);
+        msg.addContents(command.getContents());
+        getNotificationService().sendObject(msg);
+    }
+
+    /**
+     * This method sends signatures of demanded files, which user already owns on server, before the transfer starts.
+     * Sender replies with deltas of these files instead of their contents.
+     * @param command the demand of transfer
+     */
+    private void offerSignatures(MessageToSend command) {
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        Set<String> owned = controller.getListOfFilesForUser(controller.findUserByName(command.getUser().getUserName()));
+        ArrayList<Object> signatures = new ArrayList<>();
+        for (Object item : command.getContents()) {
+            String fileName = item instanceof File ? ((File) item).getName() : item instanceof String ? (String) item : "";
+            String dir = owned.contains(fileName) ? controller.findFileInServer(fileName) : "";
+            if (dir.equals("")) continue;
+            try {
+                String encoded = FileDelta.Signatures.compute(new File(dir, fileName)).encode();
+                signatures.add(fileName);
+                signatures.add(encoded);
+            }
+            catch (IOException io) {
+                // file is received in full
+            }
+        }
+        if (!signatures.isEmpty()) {
+            MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.FILE_SIGNATURES);
+            newMessage.addContents(signatures);
+            getNotificationService().sendObject(newMessage);
+        }
+    }
+
+    /**
+     * This method creates file of stored contents, whose digest was offered by user instead of the contents.
+     * Knowing digest doesn't prove access to contents, so only contents of files, which user already owns, are linked.
+     * Other files are uploaded and deduplicated by {@link BlobStore#add(String, File)} after they are received.
+     */
+    private boolean linkStoredContents(CredentialPacket packet, String fileName, String digest) {
+        AbstractServerController controller = (AbstractServerController) mainPageController;
+        BlobStore blobStore = controller.getBlobStore();
+        if (packet == null || packet.isEmpty() || fileName.isEmpty() || !controller.findFileInServer(fileName).equals("")
+                || !blobStore.isReferencedBy(digest, controller.getListOfFilesForUser(packet))) {
+            return false;
+        }
+        DiskPlacement placement = controller.getDiskPlacement();
+        long size = blobStore.getSize(digest);
+        int idx = placement.place(fileName, size);
+        try {
+            if (!blobStore.link(fileName, digest, new File(placement.getPath(idx), fileName))) {
+                placement.release(idx, size);
+                return false;
+            }
+        } catch (IOException io) {
+            placement.release(idx, size);
+            return false;
+        }
+        controller.getDisk(idx).putOwnerToFile(fileName, packet);
+        controller.getFileCatalog().put(fileName, idx);
+        controller.addToRuntimeMap(packet, fileName);
+        return true;
+    }
+
     /**
      * This method sends provided list of files to connected user
      * @param data the entry of map that contains a user's credentials as a <code>key</code> and list of file names as a <code>value</code>
@@ -248,16 +621,18 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
                 StringBuilder builder = new StringBuilder();
                 builder.append(new Date()).append(":\n").append("Can't find the file in server: \n\t").append(file.getName());
                 (mainPageController).addLog(Constants.LogType.ERROR, builder.toString());
+                getFileService().sendObject(null);
                 continue;
             }
+            FilePacket packet = null;
             try {
-                FilePacket packet = new FilePacket(data.getKey().getUserName(), file);
-                getFileService().sendObject(packet);
+                packet = new FilePacket(data.getKey().getUserName(), file);
                 ++filesSent;
             }
             catch(IOException io){
                 io.printStackTrace();
             }
+            getFileService().sendObject(packet);
         }
         boolean success = filesSent == data.getValue().size();
         mainPageController.setStatusText(success ? "All files were sent" : "Files were sent partially");
@@ -266,6 +641,18 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
         mainPageController.addLog(Constants.LogType.INFO, builder.toString());
     }
 
+    private void demandTransferOfFiles() {
+        if(filesToTransfer.getValue().size() > 0) {
+            MessageToSend newMessage = new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.TRANSFER_FILE_DEMAND);
+            newMessage.addContents(filesToTransfer.getValue().stream().map(string -> (Object) string).collect(Collectors.toCollection(ArrayList::new)));
+            getNotificationService().sendObject(newMessage);
+            mainPageController.setStatusText("Sending files");
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date()).append(":\n").append("Sending files in progress...\n");
+            mainPageController.addLog(Constants.LogType.INFO, stringBuilder.toString());
+        }
+    }
+
     private void determineIfThereIsSomethingToShare(boolean value) {
         isSomethingToShare = value;
     }
@@ -273,7 +660,7 @@ public class CommunicationServiceThreadHandler extends ServicesHandler {
     private void initCommunication(){
         while(true){
             if(getNotificationService() != null){
-                processObject((new MessageToSend(remoteEndPoint, MessageToSend.COMMAND_TYPE.SEND_LIST_OF_FILES)));
+                getNotificationService().sendObject(new MessageToSend(getLocalEndPoint(), MessageToSend.COMMAND_TYPE.SYNC_MANIFEST));
                 break;
             }
         }
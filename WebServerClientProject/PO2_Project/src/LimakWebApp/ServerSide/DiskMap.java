@@ -2,26 +2,51 @@ package LimakWebApp.ServerSide;
 
 import LimakWebApp.DataPackets.CredentialPacket;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * <h1>DiskMap</h1>
- * This class is used by {@link MainPageController} to show dependencies between users and files stored on server
+ * This class is used by {@link MainPageController} to show dependencies between users and files stored on server.
+ * Besides map of files and their owners it keeps inverted index of owners and their files, updated together with the map.
+ * Owners of file are kept in concurrent set and every change of file is performed by {@link ConcurrentHashMap#compute},
+ * so operations on different files never wait for each other. If {@link ChangeJournal} is set, every change is appended to it.
+ * Every change is also recorded in {@link UserManifests} of owner, if they are set. Only the map and the index are changed inside
+ * {@link ConcurrentHashMap#compute}, the journal, manifests and files of disk are written after it returns, so no I/O holds the bin of the map;
+ * order of changes of the same owner is kept by sequences of manifests reserved inside compute.
+ * Every change increments modification counter, which tells if disk has to be persisted again.
+ * If {@link BinaryCatalog} is set as base, files of disk are read from the catalog and the map keeps only files changed later,
+ * owners of file are copied from the catalog when the file is changed for the first time, removed files are remembered until next catalog.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   12.08.2019
  */
 public class DiskMap {
 
-    private final Object lock= new Object();
-    private volatile ConcurrentHashMap<String, ArrayList<CredentialPacket>> dataMap;
+    private volatile ConcurrentHashMap<String, Set<CredentialPacket>> dataMap;
+    private final ConcurrentHashMap<CredentialPacket, Set<String>> ownerIndex = new ConcurrentHashMap<>();
     private String path;
+    private volatile ChangeJournal journal;
+    private volatile UserManifests manifests;
+    private int diskIndex = -1;
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile BinaryCatalog base;
+    private final Set<String> removedFromBase = ConcurrentHashMap.newKeySet();
 
     /**
      * This method returns the list of files' names that belong to given user.
@@ -29,18 +54,25 @@ public class DiskMap {
      * @return {@code ArrayList<String>}
      */
     public ArrayList<String> getListOfFilesForGivenUser(CredentialPacket keyUser){
-        return dataMap.entrySet().stream()
-                .filter(fileWithOwnersArrayListEntry -> fileWithOwnersArrayListEntry.getValue().stream()
-                .anyMatch(owner -> owner.equals(keyUser)))
-                .map(fileWithOwnersArrayListEntry -> fileWithOwnersArrayListEntry.getKey())
-                .collect(Collectors.toCollection(ArrayList::new));
+        if(keyUser == null) return new ArrayList<>();
+        Set<String> files = ownerIndex.get(keyUser);
+        ArrayList<String> rV = files == null ? new ArrayList<>() : new ArrayList<>(files);
+        BinaryCatalog base = this.base;
+        if(base != null){
+            for(String fileName : base.getFilesOfOwner(keyUser, diskIndex)){
+                if(!dataMap.containsKey(fileName) && !removedFromBase.contains(fileName)){
+                    rV.add(fileName);
+                }
+            }
+        }
+        return rV;
     }
 
     /**
-     * This method returns the map of disk.
-     * @return {@code ConcurrentHashMap<String, ArrayList<CredentialPacket>>}
+     * This method returns the map of disk. If base catalog is set, the map contains only files changed since the catalog was written.
+     * @return {@code ConcurrentHashMap<String, Set<CredentialPacket>>}
      */
-    public ConcurrentHashMap<String, ArrayList<CredentialPacket>> getMap(){
+    public ConcurrentHashMap<String, Set<CredentialPacket>> getMap(){
         return dataMap;
     }
 
@@ -54,38 +86,43 @@ public class DiskMap {
     }
 
     /**
-     * This method puts given user to list of owners of given file and returns <code>true</code> if succeeded, otherwise <code>false</code>
+     * This method puts given user to set of owners of given file and returns <code>true</code> if file was not present in map before, otherwise <code>false</code>
      * @param fileName - the name of file
      * @param owner - the owner of file
      * @return boolean
      */
-    public synchronized boolean putOwnerToFile(String fileName, CredentialPacket owner) {
-        boolean rV = false;
-        synchronized (lock) {
-            if (dataMap.isEmpty()) {
-                ArrayList<CredentialPacket> items = new ArrayList<>();
-                items.add(owner);
-                dataMap.put(fileName, items);
-            }
-            for (Map.Entry<String, ArrayList<CredentialPacket>> entry : dataMap.entrySet()) {
-                if (entry.getKey().equals(fileName)) {
-                    if (!entry.getValue().contains(owner)) {
-                        entry.getValue().add(owner);
-                        rV = true;
-                    }
-                    else {
-                        rV = true;
-                    }
-                    break;
+    public boolean putOwnerToFile(String fileName, CredentialPacket owner) {
+        boolean[] created = {false};
+        boolean[] added = {false};
+        long[] sequence = {0};
+        ChangeJournal journal = this.journal;
+        UserManifests manifests = this.manifests;
+        if (journal != null) journal.beginChange();
+        try {
+            dataMap.compute(fileName, (name, owners) -> {
+                if (owners == null) {
+                    owners = copyFromBase(name);
                 }
+                if (owners == null) {
+                    owners = ConcurrentHashMap.newKeySet();
+                    created[0] = true;
+                }
+                if (owners.add(owner)) {
+                    indexOwner(owner, name);
+                    added[0] = true;
+                    if (manifests != null) sequence[0] = manifests.reserve(owner);
+                }
+                return owners;
+            });
+            if (added[0]) {
+                if (journal != null) journal.ownerAdded(diskIndex, fileName, owner, sequence[0]);
+                if (manifests != null) manifests.publish(owner, sequence[0], fileName, true);
+                modifications.incrementAndGet();
             }
-            if (!rV) {
-                ArrayList<CredentialPacket> items = new ArrayList<>();
-                items.add(owner);
-                dataMap.put(fileName, items);
-            }
+        } finally {
+            if (journal != null) journal.endChange();
         }
-        return !rV;
+        return created[0];
     }
 
     /**
@@ -94,51 +131,306 @@ public class DiskMap {
      * @return boolean
      */
     public boolean checkIfFileExists(String fileName){
-        return dataMap.keySet().stream().anyMatch(fName->fName.equals(fileName));
+        return fileName != null && (dataMap.containsKey(fileName) || isInBase(fileName));
     }
 
     /**
-     * This method removes given user from list of owners of given file and returns <code>true</code> if succeeded, otherwise <code>false</code>
+     * This method removes given user from set of owners of given file and returns <code>true</code> if succeeded, otherwise <code>false</code>.
+     * If the user was the last owner, file is removed from map and deleted from disk, unless it got new owner in the meantime.
      * @param fileName - the name of file
      * @param owner - the owner of file
      * @return boolean
      */
     public boolean removeFileOwner(String fileName, CredentialPacket owner){
-        boolean found = false;
-        for(Map.Entry<String, ArrayList<CredentialPacket>> entry : dataMap.entrySet()){
-            if(entry.getKey().equals(fileName)){
-                for(Iterator<CredentialPacket> iter = entry.getValue().iterator(); iter.hasNext();){
-                    CredentialPacket packet = iter.next();
-                    if(packet.equals(owner)){
-                        iter.remove();
-                        found = true;
-                        break;
+        return removeFileOwner(fileName, owner, true);
+    }
+
+    boolean removeFileOwner(String fileName, CredentialPacket owner, boolean deleteFile){
+        if(fileName == null || owner == null) return false;
+        boolean[] found = {false};
+        boolean[] emptied = {false};
+        long[] sequence = {0};
+        ChangeJournal journal = this.journal;
+        UserManifests manifests = this.manifests;
+        if (journal != null) journal.beginChange();
+        try {
+            dataMap.compute(fileName, (name, owners) -> {
+                if (owners == null) {
+                    owners = copyFromBase(name);
+                    if (owners == null) {
+                        return null;
+                    }
+                }
+                if (owners.remove(owner)) {
+                    unindexOwner(owner, name);
+                    found[0] = true;
+                    if (manifests != null) sequence[0] = manifests.reserve(owner);
+                    if (owners.isEmpty()) {
+                        if (base != null && base.getDiskIndex(name) == diskIndex) {
+                            removedFromBase.add(name);
+                        }
+                        emptied[0] = true;
+                        return null;
                     }
                 }
+                return owners;
+            });
+            if (found[0]) {
+                if (journal != null) journal.ownerRemoved(diskIndex, fileName, owner, sequence[0]);
+                if (manifests != null) manifests.publish(owner, sequence[0], fileName, false);
+                if (emptied[0] && deleteFile && !checkIfFileExists(fileName)) {
+                    File file = new File(path + "\\" + fileName);
+                    file.delete();
+                }
+                modifications.incrementAndGet();
+            }
+        } finally {
+            if (journal != null) journal.endChange();
+        }
+        return found[0];
+    }
 
+    /**
+     * This method returns the path of disk.
+     * @return {@link String}
+     */
+    public String getPath(){
+        return path;
+    }
+
+    /**
+     * This method returns number of changes of disk. Counter is incremented after the change is visible in map,
+     * so snapshot taken after reading the counter contains all changes it counts.
+     * @return long
+     */
+    public long getModificationCount(){
+        return modifications.get();
+    }
+
+    /**
+     * This method returns copy of the map of disk, taken without blocking changes of disk.
+     * @return {@code HashMap<String, ArrayList<CredentialPacket>>}
+     */
+    public HashMap<String, ArrayList<CredentialPacket>> snapshot(){
+        HashMap<String, ArrayList<CredentialPacket>> rV = new HashMap<>(dataMap.size() * 2);
+        forEachFile((fileName, owners) -> rV.put(fileName, new ArrayList<>(owners)));
+        return rV;
+    }
+
+    /**
+     * This method performs given action for every file of disk which has any owner, files of base catalog included.
+     * Files are visited without blocking changes of disk, owners of file may be changed while action is performed.
+     * @param action action, which receives name and owners of file
+     */
+    public void forEachFile(BiConsumer<String, Collection<CredentialPacket>> action){
+        for (Map.Entry<String, Set<CredentialPacket>> entry : dataMap.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                action.accept(entry.getKey(), entry.getValue());
             }
-            if(found){
-                if(entry.getValue().size() == 0){
-                    File file= new File(path +"\\"+fileName);
-                    file.delete();
+        }
+        BinaryCatalog base = this.base;
+        if (base != null) {
+            base.forEachFile(diskIndex, (fileName, owners) -> {
+                if (!dataMap.containsKey(fileName) && !removedFromBase.contains(fileName) && !owners.isEmpty()) {
+                    action.accept(fileName, owners);
                 }
-                break;
+            });
+        }
+    }
+
+    /**
+     * Sets catalog, which files of disk are read from. Map of disk is cleared, so base should be set instead of reading control file,
+     * before journal is replayed.
+     * @param base catalog of server's disks
+     * @param diskIndex index of this disk on server
+     */
+    public void setBase(BinaryCatalog base, int diskIndex){
+        this.diskIndex = diskIndex;
+        removedFromBase.clear();
+        install(new ConcurrentHashMap<>());
+        this.base = base;
+    }
+
+    /**
+     * This method returns catalog, which files of disk are read from, or <code>null</code> if it's not set
+     * @return {@link BinaryCatalog}
+     */
+    public BinaryCatalog getBase(){
+        return base;
+    }
+
+    /**
+     * This method returns read-only view of files of base catalog, which were removed from disk since the catalog was written
+     * @return {@code Set<String>}
+     */
+    public Set<String> getRemovedFromBase(){
+        return Collections.unmodifiableSet(removedFromBase);
+    }
+
+    private boolean isInBase(String fileName){
+        BinaryCatalog base = this.base;
+        return base != null && !removedFromBase.contains(fileName) && base.getDiskIndex(fileName) == diskIndex;
+    }
+
+    private Set<CredentialPacket> copyFromBase(String fileName){
+        if (!isInBase(fileName)) {
+            return null;
+        }
+        Set<CredentialPacket> owners = ConcurrentHashMap.newKeySet();
+        for (CredentialPacket owner : base.getOwners(fileName)) {
+            if (owners.add(owner)) {
+                indexOwner(owner, fileName);
             }
         }
-        return found;
+        return owners.isEmpty() ? null : owners;
+    }
+
+    /**
+     * Sets journal, which every change of disk is appended to. Journal should be set after the map is loaded and journal replayed.
+     * @param journal journal to set, or <code>null</code> to stop journaling
+     * @param diskIndex index of this disk on server
+     */
+    public void setJournal(ChangeJournal journal, int diskIndex){
+        this.diskIndex = diskIndex;
+        this.journal = journal;
     }
 
     /**
-     * Sets disk's map
+     * Sets manifests, which every change of owners of files is recorded in
+     * @param manifests manifests to set, or <code>null</code> to stop recording
+     */
+    public void setManifests(UserManifests manifests){
+        this.manifests = manifests;
+    }
+
+    /**
+     * Sets disk's map, base catalog is no longer used
      * @param map Map to set
      */
-    public void setDataMap(ConcurrentHashMap<String, ArrayList<CredentialPacket>> map){
-        if(map != null) {
-            dataMap = map;
+    public void setDataMap(Map<String, ? extends Collection<CredentialPacket>> map){
+        ConcurrentHashMap<String, Set<CredentialPacket>> newMap = new ConcurrentHashMap<>();
+        if (map != null) {
+            for (Map.Entry<String, ? extends Collection<CredentialPacket>> entry : map.entrySet()) {
+                if (entry.getValue() == null || entry.getValue().isEmpty()) continue;
+                Set<CredentialPacket> owners = ConcurrentHashMap.newKeySet();
+                owners.addAll(entry.getValue());
+                newMap.put(entry.getKey(), owners);
+            }
         }
-        else{
-            dataMap = new ConcurrentHashMap<>();
+        install(newMap);
+    }
+
+    /**
+     * Sets disk's map read from JSON control file token by token, without building intermediate tree of JSON.
+     * Owners are replaced by instances registered in {@code listOfClients}, owners not registered there are shared between files,
+     * so every user is kept in memory once.
+     * <pre>
+     * {"file name":[{"userEmail":"...","userName":"...","userFolderPath":"..."}, ...], ...}
+     * </pre>
+     * @param reader reader of control file
+     * @param listOfClients registered users
+     * @throws IOException if file can't be read or is not valid JSON control file, map of disk is not changed then
+     */
+    public void readContents(Reader reader, ListOfClients listOfClients) throws IOException {
+        try {
+            install(parseContents(new JsonReader(reader), listOfClients));
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid control file of disk " + path, e);
         }
     }
 
+    private static ConcurrentHashMap<String, Set<CredentialPacket>> parseContents(JsonReader jsonReader, ListOfClients listOfClients) throws IOException {
+        ConcurrentHashMap<String, Set<CredentialPacket>> newMap = new ConcurrentHashMap<>();
+        HashMap<CredentialPacket, CredentialPacket> unregistered = new HashMap<>();
+        JsonToken first;
+        try {
+            first = jsonReader.peek();
+        } catch (EOFException empty) {
+            return newMap;
+        }
+        if (first == JsonToken.END_DOCUMENT) {
+            return newMap;
+        }
+        if (first == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return newMap;
+        }
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String fileName = jsonReader.nextName();
+            Set<CredentialPacket> owners = ConcurrentHashMap.newKeySet();
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                String email = null, name = null, folder = null;
+                jsonReader.beginObject();
+                while (jsonReader.hasNext()) {
+                    String field = jsonReader.nextName();
+                    if (jsonReader.peek() == JsonToken.NULL) {
+                        jsonReader.nextNull();
+                        continue;
+                    }
+                    switch (field) {
+                        case "userEmail":
+                            email = jsonReader.nextString();
+                            break;
+                        case "userName":
+                            name = jsonReader.nextString();
+                            break;
+                        case "userFolderPath":
+                            folder = jsonReader.nextString();
+                            break;
+                        default:
+                            jsonReader.skipValue();
+                    }
+                }
+                jsonReader.endObject();
+                if (email == null || name == null || folder == null) continue;
+                CredentialPacket owner = new CredentialPacket(email, name, folder);
+                CredentialPacket registered = listOfClients == null ? null : listOfClients.getByName(name);
+                if (owner.equals(registered)) {
+                    owner = registered;
+                } else {
+                    CredentialPacket known = unregistered.putIfAbsent(owner, owner);
+                    owner = known != null ? known : owner;
+                }
+                owners.add(owner);
+            }
+            jsonReader.endArray();
+            if (!owners.isEmpty()) {
+                newMap.put(fileName, owners);
+            }
+        }
+        jsonReader.endObject();
+        return newMap;
+    }
+
+    private void install(ConcurrentHashMap<String, Set<CredentialPacket>> newMap){
+        base = null;
+        removedFromBase.clear();
+        ownerIndex.clear();
+        dataMap = newMap;
+        modifications.incrementAndGet();
+        for (Map.Entry<String, Set<CredentialPacket>> entry : newMap.entrySet()) {
+            for (CredentialPacket owner : entry.getValue()) {
+                indexOwner(owner, entry.getKey());
+            }
+        }
+    }
+
+    private void indexOwner(CredentialPacket owner, String fileName){
+        ownerIndex.compute(owner, (key, files) -> {
+            if (files == null) {
+                files = ConcurrentHashMap.newKeySet();
+            }
+            files.add(fileName);
+            return files;
+        });
+    }
+
+    private void unindexOwner(CredentialPacket owner, String fileName){
+        ownerIndex.computeIfPresent(owner, (key, files) -> {
+            files.remove(fileName);
+            return files.isEmpty() ? null : files;
+        });
+    }
 }
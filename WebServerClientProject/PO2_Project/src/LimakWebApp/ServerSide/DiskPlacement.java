@@ -0,0 +1,235 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.CredentialPacket;
+
+import java.io.File;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>DiskPlacement</h1>
+ * This class is used by {@link CommunicationServiceThreadHandler} to choose disk of server, which new file is saved on.
+ * Number of files and bytes stored on every disk are counted once at start up and updated whenever file is saved or removed,
+ * so disk is chosen without listing of directories. Disk is chosen by one of {@link Strategy}s.
+ * Disk, which has {@link BinaryCatalog} as base, is counted from the catalog, only files changed since the catalog was written are measured.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class DiskPlacement {
+
+    /**
+     * Indicates the way of choosing disk for new file
+     */
+    public enum Strategy{
+        /**
+         * Disk which stores the least bytes, the least files if bytes are equal
+         */
+        LEAST_BYTES,
+        /**
+         * Disks in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * Disk determined by hash of file's name
+         */
+        HASH_BY_NAME
+    }
+
+    private final String[] diskPaths;
+    private final AtomicLong[] bytes;
+    private final AtomicInteger[] files;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Strategy strategy;
+
+    /**
+     * Constructor of DiskPlacement
+     * @param diskPaths paths of disks of server, ordered by index of disk
+     * @param strategy the way of choosing disk
+     */
+    public DiskPlacement(String[] diskPaths, Strategy strategy) {
+        if (diskPaths.length == 0) {
+            throw new IllegalArgumentException("No disks to place files on");
+        }
+        this.diskPaths = diskPaths.clone();
+        this.strategy = strategy;
+        bytes = new AtomicLong[diskPaths.length];
+        files = new AtomicInteger[diskPaths.length];
+        for (int i = 0; i < diskPaths.length; ++i) {
+            bytes[i] = new AtomicLong();
+            files[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * This method counts files and bytes stored on disks, every directory of disk is listed one time.
+     * Files of interrupted transfers are not counted, they are reserved again when transfer is resumed.
+     * @param controlFileName name of control file of disk, which is not counted
+     */
+    public void build(String controlFileName) {
+        for (int i = 0; i < diskPaths.length; ++i) {
+            count(i, controlFileName);
+        }
+    }
+
+    /**
+     * This method counts files and bytes stored on given disks. Disk, which has base catalog, is counted from the catalog
+     * and its files changed since the catalog was written, other disks are listed by {@link #build(String)}.
+     * Journal has to be replayed before, so changes of disks are known.
+     * @param disks disks of server, ordered by index of disk
+     * @param controlFileName name of control file of disk, which is not counted
+     */
+    public void build(List<DiskMap> disks, String controlFileName) {
+        for (int i = 0; i < diskPaths.length; ++i) {
+            DiskMap disk = i < disks.size() ? disks.get(i) : null;
+            BinaryCatalog base = disk == null ? null : disk.getBase();
+            if (base == null) {
+                count(i, controlFileName);
+                continue;
+            }
+            long diskBytes = base.getBytes(i);
+            int diskFiles = base.getFileCount(i);
+            Set<String> removed = disk.getRemovedFromBase();
+            for (String fileName : removed) {
+                diskBytes -= Math.max(0, base.getSize(fileName));
+                --diskFiles;
+            }
+            for (Map.Entry<String, Set<CredentialPacket>> entry : disk.getMap().entrySet()) {
+                if (!removed.contains(entry.getKey()) && base.getDiskIndex(entry.getKey()) == i) {
+                    diskBytes -= Math.max(0, base.getSize(entry.getKey()));
+                    --diskFiles;
+                }
+                if (!entry.getValue().isEmpty()) {
+                    diskBytes += new File(diskPaths[i], entry.getKey()).length();
+                    ++diskFiles;
+                }
+            }
+            bytes[i].set(Math.max(0, diskBytes));
+            files[i].set(Math.max(0, diskFiles));
+        }
+    }
+
+    private void count(int disk, String controlFileName) {
+        long diskBytes = 0;
+        int diskFiles = 0;
+        File[] list = new File(diskPaths[disk]).listFiles();
+        if (list != null) {
+            for (File file : list) {
+                if (file.isFile() && !file.getName().equals(controlFileName) && !file.getName().startsWith(controlFileName + ".") && !file.getName().endsWith(".part")) {
+                    diskBytes += file.length();
+                    ++diskFiles;
+                }
+            }
+        }
+        bytes[disk].set(diskBytes);
+        files[disk].set(diskFiles);
+    }
+
+    /**
+     * This method chooses disk for new file and reserves its size on the disk.
+     * If file is not saved, reservation has to be cancelled by {@link #release(int, long)}.
+     * @param fileName name of new file
+     * @param size size of new file in bytes
+     * @return index of chosen disk
+     */
+    public int place(String fileName, long size) {
+        int disk;
+        switch (strategy) {
+            case ROUND_ROBIN:
+                disk = Math.floorMod(next.getAndIncrement(), diskPaths.length);
+                break;
+            case HASH_BY_NAME:
+                disk = Math.floorMod(fileName.hashCode(), diskPaths.length);
+                break;
+            default:
+                lock.lock();
+                try {
+                    disk = 0;
+                    for (int i = 1; i < diskPaths.length; ++i) {
+                        long difference = bytes[i].get() - bytes[disk].get();
+                        if (difference < 0 || (difference == 0 && files[i].get() < files[disk].get())) {
+                            disk = i;
+                        }
+                    }
+                    reserve(disk, size);
+                } finally {
+                    lock.unlock();
+                }
+                return disk;
+        }
+        reserve(disk, size);
+        return disk;
+    }
+
+    /**
+     * This method reserves size of file on given disk, e.g. when interrupted transfer of file is resumed on disk chosen before.
+     * If file is not saved, reservation has to be cancelled by {@link #release(int, long)}.
+     * @param disk index of disk
+     * @param size size of file in bytes
+     */
+    public void reserve(int disk, long size) {
+        bytes[disk].addAndGet(Math.max(0, size));
+        files[disk].incrementAndGet();
+    }
+
+    /**
+     * This method subtracts file removed from disk, or file which was placed on disk but not saved
+     * @param disk index of disk
+     * @param size size of file in bytes
+     */
+    public void release(int disk, long size) {
+        bytes[disk].addAndGet(-Math.max(0, size));
+        files[disk].decrementAndGet();
+    }
+
+    /**
+     * This method updates number of bytes of disk, after file stored on it was replaced by its new version
+     * @param disk index of disk
+     * @param oldSize size of replaced file in bytes
+     * @param newSize size of new version of file in bytes
+     */
+    public void resize(int disk, long oldSize, long newSize) {
+        bytes[disk].addAndGet(Math.max(0, newSize) - Math.max(0, oldSize));
+    }
+
+    /**
+     * This method returns the path of disk of given index
+     * @param disk index of disk
+     * @return {@link String}
+     */
+    public String getPath(int disk) {
+        return diskPaths[disk];
+    }
+
+    /**
+     * This method returns number of bytes stored on disk of given index
+     * @param disk index of disk
+     * @return long
+     */
+    public long getBytes(int disk) {
+        return bytes[disk].get();
+    }
+
+    /**
+     * This method returns number of files stored on disk of given index
+     * @param disk index of disk
+     * @return int
+     */
+    public int getFileCount(int disk) {
+        return files[disk].get();
+    }
+
+    /**
+     * This method returns the way of choosing disk
+     * @return {@link Strategy}
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+}
@@ -0,0 +1,145 @@
+package LimakWebApp.ServerSide;
+
+import java.io.File;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>FileCatalog</h1>
+ * This class is used by {@link MainPageController} to find disk of server, which stores file of given name.
+ * Catalog is built once at start up from {@link DiskMap}s and from listing of disks' directories,
+ * later it is updated whenever file is saved or removed, so the location of file is found without listing of directories.
+ * If {@link BinaryCatalog} is set as base, files found in it are not copied into catalog, they are looked up in the mapped file,
+ * and directories are not listed at all.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class FileCatalog {
+
+    private final ConcurrentHashMap<String, Integer> locations = new ConcurrentHashMap<>();
+    private final String[] diskPaths;
+    private final Set<String> removedFromBase = ConcurrentHashMap.newKeySet();
+    private volatile BinaryCatalog base;
+
+    /**
+     * Constructor of FileCatalog
+     * @param diskPaths paths of disks of server, ordered by index of disk
+     */
+    public FileCatalog(String[] diskPaths) {
+        this.diskPaths = diskPaths.clone();
+    }
+
+    /**
+     * This method fills catalog with files of given disks. Files described by {@link DiskMap}s are put first,
+     * then every directory of disk is listed one time, to find files which are stored on disk without any owner.
+     * If base catalog is set, only files changed since the catalog was written are put and directories are not listed.
+     * @param disks disks of server, ordered by index of disk
+     * @param controlFileName name of control file of disk, which is not put into catalog
+     */
+    public void build(List<DiskMap> disks, String controlFileName) {
+        locations.clear();
+        removedFromBase.clear();
+        BinaryCatalog base = this.base;
+        for (int i = 0; i < disks.size(); ++i) {
+            DiskMap disk = disks.get(i);
+            if (disk == null || disk.getMap() == null) continue;
+            for (String fileName : disk.getMap().keySet()) {
+                locations.putIfAbsent(fileName, i);
+            }
+            if (base != null) {
+                removedFromBase.addAll(disk.getRemovedFromBase());
+            }
+        }
+        if (base != null) {
+            return;
+        }
+        for (int i = 0; i < diskPaths.length; ++i) {
+            String[] files = new File(diskPaths[i]).list();
+            if (files == null) continue;
+            for (String fileName : files) {
+                if (!fileName.equals(controlFileName) && new File(diskPaths[i], fileName).isFile()) {
+                    locations.putIfAbsent(fileName, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets catalog, which is searched for files not found in this catalog. Base should be set before catalog is built.
+     * @param base catalog of server's disks, or <code>null</code>
+     */
+    public void setBase(BinaryCatalog base) {
+        this.base = base;
+    }
+
+    /**
+     * This method returns the path of disk which stores given file, or empty string if file is not on server
+     * @param fileName name of file to find
+     * @return {@link String}
+     */
+    public String find(String fileName) {
+        int idx = getDiskIndex(fileName);
+        return idx < 0 ? "" : diskPaths[idx];
+    }
+
+    /**
+     * This method returns the index of disk which stores given file, or <code>-1</code> if file is not on server
+     * @param fileName name of file to find
+     * @return int
+     */
+    public int getDiskIndex(String fileName) {
+        if (fileName == null) return -1;
+        Integer idx = locations.get(fileName);
+        if (idx != null) return idx;
+        BinaryCatalog base = this.base;
+        return base == null || removedFromBase.contains(fileName) ? -1 : base.getDiskIndex(fileName);
+    }
+
+    /**
+     * This method puts location of saved file into catalog
+     * @param fileName name of saved file
+     * @param disk index of disk which stores the file
+     */
+    public void put(String fileName, int disk) {
+        if (disk < 0 || disk >= diskPaths.length) {
+            throw new IndexOutOfBoundsException("Invalid disk index: " + disk);
+        }
+        locations.put(fileName, disk);
+        removedFromBase.remove(fileName);
+    }
+
+    /**
+     * This method removes file from catalog
+     * @param fileName name of removed file
+     * @return <code>true</code> if file was in catalog
+     */
+    public boolean remove(String fileName) {
+        boolean rV = locations.remove(fileName) != null;
+        BinaryCatalog base = this.base;
+        if (base != null && base.getDiskIndex(fileName) >= 0) {
+            rV |= removedFromBase.add(fileName);
+        }
+        return rV;
+    }
+
+    /**
+     * This method returns number of files in catalog, files of base catalog are not counted
+     * @return int
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * This method returns read-only view of catalog, file name mapped to index of disk, files of base catalog are not included
+     * @return {@code Map<String, Integer>}
+     */
+    public Map<String, Integer> getLocations() {
+        return Collections.unmodifiableMap(locations);
+    }
+}
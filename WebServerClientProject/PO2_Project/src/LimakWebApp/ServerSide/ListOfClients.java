@@ -7,36 +7,167 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <h1>ListOfClients</h1>
- * This class is used by {@link MainPageController} manage users registered on service
+ * This class is used by {@link MainPageController} manage users registered on service.
+ * Registered users are indexed by name, email and path of directory, every one of these is unique on server,
+ * so registration and verification of credentials need only few lookups instead of comparing with every user.
+ * If {@link ChangeJournal} is set, registration of every new user is appended to it.
+ * Registration and removal of user increment modification counter, changes of user's state don't.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   23.07.2019
  */
 public class ListOfClients extends ConcurrentHashMap<CredentialPacket, Boolean>  {
 
+    private final ConcurrentHashMap<String, CredentialPacket> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CredentialPacket> byEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CredentialPacket> byPath = new ConcurrentHashMap<>();
+    private transient volatile ChangeJournal journal;
+    private final AtomicLong modifications = new AtomicLong();
+
     /**
-     * Puts key and value into map
+     * Puts key and value into map. If {@code C} conflicts with already registered user, the map is not changed.
      * @param C key {@link CredentialPacket}
      * @param B value boolean
      * @return {@link Boolean}
      */
     @Override
-    public Boolean put(CredentialPacket C, Boolean B){
-        if(C != null && this.size() == 0){
-            return super.put(C,B);
+    public synchronized Boolean put(CredentialPacket C, Boolean B){
+        int verdict = verify(C);
+        if(verdict == 0){
+            return super.replace(C,B);
         }
-        for(Entry<CredentialPacket, Boolean> e : this.entrySet()){
-            if(e.getKey().compareTo(C) != 9 && e.getKey().compareTo(C) != 0){
-                return false;
-            }
-            else if(e.getKey().compareTo(C) == 0){
-                return super.replace(C,B);
+        if(verdict != 9){
+            return false;
+        }
+        ChangeJournal journal = this.journal;
+        if(journal != null) journal.beginChange();
+        try {
+            byName.put(C.getUserName(), C);
+            byEmail.put(C.getUserEmail(), C);
+            byPath.put(C.getUserFolderPath(), C);
+            Boolean rV = super.put(C, B);
+            modifications.incrementAndGet();
+            if(journal != null) journal.clientAdded(C);
+            return rV;
+        }
+        finally {
+            if(journal != null) journal.endChange();
+        }
+    }
+
+    /**
+     * Sets journal, which registration of every new user is appended to
+     * @param journal journal to set, or <code>null</code> to stop journaling
+     */
+    public void setJournal(ChangeJournal journal){
+        this.journal = journal;
+    }
+
+    /**
+     * Removes user from map
+     * @param key user to remove
+     * @return {@link Boolean}
+     */
+    @Override
+    public synchronized Boolean remove(Object key){
+        Boolean rV = super.remove(key);
+        if(rV != null){
+            CredentialPacket packet = (CredentialPacket) key;
+            byName.remove(packet.getUserName());
+            byEmail.remove(packet.getUserEmail());
+            byPath.remove(packet.getUserFolderPath());
+            modifications.incrementAndGet();
+        }
+        return rV;
+    }
+
+    /**
+     * Removes all users from map
+     */
+    @Override
+    public synchronized void clear(){
+        super.clear();
+        byName.clear();
+        byEmail.clear();
+        byPath.clear();
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * This method returns number of registrations and removals of users
+     * @return long
+     */
+    public long getModificationCount(){
+        return modifications.get();
+    }
+
+    /**
+     * This method returns copy of registered users
+     * @return {@link CredentialPacket}[]
+     */
+    public CredentialPacket[] snapshot(){
+        return keySet().toArray(new CredentialPacket[0]);
+    }
+
+    /**
+     * This method compares given credentials with registered users and returns:
+     * <pre>
+     * 9 - new user, neither name, email nor path is used
+     * 0 - registered user
+     * 3 - email is invalid or already used
+     * 1 - user name is invalid or already used
+     * 4 - path is invalid or already used
+     *-1 - credentials are not valid
+     * </pre>
+     * @param packet credentials to verify
+     * @return int
+     */
+    public int verify(CredentialPacket packet){
+        if(packet == null){
+            return -1;
+        }
+        Set<CredentialPacket> candidates = new HashSet<>(4);
+        addCandidate(candidates, byName, packet.getUserName());
+        addCandidate(candidates, byEmail, packet.getUserEmail());
+        addCandidate(candidates, byPath, packet.getUserFolderPath());
+        if(candidates.isEmpty()){
+            return 9;
+        }
+        boolean invalidEmail = false;
+        boolean invalidUsername = false;
+        boolean invalidPath = false;
+        for(CredentialPacket candidate : candidates){
+            int ret = candidate.compareTo(packet);
+            if(ret == 0){
+                return 0;
             }
+            invalidEmail |= ret == 3 || ret == 6;
+            invalidUsername |= ret == 1 || ret == 8;
+            invalidPath |= ret == 4 || ret == 5;
         }
-        return super.put(C,B);
+        return invalidEmail ? 3 : (invalidUsername ? 1 : (invalidPath ? 4 : -1));
+    }
+
+    /**
+     * This method returns registered user of given name or <code>null</code> if there is no such user.
+     * @param userName name of user
+     * @return {@link CredentialPacket}
+     */
+    public CredentialPacket getByName(String userName){
+        return userName == null ? null : byName.get(userName);
+    }
+
+    /**
+     * This method returns registered user of given email or <code>null</code> if there is no such user.
+     * @param userEmail email of user
+     * @return {@link CredentialPacket}
+     */
+    public CredentialPacket getByEmail(String userEmail){
+        return userEmail == null ? null : byEmail.get(userEmail);
     }
 
     /**
@@ -50,4 +181,13 @@ public class ListOfClients extends ConcurrentHashMap<CredentialPacket, Boolean>
         }
         return set;
     }
+
+    private static void addCandidate(Set<CredentialPacket> candidates, Map<String, CredentialPacket> index, String key){
+        if(key != null){
+            CredentialPacket candidate = index.get(key);
+            if(candidate != null){
+                candidates.add(candidate);
+            }
+        }
+    }
 }
@@ -5,11 +5,11 @@ import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.Utils.AbstractServerController;
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.Utils.DataPair;
+import LimakWebApp.Utils.Reconciliation;
 import LimakWebApp.Utils.StringFunctionalInterface;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
-import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.stream.JsonReader;
 
 import javafx.scene.control.ListView;
@@ -36,28 +36,44 @@ import javafx.fxml.FXML;
 
 import java.awt.Desktop;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.Writer;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 
+import java.security.SecureRandom;
+
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -91,6 +107,16 @@ public class MainPageController extends AbstractServerController {
     private volatile ConcurrentHashMap<CredentialPacket, ArrayList<String>> runTimeMapOfFileOwners;
     private volatile ListOfClients listOfClients;
     private volatile ArrayList<DiskMap> serverDiskMap;
+    private volatile FileCatalog fileCatalog;
+    private volatile DiskPlacement diskPlacement;
+    private volatile BlobStore blobStore;
+    private volatile PartialTransfers partialTransfers;
+    private volatile UserManifests userManifests;
+    private volatile ChangeJournal journal;
+    private volatile long persistedClientsModifications;
+    private volatile long[] persistedDiskModifications;
+    private volatile long[] catalogedDiskModifications;
+    private volatile BinaryCatalog binaryCatalog;
     private volatile ObservableList<DataPair> packetBooleanObservableList;
     private volatile Set<String> ids;
 
@@ -115,12 +141,47 @@ public class MainPageController extends AbstractServerController {
         listOfClients = new ListOfClients();
         runTimeMapOfFileOwners = new ConcurrentHashMap<>();
         readInitListOfClientsFromFile();
+        persistedClientsModifications = listOfClients.getModificationCount();
         serverDiskMap = new ArrayList<>();
         emailSession = new EmailUtil(this);
         emailSession.createSession("XsW2#eDc!qAz");
         for(int i = 0; i < 5; ++i){
             serverDiskMap.add(new DiskMap(credentialPacket.getUserFolderPath() + "\\" + Constants.getDirectories(this)[i]));
-            serverDiskMap.get(i).setDataMap(readContentsFromJson(i));
+        }
+        if(!Constants.isBinaryCatalogEnabled() || !openBinaryCatalog()){
+            readDisksInParallel();
+        }
+        persistedDiskModifications = serverDiskMap.stream().mapToLong(DiskMap::getModificationCount).toArray();
+        catalogedDiskModifications = binaryCatalog != null ? persistedDiskModifications.clone() : new long[serverDiskMap.size()];
+        userManifests = new UserManifests(Constants.manifestHistoryLength, new File(credentialPacket.getUserFolderPath(), Constants.getManifestsFileName(this)));
+        try {
+            userManifests.load();
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
+            logError("Can't read manifests of users", io);
+        }
+        openJournal();
+        fileCatalog = new FileCatalog(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new));
+        fileCatalog.setBase(binaryCatalog);
+        fileCatalog.build(serverDiskMap, Constants.getDirectoriesControlFile(this));
+        diskPlacement = new DiskPlacement(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new), Constants.getDiskPlacementStrategy());
+        diskPlacement.build(serverDiskMap, Constants.getDirectoriesControlFile(this));
+        blobStore = new BlobStore(new File(credentialPacket.getUserFolderPath(), Constants.getBlobDirectory(this)));
+        try {
+            blobStore.load(fileName -> fileCatalog.getDiskIndex(fileName) >= 0);
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
+            logError("Can't read index of blobs", io);
+        }
+        partialTransfers = new PartialTransfers(new File(credentialPacket.getUserFolderPath(), Constants.getPartialTransfersFileName(this)));
+        try {
+            partialTransfers.load(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new), TimeUnit.DAYS.toMillis(Constants.partialTransferLifetime));
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
+            logError("Can't read index of interrupted transfers", io);
         }
         listOfClients.put(credentialPacket, true);
         packetBooleanObservableList = FXCollections.observableArrayList(listOfClients.toDataPairSet());
@@ -129,18 +190,14 @@ public class MainPageController extends AbstractServerController {
         log.setContent(logContent);
         fillRunTimeMap();
         scheduler = Executors.newScheduledThreadPool(4);
-        Runnable task = ()-> dumpListOfClients();
-        Runnable task2 = ()->{
-            for(int i = 0; i < serverDiskMap.size(); ++i){
-                dumpContentsToJson(i);
-            }
-        };
+        Runnable task = ()-> syncJournal();
+        Runnable task2 = ()-> compactJournal();
         Runnable task3 = ()->checkIfAreFilesToSendForInactiveUsers();
         Runnable task1 = ()->{
           setStatusText("Waiting for the clients...");
         };
-        scheduler.scheduleAtFixedRate(task, 30, 120, SECONDS);
-        scheduler.scheduleAtFixedRate(task2, 10, 60, SECONDS);
+        scheduler.scheduleAtFixedRate(task, Constants.journalSyncPeriod, Constants.journalSyncPeriod, SECONDS);
+        scheduler.scheduleAtFixedRate(task2, 10, Constants.journalCompactionPeriod, SECONDS);
         scheduler.scheduleAtFixedRate(task3,180 , 7200, SECONDS);
         scheduler.scheduleAtFixedRate(task1, 10, 60, SECONDS);
         setStatusText("Waiting for the clients...");
@@ -183,12 +240,17 @@ public class MainPageController extends AbstractServerController {
      */
     @Override
     public synchronized boolean removeUserFromFileOwners(String fileName, CredentialPacket user){
-        boolean rV = false;
-        for(DiskMap disk : serverDiskMap){
-            if(disk.checkIfFileExists(fileName)){
-                rV = disk.removeFileOwner(fileName, user);
-                break;
-            }
+        int idx = fileCatalog.getDiskIndex(fileName);
+        if(idx < 0){
+            return false;
+        }
+        DiskMap disk = serverDiskMap.get(idx);
+        long size = new File(disk.getPath(), fileName).length();
+        boolean rV = disk.removeFileOwner(fileName, user);
+        if(rV && !disk.checkIfFileExists(fileName)){
+            fileCatalog.remove(fileName);
+            diskPlacement.release(idx, size);
+            blobStore.release(fileName);
         }
         return rV;
     }
@@ -239,10 +301,10 @@ public class MainPageController extends AbstractServerController {
      * @return {@code Set<String>}
      */
     @Override
-    public synchronized Set<String> getListOfFilesForUser(CredentialPacket packet){
+    public Set<String> getListOfFilesForUser(CredentialPacket packet){
         Set<String> rV = new HashSet<>();
         for(DiskMap disk : serverDiskMap){
-            if(disk == null || disk.getMap() == null || disk.getMap().isEmpty()) continue;
+            if(disk == null) continue;
             rV.addAll(disk.getListOfFilesForGivenUser(packet));
         }
         return rV;
@@ -256,16 +318,14 @@ public class MainPageController extends AbstractServerController {
      */
     @Override
     public Map.Entry<CredentialPacket, ArrayList<File>> compareUserAndServerList(CredentialPacket user, ArrayList<String> userFileList){
-        Map.Entry<CredentialPacket, ArrayList<File>> rV = null;
-        ArrayList<File> outList = new ArrayList<>();
-        ArrayList<String> tmp = new ArrayList<>(getListOfFilesForUser(user));
-        for(String fileName: tmp){
-            if(!userFileList.contains(fileName)){
-                outList.add(new File(findFileInServer(fileName) ,fileName));
+        ArrayList<File> serverFiles = new ArrayList<>();
+        for(DiskMap disk : serverDiskMap){
+            if(disk == null) continue;
+            for(String fileName : disk.getListOfFilesForGivenUser(user)){
+                serverFiles.add(new File(disk.getPath(), fileName));
             }
         }
-        rV = new AbstractMap.SimpleEntry<>(user, outList);
-        return rV;
+        return new AbstractMap.SimpleEntry<>(user, Reconciliation.of(serverFiles, File::getName, userFileList).getOnlyLocal());
     }
 
     /**
@@ -273,10 +333,8 @@ public class MainPageController extends AbstractServerController {
      */
     @Override
     public void cleanUp(){
-        dumpListOfClients();
-        for(int i = 0; i < serverDiskMap.size(); ++i){
-            dumpContentsToJson(i);
-        }
+        compactJournal();
+        closeJournal();
         setStatusText("Closing...");
         addLog(Constants.LogType.INFO, new Date().toString() + ":\nClosing...\n");
         emailSession.dropSession();
@@ -310,18 +368,7 @@ public class MainPageController extends AbstractServerController {
      */
     @Override
     public String findFileInServer(String fileName){
-        for(String dir : Constants.getDirectories(this)){
-            String outName = credentialPacket.getUserFolderPath() + "\\" + dir;
-            File tmp = new File(outName);
-            if(tmp.exists() && tmp.isDirectory()){
-                for(String file : tmp.list()){
-                    if(file.equals(fileName)){
-                        return outName;
-                    }
-                }
-            }
-        }
-        return "";
+        return fileCatalog.find(fileName);
     }
 
     /**
@@ -369,7 +416,8 @@ public class MainPageController extends AbstractServerController {
      */
     @Override
     public CredentialPacket findUserByName(String userName){
-        return listOfClients.entrySet().stream().map(entry->entry.getKey()).filter(user-> user.getUserName().equals(userName)).findAny().orElse(new CredentialPacket("","",""));
+        CredentialPacket user = listOfClients.getByName(userName);
+        return user != null ? user : new CredentialPacket("","","");
     }
 
     /**
@@ -380,7 +428,7 @@ public class MainPageController extends AbstractServerController {
     @Override
     public synchronized String generateID(Object accessor){
         if(! (accessor instanceof LimakWebApp.Utils.AbstractServerController)) return null;
-        Random generator = new Random();
+        Random generator = new SecureRandom();
         StringBuilder stringBuilder = new StringBuilder();
         while(true) {
             for (int i = 0; i < getMaxSize(); ++i) {
@@ -410,17 +458,15 @@ public class MainPageController extends AbstractServerController {
         }
     }
 
-    private synchronized ConcurrentHashMap<String, ArrayList<CredentialPacket>> readContentsFromJson(int disk){
-        ConcurrentHashMap<String, ArrayList<LinkedTreeMap<String,String>>> outMap = new ConcurrentHashMap<>();
+    private void readContentsFromJson(int disk){
         File root = new File(credentialPacket.getUserFolderPath());
         File subFolder = new File(root, Constants.getDirectories(this)[disk]);
         File fileToRead = new File(subFolder, Constants.getDirectoriesControlFile(this));
         if(fileToRead.length() < 1){
-            return new ConcurrentHashMap<>();
+            return;
         }
-        Gson gson = new Gson();
-        try(JsonReader reader = new JsonReader(new FileReader(fileToRead))){
-            outMap = gson.fromJson(reader, outMap.getClass());
+        try(Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileToRead), StandardCharsets.UTF_8))){
+            serverDiskMap.get(disk).readContents(reader, listOfClients);
         }
         catch(IOException io) {
             setStatusText("Can't read file");
@@ -436,28 +482,60 @@ public class MainPageController extends AbstractServerController {
                     .append(outStream.toString()).append("\n");
             addLog(Constants.LogType.ERROR, stringBuilder.toString());
         }
-        ConcurrentHashMap<String, ArrayList<CredentialPacket>> rV = new ConcurrentHashMap<>();
-        for(Map.Entry<String, ArrayList<LinkedTreeMap<String,String>>> node : outMap.entrySet()){
-            ArrayList<CredentialPacket> list = node.getValue().stream().map(e -> new CredentialPacket(e.get("userEmail"), e.get("userName"), e.get("userFolderPath"))).collect(Collectors.toCollection(ArrayList::new));
-            rV.put(node.getKey(), list);
+    }
+
+    private void readDisksInParallel(){
+        ArrayList<Future<?>> loads = new ArrayList<>();
+        for(int i = 0; i < serverDiskMap.size(); ++i){
+            final int disk = i;
+            loads.add(pool.submit(()->readContentsFromJson(disk)));
+        }
+        for(Future<?> load : loads){
+            try {
+                load.get();
+            }
+            catch(InterruptedException | ExecutionException e) {
+                setStatusText("Can't read disks");
+                StringBuilder stringBuilder = new StringBuilder();
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                PrintStream outStream = new PrintStream(outputStream);
+                e.printStackTrace(outStream);
+                stringBuilder.append(new Date())
+                        .append(":\n")
+                        .append("Can't read disks: \n\t")
+                        .append(e.getMessage() + "\n")
+                        .append(outStream.toString()).append("\n");
+                addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            }
         }
-        return rV;
     }
 
-    private synchronized void dumpContentsToJson(int disk){
+    private boolean dumpContentsToJson(int disk){
+        long modifications = serverDiskMap.get(disk).getModificationCount();
+        if(modifications == persistedDiskModifications[disk]){
+            return true;
+        }
         File root = new File(credentialPacket.getUserFolderPath());
         File subFolder = new File(root, Constants.getDirectories(this)[disk]);
         File fileToDump = new File(subFolder, Constants.getDirectoriesControlFile(this));
+        File tmpFile = new File(subFolder, Constants.getDirectoriesControlFile(this) + ".tmp");
         Gson gson = new Gson();
-        try(Writer writer= new FileWriter(fileToDump)){
-            ConcurrentHashMap<String, ArrayList<CredentialPacket>> toDump = serverDiskMap.get(disk).getMap();
-            gson.toJson(toDump, writer);
+        try{
+            try(FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                HashMap<String, ArrayList<CredentialPacket>> toDump = serverDiskMap.get(disk).snapshot();
+                gson.toJson(toDump, writer);
+                writer.flush();
+                output.getFD().sync();
+            }
+            Files.move(tmpFile.toPath(), fileToDump.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            persistedDiskModifications[disk] = modifications;
             setStatusText("File is saved successfully");
             StringBuilder builder = new StringBuilder();
             builder.append(new Date())
                     .append("\n").append("Saved properly a file:\n\t")
                     .append(fileToDump.getAbsolutePath() + "\n");
             addLog(Constants.LogType.SUCCESS, builder.toString());
+            return true;
         }
         catch (IOException io) {
             setStatusText("Can't save file");
@@ -471,23 +549,35 @@ public class MainPageController extends AbstractServerController {
                     .append(fileToDump.getAbsolutePath()).append("\n")
                     .append(outStream.toString()).append("\n");
             addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            return false;
         }
-
     }
 
-    private void dumpListOfClients(){
+    private boolean dumpListOfClients(){
+        long modifications = listOfClients.getModificationCount();
+        if(modifications == persistedClientsModifications){
+            return true;
+        }
         File root = new File(credentialPacket.getUserFolderPath());
         File listOfClientsFile = new File(root, Constants.getListOfClientsFileName(this));
+        File tmpFile = new File(root, Constants.getListOfClientsFileName(this) + ".tmp");
         Gson gson= new Gson();
-        try(Writer writer = new FileWriter(listOfClientsFile)) {
-            CredentialPacket[] packets = listOfClients.keySet().toArray(new CredentialPacket[listOfClients.keySet().size()]);
-            gson.toJson(packets, writer);
+        try{
+            try(FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                CredentialPacket[] packets = listOfClients.snapshot();
+                gson.toJson(packets, writer);
+                writer.flush();
+                output.getFD().sync();
+            }
+            Files.move(tmpFile.toPath(), listOfClientsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            persistedClientsModifications = modifications;
             setStatusText("File is saved successfully");
             StringBuilder builder = new StringBuilder();
             builder.append(new Date())
                     .append("\n").append("Saved properly a file:\n\t")
                     .append(listOfClientsFile.getAbsolutePath() + "\n");
             addLog(Constants.LogType.SUCCESS, builder.toString());
+            return true;
         }
         catch(IOException io) {
             setStatusText("Can't save file");
@@ -502,9 +592,176 @@ public class MainPageController extends AbstractServerController {
                     .append(io.getMessage() + "\n")
                     .append(outStream.toString()).append("\n");
             addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            return false;
+        }
+    }
+
+    private boolean dumpControlFiles(){
+        boolean rV = dumpListOfClients();
+        for(int i = 0; i < serverDiskMap.size(); ++i){
+            rV &= dumpContentsToJson(i);
+        }
+        try {
+            blobStore.dump();
+        }
+        catch(IOException io) {
+            setStatusText("Can't save file");
+            logError("Can't save index of blobs", io);
+            rV = false;
+        }
+        try {
+            partialTransfers.dump();
+        }
+        catch(IOException io) {
+            setStatusText("Can't save file");
+            logError("Can't save index of interrupted transfers", io);
+            rV = false;
+        }
+        try {
+            userManifests.dump();
+        }
+        catch(IOException io) {
+            setStatusText("Can't save file");
+            logError("Can't save manifests of users", io);
+            rV = false;
+        }
+        if(rV && Constants.isBinaryCatalogEnabled()){
+            writeBinaryCatalog();
+        }
+        return rV;
+    }
+
+    private File[] listBinaryCatalogs(){
+        String prefix = Constants.getBinaryCatalogFileName(this) + ".";
+        File[] files = new File(credentialPacket.getUserFolderPath()).listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".bin")
+                && name.substring(prefix.length(), name.length() - 4).matches("\\d+"));
+        if(files == null){
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(file -> Long.parseLong(file.getName().substring(prefix.length(), file.getName().length() - 4))));
+        return files;
+    }
+
+    private boolean openBinaryCatalog(){
+        File[] catalogs = listBinaryCatalogs();
+        if(catalogs.length == 0){
+            return false;
+        }
+        File latest = catalogs[catalogs.length - 1];
+        File root = new File(credentialPacket.getUserFolderPath());
+        for(String folder : Constants.getDirectories(this)){
+            File contentFile = new File(new File(root, folder), Constants.getDirectoriesControlFile(this));
+            if(contentFile.lastModified() > latest.lastModified()){
+                return false;
+            }
+        }
+        try {
+            binaryCatalog = BinaryCatalog.open(latest, listOfClients);
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
+            logError("Can't read catalog " + latest.getAbsolutePath(), io);
+            return false;
+        }
+        for(int i = 0; i < serverDiskMap.size(); ++i){
+            serverDiskMap.get(i).setBase(binaryCatalog, i);
+        }
+        for(int i = 0; i < catalogs.length - 1; ++i){
+            catalogs[i].delete();
+        }
+        addLog(Constants.LogType.INFO, new Date().toString() + ":\nOpened catalog of " + binaryCatalog.size() + " files:\n\t" + latest.getAbsolutePath() + "\n");
+        return true;
+    }
+
+    private void writeBinaryCatalog(){
+        long[] modifications = serverDiskMap.stream().mapToLong(DiskMap::getModificationCount).toArray();
+        if(Arrays.equals(modifications, catalogedDiskModifications)){
+            return;
+        }
+        File[] catalogs = listBinaryCatalogs();
+        String lastName = catalogs.length == 0 ? null : catalogs[catalogs.length - 1].getName();
+        long generation = lastName == null ? 1 : Long.parseLong(lastName.substring(lastName.indexOf('.') + 1, lastName.length() - 4)) + 1;
+        File catalogFile = new File(credentialPacket.getUserFolderPath(), Constants.getBinaryCatalogFileName(this) + "." + generation + ".bin");
+        try {
+            BinaryCatalog.write(catalogFile, serverDiskMap);
+            catalogedDiskModifications = modifications;
+            for(File catalog : catalogs){
+                if(binaryCatalog == null || !catalog.equals(binaryCatalog.getFile())){
+                    catalog.delete();
+                }
+            }
+        }
+        catch(IOException io) {
+            catalogFile.delete();
+            setStatusText("Can't save file");
+            logError("Can't save catalog " + catalogFile.getAbsolutePath(), io);
+        }
+    }
+
+    private void openJournal(){
+        journal = new ChangeJournal(new File(credentialPacket.getUserFolderPath()), Constants.getJournalFileName(this));
+        try {
+            long replayed = journal.replay(listOfClients, serverDiskMap, userManifests);
+            journal.open();
+            if(replayed > 0){
+                addLog(Constants.LogType.INFO, new Date().toString() + ":\nReplayed changes from journal: " + replayed + "\n");
+            }
+        }
+        catch(IOException io) {
+            setStatusText("Can't open journal");
+            logError("Can't open journal", io);
+        }
+        listOfClients.setJournal(journal);
+        userManifests.setJournal(journal);
+        for(int i = 0; i < serverDiskMap.size(); ++i){
+            serverDiskMap.get(i).setJournal(journal, i);
+            serverDiskMap.get(i).setManifests(userManifests);
+        }
+    }
+
+    private void syncJournal(){
+        try {
+            journal.sync();
+        }
+        catch(IOException io) {
+            setStatusText("Can't write journal");
+            logError("Can't write journal", io);
+        }
+    }
+
+    private void compactJournal(){
+        if(journal.getRecordsSinceCompaction() == 0) return;
+        try {
+            journal.compact(this::dumpControlFiles);
+        }
+        catch(IOException io) {
+            setStatusText("Can't compact journal");
+            logError("Can't compact journal", io);
+        }
+    }
+
+    private void closeJournal(){
+        try {
+            journal.close();
+        }
+        catch(IOException io) {
+            logError("Can't close journal", io);
         }
     }
 
+    private void logError(String message, IOException io){
+        StringBuilder stringBuilder = new StringBuilder();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream outStream = new PrintStream(outputStream);
+        io.printStackTrace(outStream);
+        stringBuilder.append(new Date())
+                .append(":\n")
+                .append(message).append(": \n\t")
+                .append(io.getMessage()).append("\n")
+                .append(outStream.toString()).append("\n");
+        addLog(Constants.LogType.ERROR, stringBuilder.toString());
+    }
+
     private void readInitListOfClientsFromFile(){
         File root = new File(credentialPacket.getUserFolderPath());
         File listOfClientsFile = new File(root, Constants.getListOfClientsFileName(this));
@@ -570,13 +827,9 @@ public class MainPageController extends AbstractServerController {
     private synchronized boolean addUserToFileOwners(String fileName, CredentialPacket user){
         boolean rV = false;
         synchronized (lock) {
-            for (DiskMap disk : serverDiskMap) {
-                if (disk.checkIfFileExists(fileName)) {
-                    if (!user.isEmpty()) {
-                        rV = disk.putOwnerToFile(fileName, user);
-                    }
-                    break;
-                }
+            int idx = fileCatalog.getDiskIndex(fileName);
+            if (idx >= 0 && serverDiskMap.get(idx).checkIfFileExists(fileName) && !user.isEmpty()) {
+                rV = serverDiskMap.get(idx).putOwnerToFile(fileName, user);
             }
         }
         return rV;
@@ -713,6 +966,51 @@ public class MainPageController extends AbstractServerController {
         return serverDiskMap.get(idx);
     }
 
+    /**
+     * This method returns catalog of files stored on server's disks
+     * @return FileCatalog
+     */
+    @Override
+    public FileCatalog getFileCatalog() {
+        return fileCatalog;
+    }
+
+    /**
+     * This method returns engine, which chooses server's disk for new file
+     * @return DiskPlacement
+     */
+    @Override
+    public DiskPlacement getDiskPlacement() {
+        return diskPlacement;
+    }
+
+    /**
+     * This method returns store of contents of files stored on server's disks
+     * @return BlobStore
+     */
+    @Override
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * This method returns index of interrupted transfers of files, which can be resumed
+     * @return PartialTransfers
+     */
+    @Override
+    public PartialTransfers getPartialTransfers() {
+        return partialTransfers;
+    }
+
+    /**
+     * This method returns manifests of users' files stored on server
+     * @return UserManifests
+     */
+    @Override
+    public UserManifests getUserManifests() {
+        return userManifests;
+    }
+
     /**
      * This method returns server's credentials
      * @return CredentialPacket
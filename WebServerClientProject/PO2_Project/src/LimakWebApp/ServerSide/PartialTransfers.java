@@ -0,0 +1,218 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.FilePacket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>PartialTransfers</h1>
+ * This class is used by {@link MainPageController} to remember uploads, which were interrupted, so they are resumed after client reconnects
+ * instead of being sent from the beginning.
+ * Every upload is received into <i>name.part</i> file on its disk and moved to its name, when all contents are received.
+ * Offset of received contents is checkpointed, after contents are forced to disk, and kept in index of transfers.
+ * <pre>
+ * Partial.json - {"user/name":{"id":"...","disk":0,"size":1024,"offset":512,"updated":...}, ...}
+ * </pre>
+ * Transfer is identified by {@link FilePacket#transferId(String, File)}, so contents of file changed by user are never appended to old ones.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class PartialTransfers {
+
+    private final File indexFile;
+    private final ConcurrentHashMap<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long persistedModifications = 0;
+
+    /**
+     * Constructor of PartialTransfers
+     * @param indexFile file of index of transfers
+     */
+    public PartialTransfers(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * This method returns file, which contents of given file are received into
+     * @param diskPath path of disk
+     * @param fileName name of file
+     * @return {@link File}
+     */
+    public static File getPartFile(String diskPath, String fileName) {
+        return new File(diskPath, fileName + ".part");
+    }
+
+    /**
+     * This method reads index of transfers. Transfers older than given lifetime, or which received contents are lost, are dropped and their files are deleted.
+     * @param diskPaths paths of server's disks
+     * @param lifetime time in milliseconds, for which interrupted transfer can be resumed
+     * @throws IOException if index can't be read
+     */
+    public synchronized void load(String[] diskPaths, long lifetime) throws IOException {
+        transfers.clear();
+        if (indexFile.length() == 0) {
+            return;
+        }
+        Map<String, Transfer> index;
+        try (Reader reader = new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)) {
+            index = new Gson().fromJson(reader, new TypeToken<HashMap<String, Transfer>>(){}.getType());
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid index of transfers " + indexFile.getAbsolutePath(), e);
+        }
+        if (index == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Transfer> entry : index.entrySet()) {
+            Transfer transfer = entry.getValue();
+            int separator = entry.getKey().indexOf('/');
+            if (transfer == null || transfer.id == null || separator < 0 || transfer.disk < 0 || transfer.disk >= diskPaths.length) {
+                continue;
+            }
+            File partFile = getPartFile(diskPaths[transfer.disk], entry.getKey().substring(separator + 1));
+            if (!partFile.isFile() || now - transfer.updated > lifetime) {
+                partFile.delete();
+                continue;
+            }
+            transfer.offset = Math.min(transfer.offset, partFile.length());
+            transfers.put(entry.getKey(), transfer);
+        }
+        persistedModifications = modifications.get();
+    }
+
+    /**
+     * This method returns interrupted or running transfer of given file
+     * @param userName owner of file
+     * @param fileName name of file
+     * @return {@link Transfer} or <code>null</code> if there is no such transfer
+     */
+    public Transfer get(String userName, String fileName) {
+        return transfers.get(getKey(userName, fileName));
+    }
+
+    /**
+     * This method records number of bytes of file, which were received and forced to disk
+     * @param userName owner of file
+     * @param fileName name of file
+     * @param id id of transfer
+     * @param disk index of disk, which file is received to
+     * @param size size of file in bytes
+     * @param offset number of received bytes
+     */
+    public void checkpoint(String userName, String fileName, String id, int disk, long size, long offset) {
+        transfers.put(getKey(userName, fileName), new Transfer(id, disk, size, offset, System.currentTimeMillis()));
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * This method removes transfer, which was completed or replaced by new one
+     * @param userName owner of file
+     * @param fileName name of file
+     * @return removed {@link Transfer} or <code>null</code>
+     */
+    public Transfer remove(String userName, String fileName) {
+        Transfer rV = transfers.remove(getKey(userName, fileName));
+        if (rV != null) {
+            modifications.incrementAndGet();
+        }
+        return rV;
+    }
+
+    /**
+     * This method writes index of transfers, if it was changed since last time
+     * @return <code>true</code> if index is up to date
+     * @throws IOException if index can't be written
+     */
+    public synchronized boolean dump() throws IOException {
+        long current = modifications.get();
+        if (current == persistedModifications) {
+            return true;
+        }
+        File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            new Gson().toJson(new HashMap<>(transfers), writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        persistedModifications = current;
+        return true;
+    }
+
+    private static String getKey(String userName, String fileName) {
+        return userName + "/" + fileName;
+    }
+
+    /**
+     * <h1>Transfer</h1>
+     * This class holds state of single transfer
+     */
+    public static class Transfer {
+        private String id;
+        private int disk;
+        private long size;
+        private long offset;
+        private long updated;
+
+        Transfer(String id, int disk, long size, long offset, long updated) {
+            this.id = id;
+            this.disk = disk;
+            this.size = size;
+            this.offset = offset;
+            this.updated = updated;
+        }
+
+        /**
+         * This method returns id of transfer
+         * @return {@link String}
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * This method returns index of disk, which file is received to
+         * @return int
+         */
+        public int getDisk() {
+            return disk;
+        }
+
+        /**
+         * This method returns size of file in bytes
+         * @return long
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * This method returns number of received bytes, which are forced to disk
+         * @return long
+         */
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
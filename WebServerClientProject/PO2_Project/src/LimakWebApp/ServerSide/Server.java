@@ -1,13 +1,16 @@
 package LimakWebApp.ServerSide;
 
+import LimakWebApp.ConnectionSelector;
+import LimakWebApp.MultiplexedConnection;
 import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.DataPackets.SocketHandler;
 
 import LimakWebApp.Utils.AbstractServerController;
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.Utils.Controller;
-import LimakWebApp.Utils.DataPair;
+import LimakWebApp.Utils.SerialExecutor;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -15,14 +18,30 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /**
  * <h1>Server</h1>
- * This class provides clients authorization and handles all networking on server's side
+ * This class provides clients authorization and handles all networking on server's side.
+ * All ports are served by {@link ConnectionSelector}, so connected clients don't hold threads while idle.
+ * Client connects separately to authorization, file and notification ports. File and notification connections start with ID of session
+ * given to client after authorization, so they are attached to the session they belong to - connection with unknown ID,
+ * or which arrives after {@link Constants#connectTimeout} seconds, is closed.
+ * If multiplexing is enabled by {@link Constants#multiplexingProperty}, client connected to {@link Constants#muxPort}
+ * is authorized and served through channels of one {@link MultiplexedConnection}.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   12.06.2019
@@ -30,13 +49,15 @@ import java.util.*;
 public class Server {
 
     private Thread authThread;
-    private ServerSocket server = null;
-    private ServerSocket fileServer = null;
-    private ServerSocket notificationServer = null;
+    private ServerSocketChannel server = null;
+    private ServerSocketChannel fileServer = null;
+    private ServerSocketChannel notificationServer = null;
+    private ServerSocketChannel multiplexedServer = null;
+    private ConnectionSelector connectionSelector = null;
+    private final ConcurrentHashMap<String, PendingSession> pendingSessions = new ConcurrentHashMap<>();
 
     private Controller controller;
     private volatile boolean isItTimeToStop = false;
-    private volatile Socket socket = null;
     private volatile ArrayList<CommunicationServiceThreadHandler> threadList = new ArrayList<>();
 
     /**
@@ -62,9 +83,13 @@ public class Server {
      */
     public Server() {
         try {
-            server = new ServerSocket(Constants.authPort);
-            fileServer = new ServerSocket(Constants.filePort);
-            notificationServer = new ServerSocket(Constants.commPort);
+            server = ServerSocketChannel.open().bind(new InetSocketAddress(Constants.authPort));
+            fileServer = ServerSocketChannel.open().bind(new InetSocketAddress(Constants.filePort));
+            notificationServer = ServerSocketChannel.open().bind(new InetSocketAddress(Constants.commPort));
+            if (Constants.isMultiplexingEnabled()) {
+                multiplexedServer = ServerSocketChannel.open().bind(new InetSocketAddress(Constants.muxPort));
+            }
+            connectionSelector = new ConnectionSelector(Constants.selectorThreads);
         } catch (IOException i) {
             System.out.println("Connection issue!");
             StringBuilder stringBuilder = new StringBuilder();
@@ -109,33 +134,43 @@ public class Server {
                 handler.close();
             }
         }
+        if (connectionSelector != null) {
+            connectionSelector.close();
+        }
         try {
-            if (server != null && !server.isClosed()) {
+            if (server != null && server.isOpen()) {
                 server.close();
             }
         } catch (IOException io) {
             io.printStackTrace();
         }
         try {
-            if (fileServer != null && !fileServer.isClosed()) {
+            if (fileServer != null && fileServer.isOpen()) {
                 fileServer.close();
             }
         } catch (IOException io) {
             io.printStackTrace();
         }
         try {
-            if (notificationServer != null && !notificationServer.isClosed()) {
+            if (notificationServer != null && notificationServer.isOpen()) {
                 notificationServer.close();
             }
         } catch (IOException io) {
             io.printStackTrace();
         }
+        try {
+            if (multiplexedServer != null && multiplexedServer.isOpen()) {
+                multiplexedServer.close();
+            }
+        } catch (IOException io) {
+            io.printStackTrace();
+        }
 
     }
 
 
     /**
-     * This method serves given socket in separated thread. Performs authorization of single connection and rejects or accepts new client.
+     * This method serves given socket on shared pool. Performs authorization of single connection and rejects or accepts new client.
      * @param socket Accepted socket to authorize
      */
     public void processSocket(Socket socket){
@@ -148,68 +183,127 @@ public class Server {
                 outputStream.flush();
                 InputStream input = authSocket.getInputStream();
                 inputStream = new ObjectInputStream(input);
-                Map.Entry<CredentialPacket, Integer> entry = authorize(outputStream, inputStream);
-                Integer errCode;
-                if (entry == null) {
-                    errCode = -1;
-                } else {
-                    errCode = entry.getValue();
-                }
-                if (errCode.equals(9) || errCode.equals(0)) {
-                    ((AbstractServerController)controller).updateListOfClients(entry.getKey(), true);
-                    controller.setStatusText("Accepted client: " + entry.getKey().getUserName());
-                    StringBuilder stringBuilder = new StringBuilder();
-                    stringBuilder.append(new Date()).append(":\n").append("Accepted client: \n\t").append(entry.getKey().getUserName()).append("\n");
-                    controller.addLog(Constants.LogType.INFO, stringBuilder.toString());
-                    if (errCode.equals(9)) {
-                        ((AbstractServerController)controller).getEmailSession().sendEmail(entry.getKey(), true, null);
-                    }
+                Map.Entry<CredentialPacket, Integer> entry = acceptClient(outputStream, inputStream);
+                if (entry != null) {
                     ArrayList<Socket> socketList = new ArrayList<>();
                     String ID = ((AbstractServerController)controller).generateID((controller));
-                    outputStream.writeObject(ID);
-                    socketList.add(fileServer.accept());
-                    socketList.add(notificationServer.accept());
-                    SocketHandler socketHandler = new SocketHandler(socketList);
-                    synchronized (threadList) {
-                        threadList.add(new CommunicationServiceThreadHandler(socketHandler, entry.getKey(), ID, (AbstractServerController) controller));
+                    PendingSession pending = new PendingSession();
+                    pendingSessions.put(ID, pending);
+                    try {
+                        outputStream.writeObject(ID);
+                        outputStream.flush();
+                        CompletableFuture.allOf(pending.fileSocket, pending.notificationSocket).get(Constants.connectTimeout, TimeUnit.SECONDS);
                     }
-                }
-                else {
-                    if (entry != null) {
-                        getController().setStatusText("Rejected client: " + "\"" + entry.getKey().getUserName() + "\"");
-                        StringBuilder stringBuilder = new StringBuilder();
-                        stringBuilder.append(new Date()).append(":\n").append("Rejected client: \n\t").append(entry.getKey().getUserName()).append("\n");
-                        controller.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+                    catch (TimeoutException | ExecutionException ignored) {
                     }
-                    else{
-                        getController().setStatusText("Rejected client");
-                        StringBuilder stringBuilder = new StringBuilder();
-                        stringBuilder.append(new Date()).append(":\n").append("Rejected client").append("Client's packet was empty or partially empty").append("\n");
-                        controller.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+                    finally {
+                        pendingSessions.remove(ID);
+                        pending.fileSocket.complete(null);
+                        pending.notificationSocket.complete(null);
+                    }
+                    SocketChannel fileSocket = pending.fileSocket.getNow(null);
+                    SocketChannel notificationSocket = pending.notificationSocket.getNow(null);
+                    if (fileSocket != null && notificationSocket != null) {
+                        fileSocket.configureBlocking(true);
+                        socketList.add(fileSocket.socket());
+                        socketList.add(notificationSocket.socket());
+                        SocketHandler socketHandler = new SocketHandler(socketList, connectionSelector);
+                        synchronized (threadList) {
+                            threadList.add(new CommunicationServiceThreadHandler(socketHandler, entry.getKey(), ID, (AbstractServerController) controller));
+                        }
+                    }
+                    else {
+                        if (fileSocket != null) fileSocket.close();
+                        if (notificationSocket != null) notificationSocket.close();
+                        getController().setStatusText("Client didn't connect: " + "\"" + entry.getKey().getUserName() + "\"");
+                        StringBuilder builder = new StringBuilder();
+                        builder.append(new Date()).append(":\n").append("Client didn't open file and notification connections: \n\t").append(entry.getKey().getUserName()).append("\n");
+                        controller.addLog(Constants.LogType.ERROR, builder.toString());
                     }
                 }
                 inputStream.close();
                 outputStream.close();
                 authSocket.close();
             }
-            catch (IOException ignored){
+            catch (IOException | InterruptedException ignored){
 
             }
         };
-        new Thread(task).start();
+        SerialExecutor.getSharedPool().execute(task);
     }
 
     /**
-     * This method accepts new sockets in loop.
+     * This method serves given socket of {@link MultiplexedConnection} on shared pool. Performs authorization through its authorization channel,
+     * accepted client is served through the other channels of the same connection, rejected client is disconnected.
+     * @param socket Accepted socket of multiplexed connection
      */
-    public void acceptClients(){
-        while(!isItTimeToStop) {
+    public void processMultiplexedSocket(Socket socket){
+        Runnable task = ()->{
+            MultiplexedConnection connection = null;
             try {
-                socket = server.accept();
-                processSocket(socket);
+                connection = new MultiplexedConnection(socket);
+                MultiplexedConnection.Channel authChannel = connection.getChannel(MultiplexedConnection.AUTHORIZATION);
+                ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(authChannel)));
+                outputStream.flush();
+                ObjectInputStream inputStream = new ObjectInputStream(Channels.newInputStream(authChannel));
+                Map.Entry<CredentialPacket, Integer> entry = acceptClient(outputStream, inputStream);
+                if (entry != null) {
+                    String ID = ((AbstractServerController)controller).generateID((controller));
+                    outputStream.writeObject(ID);
+                    outputStream.flush();
+                    SocketHandler socketHandler = new SocketHandler(connection);
+                    synchronized (threadList) {
+                        threadList.add(new CommunicationServiceThreadHandler(socketHandler, entry.getKey(), ID, (AbstractServerController) controller));
+                    }
+                    outputStream.close();
+                    inputStream.close();
+                }
+                else {
+                    connection.close();
+                }
             }
-            catch (IOException ignored) {
+            catch (IOException io){
+                if (connection != null) {
+                    connection.close();
+                }
+                else {
+                    try {
+                        socket.close();
+                    }
+                    catch (IOException ignored) {
+                    }
+                }
             }
+        };
+        SerialExecutor.getSharedPool().execute(task);
+    }
+
+    /**
+     * This method starts accepting new sockets on all ports and waits until connections are cleared.
+     */
+    public void acceptClients(){
+        if (connectionSelector == null) return;
+        try {
+            connectionSelector.listen(server, blockingAcceptor(this::processSocket));
+            long timeout = TimeUnit.SECONDS.toMillis(Constants.connectTimeout);
+            connectionSelector.listen(fileServer, Constants.sessionGreetingBytes, timeout, (channel, ID) -> attachSocket(ID, channel, true));
+            connectionSelector.listen(notificationServer, Constants.sessionGreetingBytes, timeout, (channel, ID) -> attachSocket(ID, channel, false));
+            if (multiplexedServer != null) {
+                connectionSelector.listen(multiplexedServer, blockingAcceptor(this::processMultiplexedSocket));
+            }
+            connectionSelector.start();
+            connectionSelector.join();
+        }
+        catch (IOException io) {
+            controller.setStatusText("Connection issue!");
+            StringBuilder stringBuilder = new StringBuilder();
+            ByteArrayOutputStream outputByteStream = new ByteArrayOutputStream();
+            PrintStream outStream = new PrintStream(outputByteStream);
+            io.printStackTrace(outStream);
+            stringBuilder.append(new Date()).append(":\n").append("Connection issue! \n\t").append(io.getMessage()).append("\n").append(outStream.toString()).append("\n");
+            controller.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+        catch (InterruptedException ignored) {
         }
     }
 
@@ -264,6 +358,76 @@ public class Server {
         return authThread;
     }
 
+    private void attachSocket(String ID, SocketChannel channel, boolean file){
+        PendingSession pending = pendingSessions.get(ID);
+        if (isItTimeToStop || pending == null || !(file ? pending.fileSocket : pending.notificationSocket).complete(channel)) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * File and notification connections awaited by session of authorized client
+     */
+    private static class PendingSession {
+        private final CompletableFuture<SocketChannel> fileSocket = new CompletableFuture<>();
+        private final CompletableFuture<SocketChannel> notificationSocket = new CompletableFuture<>();
+    }
+
+    private Consumer<SocketChannel> blockingAcceptor(Consumer<Socket> processor){
+        return channel -> {
+            try {
+                if (isItTimeToStop) {
+                    channel.close();
+                    return;
+                }
+                channel.configureBlocking(true);
+                processor.accept(channel.socket());
+            } catch (IOException io) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+
+    private Map.Entry<CredentialPacket, Integer> acceptClient(ObjectOutputStream outputStream, ObjectInputStream inputStream){
+        Map.Entry<CredentialPacket, Integer> entry = authorize(outputStream, inputStream);
+        Integer errCode;
+        if (entry == null) {
+            errCode = -1;
+        } else {
+            errCode = entry.getValue();
+        }
+        if (errCode.equals(9) || errCode.equals(0)) {
+            ((AbstractServerController)controller).updateListOfClients(entry.getKey(), true);
+            controller.setStatusText("Accepted client: " + entry.getKey().getUserName());
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date()).append(":\n").append("Accepted client: \n\t").append(entry.getKey().getUserName()).append("\n");
+            controller.addLog(Constants.LogType.INFO, stringBuilder.toString());
+            if (errCode.equals(9)) {
+                ((AbstractServerController)controller).getEmailSession().sendEmail(entry.getKey(), true, null);
+            }
+            return entry;
+        }
+        if (entry != null) {
+            getController().setStatusText("Rejected client: " + "\"" + entry.getKey().getUserName() + "\"");
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date()).append(":\n").append("Rejected client: \n\t").append(entry.getKey().getUserName()).append("\n");
+            controller.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+        else{
+            getController().setStatusText("Rejected client");
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date()).append(":\n").append("Rejected client").append("Client's packet was empty or partially empty").append("\n");
+            controller.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+        return null;
+    }
+
     private Map.Entry<CredentialPacket, Integer> authorize(ObjectOutputStream outputStream, ObjectInputStream inputStream){
         try{
             CredentialPacket credentialPacket = (CredentialPacket) inputStream.readObject();
@@ -272,28 +436,7 @@ public class Server {
                 outputStream.flush();
                 return null;
             }
-            Set<DataPair> listOfClients = ((AbstractServerController)controller).getListOfClients().toDataPairSet();
-            boolean newUser = listOfClients.stream().allMatch(dataPair -> {
-                Integer ret = dataPair.getKey().compareTo(credentialPacket);
-                return ret.equals(9);
-            });
-            boolean oldUser = listOfClients.stream().anyMatch(dataPair -> {
-                Integer ret = dataPair.getKey().compareTo(credentialPacket);
-                return ret.equals(0);
-            });
-            boolean invalidEmail = listOfClients.stream().anyMatch(dataPair -> {
-                Integer ret = dataPair.getKey().compareTo(credentialPacket);
-                return ret.equals(3) || ret.equals(6);
-            });
-            boolean invalidUsername = listOfClients.stream().anyMatch(dataPair -> {
-                Integer ret = dataPair.getKey().compareTo(credentialPacket);
-                return ret.equals(1) || ret.equals(8);
-            });
-            boolean invalidPath = listOfClients.stream().anyMatch(dataPair -> {
-                Integer ret = dataPair.getKey().compareTo(credentialPacket);
-                return ret.equals(4) || ret.equals(5);
-            });
-            int rV = newUser ? 9 : (oldUser ? 0 : (invalidEmail ? 3 :(invalidUsername ? 1 : (invalidPath ? 4 : -1))));
+            int rV = ((AbstractServerController)controller).getListOfClients().verify(credentialPacket);
             outputStream.writeObject(rV);
             outputStream.flush();
             return new HashMap.SimpleEntry<>(credentialPacket, rV);
@@ -0,0 +1,360 @@
+package LimakWebApp.ServerSide;
+
+import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.DataPackets.MessageToSend;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>UserManifests</h1>
+ * This class is used by {@link MainPageController} to keep versioned manifests of users' files.
+ * Every addition and removal of user's ownership of file increments sequence of user's manifest and is kept in history of manifest,
+ * so client which knows state of manifest at given sequence receives only changes made since then.
+ * History of every user is limited, client which fell behind it, or knows manifest of other epoch, receives full list of files.
+ * <pre>
+ * +name - file was added to user's files
+ * -name - file was removed from user's files
+ * </pre>
+ * Change gets its sequence by {@link #reserve(CredentialPacket)}, is appended with it to {@link ChangeJournal} and becomes visible
+ * to clients by {@link #publish(CredentialPacket, long, String, boolean)}, only when all changes of lower sequence are published.
+ * Manifests are written with control files of server and changes appended to journal later are restored by replay of journal,
+ * so epoch and sequences survive restart of server and clients keep receiving changes only.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class UserManifests {
+
+    private final File file;
+    private final int historyLength;
+    private final ConcurrentHashMap<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long persistedModifications = 0;
+    private volatile String epoch = UUID.randomUUID().toString();
+    private volatile ChangeJournal journal;
+
+    /**
+     * Constructor of UserManifests, which are kept in memory only
+     * @param historyLength number of changes kept for every user
+     */
+    public UserManifests(int historyLength) {
+        this(historyLength, null);
+    }
+
+    /**
+     * Constructor of UserManifests
+     * @param historyLength number of changes kept for every user
+     * @param file file of manifests, or <code>null</code> if manifests are kept in memory only
+     */
+    public UserManifests(int historyLength, File file) {
+        this.historyLength = Math.max(1, historyLength);
+        this.file = file;
+    }
+
+    /**
+     * This method returns epoch of manifests, sequences of different epochs are not comparable
+     * @return {@link String}
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * This method reads manifests written by {@link #dump()}. If file doesn't exist, manifests start with new epoch.
+     * Manifests should be read before journal is replayed.
+     * @throws IOException if file can't be read
+     */
+    public synchronized void load() throws IOException {
+        manifests.clear();
+        if (file == null || file.length() == 0) {
+            return;
+        }
+        Snapshot snapshot;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            snapshot = new Gson().fromJson(reader, Snapshot.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid manifests " + file.getAbsolutePath(), e);
+        }
+        if (snapshot == null || snapshot.epoch == null || snapshot.users == null) {
+            return;
+        }
+        for (Map.Entry<String, State> entry : snapshot.users.entrySet()) {
+            State state = entry.getValue();
+            if (state == null || state.sequence < 0) continue;
+            Manifest manifest = new Manifest();
+            manifest.sequence = state.sequence;
+            manifest.published = state.sequence;
+            manifest.floor = Math.min(state.floor, state.sequence);
+            if (state.changes != null) {
+                for (Change change : state.changes) {
+                    if (change != null && change.value != null && change.sequence > manifest.floor && change.sequence <= manifest.sequence) {
+                        manifest.changes.addLast(change);
+                    }
+                }
+            }
+            manifests.put(entry.getKey(), manifest);
+        }
+        epoch = snapshot.epoch;
+        persistedModifications = modifications.get();
+    }
+
+    /**
+     * This method writes published state of manifests, if it changed since the last dump.
+     * @return <code>true</code> if manifests are written
+     * @throws IOException if file can't be written
+     */
+    public synchronized boolean dump() throws IOException {
+        long current = modifications.get();
+        if (file == null || current == persistedModifications) {
+            return true;
+        }
+        Snapshot snapshot = new Snapshot();
+        snapshot.epoch = epoch;
+        snapshot.users = new HashMap<>();
+        for (Map.Entry<String, Manifest> entry : manifests.entrySet()) {
+            Manifest manifest = entry.getValue();
+            manifest.lock.lock();
+            try {
+                State state = new State();
+                state.sequence = manifest.published;
+                state.floor = manifest.floor;
+                state.changes = new ArrayList<>(manifest.changes);
+                snapshot.users.put(entry.getKey(), state);
+            } finally {
+                manifest.lock.unlock();
+            }
+        }
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tmpFile); Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            new Gson().toJson(snapshot, writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        persistedModifications = current;
+        return true;
+    }
+
+    /**
+     * Sets journal, which changes of manifests are appended to, it's forced by {@link #sync()}
+     * @param journal journal to set, or <code>null</code>
+     */
+    public void setJournal(ChangeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * This method forces journal to disk, so sequences sent to client are not lost if server crashes
+     * @return <code>true</code> if published changes are stored on disk, or manifests are kept in memory only
+     */
+    public boolean sync() {
+        ChangeJournal journal = this.journal;
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.sync();
+            return true;
+        } catch (IOException io) {
+            return false;
+        }
+    }
+
+    /**
+     * This method records change of user's files at once
+     * @param user owner of file
+     * @param fileName name of file
+     * @param added <code>true</code> if user became owner of file, <code>false</code> if user is no longer owner of file
+     */
+    public void record(CredentialPacket user, String fileName, boolean added) {
+        if (user == null || fileName == null) return;
+        publish(user, reserve(user), fileName, added);
+    }
+
+    /**
+     * This method returns sequence for next change of user's manifest. Every reserved sequence has to be published,
+     * changes of higher sequence are not visible before.
+     * @param user owner of manifest
+     * @return long
+     */
+    public long reserve(CredentialPacket user) {
+        Manifest manifest = manifests.computeIfAbsent(user.getUserName(), name -> new Manifest());
+        manifest.lock.lock();
+        try {
+            return ++manifest.sequence;
+        } finally {
+            manifest.lock.unlock();
+        }
+    }
+
+    /**
+     * This method publishes change of user's files with sequence returned by {@link #reserve(CredentialPacket)}
+     * @param user owner of file
+     * @param sequence reserved sequence of change
+     * @param fileName name of file
+     * @param added <code>true</code> if user became owner of file, <code>false</code> if user is no longer owner of file
+     */
+    public void publish(CredentialPacket user, long sequence, String fileName, boolean added) {
+        Manifest manifest = manifests.computeIfAbsent(user.getUserName(), name -> new Manifest());
+        manifest.lock.lock();
+        try {
+            manifest.pending.put(sequence, new Change(sequence, (added ? MessageToSend.FILE_ADDED : MessageToSend.FILE_REMOVED) + fileName));
+            Change next;
+            while ((next = manifest.pending.remove(manifest.published + 1)) != null) {
+                manifest.published = next.sequence;
+                append(manifest, next);
+            }
+        } finally {
+            manifest.lock.unlock();
+        }
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * This method restores change of user's files replayed from journal. Change, which is older than manifest, is skipped.
+     * @param user owner of file
+     * @param sequence sequence of change
+     * @param fileName name of file
+     * @param added <code>true</code> if user became owner of file, <code>false</code> if user is no longer owner of file
+     */
+    public void restore(CredentialPacket user, long sequence, String fileName, boolean added) {
+        if (user == null || fileName == null) return;
+        Manifest manifest = manifests.computeIfAbsent(user.getUserName(), name -> new Manifest());
+        manifest.lock.lock();
+        try {
+            if (sequence <= manifest.published) {
+                return;
+            }
+            if (sequence > manifest.published + 1) {
+                manifest.changes.clear();
+                manifest.floor = sequence - 1;
+            }
+            manifest.sequence = sequence;
+            manifest.published = sequence;
+            append(manifest, new Change(sequence, (added ? MessageToSend.FILE_ADDED : MessageToSend.FILE_REMOVED) + fileName));
+        } finally {
+            manifest.lock.unlock();
+        }
+        modifications.incrementAndGet();
+    }
+
+    private void append(Manifest manifest, Change change) {
+        manifest.changes.addLast(change);
+        if (manifest.changes.size() > historyLength) {
+            manifest.floor = manifest.changes.removeFirst().sequence;
+        }
+    }
+
+    /**
+     * This method returns current sequence of user's manifest
+     * @param user owner of manifest
+     * @return long
+     */
+    public long getSequence(CredentialPacket user) {
+        Manifest manifest = user == null ? null : manifests.get(user.getUserName());
+        if (manifest == null) return 0;
+        manifest.lock.lock();
+        try {
+            return manifest.published;
+        } finally {
+            manifest.lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns changes of user's manifest made after given sequence, in order of sequence.
+     * @param user owner of manifest
+     * @param epoch epoch known to client
+     * @param sequence sequence known to client
+     * @return list of changes, or <code>null</code> if changes are not available and full list of files has to be sent
+     */
+    public List<String> getChangesSince(CredentialPacket user, String epoch, long sequence) {
+        return getChangesSince(user, epoch, sequence, Long.MAX_VALUE);
+    }
+
+    /**
+     * This method returns changes of user's manifest made after given sequence, up to given sequence, in order of sequence.
+     * @param user owner of manifest
+     * @param epoch epoch known to client
+     * @param sequence sequence known to client
+     * @param until the last sequence to return, e.g. sequence sent to client with changes
+     * @return list of changes, or <code>null</code> if changes are not available and full list of files has to be sent
+     */
+    public List<String> getChangesSince(CredentialPacket user, String epoch, long sequence, long until) {
+        if (user == null || !this.epoch.equals(epoch) || sequence < 0) return null;
+        Manifest manifest = manifests.get(user.getUserName());
+        if (manifest == null) {
+            return sequence == 0 ? new ArrayList<>() : null;
+        }
+        manifest.lock.lock();
+        try {
+            if (sequence < manifest.floor || sequence > Math.min(manifest.published, until)) {
+                return null;
+            }
+            List<String> rV = new ArrayList<>();
+            for (Change change : manifest.changes) {
+                if (change.sequence > sequence && change.sequence <= until) {
+                    rV.add(change.value);
+                }
+            }
+            return rV;
+        } finally {
+            manifest.lock.unlock();
+        }
+    }
+
+    private static class Manifest {
+        final ReentrantLock lock = new ReentrantLock();
+        long sequence = 0;
+        long published = 0;
+        long floor = 0;
+        final ArrayDeque<Change> changes = new ArrayDeque<>();
+        final TreeMap<Long, Change> pending = new TreeMap<>();
+    }
+
+    private static class Change {
+        long sequence;
+        String value;
+
+        Change(long sequence, String value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    private static class State {
+        long sequence;
+        long floor;
+        ArrayList<Change> changes;
+    }
+
+    private static class Snapshot {
+        String epoch;
+        HashMap<String, State> users;
+    }
+}
@@ -3,24 +3,36 @@ package LimakWebApp;
 import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.DataPackets.MessageToSend;
 import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.OutboundQueue;
+import LimakWebApp.Utils.SerialExecutor;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
-
-import java.net.Socket;
+import java.io.StreamCorruptedException;
 
 import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <h1>ServiceThread</h1>
- * This class performs sockets transfer operations
+ * This class performs sockets transfer operations.
+ * Objects are sent over {@link FrameTransport} - every flush of object stream is a single frame, so received objects
+ * can be read as soon as their frame arrives, without a thread blocked on socket.
+ * Both sides announce their capabilities in hello frame. When peer is able to decode binary frames, {@link MessageToSend}s
+ * are encoded by {@link MessageCodec}, other objects and messages which can't be encoded are still serialized.
+ * Objects are sent through bounded {@link OutboundQueue}, burst of queued objects is written at once by {@link FrameBatch}, so a peer, which doesn't read fast enough, can't exhaust memory of the sender.
+ * Lists of users waiting in the queue are replaced by newer ones instead of being sent one after another, only they may be dropped,
+ * other command which doesn't fit into the queue fails the session.
+ * When both sides announce compression, long binary frames are deflated and {@link FileServiceThread} of the same session compresses files.
  * @author  Kamil Chrustowski
  * @version 1.0
  * @since   02.07.2019
@@ -28,108 +40,328 @@ import java.util.concurrent.TimeUnit;
 public class ServiceThread {
 
     private ServicesHandler parentHandler;
-    private ExecutorService receivingService = Executors.newFixedThreadPool(1);
-    private ExecutorService transferService = Executors.newFixedThreadPool(1);
-    private Socket socket;
+    private ExecutorService receivingService = new SerialExecutor();
+    private ExecutorService transferService = new SerialExecutor();
+    private FrameTransport transport;
+    private final FrameBatch batch;
     private String type;
     private String token;
-    private volatile ObjectInputStream inputStream;
-    private volatile ObjectOutputStream outputStream;
+    private final FrameInputStream frameInputStream = new FrameInputStream();
+    private volatile SessionObjectInputStream inputStream;
+    private volatile SessionObjectOutputStream outputStream;
     private volatile Boolean sendExit = false;
-    private final Object lock = new Object();
-    private  final Object readLock = new Object();
+    private volatile boolean receiving = false;
+    private volatile int peerCapabilities = 0;
+    private final MessageCodec encoder = new MessageCodec();
+    private final MessageCodec decoder = new MessageCodec();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final OutboundQueue<Object> outboundQueue = new OutboundQueue<>(Constants.getSendQueuePolicy(), Constants.sendQueueObjects, Constants.sendQueueBytes,
+            TimeUnit.SECONDS.toMillis(Constants.sendQueueTimeout), ServiceThread::estimateSize, ServiceThread::kindOf, object -> kindOf(object) != null);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private static final Set<MessageToSend.COMMAND_TYPE> coalescedCommands = EnumSet.of(
+            MessageToSend.COMMAND_TYPE.GIVE_LIST_OF_ACTIVE_USERS, MessageToSend.COMMAND_TYPE.GET_LIST_OF_ACTIVE_USERS,
+            MessageToSend.COMMAND_TYPE.GIVE_LIST_OF_INACTIVE_USERS, MessageToSend.COMMAND_TYPE.GET_LIST_OF_INACTIVE_USERS);
     /**
-     * Constructor of ServiceThread, sets socket, gets I/O streams.
-     * @param socket socket to set
+     * Constructor of ServiceThread, sets transport, creates I/O streams. Header of output stream is sent as a first frame,
+     * followed by hello frame, input stream is created when header of peer arrives.
+     * @param transport connection to send and receive frames with
      * @param type type of services to perform
      * @param parent the creator of new instance
      * @throws IOException if there are problems with connections
      */
-    public ServiceThread(Socket socket, String type, ServicesHandler parent)throws IOException {
+    public ServiceThread(FrameTransport transport, String type, ServicesHandler parent)throws IOException {
         parentHandler = parent;
-        this.socket = socket;
+        this.transport = transport;
         this.type = type;
-        outputStream = new ObjectOutputStream(this.socket.getOutputStream());
+        batch = new FrameBatch(transport);
+        outputStream = new SessionObjectOutputStream(new FrameOutputStream(batch, MessageCodec.KIND_SERIALIZED));
         outputStream.flush();
-        inputStream = new ObjectInputStream(this.socket.getInputStream());
+        byte[] hello = MessageCodec.encodeHello(MessageCodec.CAPABILITY_BINARY | (Constants.isCompressionEnabled() ? MessageCodec.CAPABILITY_DEFLATE : 0));
+        batch.writeFrame(hello, 0, hello.length);
+        batch.flush();
         token = this.type.equals("FileService") ? "file" : (this.type.equals("NotificationService") ? "notification" : "authorization packet");
     }
 
     /**
-     * This method gets object or objects
-     * @param conditionalIgnored Indicates if method should get object continuously or perform action one time.
+     * This method starts receiving objects, every object is passed to parent handler as soon as its frame arrives.
+     * @param conditionalIgnored Indicates if frames should be read on notification watcher of parent handler or on own receiving service.
      */
     public synchronized void getObject(boolean conditionalIgnored) {
-        Runnable task = () -> {
-            do {
-                if (sendExit || socket.isClosed() || socket.isInputShutdown()) break;
-                try {
-                        Object object = inputStream.readObject();
-                        parentHandler.processObject(object);
-                }catch (ClassNotFoundException cNFE) {
-                    parentHandler.getController().setStatusText("Can't get the " + token + "!");
-                    StringBuilder stringBuilder = new StringBuilder();
-                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    PrintStream outStream = new PrintStream(outputStream);
-                    cNFE.printStackTrace(outStream);
-                    stringBuilder.append(new Date())
-                            .append(":\n").append("Can't get the ")
-                            .append(token).append("\n\t")
-                            .append(cNFE.getMessage()).append("\n")
-                            .append(outStream.toString()).append("\n");
-                    parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
-                } catch (IOException ignored) {
-                }
+        if (receiving) return;
+        receiving = true;
+        FrameTransport.FrameListener listener = new FrameTransport.FrameListener() {
+            @Override
+            public void frameReceived(byte[] payload) {
+                readFrame(payload);
+            }
+
+            @Override
+            public void connectionClosed() {
+                receiving = false;
             }
-            while(conditionalIgnored);
         };
-        if(!conditionalIgnored) {
-            receivingService.submit(task);
+        if(conditionalIgnored) {
+            transport.startReading(parentHandler::submitNotificationWatcher, listener);
         }
         else {
-            parentHandler.submitNotificationWatcher(task);
+            transport.startReading(receivingService, listener);
+        }
+    }
+
+    private void readFrame(byte[] payload) {
+        if (sendExit || payload.length == 0) return;
+        try {
+            if (payload[0] == MessageCodec.KIND_DEFLATED) {
+                payload = MessageCodec.inflate(payload);
+            }
+            if (payload[0] == MessageCodec.KIND_HELLO) {
+                peerCapabilities = MessageCodec.decodeHello(payload);
+                return;
+            }
+            if (payload[0] == MessageCodec.KIND_BINARY) {
+                parentHandler.processObject(decoder.decode(payload));
+                return;
+            }
+            if (payload[0] == MessageCodec.KIND_RESET) {
+                decoder.resetUsers();
+                frameInputStream.push(payload, 1);
+                if (inputStream != null) {
+                    inputStream.sessionReset();
+                }
+                return;
+            }
+            if (payload[0] != MessageCodec.KIND_SERIALIZED) {
+                throw new StreamCorruptedException("Unknown frame kind: " + payload[0]);
+            }
+            frameInputStream.push(payload, 1);
+            if (inputStream == null) {
+                inputStream = new SessionObjectInputStream(frameInputStream);
+            }
+            while (frameInputStream.available() > 0) {
+                Object object = inputStream.readObject();
+                parentHandler.processObject(object);
+            }
+        }catch (ClassNotFoundException cNFE) {
+            parentHandler.getController().setStatusText("Can't get the " + token + "!");
+            StringBuilder stringBuilder = new StringBuilder();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PrintStream outStream = new PrintStream(outputStream);
+            cNFE.printStackTrace(outStream);
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't get the ")
+                    .append(token).append("\n\t")
+                    .append(cNFE.getMessage()).append("\n")
+                    .append(outStream.toString()).append("\n");
+            parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        } catch (IOException ignored) {
         }
     }
 
     /**
-     * This method sends object via socket.
+     * This method queues object to send via socket. Queue is bounded by {@link Constants#sendQueueObjects} objects
+     * and {@link Constants#sendQueueBytes} bytes, list of users which doesn't fit is handled by policy of {@link Constants#getSendQueuePolicy()}.
+     * Other objects can't be dropped, if such object doesn't fit even after {@link Constants#sendQueueTimeout} seconds, the connection is closed and the session fails.
+     * Queued objects are written one by one, in order of queueing, by task of transfer service, which waits while the transport holds
+     * {@link Constants#sendQueueBytes} bytes not read by peer, so objects sent meanwhile stay in queue under its limits.
+     * Method doesn't hold any monitor, so sender waiting for free space doesn't block other senders nor pins its virtual thread.
      * @param object Object to send
      */
-    public synchronized void sendObject(Object object) {
-        if(socket.isClosed() || socket.isOutputShutdown()) return;
-        Runnable task = () -> {
+    public void sendObject(Object object) {
+        if(!transport.isOpen()) return;
+        boolean queued;
+        try {
+            queued = outboundQueue.offer(object);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            if (outboundQueue.isOverflowed()) {
+                parentHandler.failSession("Can't send the " + token + ", connection is too slow\n\t"
+                        + (object instanceof MessageToSend ? ((MessageToSend) object).getCommandType() : object) + " doesn't fit into queue");
+                return;
+            }
+            if (outboundQueue.isClosed()) return;
+            parentHandler.getController().setStatusText("Can't send the " + token + "!");
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't send the ")
+                    .append(token).append(", connection is too slow\n\t")
+                    .append(object instanceof MessageToSend ? ((MessageToSend) object).getCommandType() : object).append(" dropped, ")
+                    .append(outboundQueue.getDropped()).append(" dropped so far\n");
+            parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+            return;
+        }
+        if (draining.compareAndSet(false, true)) {
+            transferService.submit(this::drainQueue);
+        }
+    }
+
+    /**
+     * Objects queued while previous ones are written, or within {@link Constants#batchWindow} microseconds after the last one,
+     * are gathered in {@link FrameBatch} and sent in one write.
+     */
+    private void drainQueue() {
+        do {
+            Object object;
+            while ((object = nextObject()) != null) {
+                try {
+                    writeObject(object);
+                }
+                catch (IOException io) {
+                    logSendError(io);
+                    if (!transport.isOpen()) {
+                        parentHandler.failSession("Can't send the " + token + ", connection is closed");
+                    }
+                }
+            }
+            writeLock.lock();
             try {
-                synchronized (readLock) {
-                    outputStream.writeObject(object);
-                    outputStream.flush();
+                batch.flush();
+            }
+            catch (IOException io) {
+                logSendError(io);
+            }
+            finally {
+                writeLock.unlock();
+            }
+            draining.set(false);
+        }
+        while (!outboundQueue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private Object nextObject() {
+        Object object = outboundQueue.poll();
+        if (object != null || batch.isEmpty()) {
+            return object;
+        }
+        try {
+            return outboundQueue.poll(Constants.batchWindow, TimeUnit.MICROSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void writeObject(Object object) throws IOException {
+        writeLock.lock();
+        try {
+            long resets = outputStream.getResets();
+            boolean binary = object instanceof MessageToSend && (peerCapabilities & MessageCodec.CAPABILITY_BINARY) != 0
+                    && MessageCodec.canEncode((MessageToSend) object);
+            if (binary && !encoder.hasRoomFor((MessageToSend) object)) {
+                outputStream.resetSession();
+                encoder.resetUsers();
+                binary = encoder.hasRoomFor((MessageToSend) object);
+            }
+            if (binary) {
+                byte[] frame = encoder.encode((MessageToSend) object);
+                if (isCompressionNegotiated()) {
+                    frame = MessageCodec.deflate(frame);
                 }
-            }catch (SocketException io) {
-                parentHandler.getController().setStatusText("Can't send the " + token + "!");
-                StringBuilder stringBuilder = new StringBuilder();
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                PrintStream outStream = new PrintStream(outputStream);
-                io.printStackTrace(outStream);
-                stringBuilder.append(new Date())
-                        .append(":\n").append("Can't send the ")
-                        .append(token).append("\n\t")
-                        .append(io.getMessage()).append("\n")
-                        .append(outStream.toString()).append("\n");
-                parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
-            }
-            catch(IOException io){
-                parentHandler.getController().setStatusText("Connection problems!");
-                StringBuilder stringBuilder = new StringBuilder();
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                PrintStream outStream = new PrintStream(outputStream);
-                io.printStackTrace(outStream);
-                stringBuilder.append(new Date())
-                        .append(":\n").append("Connection problems\n\t")
-                        .append(io.getMessage()).append("\n")
-                        .append(outStream.toString()).append("\n");
-                parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+                batch.writeFrame(frame, 0, frame.length);
             }
-        };
-        transferService.submit(task);
+            else {
+                outputStream.writeMessage(object);
+            }
+            if (outputStream.getResets() != resets) {
+                encoder.resetUsers();
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void logSendError(IOException io) {
+        if (io instanceof SocketException) {
+            parentHandler.getController().setStatusText("Can't send the " + token + "!");
+            StringBuilder stringBuilder = new StringBuilder();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PrintStream outStream = new PrintStream(outputStream);
+            io.printStackTrace(outStream);
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Can't send the ")
+                    .append(token).append("\n\t")
+                    .append(io.getMessage()).append("\n")
+                    .append(outStream.toString()).append("\n");
+            parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+        else {
+            parentHandler.getController().setStatusText("Connection problems!");
+            StringBuilder stringBuilder = new StringBuilder();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PrintStream outStream = new PrintStream(outputStream);
+            io.printStackTrace(outStream);
+            stringBuilder.append(new Date())
+                    .append(":\n").append("Connection problems\n\t")
+                    .append(io.getMessage()).append("\n")
+                    .append(outStream.toString()).append("\n");
+            parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        }
+    }
+
+    private static long estimateSize(Object object) {
+        if (!(object instanceof MessageToSend)) {
+            return 256;
+        }
+        long size = 64;
+        ArrayList<Object> contents = ((MessageToSend) object).getContents();
+        if (contents != null) {
+            for (Object item : contents) {
+                if (item instanceof String) {
+                    size += 40 + 2L * ((String) item).length();
+                }
+                else if (item instanceof File) {
+                    size += 64 + 2L * ((File) item).getPath().length();
+                }
+                else {
+                    size += 256;
+                }
+            }
+        }
+        return size;
+    }
+
+    private static Object kindOf(Object object) {
+        if (object instanceof MessageToSend && coalescedCommands.contains(((MessageToSend) object).getCommandType())) {
+            return ((MessageToSend) object).getCommandType();
+        }
+        return null;
+    }
+
+    /**
+     * This method returns <code>true</code> if both end points of session announced compression
+     * @return boolean
+     */
+    public boolean isCompressionNegotiated() {
+        return (peerCapabilities & MessageCodec.CAPABILITY_DEFLATE) != 0 && Constants.isCompressionEnabled();
+    }
+
+    /**
+     * This method returns number of objects held by handle table of sent object stream since its last reset
+     * @return long
+     */
+    public long getSentObjectsRetained() {
+        return outputStream.getRetainedObjects();
+    }
+
+    /**
+     * This method returns number of objects held by handle table of received object stream since last reset of peer
+     * @return long
+     */
+    public long getReceivedObjectsRetained() {
+        return inputStream != null ? inputStream.getRetainedObjects() : 0;
+    }
+
+    /**
+     * This method returns number of resets of sent object stream
+     * @return long
+     */
+    public long getStreamResets() {
+        return outputStream.getResets();
     }
 
     /**
@@ -149,10 +381,12 @@ public class ServiceThread {
     }
 
     void cleanUp(){
+        outboundQueue.close();
         transferService.shutdown();
         receivingService.shutdown();
         try {
-            inputStream.close();
+            if(inputStream != null)
+                inputStream.close();
         }catch(IOException io){
             parentHandler.getController().setStatusText("Can't close socket stream!");
             StringBuilder stringBuilder = new StringBuilder();
@@ -204,7 +438,7 @@ public class ServiceThread {
             parentHandler.getController().addLog(Constants.LogType.ERROR, stringBuilder.toString());
         }
         try{
-            socket.close();
+            transport.close();
         }
         catch (IOException ignored){
 
@@ -7,18 +7,23 @@ import LimakWebApp.DataPackets.SocketHandler;
 
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.Utils.Controller;
+import LimakWebApp.Utils.SerialExecutor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import java.net.Socket;
+
+import java.nio.channels.FileChannel;
+
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <h1>ServicesHandler</h1>
@@ -28,11 +33,11 @@ import java.util.concurrent.TimeUnit;
  * @since   22.07.2019
  */
 public abstract class ServicesHandler {
-    private ExecutorService serviceForNotificationService =  Executors.newFixedThreadPool(1);
+    private ExecutorService serviceForNotificationService =  new SerialExecutor();
     private SocketHandler socketHandler;
     private CredentialPacket localEndPoint;
 
-    private volatile ServiceThread fileService;
+    private volatile FileServiceThread fileService;
     private volatile ServiceThread notificationService;
 
     /**
@@ -50,6 +55,8 @@ public abstract class ServicesHandler {
      */
     protected volatile boolean closed = false;
 
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+
     /**
      *This constructor sets basic fields of object and runs a runnable that perform sockets operations (access to streams)
      * @param handler Object received from socket
@@ -66,8 +73,19 @@ public abstract class ServicesHandler {
         else{
             Runnable task = ()->{
                 try {
-                    fileService = new ServiceThread(socketHandler.getFileTransferSocket(), "FileService", this);
-                    notificationService = new ServiceThread(socketHandler.getNotificationSocket(), "NotificationService", this);
+                    MultiplexedConnection connection = socketHandler.getMultiplexedConnection();
+                    FrameTransport transport;
+                    if (connection != null) {
+                        fileService = new FileServiceThread(connection.getChannel(MultiplexedConnection.FILE), this);
+                        transport = new BlockingFrameTransport(connection.getChannel(MultiplexedConnection.NOTIFICATION));
+                    }
+                    else {
+                        fileService = new FileServiceThread(socketHandler.getFileTransferSocket(), this);
+                        Socket notificationSocket = socketHandler.getNotificationSocket();
+                        transport = socketHandler.getConnectionSelector() != null ?
+                                socketHandler.getConnectionSelector().register(notificationSocket.getChannel()) : new BlockingFrameTransport(notificationSocket);
+                    }
+                    notificationService = new ServiceThread(transport, "NotificationService", this);
                     notificationService.getObject(true);
                 }
                 catch(IOException io){
@@ -83,10 +101,7 @@ public abstract class ServicesHandler {
      * @param o Object received from socket
      */
     protected void processObject(Object o){
-        if(o instanceof FilePacket){
-            saveFile((FilePacket) o);
-        }
-        else if(o instanceof MessageToSend){
+        if(o instanceof MessageToSend){
             rcvCmd((MessageToSend) o);
         }
     }
@@ -112,6 +127,29 @@ public abstract class ServicesHandler {
         }
     }
 
+    /**
+     * This method ends the session, which can't use its connections anymore, e.g. when command which can't be dropped doesn't fit into queue of slow peer.
+     * Session is closed on shared pool, because the method is called by services of this session.
+     * @param reason description of failure
+     */
+    void failSession(String reason){
+        if (closed || !failed.compareAndSet(false, true)) return;
+        mainPageController.setStatusText("Connection problems!");
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(new Date())
+                .append(":\n").append("Session failed: ")
+                .append(reason).append("\n");
+        mainPageController.addLog(Constants.LogType.ERROR, stringBuilder.toString());
+        SerialExecutor.getSharedPool().execute(this::sessionFailed);
+    }
+
+    /**
+     * This method is called once, when the session failed, it closes the session
+     */
+    protected void sessionFailed(){
+        close();
+    }
+
     /**
      * This method terminates {@link ExecutorService}s, closes held sockets
      */
@@ -124,8 +162,13 @@ public abstract class ServicesHandler {
         if(!serviceForNotificationService.isTerminated()){
             try {
                 serviceForNotificationService.awaitTermination(3, TimeUnit.SECONDS);
-                socketHandler.getFileTransferSocket().close();
-                socketHandler.getNotificationSocket().close();
+                if (socketHandler.getMultiplexedConnection() != null) {
+                    socketHandler.getMultiplexedConnection().close();
+                }
+                else {
+                    socketHandler.getFileTransferSocket().close();
+                    socketHandler.getNotificationSocket().close();
+                }
             }
             catch (InterruptedException| IOException ie) {
                 serviceForNotificationService.shutdownNow();
@@ -171,9 +214,9 @@ public abstract class ServicesHandler {
 
     /**
      * This method returns reference to file service
-     * @return {@link ServiceThread}
+     * @return {@link FileServiceThread}
      */
-    protected ServiceThread getFileService() {
+    protected FileServiceThread getFileService() {
         return fileService;
     }
 
@@ -192,10 +235,18 @@ public abstract class ServicesHandler {
     protected abstract void rcvCmd(MessageToSend command);
 
     /**
-     * This abstract method is model, deriving classes can also put other functionality
+     * This abstract method starts saving of received file, its contents are written into returned channel chunk by chunk, as they arrive
+     * @param filePacket header of the data package to save on drive
+     * @return channel to write contents to, or <code>null</code> if file is not saved and its contents are skipped
+     */
+    protected abstract FileChannel beginSaveFile(FilePacket filePacket);
+
+    /**
+     * This abstract method completes saving of file, which was started by {@link #beginSaveFile(FilePacket)}, after channel is closed.
+     * {@link FilePacket#getFailure()} tells if all contents were received and written.
      * @param filePacket the data package to save on drive
      */
-    protected abstract void saveFile(FilePacket filePacket);
+    protected abstract void finishSaveFile(FilePacket filePacket);
 
     /**
      * This abstract method is model, deriving classes can also put other functionality
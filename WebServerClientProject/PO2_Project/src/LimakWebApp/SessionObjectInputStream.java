@@ -0,0 +1,54 @@
+package LimakWebApp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/**
+ * <h1>SessionObjectInputStream</h1>
+ * This class is object stream of long-lived session, which counts objects held in handle table of stream.
+ * Counter is zeroed when peer resets its {@link SessionObjectOutputStream}.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class SessionObjectInputStream extends ObjectInputStream {
+
+    private volatile long retainedObjects = 0;
+
+    /**
+     * Constructor of SessionObjectInputStream, reads header of stream.
+     * @param inputStream stream to read from
+     * @throws IOException if header can't be read
+     */
+    public SessionObjectInputStream(InputStream inputStream) throws IOException {
+        super(inputStream);
+        enableResolveObject(true);
+    }
+
+    /**
+     * This method counts every object, which gets new handle in stream
+     * @param obj read object
+     * @return the same object
+     */
+    @Override
+    protected Object resolveObject(Object obj) {
+        ++retainedObjects;
+        return obj;
+    }
+
+    /**
+     * This method zeroes counter, after peer reset its stream
+     */
+    public void sessionReset() {
+        retainedObjects = 0;
+    }
+
+    /**
+     * This method returns number of objects held in handle table since last reset
+     * @return long
+     */
+    public long getRetainedObjects() {
+        return retainedObjects;
+    }
+}
@@ -0,0 +1,102 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>SessionObjectOutputStream</h1>
+ * This class is object stream of long-lived session. It counts objects held in handle table of stream and resets the stream
+ * when too many objects or bytes were written since last reset, or when reset period elapsed, so memory of both peers stays bounded.
+ * Reset is sent in own frame of {@link MessageCodec#KIND_RESET} kind, so the receiver knows when to zero its counter.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class SessionObjectOutputStream extends ObjectOutputStream {
+
+    private final FrameOutputStream frameOutputStream;
+    private volatile long retainedObjects = 0;
+    private volatile long bytesSinceReset = 0;
+    private long lastReset = System.nanoTime();
+    private volatile long resets = 0;
+
+    /**
+     * Constructor of SessionObjectOutputStream, writes header of stream.
+     * @param frameOutputStream stream which sends frames
+     * @throws IOException if header can't be written
+     */
+    public SessionObjectOutputStream(FrameOutputStream frameOutputStream) throws IOException {
+        super(frameOutputStream);
+        this.frameOutputStream = frameOutputStream;
+        enableReplaceObject(true);
+    }
+
+    /**
+     * This method counts every object, which gets new handle in stream
+     * @param obj object to be written
+     * @return the same object
+     */
+    @Override
+    protected Object replaceObject(Object obj) {
+        ++retainedObjects;
+        return obj;
+    }
+
+    /**
+     * This method writes object as a single frame and resets the stream if any limit was reached.
+     * @param object object to write
+     * @throws IOException if object can't be written
+     */
+    public void writeMessage(Object object) throws IOException {
+        writeObject(object);
+        drain();
+        bytesSinceReset += frameOutputStream.size();
+        flush();
+        if (retainedObjects >= Constants.streamResetObjects || bytesSinceReset >= Constants.streamResetBytes
+                || System.nanoTime() - lastReset >= TimeUnit.SECONDS.toNanos(Constants.streamResetPeriod)) {
+            resetSession();
+        }
+    }
+
+    /**
+     * This method resets handle table of stream and sends reset marker in own frame
+     * @throws IOException if marker can't be written
+     */
+    public void resetSession() throws IOException {
+        reset();
+        drain();
+        frameOutputStream.flushAs(MessageCodec.KIND_RESET);
+        retainedObjects = 0;
+        bytesSinceReset = 0;
+        lastReset = System.nanoTime();
+        ++resets;
+    }
+
+    /**
+     * This method returns number of objects held in handle table since last reset
+     * @return long
+     */
+    public long getRetainedObjects() {
+        return retainedObjects;
+    }
+
+    /**
+     * This method returns number of bytes written since last reset
+     * @return long
+     */
+    public long getBytesSinceReset() {
+        return bytesSinceReset;
+    }
+
+    /**
+     * This method returns number of resets performed on stream
+     * @return long
+     */
+    public long getResets() {
+        return resets;
+    }
+}
@@ -5,10 +5,12 @@ import LimakWebApp.ClientSide.Client;
 import LimakWebApp.DataPackets.CredentialPacket;
 import LimakWebApp.Utils.AbstractClientController;
 import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.Reconciliation;
 
 import java.io.File;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -107,23 +109,15 @@ public class TestClientController extends  AbstractClientController {
      */
     @Override
     public boolean checkIfAreNewFiles(ArrayList<String> serverFileList) {
-        ArrayList<String> outList = new ArrayList<>();
         lock.readLock().lock();
         try{
-            ArrayList<String> tmp = listOfFiles.stream().map(file->file.getName()).collect(Collectors.toCollection(ArrayList::new));
             if (serverFileList.size() > 0) {
-                for (String fileName : serverFileList) {
-                    if (!tmp.contains(fileName)) {
-                        outList.add(fileName);
-                    }
-                }
-            } else {
-                outList.addAll(tmp);
+                return Reconciliation.of(listOfFiles, File::getName, serverFileList).getOnlyRemote().size() > 0;
             }
+            return listOfFiles.size() > 0;
         }finally {
             lock.readLock().unlock();
         }
-        return outList.size() > 0;
     }
 
     @Override
@@ -253,25 +247,29 @@ public class TestClientController extends  AbstractClientController {
      */
     @Override
     public Map.Entry<CredentialPacket, ArrayList<File>> compareUserAndServerList(ArrayList<String> serverFileList) {
-        Map.Entry<CredentialPacket, ArrayList<File>> rV = null;
-        ArrayList<File> outList = new ArrayList<>();
+        ArrayList<File> outList;
         lock.writeLock().lock();
         try {
-            ArrayList<File> tmp = listOfFiles;
-            if (serverFileList.size() > 0) {
-                for (File file : tmp) {
-                    if (!serverFileList.contains(file.getName())) {
-                        outList.add(file);
-                    }
-                }
-            } else {
-                outList.addAll(tmp);
-            }
+            outList = Reconciliation.of(listOfFiles, File::getName, serverFileList).getOnlyLocal();
         } finally {
             lock.writeLock().unlock();
         }
-        rV = new AbstractMap.SimpleEntry<>(credentialPacket, outList);
-        return rV;
+        return new AbstractMap.SimpleEntry<>(credentialPacket, outList);
+    }
+
+    /**
+     * This method compares user's files with changes of user's files on server
+     * @param changes changes of user's files on server, in order they were made
+     * @return {@link Reconciliation}
+     */
+    @Override
+    public Reconciliation<File> compareUserFilesAndServerChanges(List<String> changes) {
+        lock.readLock().lock();
+        try {
+            return Reconciliation.ofChanges(listOfFiles, File::getName, changes);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -1,26 +1,39 @@
 package LimakWebApp.Tests;
 
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.ServerSide.BlobStore;
 import LimakWebApp.ServerSide.DiskMap;
+import LimakWebApp.ServerSide.DiskPlacement;
 import LimakWebApp.ServerSide.EmailUtil;
+import LimakWebApp.ServerSide.FileCatalog;
 import LimakWebApp.ServerSide.ListOfClients;
+import LimakWebApp.ServerSide.PartialTransfers;
 import LimakWebApp.ServerSide.Server;
+import LimakWebApp.ServerSide.UserManifests;
 import LimakWebApp.Utils.AbstractServerController;
 import LimakWebApp.Utils.Constants;
 import LimakWebApp.Utils.DataPair;
+import LimakWebApp.Utils.Reconciliation;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
-import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.stream.JsonReader;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Writer;
 
+import java.nio.charset.StandardCharsets;
+
+import java.security.SecureRandom;
+
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Date;
@@ -29,8 +42,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -55,6 +71,11 @@ public class TestServerController extends AbstractServerController {
     private volatile ConcurrentHashMap<CredentialPacket, ArrayList<String>> runTimeMapOfFileOwners;
     private volatile ListOfClients listOfClients;
     private volatile ArrayList<DiskMap> serverDiskMap;
+    private volatile FileCatalog fileCatalog;
+    private volatile DiskPlacement diskPlacement;
+    private volatile BlobStore blobStore;
+    private volatile PartialTransfers partialTransfers;
+    private final UserManifests userManifests = new UserManifests(Constants.manifestHistoryLength);
     private volatile ArrayList<DataPair> packetBooleanList;
     private volatile Set<String> ids;
     /**
@@ -75,7 +96,28 @@ public class TestServerController extends AbstractServerController {
         emailSession.testSession();
         for(int i = 0; i < 5; ++i){
             serverDiskMap.add(new DiskMap(credentialPacket.getUserFolderPath() + "\\" + Constants.getDirectories(this)[i]));
-            serverDiskMap.get(i).setDataMap(readContentsFromJson(i));
+        }
+        readDisksInParallel();
+        for(DiskMap disk : serverDiskMap){
+            disk.setManifests(userManifests);
+        }
+        fileCatalog = new FileCatalog(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new));
+        fileCatalog.build(serverDiskMap, Constants.getDirectoriesControlFile(this));
+        diskPlacement = new DiskPlacement(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new), Constants.getDiskPlacementStrategy());
+        diskPlacement.build(Constants.getDirectoriesControlFile(this));
+        blobStore = new BlobStore(new File(credentialPacket.getUserFolderPath(), Constants.getBlobDirectory(this)));
+        try {
+            blobStore.load(fileName -> fileCatalog.getDiskIndex(fileName) >= 0);
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
+        }
+        partialTransfers = new PartialTransfers(new File(credentialPacket.getUserFolderPath(), Constants.getPartialTransfersFileName(this)));
+        try {
+            partialTransfers.load(serverDiskMap.stream().map(DiskMap::getPath).toArray(String[]::new), TimeUnit.DAYS.toMillis(Constants.partialTransferLifetime));
+        }
+        catch(IOException io) {
+            setStatusText("Can't read file");
         }
         listOfClients.put(credentialPacket, true);
         packetBooleanList = new ArrayList<>(listOfClients.toDataPairSet());
@@ -115,27 +157,35 @@ public class TestServerController extends AbstractServerController {
         }
     }
 
-    private synchronized ConcurrentHashMap<String, ArrayList<CredentialPacket>> readContentsFromJson(int disk){
-        ConcurrentHashMap<String, ArrayList<LinkedTreeMap<String,String>>> outMap = new ConcurrentHashMap<>();
+    private void readContentsFromJson(int disk){
         File root = new File(credentialPacket.getUserFolderPath());
         File subFolder = new File(root, Constants.getDirectories(this)[disk]);
         File fileToRead = new File(subFolder, Constants.getDirectoriesControlFile(this));
         if(fileToRead.length() < 1){
-            return new ConcurrentHashMap<>();
+            return;
         }
-        Gson gson = new Gson();
-        try(JsonReader reader = new JsonReader(new FileReader(fileToRead))){
-            outMap = gson.fromJson(reader, outMap.getClass());
+        try(Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileToRead), StandardCharsets.UTF_8))){
+            serverDiskMap.get(disk).readContents(reader, listOfClients);
         }
         catch(IOException io) {
             setStatusText("Can't read file");
         }
-        ConcurrentHashMap<String, ArrayList<CredentialPacket>> rV = new ConcurrentHashMap<>();
-        for(Map.Entry<String, ArrayList<LinkedTreeMap<String,String>>> node : outMap.entrySet()){
-            ArrayList<CredentialPacket> list = node.getValue().stream().map(e -> new CredentialPacket(e.get("userEmail"), e.get("userName"), e.get("userFolderPath"))).collect(Collectors.toCollection(ArrayList::new));
-            rV.put(node.getKey(), list);
+    }
+
+    private void readDisksInParallel(){
+        ArrayList<Future<?>> loads = new ArrayList<>();
+        for(int i = 0; i < serverDiskMap.size(); ++i){
+            final int disk = i;
+            loads.add(pool.submit(()->readContentsFromJson(disk)));
+        }
+        for(Future<?> load : loads){
+            try {
+                load.get();
+            }
+            catch(InterruptedException | ExecutionException e) {
+                setStatusText("Can't read disks");
+            }
         }
-        return rV;
     }
 
     private void createServerDirectoriesIfNotExist(String[] directories){
@@ -177,12 +227,17 @@ public class TestServerController extends AbstractServerController {
      */
     @Override
     public boolean removeUserFromFileOwners(String fileName, CredentialPacket user) {
-        boolean rV = false;
-        for(DiskMap disk : serverDiskMap){
-            if(disk.checkIfFileExists(fileName)){
-                rV = disk.removeFileOwner(fileName, user);
-                break;
-            }
+        int idx = fileCatalog.getDiskIndex(fileName);
+        if(idx < 0){
+            return false;
+        }
+        DiskMap disk = serverDiskMap.get(idx);
+        long size = new File(disk.getPath(), fileName).length();
+        boolean rV = disk.removeFileOwner(fileName, user);
+        if(rV && !disk.checkIfFileExists(fileName)){
+            fileCatalog.remove(fileName);
+            diskPlacement.release(idx, size);
+            blobStore.release(fileName);
         }
         return rV;
     }
@@ -250,28 +305,22 @@ public class TestServerController extends AbstractServerController {
      */
     @Override
     public Map.Entry<CredentialPacket, ArrayList<File>> compareUserAndServerList(CredentialPacket user, ArrayList<String> userFileList) {
-        Map.Entry<CredentialPacket, ArrayList<File>> rV = null;
-        ArrayList<File> outList = new ArrayList<>();
-        ArrayList<String> tmp = new ArrayList<>(getListOfFilesForUser(user));
-        for(String fileName: tmp){
-            if(!userFileList.contains(fileName)){
-                outList.add(new File(findFileInServer(fileName) ,fileName));
+        ArrayList<File> serverFiles = new ArrayList<>();
+        for(DiskMap disk : serverDiskMap){
+            if(disk == null) continue;
+            for(String fileName : disk.getListOfFilesForGivenUser(user)){
+                serverFiles.add(new File(disk.getPath(), fileName));
             }
         }
-        rV = new AbstractMap.SimpleEntry<>(user, outList);
-        return rV;
+        return new AbstractMap.SimpleEntry<>(user, Reconciliation.of(serverFiles, File::getName, userFileList).getOnlyLocal());
     }
 
     private synchronized boolean addUserToFileOwners(String fileName, CredentialPacket user){
         boolean rV = false;
         synchronized (lock) {
-            for (DiskMap disk : serverDiskMap) {
-                if (disk.checkIfFileExists(fileName)) {
-                    if (!user.isEmpty()) {
-                        rV = disk.putOwnerToFile(fileName, user);
-                    }
-                    break;
-                }
+            int idx = fileCatalog.getDiskIndex(fileName);
+            if (idx >= 0 && serverDiskMap.get(idx).checkIfFileExists(fileName) && !user.isEmpty()) {
+                rV = serverDiskMap.get(idx).putOwnerToFile(fileName, user);
             }
         }
         return rV;
@@ -318,6 +367,13 @@ public class TestServerController extends AbstractServerController {
         for(int i = 0; i < serverDiskMap.size(); ++i){
             dumpContentsToJson(i);
         }
+        try {
+            blobStore.dump();
+            partialTransfers.dump();
+        }
+        catch(IOException io) {
+            setStatusText("Can't save file");
+        }
         setStatusText("Closing...");
         addLog(Constants.LogType.INFO, new Date().toString() + ":\nClosing...\n");
         emailSession.dropSession();
@@ -351,18 +407,7 @@ public class TestServerController extends AbstractServerController {
      */
     @Override
     public String findFileInServer(String fileName) {
-        for(String dir : Constants.getDirectories(this)){
-            String outName = credentialPacket.getUserName() + "\\" + dir;
-            File tmp = new File(outName);
-            if(tmp.exists() && tmp.isDirectory()){
-                for(String file : tmp.list()){
-                    if(file.equals(fileName)){
-                        return outName;
-                    }
-                }
-            }
-        }
-        return "";
+        return fileCatalog.find(fileName);
     }
 
     private synchronized void dumpContentsToJson(int disk){
@@ -371,7 +416,7 @@ public class TestServerController extends AbstractServerController {
         File fileToDump = new File(subFolder, Constants.getDirectoriesControlFile(this));
         Gson gson = new Gson();
         try(Writer writer= new FileWriter(fileToDump)){
-            ConcurrentHashMap<String, ArrayList<CredentialPacket>> toDump = serverDiskMap.get(disk).getMap();
+            ConcurrentHashMap<String, Set<CredentialPacket>> toDump = serverDiskMap.get(disk).getMap();
             gson.toJson(toDump, writer);
         }
         catch (IOException io) {
@@ -410,7 +455,8 @@ public class TestServerController extends AbstractServerController {
      */
     @Override
     public CredentialPacket findUserByName(String userName) {
-        return listOfClients.entrySet().stream().map(entry->entry.getKey()).filter(user-> user.getUserName().equals(userName)).findAny().orElse(new CredentialPacket("","",""));
+        CredentialPacket user = listOfClients.getByName(userName);
+        return user != null ? user : new CredentialPacket("","","");
     }
 
     /**
@@ -421,7 +467,7 @@ public class TestServerController extends AbstractServerController {
     @Override
     public String generateID(Object accessor) {
         if(! (accessor instanceof LimakWebApp.Utils.AbstractServerController)) return null;
-        Random generator = new Random();
+        Random generator = new SecureRandom();
         StringBuilder stringBuilder = new StringBuilder();
         while(true) {
             for (int i = 0; i < getMaxSize(); ++i) {
@@ -466,6 +512,51 @@ public class TestServerController extends AbstractServerController {
         server.acceptClients();
     }
 
+    /**
+     * This method returns catalog of files stored on server's disks
+     * @return {@link FileCatalog}
+     */
+    @Override
+    public FileCatalog getFileCatalog() {
+        return fileCatalog;
+    }
+
+    /**
+     * This method returns engine, which chooses server's disk for new file
+     * @return {@link DiskPlacement}
+     */
+    @Override
+    public DiskPlacement getDiskPlacement() {
+        return diskPlacement;
+    }
+
+    /**
+     * This method returns store of contents of files stored on server's disks
+     * @return {@link BlobStore}
+     */
+    @Override
+    public BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * This method returns index of interrupted transfers of files, which can be resumed
+     * @return {@link PartialTransfers}
+     */
+    @Override
+    public PartialTransfers getPartialTransfers() {
+        return partialTransfers;
+    }
+
+    /**
+     * This method returns manifests of users' files stored on server
+     * @return {@link UserManifests}
+     */
+    @Override
+    public UserManifests getUserManifests() {
+        return userManifests;
+    }
+
     /**
      * This method returns reference to {@link DiskMap}
      * @param idx Index to find
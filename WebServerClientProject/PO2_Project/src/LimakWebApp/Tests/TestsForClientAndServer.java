@@ -3,12 +3,36 @@ package LimakWebApp.Tests;
 import LimakWebApp.ClientSide.ApacheWatchService;
 import LimakWebApp.ClientSide.AuthAgent;
 import LimakWebApp.ClientSide.Client;
+import LimakWebApp.FrameBatch;
+import LimakWebApp.FrameInputStream;
+import LimakWebApp.FrameOutputStream;
+import LimakWebApp.FrameTransport;
+import LimakWebApp.MessageCodec;
+import LimakWebApp.MultiplexedConnection;
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.DataPackets.FileDelta;
+import LimakWebApp.DataPackets.FilePacket;
 import LimakWebApp.DataPackets.MessageToSend;
 import LimakWebApp.DataPackets.SocketHandler;
+import LimakWebApp.SessionObjectInputStream;
+import LimakWebApp.SessionObjectOutputStream;
+import LimakWebApp.ServiceThread;
+import LimakWebApp.ServerSide.BinaryCatalog;
+import LimakWebApp.ServerSide.BlobStore;
+import LimakWebApp.ServerSide.ChangeJournal;
 import LimakWebApp.ServerSide.CommunicationServiceThreadHandler;
+import LimakWebApp.ServerSide.DiskMap;
+import LimakWebApp.ServerSide.DiskPlacement;
+import LimakWebApp.ServerSide.FileCatalog;
+import LimakWebApp.ServerSide.ListOfClients;
+import LimakWebApp.ServerSide.PartialTransfers;
 import LimakWebApp.ServerSide.Server;
+import LimakWebApp.ServerSide.UserManifests;
+import LimakWebApp.Utils.Compression;
 import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.OutboundQueue;
+import LimakWebApp.Utils.Reconciliation;
+import LimakWebApp.Utils.SerialExecutor;
 
 import org.junit.After;
 import org.junit.Before;
@@ -18,22 +42,44 @@ import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.TestMethodOrder;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StreamCorruptedException;
 
+import java.net.ConnectException;
 import java.net.Socket;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * <h1>TestsForClientAndServer</h1>
@@ -80,7 +126,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -113,7 +159,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("chrustek@interia.pl", "Limak", sharedTempDir + "\\Limak");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -147,7 +193,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -181,7 +227,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -197,8 +243,8 @@ public class TestsForClientAndServer {
             clientController.setSessionID(ID);
             clientController.setStatusText("Session is active");
             ArrayList<Socket> socketList =  new ArrayList<>();
-            socketList.add(new Socket(Constants.serverIP, Constants.filePort));
-            socketList.add(new Socket(Constants.serverIP, Constants.commPort));
+            socketList.add(SocketHandler.connect(Constants.filePort, ID));
+            socketList.add(SocketHandler.connect(Constants.commPort, ID));
             SocketHandler socketHandler = new SocketHandler(socketList);
             Client client = new Client(socketHandler, packet, clientController);
             clientController.setClient(client);
@@ -214,6 +260,64 @@ public class TestsForClientAndServer {
         }
     }
 
+    /**
+     * This test checks if {@link Client} connected by single {@link MultiplexedConnection} is authorized and served like client connected by separate ports
+     * @throws IOException If any trouble with I/O occurred
+     */
+    @Test
+    public void rcvCommandThroughMultiplexedConnectionTest() throws IOException{
+        System.setProperty(Constants.multiplexingProperty, "true");
+        try {
+            rcvCommandThroughMultiplexedConnection();
+        }
+        finally {
+            System.clearProperty(Constants.multiplexingProperty);
+        }
+    }
+
+    private void rcvCommandThroughMultiplexedConnection() throws IOException{
+        Runnable task = () -> {
+            CredentialPacket serverPacket = new CredentialPacket(Constants.getServerEMail(this), "Server", sharedTempDir.resolve(Constants.getServerDirectory(this)).toString());
+            serverController = new TestServerController(serverPacket);
+            server = new Server();
+            server.setController(serverController);
+            serverController.setServer(server);
+            serverController.authorize();
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        Thread thread = new Thread(task);
+        thread.start();
+        CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak");
+        AuthAgent authAgent = new AuthAgent();
+        MultiplexedConnection connection = new MultiplexedConnection(connectToServer(Constants.muxPort));
+        authAgent.setConnection(connection);
+        authAgent.setCredentialPacket(packet);
+        Future<Integer> rV = executorService.submit(authAgent);
+        int result = -1;
+        try {
+            result = rV.get();
+        } catch (Exception ee) {
+            ee.printStackTrace();
+        }
+        Assertions.assertTrue(result == 0 || result == 9);
+        String ID = authAgent.getSessionID();
+        authAgent.closeInitConnection();
+        Assertions.assertTrue(connection.isOpen());
+        clientController = new TestClientController();
+        clientController.setSessionID(ID);
+        clientController.setStatusText("Session is active");
+        Client client = new Client(new SocketHandler(connection), packet, clientController);
+        clientController.setClient(client);
+        clientController.setCredentialPacket(packet);
+        try {
+            Thread.sleep(1000);
+        }
+        catch(InterruptedException ignored){}
+        Assertions.assertEquals("Received command", clientController.getStatus());
+        Assertions.assertTrue(clientController.getLog().contains("RECEIVE_LIST_OF_FILES"));
+        executorService.shutdownNow();
+    }
+
     /**
      * This test checks if {@link ApacheWatchService} properly detects new file in listened directory and if {@link Client} properly send detected file to {@link LimakWebApp.ServerSide.CommunicationServiceThreadHandler}
      * @throws IOException If any trouble with I/O occurred
@@ -233,7 +337,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -253,8 +357,8 @@ public class TestsForClientAndServer {
             ArrayList<Socket> socketList =  new ArrayList<>();
             clientController.setCredentialPacket(packet);
             clientController.createDirectories();
-            socketList.add(new Socket(Constants.serverIP, Constants.filePort));
-            socketList.add(new Socket(Constants.serverIP, Constants.commPort));
+            socketList.add(SocketHandler.connect(Constants.filePort, ID));
+            socketList.add(SocketHandler.connect(Constants.commPort, ID));
             SocketHandler socketHandler = new SocketHandler(socketList);
             Client client = new Client(socketHandler, packet, clientController);
             clientController.setClient(client);
@@ -301,7 +405,7 @@ public class TestsForClientAndServer {
         thread.start();
         CredentialPacket packet = new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak");
         AuthAgent authAgent = new AuthAgent();
-        Socket socket = new Socket(Constants.serverIP, Constants.authPort);
+        Socket socket = connectToServer(Constants.authPort);
         authAgent.setSocket(socket);
         authAgent.setCredentialPacket(packet);
         Future<Integer> rV = executorService.submit(authAgent);
@@ -321,8 +425,8 @@ public class TestsForClientAndServer {
             ArrayList<Socket> socketList =  new ArrayList<>();
             clientController.setCredentialPacket(packet);
             clientController.createDirectories();
-            socketList.add(new Socket(Constants.serverIP, Constants.filePort));
-            socketList.add(new Socket(Constants.serverIP, Constants.commPort));
+            socketList.add(SocketHandler.connect(Constants.filePort, ID));
+            socketList.add(SocketHandler.connect(Constants.commPort, ID));
             SocketHandler socketHandler = new SocketHandler(socketList);
             Client client = new Client(socketHandler, packet, clientController);
             clientController.setClient(client);
@@ -361,6 +465,1181 @@ public class TestsForClientAndServer {
         }
     }
 
+    /**
+     * This test checks if {@link MessageCodec} decodes what it encoded and sends definition of user only once
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void binaryCodecRoundTrip() throws IOException {
+        MessageCodec encoder = new MessageCodec();
+        MessageCodec decoder = new MessageCodec();
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        ArrayList<Object> contents = new ArrayList<>();
+        contents.add("first.txt");
+        contents.add(user);
+        contents.add(new File("second.txt"));
+        contents.add("first.txt");
+        MessageToSend message = new MessageToSend(user, MessageToSend.COMMAND_TYPE.RECEIVE_LIST_OF_FILES);
+        message.addContents(contents);
+        Assertions.assertTrue(MessageCodec.canEncode(message));
+        byte[] first = encoder.encode(message);
+        byte[] second = encoder.encode(message);
+        Assertions.assertTrue(second.length < first.length);
+        for (byte[] frame : new byte[][]{first, second}) {
+            MessageToSend decoded = decoder.decode(frame);
+            Assertions.assertEquals(MessageToSend.COMMAND_TYPE.RECEIVE_LIST_OF_FILES, decoded.getCommandType());
+            Assertions.assertEquals(user, decoded.getUser());
+            Assertions.assertEquals(contents, decoded.getContents());
+        }
+        ArrayList<Object> unsupported = new ArrayList<>();
+        unsupported.add(1);
+        message.addContents(unsupported);
+        Assertions.assertFalse(MessageCodec.canEncode(message));
+    }
+
+    /**
+     * This test checks if {@link MessageCodec} rejects frame, which announces more items than it contains, and if dictionary of users stays bounded
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void binaryCodecLimits() throws IOException {
+        MessageCodec decoder = new MessageCodec();
+        byte[] oversized = {MessageCodec.KIND_BINARY, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        Assertions.assertThrows(StreamCorruptedException.class, () -> decoder.decode(oversized));
+        MessageCodec encoder = new MessageCodec();
+        for (int i = 0; i < Constants.codecUsers; ++i) {
+            CredentialPacket user = new CredentialPacket(i + "@edu.p.lodz.pl", "User" + i, sharedTempDir + "\\User" + i);
+            MessageToSend message = new MessageToSend(user, MessageToSend.COMMAND_TYPE.GET_LIST_OF_ACTIVE_USERS);
+            Assertions.assertTrue(encoder.hasRoomFor(message));
+            Assertions.assertEquals(user, decoder.decode(encoder.encode(message)).getUser());
+        }
+        CredentialPacket extra = new CredentialPacket("extra@edu.p.lodz.pl", "Extra", sharedTempDir + "\\Extra");
+        MessageToSend message = new MessageToSend(extra, MessageToSend.COMMAND_TYPE.GET_LIST_OF_ACTIVE_USERS);
+        Assertions.assertFalse(encoder.hasRoomFor(message));
+        Assertions.assertThrows(IOException.class, () -> encoder.encode(message));
+        encoder.resetUsers();
+        decoder.resetUsers();
+        Assertions.assertEquals(0, encoder.getUsers());
+        Assertions.assertEquals(extra, decoder.decode(encoder.encode(message)).getUser());
+        Assertions.assertEquals(1, decoder.getUsers());
+    }
+
+    /**
+     * This test checks if {@link FileDelta} rebuilds new version of file byte by byte from old version, when blocks were inserted, deleted or moved,
+     * when the last block is partial and when any version is empty
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void fileDeltaRoundTrip() throws IOException {
+        Random generator = new Random(18);
+        byte[] old = new byte[300000 + 123];
+        generator.nextBytes(old);
+        int block = FileDelta.getBlockSize(old.length);
+        byte[] inserted = new byte[5000];
+        generator.nextBytes(inserted);
+
+        ByteArrayOutputStream insertion = new ByteArrayOutputStream();
+        insertion.write(old, 0, 100001);
+        insertion.write(inserted, 0, inserted.length);
+        insertion.write(old, 100001, old.length - 100001);
+        Assertions.assertTrue(checkDelta(old, insertion.toByteArray()) < 3 * block + inserted.length);
+
+        ByteArrayOutputStream deletion = new ByteArrayOutputStream();
+        deletion.write(old, 0, 50000);
+        deletion.write(old, 50000 + 3 * block + 7, old.length - 50000 - 3 * block - 7);
+        Assertions.assertTrue(checkDelta(old, deletion.toByteArray()) < 3 * block);
+
+        ByteArrayOutputStream move = new ByteArrayOutputStream();
+        move.write(old, 200000, old.length - 200000);
+        move.write(old, 0, 200000);
+        Assertions.assertTrue(checkDelta(old, move.toByteArray()) < 3 * block);
+
+        byte[] appended = Arrays.copyOf(old, old.length + block / 2);
+        generator.nextBytes(inserted);
+        System.arraycopy(inserted, 0, appended, old.length, block / 2);
+        checkDelta(old, appended);
+        checkDelta(old, Arrays.copyOf(old, old.length - block - 1));
+        checkDelta(old, old);
+        checkDelta(new byte[0], old);
+        checkDelta(old, new byte[0]);
+        checkDelta(new byte[0], new byte[0]);
+        checkDelta(Arrays.copyOf(old, 10), Arrays.copyOf(old, 20));
+    }
+
+    /**
+     * This test checks if {@link FileDelta#apply(File, File, File)} rejects corrupted and truncated delta and delta of different old version
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void fileDeltaRejectsCorruptedDelta() throws IOException {
+        Random generator = new Random(19);
+        byte[] old = new byte[100000];
+        generator.nextBytes(old);
+        byte[] current = Arrays.copyOf(old, old.length);
+        for (int i = 40000; i < 41000; ++i) {
+            current[i] = (byte) generator.nextInt();
+        }
+        File oldFile = writeTempFile("old", old);
+        File newFile = writeTempFile("new", current);
+        File deltaFile = sharedTempDir.resolve("delta").toFile();
+        File target = sharedTempDir.resolve("target").toFile();
+        FileDelta.write(newFile, FileDelta.Signatures.decode(FileDelta.Signatures.compute(oldFile).encode()), deltaFile);
+        byte[] delta = Files.readAllBytes(deltaFile.toPath());
+
+        byte[] corrupted = Arrays.copyOf(delta, delta.length);
+        corrupted[delta.length / 2] ^= 0x55;
+        Files.write(deltaFile.toPath(), corrupted);
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.apply(oldFile, deltaFile, target));
+
+        Files.write(deltaFile.toPath(), Arrays.copyOf(delta, delta.length - 10));
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.apply(oldFile, deltaFile, target));
+
+        Files.write(deltaFile.toPath(), delta);
+        byte[] other = Arrays.copyOf(old, old.length);
+        other[10] ^= 1;
+        File otherFile = writeTempFile("other", other);
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.apply(otherFile, deltaFile, target));
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.Signatures.decode("broken"));
+        String encoded = FileDelta.Signatures.compute(oldFile).encode();
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.Signatures.decode(encoded.substring(0, encoded.length() - 8)));
+        ByteArrayOutputStream forged = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(forged);
+        output.writeInt(1);
+        output.writeLong(Integer.MAX_VALUE);
+        output.writeInt(Integer.MAX_VALUE);
+        String forgedSignatures = Base64.getEncoder().encodeToString(forged.toByteArray());
+        Assertions.assertThrows(StreamCorruptedException.class, () -> FileDelta.Signatures.decode(forgedSignatures));
+    }
+
+    /**
+     * This test checks if {@link PartialTransfers} keeps only transfers, which can be resumed, after reload - offset is cut to contents left in part file,
+     * transfers of unknown disk or without part file are dropped and expired ones are deleted. Then the file is resumed from the offset and rebuilt byte by byte.
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void partialTransfersResumeTruncatedPart() throws IOException {
+        byte[] contents = new byte[3 * Constants.fileChunkSize + 1234];
+        new Random(21).nextBytes(contents);
+        File source = writeTempFile("source.bin", contents);
+        String id = FilePacket.transferId("Kamil", source);
+        File disk = Files.createDirectory(sharedTempDir.resolve("disk")).toFile();
+        File partFile = PartialTransfers.getPartFile(disk.getPath(), "source.bin");
+        Files.write(partFile.toPath(), Arrays.copyOf(contents, 2 * Constants.fileChunkSize));
+        Files.write(PartialTransfers.getPartFile(disk.getPath(), "unknown.bin").toPath(), contents);
+        File indexFile = sharedTempDir.resolve("Partial.json").toFile();
+        PartialTransfers partialTransfers = new PartialTransfers(indexFile);
+        partialTransfers.checkpoint("Kamil", "source.bin", id, 0, contents.length, 3 * Constants.fileChunkSize);
+        partialTransfers.checkpoint("Kamil", "unknown.bin", id, 1, contents.length, Constants.fileChunkSize);
+        partialTransfers.checkpoint("Kamil", "missing.bin", id, 0, contents.length, Constants.fileChunkSize);
+        Assertions.assertTrue(partialTransfers.dump());
+
+        PartialTransfers loaded = new PartialTransfers(indexFile);
+        loaded.load(new String[]{disk.getPath()}, TimeUnit.DAYS.toMillis(1));
+        PartialTransfers.Transfer transfer = loaded.get("Kamil", "source.bin");
+        Assertions.assertNotNull(transfer);
+        Assertions.assertEquals(id, transfer.getId());
+        Assertions.assertEquals(2 * Constants.fileChunkSize, transfer.getOffset());
+        Assertions.assertNull(loaded.get("Kamil", "unknown.bin"));
+        Assertions.assertNull(loaded.get("Kamil", "missing.bin"));
+
+        FilePacket packet = new FilePacket("Kamil", source);
+        packet.setTransferId(transfer.getId());
+        packet.setOffset(transfer.getOffset());
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        FilePacket.writeHeader(packet, 1, Channels.newChannel(wire));
+        packet.writeContents(Channels.newChannel(wire), new ReentrantLock(), null);
+        Assertions.assertTrue(wire.size() < contents.length - transfer.getOffset() + Constants.fileChunkSize);
+        ReadableByteChannel input = Channels.newChannel(new ByteArrayInputStream(wire.toByteArray()));
+        HashMap<Integer, FilePacket> transfers = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Constants.fileChunkSize);
+        FilePacket received = FilePacket.readFrame(input, transfers, buffer);
+        Assertions.assertEquals(id, received.getTransferId());
+        Assertions.assertEquals(transfer.getOffset(), received.getOffset());
+        transfers.put(received.getStream(), received);
+        received.setTarget(FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE));
+        while (!received.isFinished()) {
+            FilePacket.readFrame(input, transfers, buffer);
+        }
+        Assertions.assertTrue(received.closeTarget());
+        Assertions.assertNull(received.getFailure());
+        Assertions.assertArrayEquals(contents, Files.readAllBytes(partFile.toPath()));
+
+        loaded.load(new String[]{disk.getPath()}, -1);
+        Assertions.assertNull(loaded.get("Kamil", "source.bin"));
+        Assertions.assertFalse(partFile.exists());
+    }
+
+    /**
+     * This test checks if {@link FilePacket} fails when its contents don't match its size - stream ending before the size is truncated,
+     * stream going past the size is rejected without writing the excess
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void filePacketRejectsContentsOfWrongSize() throws IOException {
+        byte[] contents = new byte[2 * Constants.fileChunkSize + 100];
+        new Random(22).nextBytes(contents);
+        File longer = writeTempFile("longer.bin", contents);
+        File shorter = writeTempFile("shorter.bin", Arrays.copyOf(contents, contents.length - 100));
+
+        FilePacket truncated = receivePacket(new FilePacket("Kamil", longer), new FilePacket("Kamil", shorter), "truncated.bin");
+        Assertions.assertTrue(truncated.getFailure() instanceof StreamCorruptedException);
+        Assertions.assertEquals(contents.length - 100, truncated.getReceived());
+
+        FilePacket overlong = receivePacket(new FilePacket("Kamil", shorter), new FilePacket("Kamil", longer), "overlong.bin");
+        Assertions.assertTrue(overlong.getFailure() instanceof StreamCorruptedException);
+        Assertions.assertTrue(overlong.getReceived() <= overlong.getSize());
+        Assertions.assertTrue(sharedTempDir.resolve("overlong.bin").toFile().length() <= overlong.getSize());
+    }
+
+    private FilePacket receivePacket(FilePacket header, FilePacket contents, String targetName) throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        FilePacket.writeHeader(header, 1, Channels.newChannel(wire));
+        FilePacket.writeHeader(contents, 1, Channels.newChannel(new ByteArrayOutputStream()));
+        contents.writeContents(Channels.newChannel(wire), new ReentrantLock(), null);
+        ReadableByteChannel input = Channels.newChannel(new ByteArrayInputStream(wire.toByteArray()));
+        HashMap<Integer, FilePacket> transfers = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Constants.fileChunkSize);
+        FilePacket received = FilePacket.readFrame(input, transfers, buffer);
+        transfers.put(received.getStream(), received);
+        received.setTarget(FileChannel.open(sharedTempDir.resolve(targetName), StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+        while (!received.isFinished()) {
+            FilePacket.readFrame(input, transfers, buffer);
+        }
+        received.closeTarget();
+        return received;
+    }
+
+    /**
+     * This test checks if {@link UserManifests} keep epoch and sequences after restart - state written with control files is read back
+     * and changes appended to {@link ChangeJournal} later are restored by replay, so client receives only changes made since its sequence.
+     * Client of other epoch, or which fell behind history, or is ahead of manifest, receives full list of files instead.
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void userManifestsDeltaAndFallback() throws IOException {
+        File manifestsFile = sharedTempDir.resolve("Manifests.json").toFile();
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        ListOfClients listOfClients = new ListOfClients();
+        listOfClients.put(user, false);
+        ArrayList<DiskMap> disks = new ArrayList<>();
+        disks.add(new DiskMap(sharedTempDir.toString()));
+        UserManifests manifests = new UserManifests(3, manifestsFile);
+        manifests.load();
+        ChangeJournal journal = new ChangeJournal(sharedTempDir.toFile(), "Journal");
+        journal.open();
+        manifests.setJournal(journal);
+        disks.get(0).setJournal(journal, 0);
+        disks.get(0).setManifests(manifests);
+        disks.get(0).putOwnerToFile("a.txt", user);
+        disks.get(0).putOwnerToFile("b.txt", user);
+        Assertions.assertTrue(manifests.dump());
+        disks.get(0).removeFileOwner("a.txt", user);
+        disks.get(0).putOwnerToFile("c.txt", user);
+        Assertions.assertTrue(manifests.sync());
+        journal.close();
+        String epoch = manifests.getEpoch();
+        Assertions.assertEquals(4, manifests.getSequence(user));
+
+        UserManifests restarted = new UserManifests(3, manifestsFile);
+        restarted.load();
+        Assertions.assertEquals(epoch, restarted.getEpoch());
+        Assertions.assertEquals(2, restarted.getSequence(user));
+        ArrayList<DiskMap> restartedDisks = new ArrayList<>();
+        restartedDisks.add(new DiskMap(sharedTempDir.toString()));
+        new ChangeJournal(sharedTempDir.toFile(), "Journal").replay(listOfClients, restartedDisks, restarted);
+        Assertions.assertEquals(4, restarted.getSequence(user));
+        Assertions.assertEquals(Arrays.asList("-a.txt", "+c.txt"), restarted.getChangesSince(user, epoch, 2));
+        Assertions.assertEquals(Collections.singletonList("+c.txt"), restarted.getChangesSince(user, epoch, 3, 4));
+        Assertions.assertEquals(Collections.emptyList(), restarted.getChangesSince(user, epoch, 4));
+        Assertions.assertNull(restarted.getChangesSince(user, "other epoch", 2));
+        Assertions.assertNull(restarted.getChangesSince(user, epoch, 0));
+        Assertions.assertNull(restarted.getChangesSince(user, epoch, 5));
+        Assertions.assertNull(restarted.getChangesSince(user, "", -1));
+    }
+
+    /**
+     * This test checks if {@link Reconciliation#ofChanges(java.util.Collection, java.util.function.Function, java.util.List)} compares local files
+     * only with names of changes - the last change of name decides, local files outside of changes are not reported
+     */
+    @Test
+    public void reconciliationOfManifestChanges() {
+        ArrayList<String> local = new ArrayList<>(Arrays.asList("a.txt", "b.txt", "x.txt"));
+        Reconciliation<String> reconciliation = Reconciliation.ofChanges(local, name -> name,
+                Arrays.asList("+a.txt", "-b.txt", "+c.txt", "-c.txt", "-d.txt", "+d.txt", "+e.txt"));
+        Assertions.assertEquals(Collections.singletonList("b.txt"), reconciliation.getOnlyLocal());
+        Assertions.assertEquals(Arrays.asList("d.txt", "e.txt"), reconciliation.getOnlyRemote());
+        Reconciliation<String> empty = Reconciliation.ofChanges(local, name -> name, Collections.emptyList());
+        Assertions.assertTrue(empty.getOnlyLocal().isEmpty());
+        Assertions.assertTrue(empty.getOnlyRemote().isEmpty());
+    }
+
+    /**
+     * This test checks if {@link OutboundQueue} keeps its limits of objects and bytes with every policy - {@link OutboundQueue.Policy#DROP} drops at once,
+     * {@link OutboundQueue.Policy#BLOCK} waits for free space until timeout or close, {@link OutboundQueue.Policy#COALESCE} replaces queued object of the same kind,
+     * and if object which can't be dropped overflows the queue
+     * @throws Exception If any problem occurred
+     */
+    @Test
+    public void outboundQueuePolicies() throws Exception {
+        OutboundQueue<String> drop = new OutboundQueue<>(OutboundQueue.Policy.DROP, 3, 10, 5000, String::length, message -> null, message -> true);
+        Assertions.assertTrue(drop.offer("aaaa"));
+        Assertions.assertTrue(drop.offer("bbbb"));
+        Assertions.assertFalse(drop.offer("cccc"));
+        Assertions.assertTrue(drop.offer("cc"));
+        Assertions.assertEquals(10, drop.getBytes());
+        Assertions.assertFalse(drop.offer(""));
+        Assertions.assertEquals(2, drop.getDropped());
+        Assertions.assertEquals("aaaa", drop.poll());
+        Assertions.assertEquals(6, drop.getBytes());
+        OutboundQueue<String> oversized = new OutboundQueue<>(OutboundQueue.Policy.DROP, 3, 10, 5000, String::length, message -> null, message -> true);
+        Assertions.assertTrue(oversized.offer(randomContent()));
+        Assertions.assertFalse(oversized.offer("a"));
+
+        OutboundQueue<String> block = new OutboundQueue<>(OutboundQueue.Policy.BLOCK, 1, 10, 100, String::length, message -> null, message -> true);
+        Assertions.assertTrue(block.offer("first"));
+        long start = System.nanoTime();
+        Assertions.assertFalse(block.offer("second"));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertEquals(1, block.getDropped());
+        OutboundQueue<String> waiting = new OutboundQueue<>(OutboundQueue.Policy.BLOCK, 1, 10, 10000, String::length, message -> null, message -> true);
+        Assertions.assertTrue(waiting.offer("first"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> second = executor.submit(() -> waiting.offer("second"));
+            Assertions.assertEquals("first", waiting.poll(1, TimeUnit.SECONDS));
+            Assertions.assertTrue(second.get(5, TimeUnit.SECONDS));
+            Future<Boolean> third = executor.submit(() -> waiting.offer("third"));
+            Thread.sleep(100);
+            waiting.close();
+            Assertions.assertFalse(third.get(5, TimeUnit.SECONDS));
+            Assertions.assertNull(waiting.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        OutboundQueue<String> coalesce = new OutboundQueue<>(OutboundQueue.Policy.COALESCE, 3, 100, 100, String::length,
+                message -> message.startsWith("users") ? "users" : null, message -> message.startsWith("users"));
+        Assertions.assertTrue(coalesce.offer("users:a"));
+        Assertions.assertTrue(coalesce.offer("file"));
+        Assertions.assertTrue(coalesce.offer("users:a,b"));
+        Assertions.assertEquals(1, coalesce.getCoalesced());
+        Assertions.assertEquals(13, coalesce.getBytes());
+        Assertions.assertEquals("users:a,b", coalesce.poll());
+        Assertions.assertTrue(coalesce.offer("users:c"));
+        Assertions.assertEquals("file", coalesce.poll());
+        Assertions.assertEquals("users:c", coalesce.poll());
+        Assertions.assertTrue(coalesce.isEmpty());
+        Assertions.assertEquals(0, coalesce.getBytes());
+
+        OutboundQueue<String> commands = new OutboundQueue<>(OutboundQueue.Policy.DROP, 1, 100, 100, String::length,
+                message -> null, message -> message.startsWith("users"));
+        Assertions.assertTrue(commands.offer("file"));
+        Assertions.assertFalse(commands.offer("users:a"));
+        Assertions.assertFalse(commands.isOverflowed());
+        start = System.nanoTime();
+        Assertions.assertFalse(commands.offer("quit"));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertTrue(commands.isOverflowed());
+        Assertions.assertTrue(commands.isClosed());
+        Assertions.assertEquals(1, commands.getDropped());
+        Assertions.assertNull(commands.poll());
+    }
+
+    /**
+     * This test checks if {@link BlobStore} counts references of blobs - file added again with other contents releases its old blob,
+     * blob is deleted with the last file referring to it, only files referring to blob prove access to it, and blobs left out of index are deleted by load
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void blobStoreReferences() throws IOException {
+        File directory = sharedTempDir.resolve("Blobs").toFile();
+        BlobStore blobStore = new BlobStore(directory);
+        blobStore.load(fileName -> true);
+        Random generator = new Random(16);
+        byte[] first = new byte[1000];
+        byte[] second = new byte[2000];
+        generator.nextBytes(first);
+        generator.nextBytes(second);
+        String firstId = blobStore.add("a.txt", writeTempFile("a.txt", first));
+        Assertions.assertEquals(firstId, blobStore.add("b.txt", writeTempFile("b.txt", first)));
+        String secondId = blobStore.add("c.txt", writeTempFile("c.txt", second));
+        Assertions.assertNotEquals(firstId, secondId);
+        Assertions.assertTrue(blobStore.isReferencedBy(firstId, Arrays.asList("c.txt", "b.txt")));
+        Assertions.assertFalse(blobStore.isReferencedBy(firstId, Collections.singletonList("c.txt")));
+        Assertions.assertFalse(blobStore.isReferencedBy(secondId, Collections.emptyList()));
+
+        File linked = sharedTempDir.resolve("d.txt").toFile();
+        Assertions.assertTrue(blobStore.link("d.txt", firstId, linked));
+        Assertions.assertArrayEquals(first, Files.readAllBytes(linked.toPath()));
+        Assertions.assertFalse(blobStore.link("e.txt", "../" + firstId, sharedTempDir.resolve("e.txt").toFile()));
+        Assertions.assertFalse(blobStore.link("e.txt", String.join("", Collections.nCopies(64, "0")), sharedTempDir.resolve("e.txt").toFile()));
+
+        Assertions.assertEquals(secondId, blobStore.add("b.txt", writeTempFile("b2.txt", second)));
+        Assertions.assertEquals(secondId, blobStore.getBlobId("b.txt"));
+        Assertions.assertFalse(blobStore.isReferencedBy(firstId, Collections.singletonList("b.txt")));
+        File firstBlob = new File(new File(directory, firstId.substring(0, 2)), firstId);
+        Assertions.assertTrue(blobStore.release("a.txt"));
+        Assertions.assertTrue(blobStore.contains(firstId));
+        Assertions.assertTrue(blobStore.release("d.txt"));
+        Assertions.assertFalse(blobStore.contains(firstId));
+        Assertions.assertFalse(firstBlob.exists());
+        Assertions.assertFalse(blobStore.release("d.txt"));
+        Assertions.assertTrue(blobStore.release("c.txt"));
+        Assertions.assertTrue(blobStore.contains(secondId));
+        Assertions.assertTrue(blobStore.dump());
+
+        File orphan = new File(new File(directory, secondId.substring(0, 2)), String.join("", Collections.nCopies(64, "f")));
+        Files.write(orphan.toPath(), first);
+        BlobStore loaded = new BlobStore(directory);
+        loaded.load(fileName -> true);
+        Assertions.assertFalse(orphan.exists());
+        Assertions.assertEquals(secondId, loaded.getBlobId("b.txt"));
+        Assertions.assertEquals(second.length, loaded.getSize(secondId));
+        loaded.load(fileName -> false);
+        Assertions.assertFalse(loaded.contains(secondId));
+        Assertions.assertFalse(new File(new File(directory, secondId.substring(0, 2)), secondId).exists());
+    }
+
+    /**
+     * This test checks if {@link BinaryCatalog} keeps sizes of files and totals of disks, so {@link FileCatalog} and {@link DiskPlacement}
+     * are built from it and from changes made later without listing of directories, if file of too many owners fails the catalog,
+     * and if damaged record is skipped instead of being read beyond its section
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void binaryCatalogBuildsCatalogAndPlacement() throws IOException {
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        String[] diskPaths = new String[2];
+        ArrayList<DiskMap> disks = new ArrayList<>();
+        for (int i = 0; i < diskPaths.length; ++i) {
+            diskPaths[i] = Files.createDirectories(sharedTempDir.resolve("Disk" + i)).toString();
+            disks.add(new DiskMap(diskPaths[i]));
+        }
+        Files.write(Paths.get(diskPaths[0], "a.txt"), new byte[10]);
+        Files.write(Paths.get(diskPaths[1], "b.txt"), new byte[20]);
+        Files.write(Paths.get(diskPaths[0], "orphan.txt"), new byte[40]);
+        disks.get(0).putOwnerToFile("a.txt", user);
+        disks.get(1).putOwnerToFile("b.txt", user);
+        File catalogFile = sharedTempDir.resolve("Catalog.1.bin").toFile();
+        BinaryCatalog.write(catalogFile, disks);
+        BinaryCatalog catalog = BinaryCatalog.open(catalogFile, null);
+        Assertions.assertEquals(2, catalog.size());
+        Assertions.assertEquals(1, catalog.getFileCount(0));
+        Assertions.assertEquals(10, catalog.getBytes(0));
+        Assertions.assertEquals(20, catalog.getSize("b.txt"));
+        Assertions.assertEquals(1, catalog.getDiskIndex("b.txt"));
+        Assertions.assertEquals(Collections.singletonList(user), catalog.getOwners("a.txt"));
+        Assertions.assertEquals(-1, catalog.getSize("orphan.txt"));
+
+        ArrayList<DiskMap> restarted = new ArrayList<>();
+        for (int i = 0; i < diskPaths.length; ++i) {
+            restarted.add(new DiskMap(diskPaths[i]));
+            restarted.get(i).setBase(catalog, i);
+        }
+        Files.write(Paths.get(diskPaths[0], "c.txt"), new byte[5]);
+        restarted.get(0).putOwnerToFile("c.txt", user);
+        restarted.get(1).removeFileOwner("b.txt", user);
+        FileCatalog fileCatalog = new FileCatalog(diskPaths);
+        fileCatalog.setBase(catalog);
+        fileCatalog.build(restarted, "Control");
+        Assertions.assertEquals(0, fileCatalog.getDiskIndex("a.txt"));
+        Assertions.assertEquals(0, fileCatalog.getDiskIndex("c.txt"));
+        Assertions.assertEquals(-1, fileCatalog.getDiskIndex("b.txt"));
+        Assertions.assertEquals(-1, fileCatalog.getDiskIndex("orphan.txt"));
+        DiskPlacement placement = new DiskPlacement(diskPaths, DiskPlacement.Strategy.LEAST_BYTES);
+        placement.build(restarted, "Control");
+        Assertions.assertEquals(15, placement.getBytes(0));
+        Assertions.assertEquals(2, placement.getFileCount(0));
+        Assertions.assertEquals(0, placement.getBytes(1));
+        Assertions.assertEquals(0, placement.getFileCount(1));
+
+        DiskMap crowded = new DiskMap(diskPaths[0]);
+        for (int i = 0; i <= 0xFFFF; ++i) {
+            crowded.putOwnerToFile("a.txt", new CredentialPacket(i + "@edu.p.lodz.pl", "User" + i, "Path" + i));
+        }
+        File crowdedFile = sharedTempDir.resolve("Catalog.2.bin").toFile();
+        BinaryCatalog.write(crowdedFile, Collections.singletonList(crowded));
+        Assertions.assertEquals(0x10000, BinaryCatalog.open(crowdedFile, null).getOwners("a.txt").size());
+
+        byte[] damaged = Files.readAllBytes(catalogFile.toPath());
+        ByteBuffer.wrap(damaged).putShort(44, (short) 0xFFFF);
+        File damagedFile = sharedTempDir.resolve("Catalog.3.bin").toFile();
+        Files.write(damagedFile.toPath(), damaged);
+        BinaryCatalog damagedCatalog = BinaryCatalog.open(damagedFile, null);
+        Assertions.assertEquals(-1, damagedCatalog.getDiskIndex("a.txt"));
+        Assertions.assertEquals(1, damagedCatalog.getDiskIndex("b.txt"));
+        Assertions.assertTrue(damagedCatalog.getFilesOfOwner(user, 0).isEmpty());
+        damagedCatalog.forEachFile(0, (fileName, owners) -> Assertions.fail("Damaged record is read: " + fileName));
+    }
+
+    /**
+     * This test checks counters of {@link SessionObjectOutputStream} and {@link SessionObjectInputStream} - both peers count the same objects,
+     * reset sends marker in own frame and zeroes counters, object written again after reset is received in full, and too many bytes reset the stream
+     * @throws Exception If any problem with I/O or serialization occurred
+     */
+    @Test
+    public void sessionStreamResetCounters() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        SessionObjectOutputStream output = new SessionObjectOutputStream(new FrameOutputStream(transport, MessageCodec.KIND_SERIALIZED));
+        output.flush();
+        FrameInputStream frames = new FrameInputStream();
+        frames.push(transport.frames.remove(0), 1);
+        SessionObjectInputStream input = new SessionObjectInputStream(frames);
+        ArrayList<Object> message = new ArrayList<>(Arrays.asList("a.txt", "b.txt"));
+
+        output.writeMessage(message);
+        Assertions.assertEquals(3, output.getRetainedObjects());
+        Assertions.assertTrue(output.getBytesSinceReset() > 0);
+        Assertions.assertEquals(0, output.getResets());
+        frames.push(transport.frames.remove(0), 1);
+        Assertions.assertEquals(message, input.readObject());
+        Assertions.assertEquals(output.getRetainedObjects(), input.getRetainedObjects());
+
+        output.resetSession();
+        Assertions.assertEquals(0, output.getRetainedObjects());
+        Assertions.assertEquals(0, output.getBytesSinceReset());
+        Assertions.assertEquals(1, output.getResets());
+        byte[] marker = transport.frames.remove(0);
+        Assertions.assertEquals(MessageCodec.KIND_RESET, marker[0]);
+        frames.push(marker, 1);
+        input.sessionReset();
+        Assertions.assertEquals(0, input.getRetainedObjects());
+
+        output.writeMessage(message);
+        frames.push(transport.frames.remove(0), 1);
+        Assertions.assertEquals(message, input.readObject());
+        Assertions.assertEquals(3, input.getRetainedObjects());
+
+        char[] large = new char[Constants.streamResetBytes];
+        Arrays.fill(large, 'a');
+        output.writeMessage(new String(large));
+        Assertions.assertEquals(2, output.getResets());
+        Assertions.assertEquals(0, output.getBytesSinceReset());
+        Assertions.assertEquals(MessageCodec.KIND_SERIALIZED, transport.frames.get(0)[0]);
+        Assertions.assertEquals(MessageCodec.KIND_RESET, transport.frames.get(1)[0]);
+    }
+
+    /**
+     * This test checks if objects written by {@link SessionObjectOutputStream} past its reset limits, interleaved with binary frames of {@link MessageCodec},
+     * are read back by {@link SessionObjectInputStream} - dictionary of users is cleared by both sides at the same reset frame,
+     * either when dictionary is full or when stream resets itself, the same way {@link ServiceThread} does it
+     * @throws Exception If any problem with I/O occurred
+     */
+    @Test
+    public void sessionStreamSurvivesResets() throws Exception {
+        RecordingTransport transport = new RecordingTransport();
+        SessionObjectOutputStream output = new SessionObjectOutputStream(new FrameOutputStream(transport, MessageCodec.KIND_SERIALIZED));
+        output.flush();
+        MessageCodec encoder = new MessageCodec();
+        ArrayList<Object> sent = new ArrayList<>();
+        CredentialPacket previous = new CredentialPacket("0@edu.p.lodz.pl", "User0", "C:\\User0");
+        for (int i = 1; i <= 3 * Constants.codecUsers; ++i) {
+            CredentialPacket user = new CredentialPacket(i + "@edu.p.lodz.pl", "User" + i, "C:\\User" + i);
+            MessageToSend message = new MessageToSend(user, MessageToSend.COMMAND_TYPE.GIVE_LIST_OF_ACTIVE_USERS);
+            message.addContents(new ArrayList<>(Arrays.asList(previous, "file" + i + ".txt", user)));
+            long resets = output.getResets();
+            if (!encoder.hasRoomFor(message)) {
+                output.resetSession();
+                encoder.resetUsers();
+            }
+            byte[] frame = encoder.encode(message);
+            transport.writeFrame(frame, 0, frame.length);
+            sent.add(message);
+            ArrayList<Object> serialized = new ArrayList<>(Arrays.asList(user, previous, "file" + i + ".txt", user));
+            output.writeMessage(serialized);
+            sent.add(serialized);
+            if (output.getResets() != resets) {
+                encoder.resetUsers();
+            }
+            previous = user;
+        }
+        Assertions.assertTrue(output.getResets() >= 2);
+
+        MessageCodec decoder = new MessageCodec();
+        FrameInputStream frames = new FrameInputStream();
+        frames.push(transport.frames.get(0), 1);
+        SessionObjectInputStream input = new SessionObjectInputStream(frames);
+        ArrayList<Object> received = new ArrayList<>();
+        int resetFrames = 0;
+        for (byte[] payload : transport.frames.subList(1, transport.frames.size())) {
+            if (payload[0] == MessageCodec.KIND_BINARY) {
+                received.add(decoder.decode(payload));
+            } else if (payload[0] == MessageCodec.KIND_RESET) {
+                decoder.resetUsers();
+                frames.push(payload, 1);
+                input.sessionReset();
+                ++resetFrames;
+            } else {
+                Assertions.assertEquals(MessageCodec.KIND_SERIALIZED, payload[0]);
+                frames.push(payload, 1);
+                while (frames.available() > 0) {
+                    received.add(input.readObject());
+                }
+            }
+        }
+        Assertions.assertEquals(output.getResets(), resetFrames);
+        Assertions.assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); ++i) {
+            if (sent.get(i) instanceof MessageToSend) {
+                MessageToSend expected = (MessageToSend) sent.get(i);
+                MessageToSend actual = (MessageToSend) received.get(i);
+                Assertions.assertEquals(expected.getCommandType(), actual.getCommandType());
+                Assertions.assertEquals(expected.getUser().getUserEmail(), actual.getUser().getUserEmail());
+                Assertions.assertEquals(expected.getUser().getUserFolderPath(), actual.getUser().getUserFolderPath());
+                Assertions.assertEquals(expected.getContents(), actual.getContents());
+            } else {
+                ArrayList<?> actual = (ArrayList<?>) received.get(i);
+                Assertions.assertEquals(sent.get(i), actual);
+                Assertions.assertSame(actual.get(0), actual.get(3));
+            }
+        }
+    }
+
+    /**
+     * This test checks if {@link FileCatalog} finds files described by {@link DiskMap}s and files found on disks without owner,
+     * skips control file, and follows files saved and removed later
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void fileCatalogLocatesFiles() throws IOException {
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        String[] diskPaths = new String[3];
+        ArrayList<DiskMap> disks = new ArrayList<>();
+        for (int i = 0; i < diskPaths.length; ++i) {
+            diskPaths[i] = Files.createDirectories(sharedTempDir.resolve("Disk" + i)).toString();
+            disks.add(new DiskMap(diskPaths[i]));
+        }
+        disks.get(0).putOwnerToFile("a.txt", user);
+        disks.get(2).putOwnerToFile("b.txt", user);
+        Files.write(Paths.get(diskPaths[1], "orphan.txt"), new byte[1]);
+        Files.write(Paths.get(diskPaths[1], "Control"), new byte[1]);
+        Files.createDirectories(Paths.get(diskPaths[1], "directory"));
+        FileCatalog catalog = new FileCatalog(diskPaths);
+        catalog.build(disks, "Control");
+        Assertions.assertEquals(0, catalog.getDiskIndex("a.txt"));
+        Assertions.assertEquals(diskPaths[2], catalog.find("b.txt"));
+        Assertions.assertEquals(1, catalog.getDiskIndex("orphan.txt"));
+        Assertions.assertEquals(-1, catalog.getDiskIndex("Control"));
+        Assertions.assertEquals(-1, catalog.getDiskIndex("directory"));
+        Assertions.assertEquals("", catalog.find("missing.txt"));
+        Assertions.assertEquals(-1, catalog.getDiskIndex(null));
+        Assertions.assertEquals(3, catalog.size());
+
+        catalog.put("c.txt", 2);
+        Assertions.assertEquals(2, catalog.getDiskIndex("c.txt"));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> catalog.put("d.txt", 3));
+        Assertions.assertTrue(catalog.remove("a.txt"));
+        Assertions.assertFalse(catalog.remove("a.txt"));
+        Assertions.assertEquals(-1, catalog.getDiskIndex("a.txt"));
+        Assertions.assertEquals(3, catalog.getLocations().size());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> catalog.getLocations().clear());
+    }
+
+    /**
+     * This test checks if inverted index of {@link DiskMap} lists files of user after the map is set, and stays consistent with the map
+     * when owners of files are added and removed by many threads at once
+     * @throws Exception If any problem with I/O occurred or thread was interrupted
+     */
+    @Test
+    public void diskMapOwnerIndex() throws Exception {
+        CredentialPacket first = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        CredentialPacket second = new CredentialPacket("chrustek@interia.pl", "Limak", sharedTempDir + "\\Limak");
+        DiskMap disk = new DiskMap(sharedTempDir.toString());
+        HashMap<String, ArrayList<CredentialPacket>> map = new HashMap<>();
+        map.put("a.txt", new ArrayList<>(Arrays.asList(first, second)));
+        map.put("b.txt", new ArrayList<>(Collections.singletonList(second)));
+        map.put("c.txt", new ArrayList<>());
+        disk.setDataMap(map);
+        Assertions.assertEquals(Collections.singletonList("a.txt"), disk.getListOfFilesForGivenUser(first));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("a.txt", "b.txt")), new HashSet<>(disk.getListOfFilesForGivenUser(second)));
+        Assertions.assertFalse(disk.checkIfFileExists("c.txt"));
+        Assertions.assertTrue(disk.getListOfFilesForGivenUser(null).isEmpty());
+
+        Assertions.assertTrue(disk.removeFileOwner("a.txt", first));
+        Assertions.assertTrue(disk.getListOfFilesForGivenUser(first).isEmpty());
+        Assertions.assertFalse(disk.removeFileOwner("missing.txt", first));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 8; ++thread) {
+            CredentialPacket user = new CredentialPacket(thread + "@edu.p.lodz.pl", "User" + thread, sharedTempDir + "\\User" + thread);
+            tasks.add(executorService.submit(() -> {
+                for (int i = 0; i < 200; ++i) {
+                    disk.putOwnerToFile("shared" + (i % 10) + ".txt", user);
+                    disk.putOwnerToFile("own" + i + ".txt", user);
+                    if (i % 2 == 0) {
+                        disk.removeFileOwner("own" + i + ".txt", user);
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        for (int thread = 0; thread < 8; ++thread) {
+            CredentialPacket user = new CredentialPacket(thread + "@edu.p.lodz.pl", "User" + thread, sharedTempDir + "\\User" + thread);
+            ArrayList<String> files = disk.getListOfFilesForGivenUser(user);
+            Assertions.assertEquals(10 + 100, files.size());
+            for (String fileName : files) {
+                Assertions.assertTrue(disk.getMap().get(fileName).contains(user));
+            }
+        }
+        Assertions.assertEquals(8, disk.getMap().get("shared0.txt").size());
+        Assertions.assertFalse(disk.checkIfFileExists("own0.txt"));
+    }
+
+    /**
+     * This test checks if {@link ListOfClients#verify(CredentialPacket)} finds registered user and every conflict of name, email and path
+     * by indexes, if conflicting user is not registered, and if only registration and removal count as modifications
+     */
+    @Test
+    public void listOfClientsVerify() {
+        ListOfClients listOfClients = new ListOfClients();
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        Assertions.assertNull(listOfClients.put(user, false));
+        long modifications = listOfClients.getModificationCount();
+        Assertions.assertEquals(0, listOfClients.verify(new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil")));
+        Assertions.assertEquals(9, listOfClients.verify(new CredentialPacket("chrustek@interia.pl", "Limak", sharedTempDir + "\\Limak")));
+        Assertions.assertEquals(-1, listOfClients.verify(null));
+        Assertions.assertEquals(3, listOfClients.verify(new CredentialPacket("chrustek@interia.pl", "Kamil", sharedTempDir + "\\Kamil")));
+        Assertions.assertEquals(3, listOfClients.verify(new CredentialPacket("215691@edu.p.lodz.pl", "Limak", sharedTempDir + "\\Limak")));
+        Assertions.assertEquals(1, listOfClients.verify(new CredentialPacket("chrustek@interia.pl", "Kamil", sharedTempDir + "\\Limak")));
+        Assertions.assertEquals(4, listOfClients.verify(new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Limak")));
+        Assertions.assertEquals(4, listOfClients.verify(new CredentialPacket("chrustek@interia.pl", "Limak", sharedTempDir + "\\Kamil")));
+
+        Assertions.assertEquals(false, listOfClients.put(new CredentialPacket("chrustek@interia.pl", "Kamil", sharedTempDir + "\\Limak"), true));
+        Assertions.assertEquals(1, listOfClients.size());
+        Assertions.assertSame(user, listOfClients.getByName("Kamil"));
+        Assertions.assertSame(user, listOfClients.getByEmail("215691@edu.p.lodz.pl"));
+        Assertions.assertEquals(false, listOfClients.put(new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil"), true));
+        Assertions.assertTrue(listOfClients.get(user));
+        Assertions.assertEquals(modifications, listOfClients.getModificationCount());
+
+        Assertions.assertTrue(listOfClients.remove(user));
+        Assertions.assertNull(listOfClients.getByName("Kamil"));
+        Assertions.assertNull(listOfClients.getByEmail("215691@edu.p.lodz.pl"));
+        Assertions.assertEquals(9, listOfClients.verify(user));
+        Assertions.assertEquals(modifications + 1, listOfClients.getModificationCount());
+    }
+
+    /**
+     * This test checks if {@link ChangeJournal} replays changes of clients and disks in order, up to line broken by crash,
+     * if every opening starts new segment, and if compaction deletes older segments only when snapshots were written
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void changeJournalReplayRotationCompaction() throws IOException {
+        File directory = Files.createDirectories(sharedTempDir.resolve("Journal")).toFile();
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        ChangeJournal journal = new ChangeJournal(directory, "Journal");
+        Assertions.assertEquals(0, journal.replay(new ListOfClients(), new ArrayList<>(), null));
+        journal.open();
+        ListOfClients listOfClients = new ListOfClients();
+        listOfClients.setJournal(journal);
+        DiskMap disk = new DiskMap(sharedTempDir.toString());
+        disk.setJournal(journal, 0);
+        listOfClients.put(user, false);
+        disk.putOwnerToFile("a.txt", user);
+        disk.putOwnerToFile("b.txt", user);
+        disk.removeFileOwner("a.txt", user);
+        Assertions.assertEquals(4, journal.getRecordsSinceCompaction());
+        journal.sync();
+        journal.close();
+        File segment = new File(directory, "Journal.1.log");
+        Assertions.assertTrue(segment.isFile());
+        Files.write(segment.toPath(), "{\"op\":\"OWNER_AD".getBytes(), StandardOpenOption.APPEND);
+
+        ChangeJournal reopened = new ChangeJournal(directory, "Journal");
+        ListOfClients replayedClients = new ListOfClients();
+        ArrayList<DiskMap> replayedDisks = new ArrayList<>();
+        replayedDisks.add(new DiskMap(sharedTempDir.toString()));
+        Assertions.assertEquals(4, reopened.replay(replayedClients, replayedDisks, null));
+        Assertions.assertSame(replayedClients.getByName("Kamil"), replayedDisks.get(0).getMap().get("b.txt").iterator().next());
+        Assertions.assertFalse(replayedDisks.get(0).checkIfFileExists("a.txt"));
+        reopened.open();
+        Assertions.assertTrue(new File(directory, "Journal.2.log").isFile());
+        replayedDisks.get(0).setJournal(reopened, 0);
+        replayedDisks.get(0).putOwnerToFile("c.txt", user);
+
+        Assertions.assertFalse(reopened.compact(() -> false));
+        Assertions.assertTrue(segment.isFile());
+        Assertions.assertEquals(0, reopened.getRecordsSinceCompaction());
+        replayedDisks.get(0).putOwnerToFile("d.txt", user);
+        Assertions.assertTrue(reopened.compact(() -> true));
+        Assertions.assertFalse(segment.isFile());
+        Assertions.assertFalse(new File(directory, "Journal.2.log").isFile());
+        Assertions.assertFalse(new File(directory, "Journal.3.log").isFile());
+        Assertions.assertTrue(new File(directory, "Journal.4.log").isFile());
+        replayedDisks.get(0).putOwnerToFile("e.txt", user);
+        reopened.close();
+
+        ArrayList<DiskMap> compactedDisks = new ArrayList<>();
+        compactedDisks.add(new DiskMap(sharedTempDir.toString()));
+        Assertions.assertEquals(1, new ChangeJournal(directory, "Journal").replay(new ListOfClients(), compactedDisks, null));
+        Assertions.assertEquals(Collections.singleton("e.txt"), compactedDisks.get(0).getMap().keySet());
+    }
+
+    /**
+     * This test checks if modification counters count only real changes, and if stores persisted by scheduled tasks
+     * skip writing their files when nothing changed since the last dump
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void dirtyTrackingSkipsCleanDumps() throws IOException {
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", sharedTempDir + "\\Kamil");
+        CredentialPacket other = new CredentialPacket("chrustek@interia.pl", "Limak", sharedTempDir + "\\Limak");
+        DiskMap disk = new DiskMap(sharedTempDir.toString());
+        long modifications = disk.getModificationCount();
+        disk.putOwnerToFile("a.txt", user);
+        Assertions.assertEquals(modifications + 1, disk.getModificationCount());
+        disk.putOwnerToFile("a.txt", user);
+        Assertions.assertFalse(disk.removeFileOwner("a.txt", other));
+        Assertions.assertEquals(modifications + 1, disk.getModificationCount());
+        disk.putOwnerToFile("a.txt", other);
+        Assertions.assertEquals(modifications + 2, disk.getModificationCount());
+
+        File manifestsFile = sharedTempDir.resolve("Manifests.json").toFile();
+        UserManifests manifests = new UserManifests(3, manifestsFile);
+        Assertions.assertTrue(manifests.dump());
+        Assertions.assertFalse(manifestsFile.exists());
+        manifests.record(user, "a.txt", true);
+        Assertions.assertTrue(manifests.dump());
+        Assertions.assertTrue(manifestsFile.delete());
+        Assertions.assertTrue(manifests.dump());
+        Assertions.assertFalse(manifestsFile.exists());
+        manifests.record(user, "b.txt", true);
+        Assertions.assertTrue(manifests.dump());
+        Assertions.assertTrue(manifestsFile.exists());
+
+        File transfersFile = sharedTempDir.resolve("Transfers.json").toFile();
+        PartialTransfers partialTransfers = new PartialTransfers(transfersFile);
+        partialTransfers.checkpoint("Kamil", "a.txt", "id", 0, 100, 10);
+        Assertions.assertTrue(partialTransfers.dump());
+        Assertions.assertTrue(transfersFile.delete());
+        Assertions.assertTrue(partialTransfers.dump());
+        Assertions.assertFalse(transfersFile.exists());
+
+        File directory = sharedTempDir.resolve("Blobs").toFile();
+        BlobStore blobStore = new BlobStore(directory);
+        blobStore.load(fileName -> true);
+        blobStore.add("a.txt", writeTempFile("a.txt", new byte[100]));
+        Assertions.assertTrue(blobStore.dump());
+        File indexFile = new File(directory, "Index.json");
+        Assertions.assertTrue(indexFile.delete());
+        Assertions.assertTrue(blobStore.dump());
+        Assertions.assertFalse(indexFile.exists());
+        blobStore.release("a.txt");
+        Assertions.assertTrue(blobStore.dump());
+        Assertions.assertTrue(indexFile.exists());
+    }
+
+    /**
+     * This test checks if {@link DiskMap#readContents(java.io.Reader, ListOfClients)} streams control file into map - owners are replaced
+     * by registered instances, unregistered owners are shared between files, incomplete owners and unknown fields are skipped,
+     * broken file leaves the map unchanged, and if disks read in parallel share instances of registered users
+     * @throws Exception If any problem with I/O occurred or thread was interrupted
+     */
+    @Test
+    public void streamingJsonLoader() throws Exception {
+        CredentialPacket user = new CredentialPacket("215691@edu.p.lodz.pl", "Kamil", "C:\\Kamil");
+        ListOfClients listOfClients = new ListOfClients();
+        listOfClients.put(user, false);
+        String kamil = "{\"userEmail\":\"215691@edu.p.lodz.pl\",\"userName\":\"Kamil\",\"userFolderPath\":\"C:\\\\Kamil\"}";
+        String limak = "{\"userEmail\":\"chrustek@interia.pl\",\"userName\":\"Limak\",\"userFolderPath\":\"C:\\\\Limak\",\"extra\":[1,{\"a\":2}]}";
+        String json = "{\"a.txt\":[" + kamil + "," + limak + "],\"b.txt\":[" + limak + ",{\"userName\":\"Broken\",\"userEmail\":null}],\"c.txt\":[]}";
+        DiskMap disk = new DiskMap(sharedTempDir.toString());
+        disk.readContents(new StringReader(json), listOfClients);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("a.txt", "b.txt")), disk.getMap().keySet());
+        Assertions.assertTrue(disk.getMap().get("a.txt").stream().anyMatch(owner -> owner == user));
+        CredentialPacket first = disk.getMap().get("a.txt").stream().filter(owner -> owner.getUserName().equals("Limak")).findFirst().get();
+        Assertions.assertSame(first, disk.getMap().get("b.txt").iterator().next());
+        Assertions.assertEquals(1, disk.getMap().get("b.txt").size());
+        Assertions.assertEquals(Collections.singletonList("a.txt"), disk.getListOfFilesForGivenUser(user));
+
+        Assertions.assertThrows(IOException.class, () -> disk.readContents(new StringReader("{\"d.txt\":[" + kamil), listOfClients));
+        Assertions.assertThrows(IOException.class, () -> disk.readContents(new StringReader("[1,2]"), listOfClients));
+        Assertions.assertEquals(2, disk.getMap().size());
+        disk.readContents(new StringReader(""), listOfClients);
+        Assertions.assertTrue(disk.getMap().isEmpty());
+        disk.readContents(new StringReader("null"), listOfClients);
+        Assertions.assertTrue(disk.getMap().isEmpty());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        ArrayList<DiskMap> disks = new ArrayList<>();
+        ArrayList<Future<?>> loads = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            DiskMap loaded = new DiskMap(sharedTempDir.resolve("Disk" + i).toString());
+            StringBuilder contents = new StringBuilder("{");
+            for (int file = 0; file < 500; ++file) {
+                contents.append(file == 0 ? "" : ",").append("\"").append(i).append('_').append(file).append(".txt\":[").append(kamil).append(']');
+            }
+            contents.append('}');
+            disks.add(loaded);
+            loads.add(executorService.submit(() -> {
+                loaded.readContents(new StringReader(contents.toString()), listOfClients);
+                return null;
+            }));
+        }
+        for (Future<?> load : loads) {
+            load.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        for (DiskMap loaded : disks) {
+            Assertions.assertEquals(500, loaded.getMap().size());
+            Assertions.assertEquals(500, loaded.getListOfFilesForGivenUser(user).size());
+            Assertions.assertTrue(loaded.getMap().values().stream().allMatch(owners -> owners.iterator().next() == user));
+        }
+    }
+
+    /**
+     * This test checks if {@link DiskPlacement} chooses disks by every {@link DiskPlacement.Strategy}, keeps totals of disks
+     * after reservation, release and resize, and if it doesn't count control files and parts of interrupted transfers
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void diskPlacementStrategies() throws IOException {
+        String[] diskPaths = new String[3];
+        for (int i = 0; i < diskPaths.length; ++i) {
+            diskPaths[i] = Files.createDirectories(sharedTempDir.resolve("Disk" + i)).toString();
+        }
+        Files.write(Paths.get(diskPaths[0], "a.txt"), new byte[100]);
+        Files.write(Paths.get(diskPaths[0], "b.txt"), new byte[50]);
+        Files.write(Paths.get(diskPaths[0], "control.json"), new byte[1000]);
+        Files.write(Paths.get(diskPaths[0], "control.json.tmp"), new byte[1000]);
+        Files.write(Paths.get(diskPaths[1], "c.txt"), new byte[150]);
+        Files.write(Paths.get(diskPaths[1], "d.txt.part"), new byte[1000]);
+        Files.createDirectories(Paths.get(diskPaths[2], "folder"));
+
+        DiskPlacement leastBytes = new DiskPlacement(diskPaths, DiskPlacement.Strategy.LEAST_BYTES);
+        leastBytes.build("control.json");
+        Assertions.assertEquals(150, leastBytes.getBytes(0));
+        Assertions.assertEquals(2, leastBytes.getFileCount(0));
+        Assertions.assertEquals(150, leastBytes.getBytes(1));
+        Assertions.assertEquals(1, leastBytes.getFileCount(1));
+        Assertions.assertEquals(0, leastBytes.getBytes(2));
+        Assertions.assertEquals(0, leastBytes.getFileCount(2));
+        Assertions.assertEquals(2, leastBytes.place("e.txt", 200));
+        Assertions.assertEquals(1, leastBytes.place("f.txt", 10));
+        Assertions.assertEquals(0, leastBytes.place("g.txt", 10));
+        Assertions.assertEquals(160, leastBytes.getBytes(1));
+        Assertions.assertEquals(3, leastBytes.getFileCount(0));
+        leastBytes.release(2, 200);
+        Assertions.assertEquals(0, leastBytes.getBytes(2));
+        Assertions.assertEquals(0, leastBytes.getFileCount(2));
+        leastBytes.reserve(2, 160);
+        Assertions.assertEquals(2, leastBytes.place("h.txt", 0));
+        leastBytes.resize(2, 160, 300);
+        Assertions.assertEquals(300, leastBytes.getBytes(2));
+        Assertions.assertEquals(2, leastBytes.getFileCount(2));
+        Assertions.assertEquals(1, leastBytes.place("i.txt", 0));
+
+        DiskPlacement roundRobin = new DiskPlacement(diskPaths, DiskPlacement.Strategy.ROUND_ROBIN);
+        for (int i = 0; i < 7; ++i) {
+            Assertions.assertEquals(i % 3, roundRobin.place("file" + i, 1));
+        }
+        Assertions.assertEquals(3, roundRobin.getFileCount(0));
+        Assertions.assertEquals(2, roundRobin.getBytes(2));
+
+        DiskPlacement hashByName = new DiskPlacement(diskPaths, DiskPlacement.Strategy.HASH_BY_NAME);
+        for (String name : Arrays.asList("a.txt", "Kamil.pdf", "Limak", "")) {
+            Assertions.assertEquals(Math.floorMod(name.hashCode(), 3), hashByName.place(name, 1));
+            Assertions.assertEquals(Math.floorMod(name.hashCode(), 3), hashByName.place(name, 1));
+        }
+        Assertions.assertEquals(DiskPlacement.Strategy.HASH_BY_NAME, hashByName.getStrategy());
+        Assertions.assertEquals(diskPaths[1], hashByName.getPath(1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new DiskPlacement(new String[0], DiskPlacement.Strategy.LEAST_BYTES));
+    }
+
+    /**
+     * This test checks if {@link Reconciliation} finds both directions of difference between local and remote lists, keeping their order,
+     * and if malformed changes of remote list are skipped
+     */
+    @Test
+    public void reconciliationOfLists() {
+        List<File> local = Arrays.asList(new File("d", "c.txt"), new File("d", "a.txt"), new File("d", "e.txt"), new File("d", "b.txt"));
+        Reconciliation<File> full = Reconciliation.of(local, File::getName, Arrays.asList("f.txt", "a.txt", "b.txt", "d.txt"));
+        Assertions.assertEquals(Arrays.asList(local.get(0), local.get(2)), full.getOnlyLocal());
+        Assertions.assertEquals(Arrays.asList("f.txt", "d.txt"), full.getOnlyRemote());
+
+        Reconciliation<String> names = Reconciliation.of(Arrays.asList("a.txt", "a.txt", "b.txt"), Collections.singletonList("a.txt"));
+        Assertions.assertEquals(Collections.singletonList("b.txt"), names.getOnlyLocal());
+        Assertions.assertTrue(names.getOnlyRemote().isEmpty());
+        Assertions.assertEquals(Arrays.asList("a.txt", "b.txt"), Reconciliation.of(Arrays.asList("a.txt", "b.txt"), new ArrayList<>()).getOnlyLocal());
+        Assertions.assertEquals(Collections.singletonList("a.txt"), Reconciliation.of(new ArrayList<>(), Collections.singletonList("a.txt")).getOnlyRemote());
+
+        Reconciliation<File> delta = Reconciliation.ofChanges(local, File::getName,
+                Arrays.asList(MessageToSend.FILE_ADDED + "f.txt", MessageToSend.FILE_REMOVED + "a.txt", MessageToSend.FILE_ADDED, null, "?x.txt"));
+        Assertions.assertEquals(Collections.singletonList(local.get(1)), delta.getOnlyLocal());
+        Assertions.assertEquals(Collections.singletonList("f.txt"), delta.getOnlyRemote());
+    }
+
+    /**
+     * This test checks if compression is used only when both end points announce {@link MessageCodec#CAPABILITY_DEFLATE} in hello frame,
+     * and if frames and chunks are deflated only when they are long enough and shrink
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void deflateCapabilityNegotiation() throws IOException {
+        for (int capabilities : new int[]{0, MessageCodec.CAPABILITY_BINARY, MessageCodec.CAPABILITY_BINARY | MessageCodec.CAPABILITY_DEFLATE, 1 << 20}) {
+            byte[] hello = MessageCodec.encodeHello(capabilities);
+            Assertions.assertEquals(MessageCodec.KIND_HELLO, hello[0]);
+            Assertions.assertEquals(capabilities, MessageCodec.decodeHello(hello));
+        }
+        String property = System.getProperty(Constants.compressionProperty);
+        try {
+            System.clearProperty(Constants.compressionProperty);
+            RecordingTransport transport = new RecordingTransport();
+            ServiceThread serviceThread = new ServiceThread(transport, "NotificationService", null);
+            Assertions.assertEquals(2, transport.frames.size());
+            Assertions.assertEquals(MessageCodec.CAPABILITY_BINARY | MessageCodec.CAPABILITY_DEFLATE, MessageCodec.decodeHello(transport.frames.get(1)));
+            Assertions.assertFalse(serviceThread.isCompressionNegotiated());
+            serviceThread.getObject(false);
+            transport.listener.frameReceived(MessageCodec.encodeHello(MessageCodec.CAPABILITY_BINARY));
+            Assertions.assertFalse(serviceThread.isCompressionNegotiated());
+            transport.listener.frameReceived(MessageCodec.encodeHello(MessageCodec.CAPABILITY_BINARY | MessageCodec.CAPABILITY_DEFLATE));
+            Assertions.assertTrue(serviceThread.isCompressionNegotiated());
+
+            System.setProperty(Constants.compressionProperty, "false");
+            Assertions.assertFalse(serviceThread.isCompressionNegotiated());
+            RecordingTransport disabled = new RecordingTransport();
+            new ServiceThread(disabled, "NotificationService", null);
+            Assertions.assertEquals(MessageCodec.CAPABILITY_BINARY, MessageCodec.decodeHello(disabled.frames.get(1)));
+        } finally {
+            if (property == null) {
+                System.clearProperty(Constants.compressionProperty);
+            } else {
+                System.setProperty(Constants.compressionProperty, property);
+            }
+        }
+
+        byte[] small = new byte[Constants.compressionThreshold - 1];
+        Assertions.assertSame(small, MessageCodec.deflate(small));
+        byte[] random = new byte[4 * Constants.compressionThreshold];
+        new Random(215691).nextBytes(random);
+        random[0] = MessageCodec.KIND_BINARY;
+        Assertions.assertSame(random, MessageCodec.deflate(random));
+        byte[] text = new byte[4 * Constants.compressionThreshold];
+        for (int i = 0; i < text.length; ++i) {
+            text[i] = (byte) ("Kamil Chrustowski ".charAt(i % 18));
+        }
+        text[0] = MessageCodec.KIND_BINARY;
+        byte[] deflated = MessageCodec.deflate(text);
+        Assertions.assertEquals(MessageCodec.KIND_DEFLATED, deflated[0]);
+        Assertions.assertTrue(deflated.length < text.length);
+        Assertions.assertArrayEquals(text, MessageCodec.inflate(deflated));
+        byte[] broken = Arrays.copyOf(deflated, deflated.length - 4);
+        Assertions.assertThrows(IOException.class, () -> MessageCodec.inflate(broken));
+        byte[] tooLong = MessageCodec.encodeHello(Constants.maxFrameSize + 1);
+        tooLong[0] = MessageCodec.KIND_DEFLATED;
+        Assertions.assertThrows(IOException.class, () -> MessageCodec.inflate(tooLong));
+
+        Assertions.assertTrue(Compression.isCompressible("a.txt"));
+        Assertions.assertTrue(Compression.isCompressible("Makefile"));
+        Assertions.assertFalse(Compression.isCompressible("archive.ZIP"));
+        Assertions.assertFalse(Compression.isCompressible("photo.jpeg"));
+        Deflater deflater = Compression.newDeflater();
+        Inflater inflater = new Inflater();
+        try {
+            byte[] packed = new byte[text.length];
+            Assertions.assertEquals(-1, Compression.deflate(deflater, random, 0, random.length, packed));
+            int length = Compression.deflate(deflater, text, 0, text.length, packed);
+            Assertions.assertTrue(length > 0 && length < text.length);
+            byte[] unpacked = new byte[text.length];
+            Compression.inflate(inflater, packed, 0, length, unpacked, text.length);
+            Assertions.assertArrayEquals(text, unpacked);
+            Assertions.assertThrows(IOException.class, () -> Compression.inflate(inflater, packed, 0, length, new byte[text.length + 1], text.length + 1));
+        } finally {
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    /**
+     * This test checks if {@link FrameBatch} sends collected frames in one write on flush, or as soon as they reach {@link Constants#batchBytes},
+     * if frame longer than that is sent on its own, and if order of frames is kept
+     * @throws IOException If any problem with I/O occurred
+     */
+    @Test
+    public void frameBatchCollectsFrames() throws IOException {
+        RecordingTransport transport = new RecordingTransport();
+        FrameBatch batch = new FrameBatch(transport);
+        ArrayList<byte[]> expected = new ArrayList<>();
+        Assertions.assertTrue(batch.isEmpty());
+        batch.flush();
+        Assertions.assertEquals(0, transport.writes);
+        for (int i = 0; i < 3; ++i) {
+            byte[] frame = new byte[i * 10];
+            Arrays.fill(frame, (byte) i);
+            expected.add(frame);
+            batch.writeFrame(frame, 0, frame.length);
+        }
+        Assertions.assertFalse(batch.isEmpty());
+        Assertions.assertEquals(0, transport.writes);
+        batch.flush();
+        Assertions.assertTrue(batch.isEmpty());
+        Assertions.assertEquals(1, transport.writes);
+        Assertions.assertEquals(1, batch.getFlushes());
+        Assertions.assertEquals(3, batch.getSentFrames());
+
+        byte[] quarter = new byte[Constants.batchBytes / 4 - Integer.BYTES];
+        for (int i = 0; i < 5; ++i) {
+            Arrays.fill(quarter, (byte) (10 + i));
+            expected.add(quarter.clone());
+            batch.writeFrame(quarter, 0, quarter.length);
+        }
+        Assertions.assertEquals(2, transport.writes);
+        Assertions.assertEquals(7, batch.getSentFrames());
+        Assertions.assertFalse(batch.isEmpty());
+
+        byte[] large = new byte[Constants.batchBytes + 8];
+        Arrays.fill(large, (byte) 20);
+        expected.add(Arrays.copyOfRange(large, 4, large.length));
+        batch.writeFrame(large, 4, large.length - 4);
+        Assertions.assertTrue(batch.isEmpty());
+        Assertions.assertEquals(4, transport.writes);
+        Assertions.assertEquals(4, batch.getFlushes());
+        Assertions.assertEquals(9, batch.getSentFrames());
+
+        batch.writeFrame(new byte[]{30}, 0, 1);
+        expected.add(new byte[]{30});
+        expected.add(new byte[]{31, 32});
+        batch.writeFrames(new byte[]{0, 0, 0, 2, 31, 32}, 0, 6);
+        Assertions.assertTrue(batch.isEmpty());
+        Assertions.assertEquals(6, transport.writes);
+        Assertions.assertEquals(expected.size(), transport.frames.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            Assertions.assertArrayEquals(expected.get(i), transport.frames.get(i));
+        }
+        Assertions.assertTrue(batch.isOpen());
+    }
+
+    /**
+     * This test checks if {@link SerialExecutor} reports kind of threads of its shared pool, platform threads if runtime has no virtual threads,
+     * and if tasks submitted to it are run in order of submission
+     * @throws Exception If any problem occurred
+     */
+    @Test
+    public void serialExecutorExecutionMode() throws Exception {
+        Constants.ExecutionMode mode = SerialExecutor.getEffectiveExecutionMode();
+        Assertions.assertNotNull(mode);
+        if (Runtime.version().feature() < 19 || Constants.getExecutionMode() == Constants.ExecutionMode.PLATFORM) {
+            Assertions.assertEquals(Constants.ExecutionMode.PLATFORM, mode);
+        }
+        Assertions.assertSame(mode, SerialExecutor.getEffectiveExecutionMode());
+        SerialExecutor executor = new SerialExecutor();
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            int task = i;
+            executor.execute(() -> order.add(task));
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; ++i) {
+            Assertions.assertEquals(i, order.get(i));
+        }
+    }
+
     /**
      * Cleans connections
      * @throws IOException If any problem with I/O occurred
@@ -376,6 +1655,26 @@ public class TestsForClientAndServer {
         deleteDirectory(sharedTempDir);
     }
 
+    private Socket connectToServer(int port) throws IOException{
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Constants.connectTimeout);
+        while (true) {
+            try {
+                return new Socket(Constants.serverIP, port);
+            }
+            catch (ConnectException ce) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw ce;
+                }
+                try {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException ie) {
+                    throw ce;
+                }
+            }
+        }
+    }
+
     private void deleteDirectory(Path root) throws IOException{
         File[] files = root.toFile().listFiles();
         if(files != null){
@@ -390,6 +1689,23 @@ public class TestsForClientAndServer {
             Files.deleteIfExists(root);
         }
     }
+    private long checkDelta(byte[] old, byte[] current) throws IOException {
+        File oldFile = writeTempFile("old", old);
+        File newFile = writeTempFile("new", current);
+        File deltaFile = sharedTempDir.resolve("delta").toFile();
+        File target = sharedTempDir.resolve("target").toFile();
+        FileDelta.Signatures signatures = FileDelta.Signatures.decode(FileDelta.Signatures.compute(oldFile).encode());
+        long size = FileDelta.write(newFile, signatures, deltaFile);
+        String digest = FileDelta.apply(oldFile, deltaFile, target);
+        Assertions.assertArrayEquals(current, Files.readAllBytes(target.toPath()));
+        Assertions.assertEquals(FilePacket.digest(newFile), digest);
+        return size;
+    }
+
+    private File writeTempFile(String name, byte[] contents) throws IOException {
+        return Files.write(sharedTempDir.resolve(name), contents).toFile();
+    }
+
     private String randomContent(){
         Random generator = new Random();
         StringBuilder content = new StringBuilder();
@@ -399,4 +1715,42 @@ public class TestsForClientAndServer {
         }
         return content.toString();
     }
+
+    private static class RecordingTransport implements FrameTransport {
+
+        private final ArrayList<byte[]> frames = new ArrayList<>();
+        private FrameListener listener;
+        private int writes = 0;
+
+        @Override
+        public void writeFrame(byte[] payload, int offset, int length) {
+            frames.add(Arrays.copyOfRange(payload, offset, offset + length));
+            ++writes;
+        }
+
+        @Override
+        public void writeFrames(byte[] batch, int offset, int length) {
+            ByteBuffer buffer = ByteBuffer.wrap(batch, offset, length);
+            while (buffer.hasRemaining()) {
+                byte[] frame = new byte[buffer.getInt()];
+                buffer.get(frame);
+                frames.add(frame);
+            }
+            ++writes;
+        }
+
+        @Override
+        public void startReading(Executor executor, FrameListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package LimakWebApp;
+
+import LimakWebApp.Utils.Constants;
+import LimakWebApp.Utils.Controller;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>TransferProgress</h1>
+ * This class is used by {@link FileServiceThread} to report progress and throughput of single file transfer through status bar of {@link Controller}.
+ * Status is updated at most once per {@link Constants#progressReportPeriod} milliseconds, so transfers shorter than that are not reported at all
+ * and the final status is left to the handler of transfer.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class TransferProgress {
+
+    private final Controller controller;
+    private final String action;
+    private final String fileName;
+    private final long size;
+    private final long start = System.nanoTime();
+    private long lastReport = start;
+    private long transferred = 0;
+    private boolean reported = false;
+
+    /**
+     * Constructor of TransferProgress
+     * @param controller controller to report progress to
+     * @param action name of transfer displayed in status, e.g. <i>Sending</i>
+     * @param fileName name of transferred file
+     * @param size size of transferred file in bytes
+     */
+    public TransferProgress(Controller controller, String action, String fileName, long size) {
+        this.controller = controller;
+        this.action = action;
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    /**
+     * This method updates number of transferred bytes and reports it, if the last report is old enough
+     * @param transferred number of bytes transferred so far
+     */
+    public void update(long transferred) {
+        this.transferred = transferred;
+        long now = System.nanoTime();
+        if (now - lastReport < TimeUnit.MILLISECONDS.toNanos(Constants.progressReportPeriod)) {
+            return;
+        }
+        lastReport = now;
+        reported = true;
+        long percent = size > 0 ? transferred * 100 / size : 100;
+        controller.setStatusText(action + " " + fileName + ": " + percent + "% (" + getThroughput(now) + ")");
+    }
+
+    /**
+     * This method reports result of transfer, if its progress was reported
+     * @param success <code>true</code> if file was transferred
+     */
+    public void finish(boolean success) {
+        if (!reported) {
+            return;
+        }
+        long now = System.nanoTime();
+        controller.setStatusText(action + (success ? " finished: " : " failed: ") + fileName);
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(new Date())
+                .append(":\n").append(action).append(success ? " finished: " : " failed: ").append(fileName).append("\n\t")
+                .append(controller.computeDataStorageUnitAndValue(transferred)).append(" in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(now - start)).append(" ms, ")
+                .append(getThroughput(now)).append("\n");
+        controller.addLog(success ? Constants.LogType.INFO : Constants.LogType.ERROR, stringBuilder.toString());
+    }
+
+    private String getThroughput(long now) {
+        long nanos = Math.max(1, now - start);
+        return controller.computeDataStorageUnitAndValue((long) (transferred * 1e9 / nanos)) + "/s";
+    }
+}
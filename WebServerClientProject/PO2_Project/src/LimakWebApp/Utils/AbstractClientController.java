@@ -5,6 +5,7 @@ import LimakWebApp.DataPackets.CredentialPacket;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -36,6 +37,13 @@ public abstract class AbstractClientController extends Controller {
      */
     public abstract Map.Entry<CredentialPacket, ArrayList<File>>  compareUserAndServerList(ArrayList<String> serverFileList);
 
+    /**
+     * This method should compare user's files with changes of server's list
+     * @param changes changes of user's files on server, in order they were made
+     * @return {@link Reconciliation} of user's files, which were removed on server, and files added on server, which user doesn't have
+     */
+    public abstract Reconciliation<File> compareUserFilesAndServerChanges(List<String> changes);
+
     /**
      * This method should clean up resources
      */
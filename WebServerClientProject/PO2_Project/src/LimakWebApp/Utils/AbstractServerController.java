@@ -1,10 +1,15 @@
 package LimakWebApp.Utils;
 
 import LimakWebApp.DataPackets.CredentialPacket;
+import LimakWebApp.ServerSide.BlobStore;
 import LimakWebApp.ServerSide.DiskMap;
+import LimakWebApp.ServerSide.DiskPlacement;
 import LimakWebApp.ServerSide.EmailUtil;
+import LimakWebApp.ServerSide.FileCatalog;
 import LimakWebApp.ServerSide.ListOfClients;
+import LimakWebApp.ServerSide.PartialTransfers;
 import LimakWebApp.ServerSide.Server;
+import LimakWebApp.ServerSide.UserManifests;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -134,6 +139,36 @@ public abstract class AbstractServerController extends Controller {
      */
     public abstract DiskMap getDisk(int idx);
 
+    /**
+     * Should return catalog of files stored on {@link Server}'s disks
+     * @return {@link FileCatalog}
+     */
+    public abstract FileCatalog getFileCatalog();
+
+    /**
+     * Should return engine, which chooses {@link Server}'s disk for new file
+     * @return {@link DiskPlacement}
+     */
+    public abstract DiskPlacement getDiskPlacement();
+
+    /**
+     * Should return store of contents of files stored on {@link Server}'s disks
+     * @return {@link BlobStore}
+     */
+    public abstract BlobStore getBlobStore();
+
+    /**
+     * Should return index of interrupted transfers of files, which can be resumed
+     * @return {@link PartialTransfers}
+     */
+    public abstract PartialTransfers getPartialTransfers();
+
+    /**
+     * Should return manifests of users' files stored on {@link Server}
+     * @return {@link UserManifests}
+     */
+    public abstract UserManifests getUserManifests();
+
     /**
      * This method should return {@link Server}'s credentials
      * @return {@link CredentialPacket}
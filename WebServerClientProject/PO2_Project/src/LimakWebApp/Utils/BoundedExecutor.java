@@ -0,0 +1,206 @@
+package LimakWebApp.Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>BoundedExecutor</h1>
+ * This class runs submitted tasks in order of submission, at most given number of them at the same time, on threads borrowed from shared pool.
+ * It's {@link SerialExecutor} for connections, which need several tasks running at once - every running task holds one permit of semaphore,
+ * the rest waits in queue without holding any thread. Kind of threads depends on {@link Constants#getExecutionMode()}.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class BoundedExecutor extends AbstractExecutorService {
+
+    private final Executor pool;
+    private final Semaphore permits;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final HashSet<Thread> runners = new HashSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private int active = 0;
+    private boolean shutdown = false;
+
+    /**
+     * Constructor of BoundedExecutor, which runs tasks on {@link SerialExecutor#getSharedPool()}
+     * @param parallelism maximal number of tasks running at the same time
+     */
+    public BoundedExecutor(int parallelism) {
+        this(SerialExecutor.getSharedPool(), parallelism);
+    }
+
+    /**
+     * Constructor of BoundedExecutor
+     * @param pool executor which provides threads to run tasks
+     * @param parallelism maximal number of tasks running at the same time
+     */
+    public BoundedExecutor(Executor pool, int parallelism) {
+        this.pool = pool;
+        this.permits = new Semaphore(Math.max(1, parallelism));
+    }
+
+    /**
+     * This method puts task at the end of queue, it's started at once if any permit is free.
+     * @param command task to perform
+     * @throws RejectedExecutionException if executor is shut down
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException();
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("BoundedExecutor is shut down");
+            }
+            tasks.add(command);
+            scheduleNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleNext() {
+        lock.lock();
+        try {
+            while (!tasks.isEmpty() && permits.tryAcquire()) {
+                Runnable next = tasks.poll();
+                ++active;
+                try {
+                    pool.execute(() -> run(next));
+                } catch (RejectedExecutionException ree) {
+                    --active;
+                    permits.release();
+                    tasks.clear();
+                    idle.signalAll();
+                    throw ree;
+                }
+            }
+            if (active == 0 && tasks.isEmpty()) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Runnable task) {
+        Thread thread = Thread.currentThread();
+        lock.lock();
+        try {
+            runners.add(thread);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            task.run();
+        } finally {
+            lock.lock();
+            try {
+                runners.remove(thread);
+                --active;
+                permits.release();
+                scheduleNext();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * This method stops accepting new tasks, already queued tasks are still performed
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method stops accepting new tasks, removes queued tasks and interrupts running ones
+     * @return list of tasks which were never run
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            List<Runnable> rV = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Thread runner : runners) {
+                runner.interrupt();
+            }
+            idle.signalAll();
+            return rV;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns the state of executor
+     * @return boolean
+     */
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if executor is shut down and all tasks are done
+     * @return boolean
+     */
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && active == 0 && tasks.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method waits until all tasks are done after shut down, or given time elapses
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return <code>true</code> if executor terminated
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long left = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(shutdown && active == 0 && tasks.isEmpty())) {
+                if (left <= 0) {
+                    return false;
+                }
+                left = idle.awaitNanos(left);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package LimakWebApp.Utils;
+
+import java.io.StreamCorruptedException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <h1>Compression</h1>
+ * This class compresses chunks of files and frames of notification connection by Deflate of level {@link Constants#compressionLevel},
+ * which is fast enough not to slow down transfer on local links and still shrinks text several times.
+ * Compression is used only if both end points announced it, so every chunk is either compressed or sent as it is.
+ * Files with extensions of already compressed formats are never compressed, other files are compressed as long as
+ * the first chunk shrinks to at most {@link Constants#compressionRatio} of its size.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class Compression {
+
+    private static final Set<String> compressedExtensions = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "jar", "war", "apk",
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "aac", "ogg", "flac", "m4a", "opus",
+            "mp4", "mkv", "avi", "mov", "webm", "m4v",
+            "pdf", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub"));
+
+    private Compression() {
+    }
+
+    /**
+     * This method returns <code>true</code> if extension of given file doesn't indicate already compressed format
+     * @param fileName name of file
+     * @return boolean
+     */
+    public static boolean isCompressible(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 || !compressedExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * This method creates compressor of level {@link Constants#compressionLevel}. It has to be ended by {@link Deflater#end()}.
+     * @return {@link Deflater}
+     */
+    public static Deflater newDeflater() {
+        return new Deflater(Constants.compressionLevel);
+    }
+
+    /**
+     * This method compresses given bytes into output, if they shrink
+     * @param deflater compressor, reset before use
+     * @param input bytes to compress
+     * @param offset offset of bytes to compress
+     * @param length number of bytes to compress
+     * @param output array for compressed bytes, at least <code>length</code> long
+     * @return number of compressed bytes, or <code>-1</code> if compressed bytes are not shorter than input
+     */
+    public static int deflate(Deflater deflater, byte[] input, int offset, int length, byte[] output) {
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished() && compressed < length) {
+            compressed += deflater.deflate(output, compressed, length - compressed);
+        }
+        return deflater.finished() && compressed < length ? compressed : -1;
+    }
+
+    /**
+     * This method decompresses bytes compressed by {@link #deflate(Deflater, byte[], int, int, byte[])}
+     * @param inflater decompressor, reset before use
+     * @param input compressed bytes
+     * @param offset offset of compressed bytes
+     * @param length number of compressed bytes
+     * @param output array for decompressed bytes
+     * @param size number of decompressed bytes
+     * @throws StreamCorruptedException if compressed bytes are broken or don't decompress to exactly <code>size</code> bytes
+     */
+    public static void inflate(Inflater inflater, byte[] input, int offset, int length, byte[] output, int size) throws StreamCorruptedException {
+        inflater.reset();
+        inflater.setInput(input, offset, length);
+        int decompressed = 0;
+        try {
+            while (decompressed < size && !inflater.finished()) {
+                int count = inflater.inflate(output, decompressed, size - decompressed);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                decompressed += count;
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Invalid compressed data: " + e.getMessage());
+        }
+        if (decompressed != size || !inflater.finished()) {
+            throw new StreamCorruptedException("Compressed data doesn't match its size: " + size);
+        }
+    }
+}
@@ -27,17 +27,201 @@ public final class Constants {
      */
     static final public int commPort = 1109;
 
+    /**
+     * Number of port of multiplexed connection, which carries authorization, notifications and files of one client, already set to {@value}
+     */
+    static final public int muxPort = 2138;
+
     /**
      * IP address of server, already set to {@value}
      */
     static final public String serverIP = "127.0.0.1";
 
+    /**
+     * Size in bytes of single chunk of streamed file, already set to {@value}
+     */
+    static final public int fileChunkSize = 0x10000;
+
+    /**
+     * Minimal size in bytes of block of file, which is compared by checksums during delta transfer, already set to {@value}
+     */
+    static final public int deltaBlockSize = 0x800;
+
+    /**
+     * Number of workers, which send files through one file connection at the same time, already set to {@value}
+     */
+    static final public int transferThreads = 4;
+
+    /**
+     * Time in milliseconds, after which progress of file transfer is reported again, already set to {@value}
+     */
+    static final public int progressReportPeriod = 500;
+
+    /**
+     * Maximal size in bytes of single frame of notification connection, already set to {@value}
+     */
+    static final public int maxFrameSize = 0x4000000;
+
+    /**
+     * Size in bytes of buffer first allocated for payload of received frame, which grows only as bytes of frame arrive, already set to {@value}
+     */
+    static final public int frameBufferStep = 0x10000;
+
+    /**
+     * Number of objects written to notification stream, after which the stream is reset, already set to {@value}
+     */
+    static final public int streamResetObjects = 4096;
+
+    /**
+     * Number of bytes written to notification stream, after which the stream is reset, already set to {@value}
+     */
+    static final public int streamResetBytes = 0x100000;
+
+    /**
+     * Time in seconds, after which notification stream is reset on next write, already set to {@value}
+     */
+    static final public int streamResetPeriod = 600;
+
+    /**
+     * Maximal number of users kept in dictionary of {@link LimakWebApp.MessageCodec}, which is cleared with every reset of notification stream, already set to {@value}
+     */
+    static final public int codecUsers = 1024;
+
+    /**
+     * Number of event loops which serve connections of server, already set to {@value}
+     */
+    static final public int selectorThreads = 2;
+
+    /**
+     * Time in seconds, for which server waits for file and notification connections of authorized client, already set to {@value}
+     */
+    static final public int connectTimeout = 10;
+
+    /**
+     * Maximal number of bytes of session ID, which client sends as the first bytes of file and notification connections, already set to {@value}
+     */
+    static final public int sessionGreetingBytes = 64;
+
+    /**
+     * Time in seconds, after which changes appended to journal of server are forced to disk, already set to {@value}
+     */
+    static final public int journalSyncPeriod = 1;
+
+    /**
+     * Time in seconds, after which journal of server is compacted into control files, already set to {@value}
+     */
+    static final public int journalCompactionPeriod = 600;
+
+    /**
+     * Number of received bytes of file, after which they are forced to disk and offset of resumable transfer is saved, already set to {@value}
+     */
+    static final public int checkpointBytes = 0x800000;
+
+    /**
+     * Time in days, for which interrupted transfer of file can be resumed, already set to {@value}
+     */
+    static final public int partialTransferLifetime = 7;
+
+    /**
+     * Level of Deflate compression of files and notifications, already set to {@value}
+     */
+    static final public int compressionLevel = 1;
+
+    /**
+     * Maximal ratio of compressed to original size of the first chunk of file, above which the rest of file is sent uncompressed, already set to {@value}
+     */
+    static final public double compressionRatio = 0.9;
+
+    /**
+     * Minimal size in bytes of binary frame of notification connection, which is compressed, already set to {@value}
+     */
+    static final public int compressionThreshold = 512;
+
+    /**
+     * Maximal number of objects waiting to be sent through notification connection, already set to {@value}
+     */
+    static final public int sendQueueObjects = 1024;
+
+    /**
+     * Maximal estimated number of bytes of objects waiting to be sent through notification connection,
+     * and maximal number of bytes of frames waiting until socket of selector's connection is ready for writing, already set to {@value}
+     */
+    static final public long sendQueueBytes = 0x400000;
+
+    /**
+     * Time in seconds, for which sender waits for free space in queue of notification connection,
+     * and for which selector's connection waits for peer to read its queued frames before it's closed, already set to {@value}
+     */
+    static final public int sendQueueTimeout = 10;
+
+    /**
+     * Time in microseconds, for which queued notifications are gathered into one write, already set to {@value}
+     */
+    static final public int batchWindow = 200;
+
+    /**
+     * Maximal number of bytes of notifications gathered into one write, already set to {@value}
+     */
+    static final public int batchBytes = 0x10000;
+
+    /**
+     * Size in bytes of window of single channel of multiplexed connection, which may be sent before receiver reads it, already set to {@value}
+     */
+    static final public int muxWindow = 0x100000;
+
+    /**
+     * Maximal size in bytes of data of single frame of multiplexed connection, already set to {@value}
+     */
+    static final public int muxFrameSize = 0x10000;
+
+    /**
+     * Number of changes of user's files kept in manifest of user, already set to {@value}
+     */
+    static final public int manifestHistoryLength = 4096;
+
+    /**
+     * Name of system property, which selects {@link ExecutionMode} of blocking connection loops, already set to {@value}
+     */
+    static final public String executionModeProperty = "LimakWebApp.executionMode";
+
+    /**
+     * Name of system property, which enables binary catalog of server's disks when set to <code>true</code>, already set to {@value}
+     */
+    static final public String binaryCatalogProperty = "LimakWebApp.binaryCatalog";
+
+    /**
+     * Name of system property, which selects {@link LimakWebApp.ServerSide.DiskPlacement.Strategy} of choosing disk for new file, already set to {@value}
+     */
+    static final public String diskPlacementProperty = "LimakWebApp.diskPlacement";
+
+    /**
+     * Name of system property, which disables compression of transfers when set to <code>false</code>, already set to {@value}
+     */
+    static final public String compressionProperty = "LimakWebApp.compression";
+
+    /**
+     * Name of system property, which selects {@link LimakWebApp.Utils.OutboundQueue.Policy} of queue of notification connection, already set to {@value}
+     */
+    static final public String sendQueuePolicyProperty = "LimakWebApp.sendQueuePolicy";
+
+    /**
+     * Name of system property, which makes client connect by single multiplexed connection instead of separate authorization, file and notification ports
+     * when set to <code>true</code>, already set to {@value}
+     */
+    static final public String multiplexingProperty = "LimakWebApp.multiplexing";
+
     private final static String clientDownloadDirectory = "Downloads";
+    private final static String clientStateDirectory = ".limak";
     private final static String serverDirectory = "D:\\Project\\Server";
     private final static String testServerDirectory = "TestServer";
     private final static String[] directories = {"Server1", "Server2","Server3","Server4","Server5"};
     private final static String listOfClientsFileName = "Clients.json";
     private final static String directoriesControlFile = "DiscContents.json";
+    private final static String journalFileName = "Journal";
+    private final static String binaryCatalogFileName = "Catalog";
+    private final static String blobDirectory = "Blobs";
+    private final static String partialTransfersFileName = "Partial.json";
+    private final static String manifestsFileName = "Manifests.json";
     private final static String serverEMail = "noreply.webappjavaproject@gmail.com";
 
     /**
@@ -49,6 +233,87 @@ public final class Constants {
         INFO
     }
 
+    /**
+     * Indicates the kind of threads, which run blocking read and write loops of connections, file transfers and readers of {@link LimakWebApp.MultiplexedConnection}.
+     * Event loops of {@link LimakWebApp.ConnectionSelector} always run on their own platform threads, because they never block.
+     */
+    public enum ExecutionMode{
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * This method returns execution mode set by system property {@link #executionModeProperty}, {@link ExecutionMode#PLATFORM} if property is not set or invalid.
+     * @return {@link ExecutionMode}
+     */
+    public final static ExecutionMode getExecutionMode(){
+        String value = System.getProperty(executionModeProperty);
+        if(value != null){
+            try {
+                return ExecutionMode.valueOf(value.trim().toUpperCase());
+            }
+            catch(IllegalArgumentException ignored){
+            }
+        }
+        return ExecutionMode.PLATFORM;
+    }
+
+    /**
+     * This method returns strategy of choosing disk set by system property {@link #diskPlacementProperty}, {@link LimakWebApp.ServerSide.DiskPlacement.Strategy#LEAST_BYTES} if property is not set or invalid.
+     * @return {@link LimakWebApp.ServerSide.DiskPlacement.Strategy}
+     */
+    public final static LimakWebApp.ServerSide.DiskPlacement.Strategy getDiskPlacementStrategy(){
+        String value = System.getProperty(diskPlacementProperty);
+        if(value != null){
+            try {
+                return LimakWebApp.ServerSide.DiskPlacement.Strategy.valueOf(value.trim().toUpperCase());
+            }
+            catch(IllegalArgumentException ignored){
+            }
+        }
+        return LimakWebApp.ServerSide.DiskPlacement.Strategy.LEAST_BYTES;
+    }
+
+    /**
+     * This method returns policy of queue of notification connection set by system property {@link #sendQueuePolicyProperty}, {@link LimakWebApp.Utils.OutboundQueue.Policy#COALESCE} if property is not set or invalid.
+     * @return {@link LimakWebApp.Utils.OutboundQueue.Policy}
+     */
+    public final static LimakWebApp.Utils.OutboundQueue.Policy getSendQueuePolicy(){
+        String value = System.getProperty(sendQueuePolicyProperty);
+        if(value != null){
+            try {
+                return LimakWebApp.Utils.OutboundQueue.Policy.valueOf(value.trim().toUpperCase());
+            }
+            catch(IllegalArgumentException ignored){
+            }
+        }
+        return LimakWebApp.Utils.OutboundQueue.Policy.COALESCE;
+    }
+
+    /**
+     * This method returns <code>true</code> if binary catalog of server's disks is enabled by system property {@link #binaryCatalogProperty}.
+     * @return boolean
+     */
+    public final static boolean isBinaryCatalogEnabled(){
+        return Boolean.parseBoolean(System.getProperty(binaryCatalogProperty));
+    }
+
+    /**
+     * This method returns <code>true</code> unless compression of transfers is disabled by system property {@link #compressionProperty}.
+     * @return boolean
+     */
+    public final static boolean isCompressionEnabled(){
+        return !"false".equalsIgnoreCase(System.getProperty(compressionProperty, "true").trim());
+    }
+
+    /**
+     * This method returns <code>true</code> if client's connection by {@link #muxPort} is enabled by system property {@link #multiplexingProperty}.
+     * @return boolean
+     */
+    public final static boolean isMultiplexingEnabled(){
+        return Boolean.parseBoolean(System.getProperty(multiplexingProperty));
+    }
+
     /**
      * This method returns text representation of server directory path if  <code> o </code> is valid, otherwise <code> null </code>.
      * @param o a valid Object, who wants to get access to data:
@@ -95,6 +360,56 @@ public final class Constants {
         return o instanceof LimakWebApp.Utils.AbstractServerController ? directoriesControlFile : null;
     }
 
+    /**
+     * This method returns the name of journal, that contains changes of control files of server if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.Utils.AbstractServerController}
+     * @return {@link String}
+     */
+    public final static String getJournalFileName(Object o){
+        return o instanceof LimakWebApp.Utils.AbstractServerController ? journalFileName : null;
+    }
+
+    /**
+     * This method returns the name of binary catalog of server's disks if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.Utils.AbstractServerController}
+     * @return {@link String}
+     */
+    public final static String getBinaryCatalogFileName(Object o){
+        return o instanceof LimakWebApp.Utils.AbstractServerController ? binaryCatalogFileName : null;
+    }
+
+    /**
+     * This method returns the name of directory, that contains contents of files stored on server if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.Utils.AbstractServerController}
+     * @return {@link String}
+     */
+    public final static String getBlobDirectory(Object o){
+        return o instanceof LimakWebApp.Utils.AbstractServerController ? blobDirectory : null;
+    }
+
+    /**
+     * This method returns the name of index of interrupted transfers of files if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.Utils.AbstractServerController}
+     * @return {@link String}
+     */
+    public final static String getPartialTransfersFileName(Object o){
+        return o instanceof LimakWebApp.Utils.AbstractServerController ? partialTransfersFileName : null;
+    }
+
+    /**
+     * This method returns the name of file of users' manifests if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.Utils.AbstractServerController}
+     * @return {@link String}
+     */
+    public final static String getManifestsFileName(Object o){
+        return o instanceof LimakWebApp.Utils.AbstractServerController ? manifestsFileName : null;
+    }
+
     /**
      * This method returns an email of server if  <code> o </code> is valid, otherwise <code> null </code>.
      * @param o a valid Object, who wants to get access to data:
@@ -123,6 +438,16 @@ public final class Constants {
         return o instanceof LimakWebApp.Utils.AbstractClientController || o instanceof LimakWebApp.ClientSide.Client ? clientDownloadDirectory : null;
     }
 
+    /**
+     * This method returns the name of directory in user's home, that contains state of synchronization of client if  <code> o </code> is valid, otherwise <code> null </code>.
+     * @param o a valid Object, who wants to get access to data:
+     * {@link LimakWebApp.ClientSide.Client}
+     * @return {@link String}
+     */
+    public final static String getClientStateDirectory(Object o){
+        return o instanceof LimakWebApp.ClientSide.Client ? clientStateDirectory : null;
+    }
+
     private Constants(){
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package LimakWebApp.Utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * <h1>OutboundQueue</h1>
+ * This class holds objects waiting to be sent through one connection. The queue is bounded by number of objects and by estimated number of bytes,
+ * so a peer, which doesn't read fast enough, can't make the sender hold any number of objects in memory.
+ * What happens with object which doesn't fit depends on {@link Policy}, but only objects marked as droppable, e.g. lists of users which are sent again anyway,
+ * may be dropped. Object, which can't be dropped, waits for free space like by {@link Policy#BLOCK}, if it still doesn't fit the queue overflows -
+ * it's closed, so the connection has to be closed too, because peer would miss the object.
+ * Single object larger than the limit of bytes is accepted when the queue is empty, so it can always be sent.
+ * @param <T> type of queued objects
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class OutboundQueue<T> {
+
+    /**
+     * This enum indicates the way of handling object, which doesn't fit into the queue
+     */
+    public enum Policy{
+        /**
+         * Sender waits for free space, at most for the timeout of queue, then the object is dropped or overflows the queue
+         */
+        BLOCK,
+        /**
+         * Droppable object is dropped at once, other objects are handled like by {@link #BLOCK}
+         */
+        DROP,
+        /**
+         * Object replaces queued object of the same kind, e.g. older list of users, even if there is free space.
+         * Object without queued object of its kind is handled like by {@link #BLOCK}
+         */
+        COALESCE
+    }
+
+    private final Policy policy;
+    private final int maxObjects;
+    private final long maxBytes;
+    private final long timeout;
+    private final ToLongFunction<? super T> sizeOf;
+    private final Function<? super T, ?> kindOf;
+    private final Predicate<? super T> droppable;
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+    private final HashMap<Object, Entry<T>> entriesByKind = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private long bytes = 0;
+    private long dropped = 0;
+    private long coalesced = 0;
+    private boolean closed = false;
+    private boolean overflowed = false;
+
+    /**
+     * Constructor of OutboundQueue
+     * @param policy way of handling object, which doesn't fit into the queue
+     * @param maxObjects maximal number of queued objects
+     * @param maxBytes maximal estimated number of bytes of queued objects
+     * @param timeout time in milliseconds, for which sender waits for free space
+     * @param sizeOf function which estimates number of bytes of object
+     * @param kindOf function which returns kind of object, which may be coalesced, or <code>null</code> if object can't be coalesced
+     * @param droppable predicate which tells if object may be dropped
+     */
+    public OutboundQueue(Policy policy, int maxObjects, long maxBytes, long timeout, ToLongFunction<? super T> sizeOf, Function<? super T, ?> kindOf,
+                         Predicate<? super T> droppable) {
+        this.policy = policy;
+        this.maxObjects = maxObjects;
+        this.maxBytes = maxBytes;
+        this.timeout = timeout;
+        this.sizeOf = sizeOf;
+        this.kindOf = kindOf;
+        this.droppable = droppable;
+    }
+
+    /**
+     * This method adds object at the end of the queue, or replaces queued object of its kind if policy is {@link Policy#COALESCE}
+     * @param object object to add
+     * @return <code>false</code> if object was dropped, or the queue is closed - also when this object overflowed it
+     * @throws InterruptedException if sender was interrupted while waiting for free space
+     */
+    public boolean offer(T object) throws InterruptedException {
+        long size = Math.max(0, sizeOf.applyAsLong(object));
+        Object kind = policy == Policy.COALESCE ? kindOf.apply(object) : null;
+        boolean mayDrop = droppable.test(object);
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (kind != null) {
+                Entry<T> queued = entriesByKind.get(kind);
+                if (queued != null) {
+                    bytes += size - queued.size;
+                    queued.object = object;
+                    queued.size = size;
+                    ++coalesced;
+                    return true;
+                }
+            }
+            if (!fits(size) && (policy != Policy.DROP || !mayDrop)) {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (!closed && !fits(size) && nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+            }
+            if (closed) {
+                return false;
+            }
+            if (!fits(size)) {
+                if (mayDrop) {
+                    ++dropped;
+                }
+                else {
+                    overflowed = true;
+                    close();
+                }
+                return false;
+            }
+            Entry<T> entry = new Entry<>(object, size, kind);
+            entries.addLast(entry);
+            if (kind != null) {
+                entriesByKind.put(kind, entry);
+            }
+            bytes += size;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method removes object from the head of the queue
+     * @return object or <code>null</code> if the queue is empty
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            Entry<T> entry = entries.pollFirst();
+            if (entry == null) {
+                return null;
+            }
+            if (entry.kind != null) {
+                entriesByKind.remove(entry.kind, entry);
+            }
+            bytes -= entry.size;
+            notFull.signalAll();
+            return entry.object;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method removes object from the head of the queue, waiting for it at most given time
+     * @param timeout time to wait
+     * @param unit unit of timeout
+     * @return object or <code>null</code> if the queue is still empty
+     * @throws InterruptedException if receiver was interrupted while waiting
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (entries.isEmpty() && !closed && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if there is no object in the queue
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method clears the queue and drops all objects offered later, senders waiting for free space are woken up
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            entries.clear();
+            entriesByKind.clear();
+            bytes = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if the queue was closed
+     * @return boolean
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if the queue was closed, because object which can't be dropped didn't fit into it
+     * @return boolean
+     */
+    public boolean isOverflowed() {
+        lock.lock();
+        try {
+            return overflowed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns estimated number of bytes of queued objects
+     * @return long
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns number of objects dropped so far
+     * @return long
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns number of objects, which replaced queued objects of the same kind so far
+     * @return long
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long size) {
+        return entries.isEmpty() || (entries.size() < maxObjects && bytes + size <= maxBytes);
+    }
+
+    private static class Entry<T> {
+        private T object;
+        private long size;
+        private final Object kind;
+
+        Entry(T object, long size, Object kind) {
+            this.object = object;
+            this.size = size;
+            this.kind = kind;
+        }
+    }
+}
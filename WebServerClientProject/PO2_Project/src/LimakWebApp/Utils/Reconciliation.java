@@ -0,0 +1,125 @@
+package LimakWebApp.Utils;
+
+import LimakWebApp.DataPackets.MessageToSend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <h1>Reconciliation</h1>
+ * This class is used by controllers of client and server to compare local list of files with list of names received from the other side.
+ * Names of remote list are hashed once, then every local item is looked up in constant time,
+ * so both directions of difference are found in one pass, in time linear to sizes of both lists.
+ * Order of both lists is kept in results.
+ * Local list may be also compared with changes of remote list only, then names outside of changes are not compared at all.
+ * @param <T> type of local items
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class Reconciliation<T> {
+
+    private final ArrayList<T> onlyLocal;
+    private final ArrayList<String> onlyRemote;
+
+    private Reconciliation(ArrayList<T> onlyLocal, ArrayList<String> onlyRemote) {
+        this.onlyLocal = onlyLocal;
+        this.onlyRemote = onlyRemote;
+    }
+
+    /**
+     * This method compares local items with remote names
+     * @param local local items
+     * @param nameOf function which returns name of local item
+     * @param remote names received from the other side
+     * @param <T> type of local items
+     * @return {@link Reconciliation}
+     */
+    public static <T> Reconciliation<T> of(Collection<? extends T> local, Function<? super T, String> nameOf, Collection<String> remote) {
+        LinkedHashMap<String, Boolean> matched = new LinkedHashMap<>(Math.max(16, remote.size() * 4 / 3 + 1));
+        for (String name : remote) {
+            matched.put(name, Boolean.FALSE);
+        }
+        ArrayList<T> onlyLocal = new ArrayList<>();
+        for (T item : local) {
+            String name = nameOf.apply(item);
+            if (matched.replace(name, Boolean.TRUE) == null) {
+                onlyLocal.add(item);
+            }
+        }
+        ArrayList<String> onlyRemote = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : matched.entrySet()) {
+            if (!entry.getValue()) {
+                onlyRemote.add(entry.getKey());
+            }
+        }
+        return new Reconciliation<>(onlyLocal, onlyRemote);
+    }
+
+    /**
+     * This method compares local items with changes of remote list, made by {@code MessageToSend.FILE_ADDED} and {@code MessageToSend.FILE_REMOVED}.
+     * Only names of changes are hashed, the last change of name decides - name added remotely, which is missing in local list, is only remote,
+     * local item, which name was removed remotely, is only local.
+     * @param local local items
+     * @param nameOf function which returns name of local item
+     * @param changes changes of remote list, in order they were made
+     * @param <T> type of local items
+     * @return {@link Reconciliation}
+     */
+    public static <T> Reconciliation<T> ofChanges(Collection<? extends T> local, Function<? super T, String> nameOf, List<String> changes) {
+        LinkedHashMap<String, Boolean> added = new LinkedHashMap<>(Math.max(16, changes.size() * 4 / 3 + 1));
+        for (String change : changes) {
+            if (change == null || change.length() < 2) continue;
+            if (change.startsWith(MessageToSend.FILE_ADDED)) {
+                added.put(change.substring(1), Boolean.TRUE);
+            }
+            else if (change.startsWith(MessageToSend.FILE_REMOVED)) {
+                added.put(change.substring(1), Boolean.FALSE);
+            }
+        }
+        ArrayList<T> onlyLocal = new ArrayList<>();
+        for (T item : local) {
+            Boolean remote = added.remove(nameOf.apply(item));
+            if (Boolean.FALSE.equals(remote)) {
+                onlyLocal.add(item);
+            }
+        }
+        ArrayList<String> onlyRemote = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : added.entrySet()) {
+            if (entry.getValue()) {
+                onlyRemote.add(entry.getKey());
+            }
+        }
+        return new Reconciliation<>(onlyLocal, onlyRemote);
+    }
+
+    /**
+     * This method compares local names with remote names
+     * @param local local names
+     * @param remote names received from the other side
+     * @return {@link Reconciliation}
+     */
+    public static Reconciliation<String> of(Collection<String> local, Collection<String> remote) {
+        return of(local, Function.identity(), remote);
+    }
+
+    /**
+     * This method returns local items, which names are missing in remote list
+     * @return {@code ArrayList<T>}
+     */
+    public ArrayList<T> getOnlyLocal() {
+        return onlyLocal;
+    }
+
+    /**
+     * This method returns remote names, which are missing in local list
+     * @return {@code ArrayList<String>}
+     */
+    public ArrayList<String> getOnlyRemote() {
+        return onlyRemote;
+    }
+}
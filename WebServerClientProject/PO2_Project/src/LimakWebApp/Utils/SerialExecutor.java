@@ -0,0 +1,261 @@
+package LimakWebApp.Utils;
+
+import java.lang.reflect.Method;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>SerialExecutor</h1>
+ * This class runs submitted tasks one by one, in order of submission, on threads borrowed from shared pool.
+ * It replaces single thread pools owned by every connection - thread is held only as long as there is a task to run.
+ * Kind of threads in shared pool depends on {@link Constants#getExecutionMode()}. Tasks are guarded by {@link ReentrantLock}
+ * instead of monitors, so virtual threads are not pinned to their carriers while waiting.
+ * @author  Kamil Chrustowski
+ * @version 1.0
+ * @since   18.10.2026
+ */
+public class SerialExecutor extends AbstractExecutorService {
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static volatile ExecutorService sharedPool;
+    private static volatile Constants.ExecutionMode executionMode;
+
+    private final Executor pool;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private Runnable active;
+    private Thread runner;
+    private boolean shutdown = false;
+
+    /**
+     * Constructor of SerialExecutor, which runs tasks on {@link #getSharedPool()}
+     */
+    public SerialExecutor() {
+        this(getSharedPool());
+    }
+
+    /**
+     * Constructor of SerialExecutor
+     * @param pool executor which provides threads to run tasks
+     */
+    public SerialExecutor(Executor pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * This method returns pool shared by all instances of {@link SerialExecutor} created without own pool.
+     * In {@link Constants.ExecutionMode#VIRTUAL} mode every task gets new virtual thread, if runtime doesn't support them
+     * platform threads are used, warning is printed once and {@link #getEffectiveExecutionMode()} reports the mode actually used.
+     * Platform threads are created on demand and released after minute of idleness.
+     * @return {@link ExecutorService}
+     */
+    public static ExecutorService getSharedPool() {
+        if (sharedPool == null) {
+            synchronized (SerialExecutor.class) {
+                if (sharedPool == null) {
+                    ExecutorService pool = null;
+                    Constants.ExecutionMode mode = Constants.getExecutionMode();
+                    if (mode == Constants.ExecutionMode.VIRTUAL) {
+                        pool = createVirtualThreadPool();
+                        if (pool == null) {
+                            mode = Constants.ExecutionMode.PLATFORM;
+                            System.err.println(new Date() + ":\nVirtual threads are not supported by Java " + System.getProperty("java.version")
+                                    + ", platform threads are used instead\n");
+                        }
+                    }
+                    if (pool == null) {
+                        pool = Executors.newCachedThreadPool(task -> {
+                            Thread thread = new Thread(task, "LimakWebApp-worker-" + threadCounter.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    }
+                    executionMode = mode;
+                    sharedPool = pool;
+                }
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * This method returns kind of threads used by {@link #getSharedPool()}. It differs from {@link Constants#getExecutionMode()}
+     * if virtual threads were requested but runtime doesn't support them.
+     * @return {@link Constants.ExecutionMode}
+     */
+    public static Constants.ExecutionMode getEffectiveExecutionMode() {
+        getSharedPool();
+        return executionMode;
+    }
+
+    private static ExecutorService createVirtualThreadPool() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This method puts task at the end of queue.
+     * @param command task to perform
+     * @throws RejectedExecutionException if executor is shut down
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException();
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("SerialExecutor is shut down");
+            }
+            tasks.add(command);
+            if (active == null) {
+                scheduleNext();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleNext() {
+        lock.lock();
+        try {
+            Runnable next = tasks.poll();
+            if (next == null) {
+                active = null;
+                idle.signalAll();
+                return;
+            }
+            active = () -> {
+                setRunner(Thread.currentThread());
+                try {
+                    next.run();
+                } finally {
+                    setRunner(null);
+                    scheduleNext();
+                }
+            };
+            try {
+                pool.execute(active);
+            } catch (RejectedExecutionException ree) {
+                active = null;
+                tasks.clear();
+                idle.signalAll();
+                throw ree;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void setRunner(Thread thread) {
+        lock.lock();
+        try {
+            runner = thread;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method stops accepting new tasks, already queued tasks are still performed
+     */
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            idle.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method stops accepting new tasks, removes queued tasks and interrupts running one
+     * @return list of tasks which were never run
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            List<Runnable> rV = new ArrayList<>(tasks);
+            tasks.clear();
+            if (runner != null) {
+                runner.interrupt();
+            }
+            idle.signalAll();
+            return rV;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns the state of executor
+     * @return boolean
+     */
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method returns <code>true</code> if executor is shut down and all tasks are done
+     * @return boolean
+     */
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && active == null && tasks.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * This method waits until all tasks are done after shut down, or given time elapses
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return <code>true</code> if executor terminated
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long left = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(shutdown && active == null && tasks.isEmpty())) {
+                if (left <= 0) {
+                    return false;
+                }
+                left = idle.awaitNanos(left);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}